@@ -0,0 +1,49 @@
+// Copyright 2020 Sinch AB
+
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+
+// http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.sinch.rtc.examples.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * JDK Flight Recorder event for a slow lookup of a Sinch Application Secret. Only loaded if the
+ * running JDK supports JFR, see {@link FlightRecorderEvents}.
+ */
+@Name("com.sinch.rtc.SlowCredentialsResolution")
+@Label("Slow Credentials Resolution")
+@Category({"Sinch RTC", "Authentication"})
+@Description("Lookup of a Sinch Application Secret that took longer than the configured threshold")
+final class SlowCredentialsResolutionEvent extends Event {
+
+  @Label("Application Key")
+  String applicationKey;
+
+  @Label("Resolution Time")
+  @Timespan(Timespan.NANOSECONDS)
+  long resolutionTime;
+
+  static void emit(String applicationKey, long nanos) {
+    SlowCredentialsResolutionEvent event = new SlowCredentialsResolutionEvent();
+    if (!event.shouldCommit()) return;
+
+    event.applicationKey = applicationKey;
+    event.resolutionTime = nanos;
+    event.commit();
+  }
+}
@@ -0,0 +1,301 @@
+package com.sinch.rtc.examples.benchmarks;
+
+import com.sinch.rtc.examples.hms.HmsClientAssertions;
+import com.sinch.rtc.examples.hms.HmsOAuthFlowTokenValidator;
+import com.sinch.rtc.examples.hms.SinchApplicationCredentialsResolver;
+import com.sinch.rtc.examples.hms.TokenBucketAdmissionController;
+import com.sinch.rtc.examples.metrics.LatencyHistogram;
+import com.sinch.rtc.examples.server.AccessToken;
+import com.sinch.rtc.examples.server.CachingAccessTokenProvider;
+import com.sinch.rtc.examples.server.HmsOAuthTokenEndpoint;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLEncoder;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A local load test of admission control (see {@link TokenBucketAdmissionController}) in front of
+ * {@link HmsOAuthTokenEndpoint}: well-behaved applications request access tokens at a fixed total
+ * rate, while one application floods the endpoint (from a number of connections, as fast as it
+ * can). The latency of the well-behaved applications is reported with and without the flood, and
+ * with and without admission control.
+ *
+ * <p>Credentials are looked up in a simulated remote store, that takes a while per lookup and
+ * serves a bounded number of lookups at a time (like a store behind a connection pool). Without
+ * admission control, the flood competes with the well-behaved applications for that store.
+ *
+ * <p>Latency is measured as in {@link RegistrationTokenServerLoadTest}, i.e. from the time a
+ * request was scheduled to be sent.
+ *
+ * <p>Run with <code>make load-test LOAD_TEST=AdmissionControlLoadTest</code> (or <code>./gradlew
+ * loadTest -PloadTest=AdmissionControlLoadTest</code>). Options (passed with <code>LOAD_TEST_ARGS
+ * </code>, or <code>-PloadTestArgs</code>):
+ *
+ * <pre>
+ * --rate 500              Total request rate (per second) of the well-behaved applications.
+ * --duration 10           Seconds per scenario.
+ * --warmup 5              Seconds of warm-up (without flood) before measuring.
+ * --connections 8         Number of client connections of the well-behaved applications.
+ * --flood-connections 32  Number of client connections of the flooding application.
+ * --applications 100      Number of Sinch applications (including the flooding one).
+ * --limit 50              Admitted rate (per second) per application, with admission control.
+ * --lookup-millis 2       Time per credentials lookup.
+ * --lookup-concurrency 4  Number of credentials lookups served at a time.
+ * </pre>
+ */
+public class AdmissionControlLoadTest {
+
+  private final String[] forms;
+  private final InetSocketAddress address;
+
+  private AdmissionControlLoadTest(String[] forms, InetSocketAddress address) {
+    this.forms = forms;
+    this.address = address;
+  }
+
+  public static void main(String[] args) throws Exception {
+    // Not set by the servers themselves, see RegistrationTokenServer.
+    if (System.getProperty("sun.net.httpserver.nodelay") == null)
+      System.setProperty("sun.net.httpserver.nodelay", "true");
+
+    int rate = 500;
+    int durationSeconds = 10;
+    int warmupSeconds = 5;
+    int connections = 8;
+    int floodConnections = 32;
+    int applications = 100;
+    int limit = 50;
+    int lookupMillis = 2;
+    int lookupConcurrency = 4;
+
+    for (int i = 0; i + 1 < args.length; i += 2) {
+      int value = Integer.parseInt(args[i + 1]);
+      switch (args[i]) {
+        case "--rate":
+          rate = value;
+          break;
+        case "--duration":
+          durationSeconds = value;
+          break;
+        case "--warmup":
+          warmupSeconds = value;
+          break;
+        case "--connections":
+          connections = value;
+          break;
+        case "--flood-connections":
+          floodConnections = value;
+          break;
+        case "--applications":
+          applications = value;
+          break;
+        case "--limit":
+          limit = value;
+          break;
+        case "--lookup-millis":
+          lookupMillis = value;
+          break;
+        case "--lookup-concurrency":
+          lookupConcurrency = value;
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown option: " + args[i]);
+      }
+    }
+
+    // Application 0 floods, the others are well-behaved.
+    Fixtures fixtures = new Fixtures(applications);
+    OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+    String[] forms = new String[applications];
+    for (int i = 0; i < applications; i++) {
+      forms[i] =
+          form(
+              HmsClientAssertions.create(
+                  fixtures.applicationKeys[i], fixtures.applicationSecrets[i], now));
+    }
+
+    System.out.printf(
+        "%-10s %-6s %10s %10s %10s %10s %10s %8s %10s %10s%n",
+        "admission",
+        "flood",
+        "actual/s",
+        "p50 (ms)",
+        "p99 (ms)",
+        "p99.9 (ms)",
+        "max (ms)",
+        "errors",
+        "flood/s",
+        "rejected");
+
+    final SinchApplicationCredentialsResolver store = fixtures.credentialsResolver();
+    final Semaphore connectionPool = new Semaphore(lookupConcurrency, true);
+    final long lookupNanos = TimeUnit.MILLISECONDS.toNanos(lookupMillis);
+    SinchApplicationCredentialsResolver remoteStore =
+        applicationKey -> {
+          connectionPool.acquireUninterruptibly();
+          try {
+            LockSupport.parkNanos(lookupNanos);
+            return store.resolveSinchApplicationSecret(applicationKey);
+          } finally {
+            connectionPool.release();
+          }
+        };
+
+    for (boolean admissionControl : new boolean[] {false, true}) {
+      HmsOAuthFlowTokenValidator validator =
+          new HmsOAuthFlowTokenValidator(remoteStore, Clock.systemUTC());
+      if (admissionControl)
+        validator =
+            validator.withAdmissionController(new TokenBucketAdmissionController(limit, limit));
+
+      try (HmsOAuthTokenEndpoint endpoint =
+          new HmsOAuthTokenEndpoint(
+              new InetSocketAddress("127.0.0.1", 0),
+              validator,
+              new CachingAccessTokenProvider(
+                  (applicationKey, hmsApplicationId) ->
+                      new AccessToken(
+                          applicationKey + "/" + hmsApplicationId,
+                          Instant.now().plus(Duration.ofHours(1)))))) {
+        endpoint.start();
+
+        AdmissionControlLoadTest test = new AdmissionControlLoadTest(forms, endpoint.getAddress());
+        test.run(rate, connections, 0, warmupSeconds);
+
+        for (int flood : new int[] {0, floodConnections}) {
+          Result result = test.run(rate, connections, flood, durationSeconds);
+          LatencyHistogram latency = result.latency;
+          long floodRequests = result.floodAdmitted.sum() + result.floodRejected.sum();
+          System.out.printf(
+              "%-10s %-6s %10.0f %10.2f %10.2f %10.2f %10.2f %8d %10.0f %9.1f%%%n",
+              admissionControl ? "on" : "off",
+              flood > 0 ? "yes" : "no",
+              latency.count() / (double) durationSeconds,
+              millis(latency.percentile(50)),
+              millis(latency.percentile(99)),
+              millis(latency.percentile(99.9)),
+              millis(latency.percentile(100)),
+              result.errors.sum(),
+              floodRequests / (double) durationSeconds,
+              floodRequests > 0 ? 100.0 * result.floodRejected.sum() / floodRequests : 0);
+        }
+      }
+    }
+  }
+
+  private static final class Result {
+    final LatencyHistogram latency = new LatencyHistogram();
+    final LongAdder errors = new LongAdder();
+    final LongAdder floodAdmitted = new LongAdder();
+    final LongAdder floodRejected = new LongAdder();
+  }
+
+  private Result run(int rate, int connections, int floodConnections, int durationSeconds)
+      throws InterruptedException {
+    final Result result = new Result();
+    final long intervalNanos = TimeUnit.SECONDS.toNanos(1) * connections / rate;
+    final long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+    final long end = start + TimeUnit.SECONDS.toNanos(durationSeconds);
+
+    Thread[] threads = new Thread[connections + floodConnections];
+    for (int c = 0; c < connections; c++) {
+      // Connections are staggered, so that requests are evenly spread over time.
+      final long first = start + intervalNanos * c / connections;
+      final int connection = c;
+      threads[c] =
+          new Thread(
+              () -> runConnection(connection, connections, first, intervalNanos, end, result),
+              "client");
+    }
+    for (int c = connections; c < threads.length; c++)
+      threads[c] = new Thread(() -> runFloodConnection(start, end, result), "flood");
+
+    for (Thread thread : threads) thread.start();
+    for (Thread thread : threads) thread.join();
+
+    return result;
+  }
+
+  // Requests of the well-behaved applications (1, 2, ...), on a fixed schedule.
+  private void runConnection(
+      int connection, int connections, long first, long intervalNanos, long end, Result result) {
+    LoadTestConnection client = null;
+    int request = 0;
+
+    try {
+      for (long scheduled = first; scheduled < end; scheduled += intervalNanos) {
+        long delay = scheduled - System.nanoTime();
+        if (delay > 0) TimeUnit.NANOSECONDS.sleep(delay);
+
+        if (client == null) client = new LoadTestConnection(address);
+
+        int application = 1 + (connection + request++ * connections) % (forms.length - 1);
+        int status = client.post(HmsOAuthTokenEndpoint.PATH, null, forms[application]);
+
+        result.latency.record(System.nanoTime() - scheduled);
+        if (status != 200) {
+          result.errors.increment();
+          client.close();
+          client = null;
+        }
+      }
+    } catch (IOException e) {
+      result.errors.increment();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      close(client);
+    }
+  }
+
+  // Requests of the flooding application (0), back to back.
+  private void runFloodConnection(long start, long end, Result result) {
+    LoadTestConnection client = null;
+
+    try {
+      long delay = start - System.nanoTime();
+      if (delay > 0) TimeUnit.NANOSECONDS.sleep(delay);
+
+      client = new LoadTestConnection(address);
+      while (System.nanoTime() < end) {
+        if (client.post(HmsOAuthTokenEndpoint.PATH, null, forms[0]) == 200)
+          result.floodAdmitted.increment();
+        else result.floodRejected.increment();
+      }
+    } catch (IOException e) {
+      // The flood is best-effort.
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      close(client);
+    }
+  }
+
+  private static String form(String clientAssertion) throws UnsupportedEncodingException {
+    return "grant_type=client_credentials&client_assertion_type="
+        + URLEncoder.encode("urn:ietf:params:oauth:client-assertion-type:jwt-bearer", "UTF-8")
+        + "&client_assertion="
+        + URLEncoder.encode(clientAssertion, "UTF-8");
+  }
+
+  private static void close(LoadTestConnection client) {
+    try {
+      if (client != null) client.close();
+    } catch (IOException e) {
+      // Ignore
+    }
+  }
+
+  private static double millis(long nanos) {
+    return nanos / 1e6;
+  }
+}
@@ -0,0 +1,42 @@
+package com.sinch.rtc.examples.benchmarks;
+
+import com.sinch.rtc.examples.ReferenceData;
+import com.sinch.rtc.examples.hms.SinchApplicationCredentialsResolver;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Benchmark fixtures: a number of distinct Sinch applications, the first of which is the one in
+ * {@link ReferenceData}.
+ */
+final class Fixtures {
+
+  final String[] applicationKeys;
+  final String[] applicationSecrets;
+  private final Map<String, String> secretsByKey = new HashMap<String, String>();
+
+  Fixtures(int applicationCount) {
+    applicationKeys = new String[applicationCount];
+    applicationSecrets = new String[applicationCount];
+
+    applicationKeys[0] = ReferenceData.APPLICATION_KEY;
+    applicationSecrets[0] = ReferenceData.APPLICATION_SECRET;
+
+    for (int i = 1; i < applicationCount; i++) {
+      applicationKeys[i] = new UUID(i, ~i).toString();
+      applicationSecrets[i] =
+          Base64.getEncoder()
+              .encodeToString(ByteBuffer.allocate(16).putLong(i * 31L).putLong(~i).array());
+    }
+
+    for (int i = 0; i < applicationCount; i++)
+      secretsByKey.put(applicationKeys[i], applicationSecrets[i]);
+  }
+
+  SinchApplicationCredentialsResolver credentialsResolver() {
+    return secretsByKey::get;
+  }
+}
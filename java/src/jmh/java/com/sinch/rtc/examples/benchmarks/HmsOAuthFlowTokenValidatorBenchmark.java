@@ -0,0 +1,130 @@
+package com.sinch.rtc.examples.benchmarks;
+
+import com.sinch.rtc.examples.ReferenceData;
+import com.sinch.rtc.examples.hms.HmsClientAssertions;
+import com.sinch.rtc.examples.hms.HmsOAuthFlowTokenValidator;
+import com.sinch.rtc.examples.hms.TokenValidationResult;
+import com.sinch.rtc.examples.hms.ValidationResultCache;
+import com.sinch.rtc.examples.jwt.SigningKeyCache;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.ZoneOffset;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/** Validating HMS OAuth flow client assertions, valid or invalid (in different ways). */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HmsOAuthFlowTokenValidatorBenchmark {
+
+  @Param({"1", "1000"})
+  public int applications;
+
+  /** "cold": signing keys are derived for every token. "warm": signing keys are cached. */
+  @Param({"warm", "cold"})
+  public String keys;
+
+  @Param({"VALID", "INVALID_SIGNATURE", "MALFORMED"})
+  public String token;
+
+  private HmsOAuthFlowTokenValidator validator;
+  private HmsOAuthFlowTokenValidator cachingValidator;
+  private String[] tokens;
+  private byte[][] tokenBytes;
+
+  @Setup
+  public void setup() {
+    Fixtures fixtures = new Fixtures(applications);
+    validator =
+        new HmsOAuthFlowTokenValidator(
+            fixtures.credentialsResolver(),
+            Clock.fixed(ReferenceData.NOW.toInstant(), ZoneOffset.UTC));
+    cachingValidator =
+        validator.withResultCache(
+            new ValidationResultCache(ValidationResultCache.DuplicatePolicy.ACCEPT));
+
+    tokens = new String[applications];
+    for (int i = 0; i < applications; i++) {
+      String valid =
+          HmsClientAssertions.create(
+              fixtures.applicationKeys[i], fixtures.applicationSecrets[i], ReferenceData.NOW);
+
+      switch (token) {
+        case "VALID":
+          tokens[i] = valid;
+          break;
+        case "INVALID_SIGNATURE":
+          tokens[i] =
+              HmsClientAssertions.create(
+                  fixtures.applicationKeys[i], "AAAAAAAAAAAAAAAAAAAAAA==", ReferenceData.NOW);
+          break;
+        default:
+          tokens[i] = valid.substring(0, valid.lastIndexOf('.'));
+      }
+    }
+
+    tokenBytes = new byte[applications][];
+    for (int i = 0; i < applications; i++)
+      tokenBytes[i] = tokens[i].getBytes(StandardCharsets.US_ASCII);
+  }
+
+  @State(Scope.Thread)
+  public static class Cursor {
+    int next;
+  }
+
+  // (Clearing the shared cache per invocation is only meaningful for single-threaded runs.)
+  @Setup(Level.Invocation)
+  public void clearSigningKeys() {
+    if ("cold".equals(keys)) SigningKeyCache.getDefault().clear();
+  }
+
+  private String nextToken(Cursor cursor) {
+    return tokens[nextIndex(cursor)];
+  }
+
+  private int nextIndex(Cursor cursor) {
+    int i = cursor.next;
+    cursor.next = i + 1 == tokens.length ? 0 : i + 1;
+    return i;
+  }
+
+  @Benchmark
+  @Threads(1)
+  public TokenValidationResult validate(Cursor cursor) {
+    return validator.Validate(nextToken(cursor));
+  }
+
+  @Benchmark
+  @Threads(Threads.MAX)
+  public TokenValidationResult validateContended(Cursor cursor) {
+    return validator.Validate(nextToken(cursor));
+  }
+
+  /** Validating tokens as received in a request buffer, by decoding them to Strings first. */
+  @Benchmark
+  @Threads(1)
+  public TokenValidationResult validateDecoded(Cursor cursor) {
+    byte[] bytes = tokenBytes[nextIndex(cursor)];
+    return validator.Validate(new String(bytes, StandardCharsets.US_ASCII));
+  }
+
+  /** Validating tokens as received in a request buffer, in place. */
+  @Benchmark
+  @Threads(1)
+  public TokenValidationResult validateInPlace(Cursor cursor) {
+    byte[] bytes = tokenBytes[nextIndex(cursor)];
+    return validator.validateBytes(bytes, 0, bytes.length);
+  }
+
+  /** Validating retried client assertions, that are answered from a result cache when valid. */
+  @Benchmark
+  @Threads(1)
+  public TokenValidationResult validateRetried(Cursor cursor) {
+    return cachingValidator.Validate(nextToken(cursor));
+  }
+}
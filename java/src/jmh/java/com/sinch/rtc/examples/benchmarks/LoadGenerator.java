@@ -0,0 +1,533 @@
+package com.sinch.rtc.examples.benchmarks;
+
+import com.sinch.rtc.examples.ReferenceData;
+import com.sinch.rtc.examples.hms.CachingCredentialsResolver;
+import com.sinch.rtc.examples.hms.HmsClientAssertions;
+import com.sinch.rtc.examples.hms.HmsOAuthFlowTokenValidator;
+import com.sinch.rtc.examples.hms.TokenValidationResult;
+import com.sinch.rtc.examples.hms.TokenValidationResult.FailureReason;
+import com.sinch.rtc.examples.metrics.LatencyHistogram;
+import com.sinch.rtc.examples.ocra.auth.UserRegistrationToken;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A standalone load (and soak) generator, that drives issuance of user registration tokens (see
+ * {@link UserRegistrationToken}) and validation of HMS OAuth flow client assertions (see {@link
+ * HmsOAuthFlowTokenValidator}) in-process, each at a fixed rate, from a number of threads.
+ *
+ * <ul>
+ *   <li>Client assertions are a configurable mix of valid, expired, wrongly signed and unknown-key
+ *       assertions, for a number of applications (see {@link Fixtures}). Validation results that do
+ *       not match the kind of assertion are counted as unexpected.
+ *   <li>Requests are sent on a fixed schedule (an open model), and latency is measured from the
+ *       time a request was scheduled to be sent, i.e. corrected for coordinated omission. The
+ *       service time (from the time the request was actually sent) is reported too; a large
+ *       difference between the two means that the generator (or the code under test) could not keep
+ *       up.
+ *   <li>Allocation per operation is measured per thread (on JVMs that support it), and GC counts
+ *       and times over the whole run.
+ *   <li>Results are printed, and written as JSON to a report file for regression tracking.
+ * </ul>
+ *
+ * <p>Run with <code>make load-test LOAD_TEST=LoadGenerator</code> (or <code>./gradlew loadTest
+ * -PloadTest=LoadGenerator</code>). Options (passed with <code>LOAD_TEST_ARGS</code>, or <code>
+ * -PloadTestArgs</code>):
+ *
+ * <pre>
+ * --issue-rate 2000        Target rate (per second) of token issuance. 0 disables issuance.
+ * --validate-rate 2000     Target rate (per second) of client assertion validation. 0 disables it.
+ * --duration 30            Seconds to measure. (Use e.g. 3600 for a soak test.)
+ * --warmup 5               Seconds of warm-up before measuring.
+ * --threads 2              Threads per operation.
+ * --applications 1000      Number of Sinch applications.
+ * --mix VALID=85,EXPIRED=5,INVALID_SIGNATURE=5,UNKNOWN_APPLICATION_KEY=5
+ *                          Weights of the kinds of client assertions.
+ * --interval 0             If not 0, print the latency of each interval of this many seconds.
+ * --report build/load-report.json
+ *                          Where to write the report.
+ * </pre>
+ */
+public class LoadGenerator {
+
+  /** The kinds of client assertions, and the validation result expected for each. */
+  enum Kind {
+    VALID(null),
+    EXPIRED(FailureReason.EXPIRED),
+    INVALID_SIGNATURE(FailureReason.INVALID_SIGNATURE),
+    UNKNOWN_APPLICATION_KEY(FailureReason.UNKNOWN_APPLICATION_KEY);
+
+    final FailureReason expected;
+
+    Kind(FailureReason expected) {
+      this.expected = expected;
+    }
+  }
+
+  // Number of distinct client assertions, i.e. the length of the cycle that validation goes
+  // through.
+  private static final int ASSERTIONS = 10000;
+
+  private final Fixtures fixtures;
+  private final HmsOAuthFlowTokenValidator validator;
+  private final String[] assertions;
+  private final Kind[] kinds;
+
+  private LoadGenerator(Fixtures fixtures, Map<Kind, Integer> mix) {
+    this.fixtures = fixtures;
+
+    // Client assertions are issued now, and validated with a fixed clock, so that valid assertions
+    // stay valid for the whole run, however long.
+    OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+    this.validator =
+        new HmsOAuthFlowTokenValidator(
+            new CachingCredentialsResolver(fixtures.credentialsResolver()),
+            Clock.fixed(now.toInstant(), ZoneOffset.UTC));
+
+    int total = 0;
+    for (int weight : mix.values()) total += weight;
+
+    List<Kind> shuffled = new ArrayList<Kind>(ASSERTIONS);
+    for (Map.Entry<Kind, Integer> entry : mix.entrySet()) {
+      int n = (int) ((long) ASSERTIONS * entry.getValue() / total);
+      for (int i = 0; i < n; i++) shuffled.add(entry.getKey());
+    }
+    while (shuffled.size() < ASSERTIONS) shuffled.add(Kind.VALID);
+    Collections.shuffle(shuffled, new Random(42));
+
+    this.kinds = shuffled.toArray(new Kind[0]);
+    this.assertions = new String[ASSERTIONS];
+    for (int i = 0; i < ASSERTIONS; i++) {
+      int application = i % fixtures.applicationKeys.length;
+      String applicationKey = fixtures.applicationKeys[application];
+      String applicationSecret = fixtures.applicationSecrets[application];
+
+      switch (kinds[i]) {
+        case EXPIRED:
+          assertions[i] =
+              HmsClientAssertions.create(applicationKey, applicationSecret, now.minusHours(2));
+          break;
+        case INVALID_SIGNATURE:
+          assertions[i] =
+              HmsClientAssertions.create(applicationKey, "AAAAAAAAAAAAAAAAAAAAAA==", now);
+          break;
+        case UNKNOWN_APPLICATION_KEY:
+          assertions[i] =
+              HmsClientAssertions.create(
+                  new UUID(~i, i).toString(), ReferenceData.APPLICATION_SECRET, now);
+          break;
+        default:
+          assertions[i] = HmsClientAssertions.create(applicationKey, applicationSecret, now);
+      }
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    int issueRate = 2000;
+    int validateRate = 2000;
+    int durationSeconds = 30;
+    int warmupSeconds = 5;
+    int threads = 2;
+    int applications = 1000;
+    int intervalSeconds = 0;
+    String mixOption = "VALID=85,EXPIRED=5,INVALID_SIGNATURE=5,UNKNOWN_APPLICATION_KEY=5";
+    Path report = Paths.get("build", "load-report.json");
+
+    for (int i = 0; i + 1 < args.length; i += 2) {
+      switch (args[i]) {
+        case "--issue-rate":
+          issueRate = Integer.parseInt(args[i + 1]);
+          break;
+        case "--validate-rate":
+          validateRate = Integer.parseInt(args[i + 1]);
+          break;
+        case "--duration":
+          durationSeconds = Integer.parseInt(args[i + 1]);
+          break;
+        case "--warmup":
+          warmupSeconds = Integer.parseInt(args[i + 1]);
+          break;
+        case "--threads":
+          threads = Integer.parseInt(args[i + 1]);
+          break;
+        case "--applications":
+          applications = Integer.parseInt(args[i + 1]);
+          break;
+        case "--mix":
+          mixOption = args[i + 1];
+          break;
+        case "--interval":
+          intervalSeconds = Integer.parseInt(args[i + 1]);
+          break;
+        case "--report":
+          report = Paths.get(args[i + 1]);
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown option: " + args[i]);
+      }
+    }
+
+    Map<Kind, Integer> mix = parseMix(mixOption);
+    LoadGenerator generator = new LoadGenerator(new Fixtures(applications), mix);
+
+    System.out.printf("Warming up for %d s%n", warmupSeconds);
+    generator.run(issueRate, validateRate, threads, warmupSeconds, 0);
+
+    System.out.printf("Measuring for %d s%n", durationSeconds);
+    long gcCount = gcCount();
+    long gcMillis = gcMillis();
+    Operation[] operations =
+        generator.run(issueRate, validateRate, threads, durationSeconds, intervalSeconds);
+    gcCount = gcCount() - gcCount;
+    gcMillis = gcMillis() - gcMillis;
+
+    System.out.printf(
+        "%-9s %10s %10s %10s %10s %10s %10s %10s %10s%n",
+        "operation",
+        "target/s",
+        "actual/s",
+        "p50 (us)",
+        "p99 (us)",
+        "p99.9 (us)",
+        "max (us)",
+        "svc p99",
+        "B/op");
+    for (Operation operation : operations) {
+      if (operation == null) continue;
+      LatencyHistogram latency = operation.latency;
+      System.out.printf(
+          "%-9s %10d %10.0f %10.1f %10.1f %10.1f %10.1f %10.1f %10s%n",
+          operation.name,
+          operation.targetRate,
+          latency.count() / (double) durationSeconds,
+          micros(latency.percentile(50)),
+          micros(latency.percentile(99)),
+          micros(latency.percentile(99.9)),
+          micros(latency.percentile(100)),
+          micros(operation.serviceTime.percentile(99)),
+          operation.allocatedBytesPerOperation() >= 0
+              ? String.valueOf(operation.allocatedBytesPerOperation())
+              : "n/a");
+    }
+    Operation validation = operations[1];
+    if (validation != null)
+      System.out.printf("Unexpected validation results: %d%n", validation.unexpected.sum());
+    System.out.printf("GC: %d collections, %d ms%n", gcCount, gcMillis);
+
+    if (report.getParent() != null) Files.createDirectories(report.getParent());
+    try (Writer writer = Files.newBufferedWriter(report, StandardCharsets.UTF_8)) {
+      writer.write(
+          report(operations, mix, threads, applications, durationSeconds, gcCount, gcMillis));
+    }
+    System.out.println("Report written to " + report);
+  }
+
+  /** The measurements of one operation (issuance or validation). */
+  private static final class Operation {
+    final String name;
+    final int targetRate;
+    final LatencyHistogram latency = new LatencyHistogram();
+    final LatencyHistogram serviceTime = new LatencyHistogram();
+    final AtomicReference<LatencyHistogram> interval =
+        new AtomicReference<LatencyHistogram>(new LatencyHistogram());
+    final LongAdder allocatedBytes = new LongAdder();
+    final AtomicLongArray results = new AtomicLongArray(FailureReason.values().length + 1);
+    final LongAdder unexpected = new LongAdder();
+    volatile boolean allocationMeasured = true;
+
+    Operation(String name, int targetRate) {
+      this.name = name;
+      this.targetRate = targetRate;
+    }
+
+    void record(long scheduled, long started, long finished) {
+      latency.record(finished - scheduled);
+      serviceTime.record(finished - started);
+      interval.get().record(finished - scheduled);
+    }
+
+    long allocatedBytesPerOperation() {
+      long count = latency.count();
+      return allocationMeasured && count > 0 ? allocatedBytes.sum() / count : -1;
+    }
+  }
+
+  // Run both operations for a while, and return their measurements (null for disabled operations).
+  private Operation[] run(
+      int issueRate, int validateRate, int threads, int durationSeconds, int intervalSeconds)
+      throws InterruptedException {
+    final Operation[] operations = {
+      issueRate > 0 ? new Operation("issue", issueRate) : null,
+      validateRate > 0 ? new Operation("validate", validateRate) : null
+    };
+
+    final long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+    final long end = start + TimeUnit.SECONDS.toNanos(durationSeconds);
+
+    List<Thread> workers = new ArrayList<Thread>();
+    for (int o = 0; o < operations.length; o++) {
+      final Operation operation = operations[o];
+      if (operation == null) continue;
+
+      final boolean issue = o == 0;
+      final long intervalNanos = TimeUnit.SECONDS.toNanos(1) * threads / operation.targetRate;
+      for (int t = 0; t < threads; t++) {
+        // Threads are staggered, so that requests are evenly spread over time.
+        final long first = start + intervalNanos * t / threads;
+        final int thread = t;
+        workers.add(
+            new Thread(
+                () -> {
+                  if (issue) runIssuance(operation, thread, threads, first, intervalNanos, end);
+                  else runValidation(operation, thread, threads, first, intervalNanos, end);
+                },
+                operation.name + "-" + t));
+      }
+    }
+    for (Thread worker : workers) worker.start();
+
+    if (intervalSeconds > 0) {
+      long next = start + TimeUnit.SECONDS.toNanos(intervalSeconds);
+      for (int n = 1; next <= end; n++, next += TimeUnit.SECONDS.toNanos(intervalSeconds)) {
+        TimeUnit.NANOSECONDS.sleep(Math.max(0, next - System.nanoTime()));
+        StringBuilder line = new StringBuilder().append(n * intervalSeconds).append(" s:");
+        for (Operation operation : operations) {
+          if (operation == null) continue;
+          LatencyHistogram latency = operation.interval.getAndSet(new LatencyHistogram());
+          line.append(
+              String.format(
+                  Locale.ROOT,
+                  "  %s %.0f/s p50 %.1f us p99 %.1f us max %.1f us",
+                  operation.name,
+                  latency.count() / (double) intervalSeconds,
+                  micros(latency.percentile(50)),
+                  micros(latency.percentile(99)),
+                  micros(latency.percentile(100))));
+        }
+        System.out.println(line);
+      }
+    }
+
+    for (Thread worker : workers) worker.join();
+    return operations;
+  }
+
+  private void runIssuance(
+      Operation operation, int thread, int threads, long first, long intervalNanos, long end) {
+    final String[] applicationKeys = fixtures.applicationKeys;
+    final String[] applicationSecrets = fixtures.applicationSecrets;
+    final long allocatedAtStart = allocatedBytes();
+    int request = 0;
+
+    try {
+      for (long scheduled = first; scheduled < end; scheduled += intervalNanos) {
+        long started = waitUntil(scheduled);
+
+        int application = (thread + request++ * threads) % applicationKeys.length;
+        OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+        new UserRegistrationToken(
+                applicationKeys[application],
+                applicationSecrets[application],
+                "user-" + request,
+                now,
+                now.plusMinutes(10))
+            .toJwt();
+
+        operation.record(scheduled, started, System.nanoTime());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    recordAllocation(operation, allocatedAtStart);
+  }
+
+  private void runValidation(
+      Operation operation, int thread, int threads, long first, long intervalNanos, long end) {
+    final long allocatedAtStart = allocatedBytes();
+    int request = 0;
+
+    try {
+      for (long scheduled = first; scheduled < end; scheduled += intervalNanos) {
+        long started = waitUntil(scheduled);
+
+        int i = (thread + request++ * threads) % ASSERTIONS;
+        TokenValidationResult result = validator.Validate(assertions[i]);
+
+        operation.record(scheduled, started, System.nanoTime());
+
+        FailureReason reason = result.getFailureReason();
+        operation.results.incrementAndGet(reason != null ? reason.ordinal() + 1 : 0);
+        if (reason != kinds[i].expected) operation.unexpected.increment();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    recordAllocation(operation, allocatedAtStart);
+  }
+
+  // Wait until a request is due, and return the time it is actually sent.
+  private static long waitUntil(long scheduled) throws InterruptedException {
+    long delay = scheduled - System.nanoTime();
+    if (delay > 0) TimeUnit.NANOSECONDS.sleep(delay);
+    return System.nanoTime();
+  }
+
+  private static void recordAllocation(Operation operation, long allocatedAtStart) {
+    long allocatedAtEnd = allocatedBytes();
+    if (allocatedAtStart < 0 || allocatedAtEnd < 0) operation.allocationMeasured = false;
+    else operation.allocatedBytes.add(allocatedAtEnd - allocatedAtStart);
+  }
+
+  // Bytes allocated by the current thread, or -1 if the JVM does not support measuring it.
+  private static long allocatedBytes() {
+    java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (!(threads instanceof com.sun.management.ThreadMXBean)) return -1;
+    com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+    if (!hotspot.isThreadAllocatedMemorySupported() || !hotspot.isThreadAllocatedMemoryEnabled())
+      return -1;
+    return hotspot.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  private static long gcCount() {
+    long count = 0;
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+      count += Math.max(0, gc.getCollectionCount());
+    return count;
+  }
+
+  private static long gcMillis() {
+    long millis = 0;
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+      millis += Math.max(0, gc.getCollectionTime());
+    return millis;
+  }
+
+  static Map<Kind, Integer> parseMix(String mix) {
+    Map<Kind, Integer> weights = new EnumMap<Kind, Integer>(Kind.class);
+    for (String entry : mix.split(",")) {
+      int equals = entry.indexOf('=');
+      if (equals < 0) throw new IllegalArgumentException("Malformed mix: " + mix);
+      Kind kind = Kind.valueOf(entry.substring(0, equals).trim().toUpperCase(Locale.ROOT));
+      int weight = Integer.parseInt(entry.substring(equals + 1).trim());
+      if (weight < 0) throw new IllegalArgumentException("Malformed mix: " + mix);
+      weights.put(kind, weight);
+    }
+    return weights;
+  }
+
+  private static String report(
+      Operation[] operations,
+      Map<Kind, Integer> mix,
+      int threads,
+      int applications,
+      int durationSeconds,
+      long gcCount,
+      long gcMillis) {
+    StringBuilder json =
+        new StringBuilder()
+            .append("{\n  \"timestamp\": \"")
+            .append(Instant.now())
+            .append("\",\n  \"javaVersion\": \"")
+            .append(System.getProperty("java.version"))
+            .append("\",\n  \"availableProcessors\": ")
+            .append(Runtime.getRuntime().availableProcessors())
+            .append(",\n  \"durationSeconds\": ")
+            .append(durationSeconds)
+            .append(",\n  \"threadsPerOperation\": ")
+            .append(threads)
+            .append(",\n  \"applications\": ")
+            .append(applications)
+            .append(",\n  \"mix\": {");
+    String separator = "";
+    for (Map.Entry<Kind, Integer> entry : mix.entrySet()) {
+      json.append(separator)
+          .append('"')
+          .append(entry.getKey())
+          .append("\": ")
+          .append(entry.getValue());
+      separator = ", ";
+    }
+    json.append("},\n  \"operations\": {");
+
+    separator = "";
+    for (Operation operation : operations) {
+      if (operation == null) continue;
+      json.append(separator)
+          .append("\n    \"")
+          .append(operation.name)
+          .append("\": {\n      \"targetRate\": ")
+          .append(operation.targetRate)
+          .append(",\n      \"actualRate\": ")
+          .append(
+              String.format(
+                  Locale.ROOT, "%.1f", operation.latency.count() / (double) durationSeconds))
+          .append(",\n      \"count\": ")
+          .append(operation.latency.count())
+          .append(",\n      \"latencyNanos\": ");
+      appendPercentiles(json, operation.latency);
+      json.append(",\n      \"serviceTimeNanos\": ");
+      appendPercentiles(json, operation.serviceTime);
+      json.append(",\n      \"allocatedBytesPerOperation\": ")
+          .append(operation.allocatedBytesPerOperation());
+
+      if (operation.name.equals("validate")) {
+        json.append(",\n      \"results\": {\"VALID\": ").append(operation.results.get(0));
+        for (FailureReason reason : FailureReason.values()) {
+          long count = operation.results.get(reason.ordinal() + 1);
+          if (count > 0) json.append(", \"").append(reason).append("\": ").append(count);
+        }
+        json.append("},\n      \"unexpectedResults\": ").append(operation.unexpected.sum());
+      }
+      json.append("\n    }");
+      separator = ",";
+    }
+
+    return json.append("\n  },\n  \"gc\": {\"count\": ")
+        .append(gcCount)
+        .append(", \"timeMillis\": ")
+        .append(gcMillis)
+        .append("}\n}\n")
+        .toString();
+  }
+
+  private static void appendPercentiles(StringBuilder json, LatencyHistogram histogram) {
+    json.append("{\"p50\": ")
+        .append(histogram.percentile(50))
+        .append(", \"p99\": ")
+        .append(histogram.percentile(99))
+        .append(", \"p999\": ")
+        .append(histogram.percentile(99.9))
+        .append(", \"max\": ")
+        .append(histogram.percentile(100))
+        .append(", \"mean\": ")
+        .append(String.format(Locale.ROOT, "%.1f", histogram.mean()))
+        .append('}');
+  }
+
+  private static double micros(long nanos) {
+    return nanos / 1e3;
+  }
+}
@@ -0,0 +1,80 @@
+package com.sinch.rtc.examples.benchmarks;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A keep-alive HTTP/1.1 client connection for load tests, that posts forms and reads (and discards)
+ * the responses. (A minimal client, so that the client side adds as little as possible to the
+ * measured latency.)
+ */
+final class LoadTestConnection implements Closeable {
+
+  private final Socket socket;
+  private final InputStream in;
+  private final OutputStream out;
+
+  LoadTestConnection(InetSocketAddress address) throws IOException {
+    socket = new Socket(address.getAddress(), address.getPort());
+    socket.setTcpNoDelay(true);
+    in = new BufferedInputStream(socket.getInputStream());
+    out = socket.getOutputStream();
+  }
+
+  /**
+   * Post a form, and read the response.
+   *
+   * @param authorization Value of the Authorization header, or <code>null</code> for none.
+   * @return The response status.
+   */
+  int post(String path, String authorization, String form) throws IOException {
+    StringBuilder request =
+        new StringBuilder(256 + form.length())
+            .append("POST ")
+            .append(path)
+            .append(" HTTP/1.1\r\nHost: localhost\r\n");
+    if (authorization != null)
+      request.append("Authorization: ").append(authorization).append("\r\n");
+    request
+        .append("Content-Type: application/x-www-form-urlencoded\r\nContent-Length: ")
+        .append(form.length())
+        .append("\r\n\r\n")
+        .append(form);
+
+    out.write(request.toString().getBytes(StandardCharsets.US_ASCII));
+    out.flush();
+
+    String statusLine = readLine();
+    int contentLength = 0;
+    for (String header; !(header = readLine()).isEmpty(); ) {
+      int colon = header.indexOf(':');
+      if (colon > 0 && header.substring(0, colon).trim().equalsIgnoreCase("Content-Length"))
+        contentLength = Integer.parseInt(header.substring(colon + 1).trim());
+    }
+    for (int i = 0; i < contentLength; i++) if (in.read() < 0) throw new IOException("EOF");
+
+    if (!statusLine.startsWith("HTTP/1.1 ") || statusLine.length() < 12)
+      throw new IOException(statusLine);
+    return Integer.parseInt(statusLine.substring(9, 12));
+  }
+
+  @Override
+  public void close() throws IOException {
+    socket.close();
+  }
+
+  private String readLine() throws IOException {
+    StringBuilder line = new StringBuilder();
+    for (int c; (c = in.read()) != '\n'; ) {
+      if (c < 0) throw new IOException("EOF");
+      if (c != '\r') line.append((char) c);
+    }
+    return line.toString();
+  }
+}
@@ -0,0 +1,76 @@
+package com.sinch.rtc.examples.benchmarks;
+
+import com.sinch.rtc.examples.ReferenceData;
+import com.sinch.rtc.examples.hms.HmsClientAssertions;
+import com.sinch.rtc.examples.hms.HmsOAuthFlowTokenValidator;
+import com.sinch.rtc.examples.hms.TokenValidationResult;
+import com.sinch.rtc.examples.metrics.RecordingTokenMetrics;
+import com.sinch.rtc.examples.metrics.TokenMetrics;
+import com.sinch.rtc.examples.ocra.auth.UserRegistrationToken;
+import java.time.Clock;
+import java.time.ZoneOffset;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/** Issuing and validating tokens, with and without metrics (see {@link TokenMetrics}). */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MetricsOverheadBenchmark {
+
+  /** "none": no metrics installed. "recording": {@link RecordingTokenMetrics} installed. */
+  @Param({"none", "recording"})
+  public String metrics;
+
+  private HmsOAuthFlowTokenValidator validator;
+  private String clientAssertion;
+  private UserRegistrationToken registrationToken;
+
+  @Setup
+  public void setup() {
+    TokenMetrics.install("recording".equals(metrics) ? new RecordingTokenMetrics() : null);
+
+    validator =
+        new HmsOAuthFlowTokenValidator(
+            applicationKey ->
+                ReferenceData.APPLICATION_KEY.equals(applicationKey)
+                    ? ReferenceData.APPLICATION_SECRET
+                    : null,
+            Clock.fixed(ReferenceData.NOW.toInstant(), ZoneOffset.UTC));
+    clientAssertion = HmsClientAssertions.create();
+    registrationToken =
+        new UserRegistrationToken(
+            ReferenceData.APPLICATION_KEY,
+            ReferenceData.APPLICATION_SECRET,
+            ReferenceData.EXTERNAL_USER_ID,
+            ReferenceData.JWT_NONCE,
+            ReferenceData.NOW,
+            ReferenceData.NOW.plusMinutes(10));
+  }
+
+  @TearDown
+  public void tearDown() {
+    TokenMetrics.install(null);
+  }
+
+  @Benchmark
+  @Threads(1)
+  public TokenValidationResult validate() {
+    return validator.Validate(clientAssertion);
+  }
+
+  @Benchmark
+  @Threads(Threads.MAX)
+  public TokenValidationResult validateContended() {
+    return validator.Validate(clientAssertion);
+  }
+
+  @Benchmark
+  @Threads(1)
+  public String toJwt() {
+    return registrationToken.toJwt();
+  }
+}
@@ -0,0 +1,39 @@
+package com.sinch.rtc.examples.benchmarks;
+
+import com.sinch.rtc.examples.ocra.auth.NonceGenerator;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/** Generating nonces: {@link NonceGenerator} compared to <code>UUID.randomUUID()</code>. */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NonceBenchmark {
+
+  @Benchmark
+  @Threads(1)
+  public String nonceGenerator() {
+    return NonceGenerator.nextNonce();
+  }
+
+  @Benchmark
+  @Threads(Threads.MAX)
+  public String nonceGeneratorContended() {
+    return NonceGenerator.nextNonce();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public String randomUuid() {
+    return UUID.randomUUID().toString();
+  }
+
+  @Benchmark
+  @Threads(Threads.MAX)
+  public String randomUuidContended() {
+    return UUID.randomUUID().toString();
+  }
+}
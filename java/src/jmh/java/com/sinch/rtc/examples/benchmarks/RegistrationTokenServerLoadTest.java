@@ -0,0 +1,183 @@
+package com.sinch.rtc.examples.benchmarks;
+
+import com.sinch.rtc.examples.metrics.LatencyHistogram;
+import com.sinch.rtc.examples.server.CallerAuthenticator;
+import com.sinch.rtc.examples.server.RegistrationTokenServer;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A local load test of {@link RegistrationTokenServer}: starts a server, and issues tokens at a
+ * number of target request rates, over keep-alive connections, reporting the latency percentiles at
+ * each rate.
+ *
+ * <p>Requests are sent on a fixed schedule (an open model). Latency is measured from the time a
+ * request was scheduled to be sent, so that a server that falls behind shows up in the latency
+ * (rather than as a lower request rate).
+ *
+ * <p>Run with <code>make load-test</code> (or <code>./gradlew loadTest</code>). Options (passed
+ * with <code>LOAD_TEST_ARGS</code>, or <code>-PloadTestArgs</code>):
+ *
+ * <pre>
+ * --rates 1000,2000,5000  Target request rates (per second).
+ * --duration 10           Seconds per rate.
+ * --warmup 5              Seconds of warm-up (at the first rate) before measuring.
+ * --connections 16        Number of client connections.
+ * --applications 1000     Number of Sinch applications tokens are issued for.
+ * </pre>
+ */
+public class RegistrationTokenServerLoadTest {
+
+  private static final String CALLER_TOKEN = "load-test";
+
+  private final Fixtures fixtures;
+  private final int connections;
+  private final InetSocketAddress address;
+
+  private RegistrationTokenServerLoadTest(
+      Fixtures fixtures, int connections, InetSocketAddress address) {
+    this.fixtures = fixtures;
+    this.connections = connections;
+    this.address = address;
+  }
+
+  public static void main(String[] args) throws Exception {
+    // Not set by the servers themselves, see RegistrationTokenServer.
+    if (System.getProperty("sun.net.httpserver.nodelay") == null)
+      System.setProperty("sun.net.httpserver.nodelay", "true");
+
+    int[] rates = {1000, 2000, 5000};
+    int durationSeconds = 10;
+    int warmupSeconds = 5;
+    int connections = 16;
+    int applications = 1000;
+
+    for (int i = 0; i + 1 < args.length; i += 2) {
+      switch (args[i]) {
+        case "--rates":
+          rates = Arrays.stream(args[i + 1].split(",")).mapToInt(Integer::parseInt).toArray();
+          break;
+        case "--duration":
+          durationSeconds = Integer.parseInt(args[i + 1]);
+          break;
+        case "--warmup":
+          warmupSeconds = Integer.parseInt(args[i + 1]);
+          break;
+        case "--connections":
+          connections = Integer.parseInt(args[i + 1]);
+          break;
+        case "--applications":
+          applications = Integer.parseInt(args[i + 1]);
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown option: " + args[i]);
+      }
+    }
+
+    Fixtures fixtures = new Fixtures(applications);
+    try (RegistrationTokenServer server =
+        new RegistrationTokenServer(
+            new InetSocketAddress("127.0.0.1", 0),
+            fixtures.credentialsResolver(),
+            CallerAuthenticator.bearerTokens(
+                Collections.singletonMap(CALLER_TOKEN, Arrays.asList(fixtures.applicationKeys))))) {
+      server.start();
+
+      RegistrationTokenServerLoadTest test =
+          new RegistrationTokenServerLoadTest(fixtures, connections, server.getAddress());
+
+      System.out.printf("Warming up for %d s at %d requests/s%n", warmupSeconds, rates[0]);
+      test.run(rates[0], warmupSeconds);
+
+      System.out.printf(
+          "%10s %10s %8s %10s %10s %10s %10s%n",
+          "target/s", "actual/s", "errors", "p50 (ms)", "p99 (ms)", "p99.9 (ms)", "max (ms)");
+      for (int rate : rates) {
+        Result result = test.run(rate, durationSeconds);
+        LatencyHistogram latency = result.latency;
+        System.out.printf(
+            "%10d %10.0f %8d %10.2f %10.2f %10.2f %10.2f%n",
+            rate,
+            latency.count() / (double) durationSeconds,
+            result.errors.sum(),
+            millis(latency.percentile(50)),
+            millis(latency.percentile(99)),
+            millis(latency.percentile(99.9)),
+            millis(latency.percentile(100)));
+      }
+    }
+  }
+
+  private static final class Result {
+    final LatencyHistogram latency = new LatencyHistogram();
+    final LongAdder errors = new LongAdder();
+  }
+
+  private Result run(int rate, int durationSeconds) throws InterruptedException {
+    final Result result = new Result();
+    final long intervalNanos = TimeUnit.SECONDS.toNanos(1) * connections / rate;
+    final long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+    final long end = start + TimeUnit.SECONDS.toNanos(durationSeconds);
+
+    Thread[] threads = new Thread[connections];
+    for (int c = 0; c < connections; c++) {
+      // Connections are staggered, so that requests are evenly spread over time.
+      final long first = start + intervalNanos * c / connections;
+      final int connection = c;
+      threads[c] =
+          new Thread(() -> runConnection(connection, first, intervalNanos, end, result), "client");
+      threads[c].start();
+    }
+    for (Thread thread : threads) thread.join();
+
+    return result;
+  }
+
+  private void runConnection(
+      int connection, long first, long intervalNanos, long end, Result result) {
+    LoadTestConnection client = null;
+    int request = 0;
+
+    try {
+      for (long scheduled = first; scheduled < end; scheduled += intervalNanos) {
+        long delay = scheduled - System.nanoTime();
+        if (delay > 0) TimeUnit.NANOSECONDS.sleep(delay);
+
+        if (client == null) client = new LoadTestConnection(address);
+
+        String[] applicationKeys = fixtures.applicationKeys;
+        int application = (connection + request++ * connections) % applicationKeys.length;
+        int status =
+            client.post(
+                RegistrationTokenServer.PATH,
+                "Bearer " + CALLER_TOKEN,
+                "application_key=" + applicationKeys[application] + "&user_id=user-" + request);
+
+        result.latency.record(System.nanoTime() - scheduled);
+        if (status != 200) {
+          result.errors.increment();
+          client.close();
+          client = null;
+        }
+      }
+    } catch (IOException e) {
+      result.errors.increment();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      try {
+        if (client != null) client.close();
+      } catch (IOException e) {
+        // Ignore
+      }
+    }
+  }
+
+  private static double millis(long nanos) {
+    return nanos / 1e6;
+  }
+}
@@ -0,0 +1,74 @@
+package com.sinch.rtc.examples.benchmarks;
+
+import com.sinch.rtc.examples.ReferenceData;
+import com.sinch.rtc.examples.jwt.JwtSigningKey;
+import com.sinch.rtc.examples.jwt.SigningKeyCache;
+import java.security.Key;
+import java.time.OffsetDateTime;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Signing key derivation: derived on every call (cold), or served from a {@link SigningKeyCache}
+ * (warm), for one or many distinct application keys.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SigningKeyBenchmark {
+
+  @Param({"1", "1000"})
+  public int applications;
+
+  private byte[][] secrets;
+  private final OffsetDateTime issuedAt = ReferenceData.NOW;
+  private final SigningKeyCache cache =
+      new SigningKeyCache(10000, SigningKeyCache.DEFAULT_MAXIMUM_AGE);
+
+  @Setup
+  public void setup() {
+    Fixtures fixtures = new Fixtures(applications);
+    secrets = new byte[applications][];
+    for (int i = 0; i < applications; i++)
+      secrets[i] = Base64.getDecoder().decode(fixtures.applicationSecrets[i]);
+  }
+
+  @State(Scope.Thread)
+  public static class Cursor {
+    int next;
+  }
+
+  private byte[] nextSecret(Cursor cursor) {
+    int i = cursor.next;
+    cursor.next = i + 1 == secrets.length ? 0 : i + 1;
+    return secrets[i];
+  }
+
+  @Benchmark
+  @Threads(1)
+  public byte[] derive(Cursor cursor) {
+    return JwtSigningKey.deriveSigningKey(nextSecret(cursor), issuedAt);
+  }
+
+  @Benchmark
+  @Threads(Threads.MAX)
+  public byte[] deriveContended(Cursor cursor) {
+    return JwtSigningKey.deriveSigningKey(nextSecret(cursor), issuedAt);
+  }
+
+  @Benchmark
+  @Threads(1)
+  public Key cached(Cursor cursor) {
+    return cache.get(nextSecret(cursor), issuedAt);
+  }
+
+  @Benchmark
+  @Threads(Threads.MAX)
+  public Key cachedContended(Cursor cursor) {
+    return cache.get(nextSecret(cursor), issuedAt);
+  }
+}
@@ -0,0 +1,71 @@
+package com.sinch.rtc.examples.benchmarks;
+
+import com.sinch.rtc.examples.ReferenceData;
+import com.sinch.rtc.examples.jwt.SigningKeyCache;
+import com.sinch.rtc.examples.ocra.auth.UserRegistrationToken;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/** Issuing (building and signing) user registration tokens. */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UserRegistrationTokenBenchmark {
+
+  @Param({"1", "1000"})
+  public int applications;
+
+  /** "cold": signing keys are derived for every token. "warm": signing keys are cached. */
+  @Param({"warm", "cold"})
+  public String keys;
+
+  private UserRegistrationToken[] tokens;
+
+  @Setup
+  public void setup() {
+    Fixtures fixtures = new Fixtures(applications);
+    tokens = new UserRegistrationToken[applications];
+    for (int i = 0; i < applications; i++) {
+      tokens[i] =
+          new UserRegistrationToken(
+              fixtures.applicationKeys[i],
+              fixtures.applicationSecrets[i],
+              ReferenceData.EXTERNAL_USER_ID,
+              ReferenceData.JWT_NONCE,
+              ReferenceData.NOW,
+              ReferenceData.NOW.plusMinutes(10));
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class Cursor {
+    int next;
+  }
+
+  // (Clearing the shared cache per invocation is only meaningful for single-threaded runs.)
+  @Setup(Level.Invocation)
+  public void clearSigningKeys() {
+    if ("cold".equals(keys)) SigningKeyCache.getDefault().clear();
+  }
+
+  private UserRegistrationToken nextToken(Cursor cursor) {
+    int i = cursor.next;
+    cursor.next = i + 1 == tokens.length ? 0 : i + 1;
+    return tokens[i];
+  }
+
+  @Benchmark
+  @Threads(1)
+  public String toJwt(Cursor cursor) {
+    return nextToken(cursor).toJwt();
+  }
+
+  @Benchmark
+  @Threads(Threads.MAX)
+  public String toJwtContended(Cursor cursor) {
+    return nextToken(cursor).toJwt();
+  }
+}
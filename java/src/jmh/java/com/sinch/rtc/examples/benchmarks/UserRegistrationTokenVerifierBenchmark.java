@@ -0,0 +1,111 @@
+package com.sinch.rtc.examples.benchmarks;
+
+import com.sinch.rtc.examples.ReferenceData;
+import com.sinch.rtc.examples.hms.SinchApplicationCredentialsResolver;
+import com.sinch.rtc.examples.jwt.JwtSigningKey;
+import com.sinch.rtc.examples.ocra.auth.UserRegistrationToken;
+import com.sinch.rtc.examples.ocra.auth.UserRegistrationTokenVerifier;
+import com.sinch.rtc.examples.ocra.auth.VerificationResult;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SigningKeyResolverAdapter;
+import java.time.Clock;
+import java.time.ZoneOffset;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Verifying user registration tokens with {@link UserRegistrationTokenVerifier}, compared to
+ * parsing them with jjwt (deriving the signing key for every token, and checking the claims).
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UserRegistrationTokenVerifierBenchmark {
+
+  private static final String ISSUER_PREFIX = "//rtc.sinch.com/applications/";
+
+  @Param({"1", "1000"})
+  public int applications;
+
+  @Param({"VALID", "INVALID_SIGNATURE"})
+  public String token;
+
+  private UserRegistrationTokenVerifier verifier;
+  private JwtParser parser;
+  private String[] tokens;
+
+  @Setup
+  public void setup() {
+    Fixtures fixtures = new Fixtures(applications);
+    final SinchApplicationCredentialsResolver credentialsResolver = fixtures.credentialsResolver();
+
+    verifier =
+        new UserRegistrationTokenVerifier(
+            credentialsResolver, Clock.fixed(ReferenceData.NOW.toInstant(), ZoneOffset.UTC));
+    parser =
+        Jwts.parserBuilder()
+            .setClock(() -> Date.from(ReferenceData.NOW.toInstant()))
+            .setSigningKeyResolver(
+                new SigningKeyResolverAdapter() {
+                  @Override
+                  public byte[] resolveSigningKeyBytes(JwsHeader header, Claims claims) {
+                    String applicationKey = claims.getIssuer().substring(ISSUER_PREFIX.length());
+                    return JwtSigningKey.deriveSigningKey(
+                        credentialsResolver.resolveSinchApplicationSecret(applicationKey),
+                        JwtSigningKey.tryParseIssuedAtFromKeyId(header.getKeyId()));
+                  }
+                })
+            .build();
+
+    tokens = new String[applications];
+    for (int i = 0; i < applications; i++) {
+      tokens[i] =
+          new UserRegistrationToken(
+                  fixtures.applicationKeys[i],
+                  "VALID".equals(token)
+                      ? fixtures.applicationSecrets[i]
+                      : "AAAAAAAAAAAAAAAAAAAAAA==",
+                  ReferenceData.EXTERNAL_USER_ID,
+                  ReferenceData.NOW,
+                  ReferenceData.NOW.plusMinutes(10))
+              .toJwt();
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class Cursor {
+    int next;
+  }
+
+  private String nextToken(Cursor cursor) {
+    int i = cursor.next;
+    cursor.next = i + 1 == tokens.length ? 0 : i + 1;
+    return tokens[i];
+  }
+
+  @Benchmark
+  public VerificationResult verify(Cursor cursor) {
+    return verifier.verify(nextToken(cursor));
+  }
+
+  @Benchmark
+  public String jjwt(Cursor cursor) {
+    try {
+      Claims claims = parser.parseClaimsJws(nextToken(cursor)).getBody();
+      String issuer = claims.getIssuer();
+      if (!claims.getSubject().startsWith(issuer + "/users/") || claims.get("nonce") == null)
+        return null;
+      return claims.getSubject();
+    } catch (JwtException e) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,36 @@
+// Copyright 2020 Sinch AB
+
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+
+// http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.sinch.rtc.examples.hms;
+
+/**
+ * Decides whether a client assertion is admitted for validation, before any credentials lookup or
+ * cryptographic work is done for it, so that one misbehaving (or spoofed) Sinch Application Key can
+ * not starve the others. See {@link HmsOAuthFlowTokenValidator#withAdmissionController} and {@link
+ * TokenBucketAdmissionController} for a built-in implementation.
+ *
+ * <p>Note that the Sinch Application Key has not been authenticated at this point, i.e. a client
+ * that spoofs the key of another application spends the budget of that application.
+ *
+ * <p>Implementations must be thread-safe, and must not block.
+ */
+public interface AdmissionController {
+
+  /**
+   * @param applicationKey JWT header `sinch:rtc:application_key` of the client assertion.
+   * @return <code>true</code> if the client assertion may be validated, or <code>false</code> if it
+   *     should be rejected (see {@link TokenValidationResult.FailureReason#OVERLOADED}).
+   */
+  boolean admit(String applicationKey);
+}
@@ -0,0 +1,87 @@
+// Copyright 2020 Sinch AB
+
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+
+// http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.sinch.rtc.examples.hms;
+
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+
+/**
+ * A non-blocking variant of {@link SinchApplicationCredentialsResolver}, for use with {@link
+ * HmsOAuthFlowTokenValidator#validateAsync(String)} on servers that must not block their request
+ * handling (event loop) threads.
+ */
+public interface AsyncSinchApplicationCredentialsResolver {
+
+  /**
+   * Given a Sinch Application Key, resolve the corresponding Sinch Application Secret
+   * (base64-encoded format). The result is <code>null</code> if the application key is not known.
+   */
+  CompletionStage<String> resolveSinchApplicationSecretAsync(String applicationKey);
+
+  /**
+   * Like {@link #resolveSinchApplicationSecretAsync}, but resolves the Sinch Application Secret in
+   * decoded form (see {@link
+   * SinchApplicationCredentialsResolver#resolveSinchApplicationSecretBytes}).
+   */
+  default CompletionStage<byte[]> resolveSinchApplicationSecretBytesAsync(String applicationKey) {
+    return resolveSinchApplicationSecretAsync(applicationKey)
+        .thenApply(secret -> secret != null ? Base64.getDecoder().decode(secret) : null);
+  }
+
+  /**
+   * Like {@link #resolveSinchApplicationSecretAsync}, but resolves all active Sinch Application
+   * Secrets (see {@link SinchApplicationCredentialsResolver#resolveSinchApplicationSecrets}).
+   */
+  default CompletionStage<List<SinchApplicationSecret>> resolveSinchApplicationSecretsAsync(
+      String applicationKey) {
+    return resolveSinchApplicationSecretBytesAsync(applicationKey)
+        .thenApply(SinchApplicationSecret::single);
+  }
+
+  /**
+   * Adapt a blocking resolver, by running its lookups on an executor (see e.g. {@link
+   * ResolverExecutors}).
+   */
+  static AsyncSinchApplicationCredentialsResolver fromBlocking(
+      SinchApplicationCredentialsResolver resolver, Executor executor) {
+    if (null == resolver) throw new IllegalArgumentException("resolver");
+    if (null == executor) throw new IllegalArgumentException("executor");
+
+    return new AsyncSinchApplicationCredentialsResolver() {
+      @Override
+      public CompletionStage<String> resolveSinchApplicationSecretAsync(String applicationKey) {
+        return CompletableFuture.supplyAsync(
+            () -> resolver.resolveSinchApplicationSecret(applicationKey), executor);
+      }
+
+      @Override
+      public CompletionStage<byte[]> resolveSinchApplicationSecretBytesAsync(
+          String applicationKey) {
+        return CompletableFuture.supplyAsync(
+            () -> resolver.resolveSinchApplicationSecretBytes(applicationKey), executor);
+      }
+
+      @Override
+      public CompletionStage<List<SinchApplicationSecret>> resolveSinchApplicationSecretsAsync(
+          String applicationKey) {
+        return CompletableFuture.supplyAsync(
+            () -> resolver.resolveSinchApplicationSecrets(applicationKey), executor);
+      }
+    };
+  }
+}
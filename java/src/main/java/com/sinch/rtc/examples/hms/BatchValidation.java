@@ -0,0 +1,201 @@
+// Copyright 2020 Sinch AB
+
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+
+// http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.sinch.rtc.examples.hms;
+
+import com.sinch.rtc.examples.hms.TokenValidationResult.FailureReason;
+import com.sinch.rtc.examples.jwt.CompactJws;
+import com.sinch.rtc.examples.jwt.JsonObjectReader;
+import com.sinch.rtc.examples.metrics.TokenMetrics;
+import com.sinch.rtc.examples.metrics.TokenMetrics.Phase;
+import java.security.Key;
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/** Validation of a batch of tokens, see {@link HmsOAuthFlowTokenValidator#validateAll}. */
+final class BatchValidation {
+
+  private static final int SEQUENTIAL_THRESHOLD = 16;
+
+  private final HmsOAuthFlowTokenValidator validator;
+  private final String[] tokens;
+  private final long nowMillis;
+  private final Group[] groups;
+  private final TokenValidationResult[] results;
+  private final TokenMetrics metrics = TokenMetrics.get();
+
+  BatchValidation(HmsOAuthFlowTokenValidator validator, List<String> tokens, long nowMillis) {
+    this.validator = validator;
+    this.tokens = tokens.toArray(new String[0]);
+    this.nowMillis = nowMillis;
+    this.groups = new Group[this.tokens.length];
+    this.results = new TokenValidationResult[this.tokens.length];
+  }
+
+  List<TokenValidationResult> run(ForkJoinPool pool) {
+    // 1. Check the structure and header of each token (cheap), check admission, and group the
+    // tokens by Sinch Application Key and key id.
+    Map<List<String>, Group> byKey = new HashMap<List<String>, Group>();
+    CompactJws jwt = CompactJws.get();
+
+    for (int i = 0; i < tokens.length; i++) {
+      FailureReason headerFailure = HmsOAuthFlowTokenValidator.validateHeader(jwt, tokens[i]);
+      if (headerFailure != null) {
+        results[i] = TokenValidationResult.Invalid(headerFailure);
+        continue;
+      }
+
+      final JsonObjectReader header = jwt.header();
+      final String applicationKey = HmsOAuthFlowTokenValidator.getSinchApplicationKey(header);
+
+      if (!validator.admit(applicationKey)) {
+        results[i] = TokenValidationResult.Invalid(FailureReason.OVERLOADED);
+        continue;
+      }
+
+      groups[i] =
+          byKey.computeIfAbsent(
+              Arrays.asList(applicationKey, header.getString("kid")),
+              key -> new Group(applicationKey, HmsOAuthFlowTokenValidator.getIssuedAt(header)));
+    }
+
+    // 2. Resolve credentials and derive a signing key, once per group. All lookups are started
+    // before waiting for any of them, so that lookups by an asynchronous resolver overlap.
+    for (Group group : byKey.values()) group.startResolution();
+
+    for (Group group : byKey.values()) group.resolveSigningKeys();
+
+    // 3. Validate signatures and claims in parallel.
+    pool.invoke(new ValidateAction(0, tokens.length));
+
+    if (metrics.isEnabled()) {
+      for (int i = 0; i < results.length; i++) {
+        HmsOAuthFlowTokenValidator.record(
+            metrics, groups[i] != null ? groups[i].applicationKey : null, results[i]);
+      }
+    }
+
+    return Arrays.asList(results);
+  }
+
+  private void validate(int i) {
+    if (results[i] != null) return;
+
+    Group group = groups[i];
+    if (group.failure != null) {
+      results[i] = TokenValidationResult.Invalid(group.failure);
+      return;
+    }
+
+    // Tokens are parsed again, in the (per-thread) parser of the thread that validates them.
+    CompactJws jwt = CompactJws.get();
+    if (!jwt.parse(tokens[i], HmsOAuthFlowTokenValidator.MAX_TOKEN_LENGTH)) {
+      results[i] = TokenValidationResult.Invalid(FailureReason.MALFORMED);
+      return;
+    }
+
+    long start = metrics.isEnabled() ? System.nanoTime() : 0;
+    Key signingKey = SinchApplicationSecret.selectSigningKey(group.signingKeys, jwt);
+    if (metrics.isEnabled()) HmsOAuthFlowTokenValidator.lap(metrics, Phase.VERIFY_SIGNATURE, start);
+    if (signingKey == null) {
+      results[i] = TokenValidationResult.Invalid(FailureReason.INVALID_SIGNATURE);
+      return;
+    }
+
+    results[i] = validator.validateClaims(jwt, group.applicationKey, nowMillis, metrics);
+  }
+
+  private final class Group {
+    final String applicationKey;
+    final OffsetDateTime issuedAt;
+
+    CompletableFuture<List<SinchApplicationSecret>> applicationSecrets;
+    // The signing keys of the candidate secrets, see SinchApplicationSecret (usually one).
+    Key[] signingKeys;
+    FailureReason failure;
+
+    Group(String applicationKey, OffsetDateTime issuedAt) {
+      this.applicationKey = applicationKey;
+      this.issuedAt = issuedAt;
+    }
+
+    void startResolution() {
+      if (!metrics.isEnabled()) {
+        applicationSecrets = validator.resolveApplicationSecrets(applicationKey);
+        return;
+      }
+
+      final long start = System.nanoTime();
+      applicationSecrets = validator.resolveApplicationSecrets(applicationKey);
+      applicationSecrets.whenComplete(
+          (secret, failure) ->
+              HmsOAuthFlowTokenValidator.lapResolution(metrics, applicationKey, start));
+    }
+
+    void resolveSigningKeys() {
+      // A failed (or cancelled) lookup, or a secret that no signing key can be derived from, fails
+      // the tokens of this group only, not the whole batch.
+      List<SinchApplicationSecret> secrets;
+      try {
+        secrets = applicationSecrets.join();
+      } catch (RuntimeException e) {
+        failure = FailureReason.CREDENTIALS_UNAVAILABLE;
+        return;
+      }
+
+      if (secrets == null || secrets.isEmpty()) {
+        failure = FailureReason.UNKNOWN_APPLICATION_KEY;
+        return;
+      }
+
+      long start = metrics.isEnabled() ? System.nanoTime() : 0;
+      try {
+        signingKeys = SinchApplicationSecret.candidateSigningKeys(secrets, issuedAt, nowMillis);
+      } catch (RuntimeException e) {
+        failure = FailureReason.CREDENTIALS_UNAVAILABLE;
+        return;
+      }
+      if (metrics.isEnabled()) HmsOAuthFlowTokenValidator.lap(metrics, Phase.DERIVE_KEY, start);
+    }
+  }
+
+  private final class ValidateAction extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final int from;
+    private final int to;
+
+    ValidateAction(int from, int to) {
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from <= SEQUENTIAL_THRESHOLD) {
+        for (int i = from; i < to; i++) validate(i);
+        return;
+      }
+
+      int middle = (from + to) >>> 1;
+      invokeAll(new ValidateAction(from, middle), new ValidateAction(middle, to));
+    }
+  }
+}
@@ -0,0 +1,282 @@
+// Copyright 2020 Sinch AB
+
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+
+// http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.sinch.rtc.examples.hms;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+
+/**
+ * A {@link NonceReplayStore} with bounded memory, that can optionally be backed by a memory-mapped
+ * file so that recorded nonces survive restarts.
+ *
+ * <ul>
+ *   <li>Nonces are bucketed by the expiry time of their token, in a ring of buckets that covers a
+ *       fixed window of time. A bucket is reused (and its nonces forgotten, in constant time) once
+ *       all tokens in it have expired. Tokens that expire beyond the window are not recorded.
+ *   <li>Each bucket holds a fixed maximum number of nonces. Each nonce is stored as a 96-bit hash
+ *       (of the nonce and the application key), in 16 bytes, in open-addressing hash tables in a
+ *       single buffer of longs.
+ *   <li>Each bucket is split into stripes with a lock each, so that concurrent callers rarely
+ *       contend for the same lock.
+ * </ul>
+ *
+ * <p>The default settings (a window of a little over two hours, in one-minute buckets of at most
+ * 8192 nonces) use 32 MiB.
+ */
+public class BucketedNonceReplayStore implements NonceReplayStore, Closeable {
+
+  public static final Duration DEFAULT_BUCKET_WIDTH = Duration.ofMinutes(1);
+  public static final int DEFAULT_BUCKET_COUNT = 128;
+  public static final int DEFAULT_MAXIMUM_NONCES_PER_BUCKET = 8192;
+
+  private static final long MAGIC = 0x53696e63684e6f6eL;
+  private static final long VERSION = 1;
+
+  private static final int STRIPES = 16;
+  private static final int HEADER_LONGS = 8;
+
+  // Per segment (bucket stripe): the time slot it currently holds (plus one, so that zero means
+  // none) and its number of entries, followed by its hash table.
+  private static final int SEGMENT_HEADER_LONGS = 2;
+
+  private final long bucketWidthMillis;
+  private final int bucketCount;
+  private final int tableSize;
+  private final int maximumEntriesPerSegment;
+  private final int segmentLongs;
+
+  private final LongBuffer store;
+  private final Object[] locks;
+  private final FileChannel channel;
+  private final MappedByteBuffer mapped;
+
+  public BucketedNonceReplayStore() {
+    this(DEFAULT_BUCKET_WIDTH, DEFAULT_BUCKET_COUNT, DEFAULT_MAXIMUM_NONCES_PER_BUCKET);
+  }
+
+  /**
+   * Construct a store in heap memory.
+   *
+   * @param bucketWidth Time span of each bucket.
+   * @param bucketCount Number of buckets. Tokens that expire later than bucketWidth * bucketCount
+   *     from now are not recorded.
+   * @param maximumNoncesPerBucket Maximum number of nonces per bucket (approximately, as nonces are
+   *     distributed over a number of stripes).
+   */
+  public BucketedNonceReplayStore(
+      Duration bucketWidth, int bucketCount, int maximumNoncesPerBucket) {
+    this(new Layout(bucketWidth, bucketCount, maximumNoncesPerBucket));
+  }
+
+  private BucketedNonceReplayStore(Layout layout) {
+    this(layout, LongBuffer.allocate((int) layout.totalLongs), null, null);
+  }
+
+  private BucketedNonceReplayStore(
+      Layout layout, LongBuffer store, FileChannel channel, MappedByteBuffer mapped) {
+    this.bucketWidthMillis = layout.bucketWidthMillis;
+    this.bucketCount = layout.bucketCount;
+    this.tableSize = layout.tableSize;
+    this.maximumEntriesPerSegment = layout.maximumEntriesPerSegment;
+    this.segmentLongs = layout.segmentLongs;
+    this.store = store;
+    this.channel = channel;
+    this.mapped = mapped;
+
+    this.locks = new Object[bucketCount * STRIPES];
+    for (int i = 0; i < locks.length; i++) locks[i] = new Object();
+  }
+
+  /**
+   * Open (or create) a store that is backed by a memory-mapped file. The file must have been
+   * created with the same settings.
+   *
+   * @see #BucketedNonceReplayStore(Duration, int, int)
+   */
+  public static BucketedNonceReplayStore open(
+      Path file, Duration bucketWidth, int bucketCount, int maximumNoncesPerBucket)
+      throws IOException {
+    if (null == file) throw new IllegalArgumentException("file");
+
+    Layout layout = new Layout(bucketWidth, bucketCount, maximumNoncesPerBucket);
+    if (layout.totalLongs > Integer.MAX_VALUE / 8)
+      throw new IllegalArgumentException("maximumNoncesPerBucket");
+
+    FileChannel channel =
+        FileChannel.open(
+            file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      long existingSize = channel.size();
+      if (existingSize != 0 && existingSize != layout.totalLongs * 8)
+        throw new IOException(file + " was created with different settings");
+
+      MappedByteBuffer mapped =
+          channel.map(FileChannel.MapMode.READ_WRITE, 0, layout.totalLongs * 8);
+      LongBuffer store = mapped.asLongBuffer();
+
+      long[] header = layout.header();
+      if (existingSize == 0) {
+        for (int i = 0; i < header.length; i++) store.put(i, header[i]);
+      } else {
+        for (int i = 0; i < header.length; i++) {
+          if (store.get(i) != header[i])
+            throw new IOException(file + " was created with different settings");
+        }
+      }
+
+      return new BucketedNonceReplayStore(layout, store, channel, mapped);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  @Override
+  public Result record(String applicationKey, String nonce, long expiresAtMillis, long nowMillis) {
+    if (null == applicationKey) throw new IllegalArgumentException("applicationKey");
+    if (null == nonce) throw new IllegalArgumentException("nonce");
+
+    final long slot = Math.floorDiv(expiresAtMillis, bucketWidthMillis);
+    final long nowSlot = Math.floorDiv(nowMillis, bucketWidthMillis);
+
+    // Nonces of tokens that have expired, or expire beyond the window, can not be tracked.
+    if (slot < nowSlot || slot - nowSlot >= bucketCount) return Result.NOT_RECORDED;
+
+    final long hashHigh = hash(applicationKey, nonce, 0x243f6a8885a308d3L);
+    final long hashLow = hash(applicationKey, nonce, 0x13198a2e03707344L);
+
+    int tag = (int) (slot + 1);
+    if (tag == 0) tag = 1;
+
+    final int segment =
+        (int) Math.floorMod(slot, (long) bucketCount) * STRIPES + (int) (hashHigh >>> 60);
+    final int base = HEADER_LONGS + segment * segmentLongs;
+
+    synchronized (locks[segment]) {
+      long segmentSlot = store.get(base) - 1;
+
+      // The segment holds a later window (callers disagree about the current time).
+      if (segmentSlot > slot) return Result.NOT_RECORDED;
+
+      if (segmentSlot < slot) {
+        // All nonces in the segment have expired. Entries are tagged with their slot, so changing
+        // the slot of the segment is enough to make them free.
+        store.put(base, slot + 1);
+        store.put(base + 1, 0);
+      }
+
+      final int mask = tableSize - 1;
+      for (int i = (int) hashLow & mask; ; i = (i + 1) & mask) {
+        int entry = base + SEGMENT_HEADER_LONGS + 2 * i;
+        long tagged = store.get(entry + 1);
+
+        if ((int) tagged != tag) {
+          long size = store.get(base + 1);
+          if (size >= maximumEntriesPerSegment) return Result.NOT_RECORDED;
+
+          store.put(entry, hashHigh);
+          store.put(entry + 1, (hashLow & 0xffffffff00000000L) | (tag & 0xffffffffL));
+          store.put(base + 1, size + 1);
+          return Result.RECORDED;
+        }
+
+        if (store.get(entry) == hashHigh && (tagged >>> 32) == (hashLow >>> 32))
+          return Result.REPLAYED;
+      }
+    }
+  }
+
+  /** Flush a memory-mapped store to its file, and close the file. */
+  @Override
+  public void close() throws IOException {
+    if (channel == null) return;
+
+    mapped.force();
+    channel.close();
+  }
+
+  private static long hash(String applicationKey, String nonce, long seed) {
+    long h = seed;
+    h = mix(h, applicationKey);
+    h = (h ^ (0x10000 + applicationKey.length())) * 0x9e3779b97f4a7c15L;
+    h = mix(h, nonce);
+    h ^= nonce.length();
+
+    // Finalizer of MurmurHash3.
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  private static long mix(long h, String s) {
+    for (int i = 0; i < s.length(); i++) {
+      h = (h ^ s.charAt(i)) * 0x9e3779b97f4a7c15L;
+      h = Long.rotateLeft(h, 27);
+    }
+    return h;
+  }
+
+  private static final class Layout {
+    final long bucketWidthMillis;
+    final int bucketCount;
+    final int tableSize;
+    final int maximumEntriesPerSegment;
+    final int segmentLongs;
+    final long totalLongs;
+
+    Layout(Duration bucketWidth, int bucketCount, int maximumNoncesPerBucket) {
+      if (null == bucketWidth || bucketWidth.toMillis() < 1)
+        throw new IllegalArgumentException("bucketWidth");
+      if (bucketCount < 1 || bucketCount > Integer.MAX_VALUE / STRIPES)
+        throw new IllegalArgumentException("bucketCount");
+      if (maximumNoncesPerBucket < 1 || maximumNoncesPerBucket > (1 << 28))
+        throw new IllegalArgumentException("maximumNoncesPerBucket");
+
+      this.bucketWidthMillis = bucketWidth.toMillis();
+      this.bucketCount = bucketCount;
+
+      // Hash tables are kept at most 3/4 full.
+      this.maximumEntriesPerSegment = (maximumNoncesPerBucket + STRIPES - 1) / STRIPES;
+      this.tableSize = Integer.highestOneBit(maximumEntriesPerSegment * 4 / 3 + 1) << 1;
+      this.segmentLongs = SEGMENT_HEADER_LONGS + 2 * tableSize;
+      this.totalLongs = HEADER_LONGS + (long) bucketCount * STRIPES * segmentLongs;
+
+      if (totalLongs > Integer.MAX_VALUE - 8)
+        throw new IllegalArgumentException("maximumNoncesPerBucket");
+    }
+
+    long[] header() {
+      return new long[] {
+        MAGIC,
+        VERSION,
+        bucketWidthMillis,
+        bucketCount,
+        STRIPES,
+        tableSize,
+        maximumEntriesPerSegment,
+        0
+      };
+    }
+  }
+}
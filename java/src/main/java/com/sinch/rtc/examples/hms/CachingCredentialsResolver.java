@@ -0,0 +1,363 @@
+// Copyright 2020 Sinch AB
+
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+
+// http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.sinch.rtc.examples.hms;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * A caching decorator for a {@link SinchApplicationCredentialsResolver}, e.g. one that is backed by
+ * a remote secrets store.
+ *
+ * <ul>
+ *   <li>Resolved secrets are cached for a time-to-live. Once an entry is past its refresh time (a
+ *       fraction of the time-to-live) it is refreshed in the background, while the cached secret
+ *       continues to be returned, so that lookups of frequently used keys never block.
+ *   <li>Unknown application keys are cached (negatively) too, for a shorter time-to-live, so that
+ *       repeated lookups of the same unknown key do not reach the backing resolver.
+ *   <li>Concurrent lookups of the same key that miss the cache result in a single lookup in the
+ *       backing resolver.
+ *   <li>Known and unknown keys are kept in separate caches, each bounded in size, with the least
+ *       recently used entries evicted first. That way a flood of unknown keys cannot evict known
+ *       keys.
+ *   <li>Secrets are cached both in base64-encoded and decoded form, together with all active
+ *       secrets of the application (see {@link #resolveSinchApplicationSecrets}).
+ * </ul>
+ *
+ * <p>Exceptions thrown by the backing resolver are propagated, and are not cached.
+ */
+public class CachingCredentialsResolver implements SinchApplicationCredentialsResolver {
+
+  public static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofMinutes(5);
+  public static final Duration DEFAULT_NEGATIVE_TIME_TO_LIVE = Duration.ofSeconds(30);
+  public static final int DEFAULT_MAXIMUM_SIZE = 10000;
+
+  // Entries are refreshed in the background once they are older than this fraction of their TTL.
+  private static final double REFRESH_AHEAD_FRACTION = 0.8;
+
+  private final SinchApplicationCredentialsResolver delegate;
+  private final long timeToLiveNanos;
+  private final long refreshAfterNanos;
+  private final long negativeTimeToLiveNanos;
+  private final int maximumSize;
+  private final Executor refreshExecutor;
+  private final LongSupplier nanoTime;
+
+  private final Map<String, Entry> known = new ConcurrentHashMap<String, Entry>();
+  private final Map<String, Entry> unknown = new ConcurrentHashMap<String, Entry>();
+  private final Map<String, CompletableFuture<Entry>> loading =
+      new ConcurrentHashMap<String, CompletableFuture<Entry>>();
+  private final ReentrantLock evictionLock = new ReentrantLock();
+  // Incremented by every invalidation, so that lookups that were in progress then are not cached.
+  private final AtomicLong invalidations = new AtomicLong();
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder loads = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  public CachingCredentialsResolver(SinchApplicationCredentialsResolver delegate) {
+    this(
+        delegate,
+        DEFAULT_TIME_TO_LIVE,
+        DEFAULT_NEGATIVE_TIME_TO_LIVE,
+        DEFAULT_MAXIMUM_SIZE,
+        ForkJoinPool.commonPool());
+  }
+
+  /**
+   * @param delegate The backing resolver.
+   * @param timeToLive How long a resolved secret is cached.
+   * @param negativeTimeToLive How long an unknown application key is cached.
+   * @param maximumSize Maximum number of known (and, separately, unknown) keys to cache.
+   * @param refreshExecutor Executor for background refreshes.
+   */
+  public CachingCredentialsResolver(
+      SinchApplicationCredentialsResolver delegate,
+      Duration timeToLive,
+      Duration negativeTimeToLive,
+      int maximumSize,
+      Executor refreshExecutor) {
+    this(delegate, timeToLive, negativeTimeToLive, maximumSize, refreshExecutor, System::nanoTime);
+  }
+
+  CachingCredentialsResolver(
+      SinchApplicationCredentialsResolver delegate,
+      Duration timeToLive,
+      Duration negativeTimeToLive,
+      int maximumSize,
+      Executor refreshExecutor,
+      LongSupplier nanoTime) {
+    if (null == delegate) throw new IllegalArgumentException("delegate");
+    if (null == timeToLive || timeToLive.isNegative() || timeToLive.isZero())
+      throw new IllegalArgumentException("timeToLive");
+    if (null == negativeTimeToLive || negativeTimeToLive.isNegative())
+      throw new IllegalArgumentException("negativeTimeToLive");
+    if (maximumSize < 1) throw new IllegalArgumentException("maximumSize");
+    if (null == refreshExecutor) throw new IllegalArgumentException("refreshExecutor");
+
+    this.delegate = delegate;
+    this.timeToLiveNanos = timeToLive.toNanos();
+    this.refreshAfterNanos = (long) (timeToLiveNanos * REFRESH_AHEAD_FRACTION);
+    this.negativeTimeToLiveNanos = negativeTimeToLive.toNanos();
+    this.maximumSize = maximumSize;
+    this.refreshExecutor = refreshExecutor;
+    this.nanoTime = nanoTime;
+  }
+
+  @Override
+  public String resolveSinchApplicationSecret(String applicationKey) {
+    return resolve(applicationKey).applicationSecret;
+  }
+
+  @Override
+  public byte[] resolveSinchApplicationSecretBytes(String applicationKey) {
+    return resolve(applicationKey).applicationSecretBytes;
+  }
+
+  @Override
+  public List<SinchApplicationSecret> resolveSinchApplicationSecrets(String applicationKey) {
+    return resolve(applicationKey).applicationSecrets;
+  }
+
+  /**
+   * Remove a key from the cache, e.g. when its secret is known to have been rotated. The results of
+   * lookups (and refreshes) that are in progress are not cached, and later lookups do not wait for
+   * them. (For simplicity, this applies to the lookups of all keys.)
+   */
+  public void invalidate(String applicationKey) {
+    invalidations.incrementAndGet();
+    loading.remove(applicationKey);
+    known.remove(applicationKey);
+    unknown.remove(applicationKey);
+  }
+
+  public void invalidateAll() {
+    invalidations.incrementAndGet();
+    loading.clear();
+    known.clear();
+    unknown.clear();
+  }
+
+  /** Number of lookups that were served from the cache (including unknown keys). */
+  public long hitCount() {
+    return hits.sum();
+  }
+
+  /** Number of lookups that were not served from the cache. */
+  public long missCount() {
+    return misses.sum();
+  }
+
+  /** Number of lookups in the backing resolver, including background refreshes. */
+  public long loadCount() {
+    return loads.sum();
+  }
+
+  public long evictionCount() {
+    return evictions.sum();
+  }
+
+  private Entry resolve(String applicationKey) {
+    if (null == applicationKey) return Entry.UNKNOWN;
+
+    final long now = nanoTime.getAsLong();
+
+    Entry entry = known.get(applicationKey);
+    if (entry != null && now - entry.loadedAt < timeToLiveNanos) {
+      hits.increment();
+      entry.touch(now);
+      if (now - entry.loadedAt >= refreshAfterNanos) refreshAhead(applicationKey, entry);
+      return entry;
+    }
+
+    entry = unknown.get(applicationKey);
+    if (entry != null && now - entry.loadedAt < negativeTimeToLiveNanos) {
+      hits.increment();
+      entry.touch(now);
+      return entry;
+    }
+
+    misses.increment();
+    return load(applicationKey);
+  }
+
+  // Load a key, making sure that there is at most one lookup in progress per key.
+  private Entry load(String applicationKey) {
+    CompletableFuture<Entry> future = new CompletableFuture<Entry>();
+    CompletableFuture<Entry> inProgress = loading.putIfAbsent(applicationKey, future);
+
+    if (inProgress != null) {
+      try {
+        return inProgress.join();
+      } catch (CompletionException e) {
+        if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+        throw e;
+      }
+    }
+
+    try {
+      Entry entry = fetch(applicationKey);
+      future.complete(entry);
+      return entry;
+    } catch (RuntimeException e) {
+      future.completeExceptionally(e);
+      throw e;
+    } finally {
+      loading.remove(applicationKey, future);
+    }
+  }
+
+  private void refreshAhead(final String applicationKey, Entry entry) {
+    if (!entry.refreshing.compareAndSet(false, true)) return;
+
+    try {
+      refreshExecutor.execute(
+          () -> {
+            try {
+              fetch(applicationKey);
+            } catch (RuntimeException e) {
+              // Keep the current entry until it expires; a later lookup will try again.
+              entry.refreshing.set(false);
+            }
+          });
+    } catch (RuntimeException e) {
+      // E.g. rejected by the executor.
+      entry.refreshing.set(false);
+    }
+  }
+
+  private Entry fetch(String applicationKey) {
+    loads.increment();
+    final long generation = invalidations.get();
+    final List<SinchApplicationSecret> applicationSecrets =
+        delegate.resolveSinchApplicationSecrets(applicationKey);
+    final long now = nanoTime.getAsLong();
+
+    if (applicationSecrets == null || applicationSecrets.isEmpty()) {
+      Entry entry = new Entry(null, now);
+      known.remove(applicationKey);
+      if (negativeTimeToLiveNanos > 0) put(unknown, applicationKey, entry, generation);
+      return entry;
+    }
+
+    Entry entry =
+        new Entry(
+            Collections.unmodifiableList(new ArrayList<SinchApplicationSecret>(applicationSecrets)),
+            now);
+    unknown.remove(applicationKey);
+    put(known, applicationKey, entry, generation);
+    return entry;
+  }
+
+  // Cache the result of a lookup that started at a generation, unless a key has been invalidated
+  // since. (Checked after the put: an invalidation after the check removes the entry itself.)
+  private void put(
+      Map<String, Entry> entries, String applicationKey, Entry entry, long generation) {
+    entries.put(applicationKey, entry);
+    if (invalidations.get() != generation) {
+      entries.remove(applicationKey, entry);
+      return;
+    }
+
+    if (entries.size() > maximumSize && evictionLock.tryLock()) {
+      try {
+        evict(entries);
+      } finally {
+        evictionLock.unlock();
+      }
+    }
+  }
+
+  // Evict the least recently used entries, down to 90% of the maximum size.
+  private void evict(Map<String, Entry> entries) {
+    // Access times keep changing while the entries are sorted, so they are sorted by a snapshot of
+    // their access times (as sorting by a changing key may fail).
+    List<EvictionCandidate> candidates = new ArrayList<EvictionCandidate>(entries.size());
+    for (Map.Entry<String, Entry> entry : entries.entrySet())
+      candidates.add(new EvictionCandidate(entry.getKey(), entry.getValue()));
+
+    int excess = candidates.size() - (maximumSize - maximumSize / 10);
+    if (excess <= 0) return;
+
+    candidates.sort((a, b) -> Long.compare(a.lastAccess, b.lastAccess));
+
+    for (EvictionCandidate candidate : candidates) {
+      if (excess <= 0) break;
+      if (entries.remove(candidate.applicationKey, candidate.entry)) {
+        evictions.increment();
+        excess--;
+      }
+    }
+  }
+
+  private static final class EvictionCandidate {
+    final String applicationKey;
+    final Entry entry;
+    final long lastAccess;
+
+    EvictionCandidate(String applicationKey, Entry entry) {
+      this.applicationKey = applicationKey;
+      this.entry = entry;
+      this.lastAccess = entry.lastAccess;
+    }
+  }
+
+  private static final class Entry {
+    static final Entry UNKNOWN = new Entry(null, 0);
+
+    final String applicationSecret;
+    final byte[] applicationSecretBytes;
+    final List<SinchApplicationSecret> applicationSecrets;
+    final long loadedAt;
+    volatile long lastAccess;
+    final AtomicBoolean refreshing = new AtomicBoolean();
+
+    // The current secret is the first of the active secrets.
+    Entry(List<SinchApplicationSecret> applicationSecrets, long loadedAt) {
+      if (applicationSecrets != null) {
+        this.applicationSecretBytes = applicationSecrets.get(0).getSecretBytes();
+        this.applicationSecret = Base64.getEncoder().encodeToString(applicationSecretBytes);
+        this.applicationSecrets = applicationSecrets;
+      } else {
+        this.applicationSecretBytes = null;
+        this.applicationSecret = null;
+        this.applicationSecrets = Collections.<SinchApplicationSecret>emptyList();
+      }
+      this.loadedAt = loadedAt;
+      this.lastAccess = loadedAt;
+    }
+
+    // Access times only need to be approximate for LRU eviction, and skipping most writes avoids
+    // contention on the entries of frequently used keys.
+    void touch(long now) {
+      if (now - lastAccess > 1000000L) lastAccess = now;
+    }
+  }
+}
@@ -14,33 +14,184 @@
 
 package com.sinch.rtc.examples.hms;
 
+import com.sinch.rtc.examples.hms.TokenValidationResult.FailureReason;
+import com.sinch.rtc.examples.jwt.AsciiSequence;
+import com.sinch.rtc.examples.jwt.CompactJws;
+import com.sinch.rtc.examples.jwt.JsonObjectReader;
 import com.sinch.rtc.examples.jwt.JwtSigningKey;
-import io.jsonwebtoken.Claims;
-import io.jsonwebtoken.Clock;
-import io.jsonwebtoken.Jws;
-import io.jsonwebtoken.JwsHeader;
-import io.jsonwebtoken.JwtException;
-import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.SigningKeyResolverAdapter;
-import io.jsonwebtoken.security.Keys;
+import com.sinch.rtc.examples.metrics.TokenMetrics;
+import com.sinch.rtc.examples.metrics.TokenMetrics.Phase;
+import java.nio.ByteBuffer;
 import java.security.Key;
+import java.time.Clock;
 import java.time.OffsetDateTime;
-import java.util.Base64;
-import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * This class can be used to validate a JWT that is passed as an OAuth 2.0 client_assertion by Sinch
  * to your server as part of the Sinch Managed Push OAuth 2.0 Flow for Huawei Push Messages
  * (HMS/HPK).
  *
+ * <p>Invalid tokens are rejected without throwing exceptions, and as early as possible: the size
+ * and structure of the token and its header (`alg`, `kid`) are checked before any credentials are
+ * resolved or any signature is computed. See {@link TokenValidationResult#getFailureReason()} for
+ * why a token has been rejected.
+ *
+ * <p>Optionally, a {@link NonceReplayStore} can be used to reject client assertions that have been
+ * used before, and an {@link AdmissionController} can be used to rate limit client assertions per
+ * Sinch Application Key, before any credentials lookup or cryptographic work is done for them. A
+ * {@link ValidationResultCache} can be used to answer retried client assertions in constant time.
+ *
  * <p>See unit test <i>HmsOAuthJwtClientAssertionTest</i> for example usage.
  */
 public class HmsOAuthFlowTokenValidator {
 
-  private final SinchApplicationCredentialsResolver credentialsResolver;
+  /** Client assertions longer than this are rejected without further processing. */
+  public static final int MAX_TOKEN_LENGTH = 8192;
+
+  private static final String HMS_SCOPE = "https://push-api.cloud.huawei.com";
+
+  private final SinchSigningKeyResolver signingKeyResolver;
+  private final AsyncSinchApplicationCredentialsResolver asyncCredentialsResolver;
+  private final Clock clock;
+  private final NonceReplayStore nonceReplayStore;
+  private final AdmissionController admissionController;
+  private final ValidationResultCache resultCache;
 
   public HmsOAuthFlowTokenValidator(SinchApplicationCredentialsResolver credentialsResolver) {
-    this.credentialsResolver = credentialsResolver;
+    this(credentialsResolver, Clock.systemUTC());
+  }
+
+  /**
+   * Construct a validator. The validator is immutable and thread-safe, and is meant to be
+   * constructed once and shared, e.g. by all request handling threads of your token endpoint.
+   *
+   * @param credentialsResolver Used to lookup Sinch Application Secrets.
+   * @param clock Time source used to validate JWT claims `exp` and `nbf`.
+   */
+  public HmsOAuthFlowTokenValidator(
+      SinchApplicationCredentialsResolver credentialsResolver, Clock clock) {
+    this(credentialsResolver, clock, null);
+  }
+
+  /**
+   * Construct a validator (see {@link #HmsOAuthFlowTokenValidator(
+   * SinchApplicationCredentialsResolver, Clock)}) that also rejects client assertions that have
+   * been used before.
+   *
+   * @param nonceReplayStore Used to record the JWT claim `nonce` of valid tokens. May be <code>null
+   *     </code>, in which case nonces are not checked.
+   */
+  public HmsOAuthFlowTokenValidator(
+      SinchApplicationCredentialsResolver credentialsResolver,
+      Clock clock,
+      NonceReplayStore nonceReplayStore) {
+    this(
+        new SinchSigningKeyResolver(nonNull(credentialsResolver, "credentialsResolver")),
+        null,
+        clock,
+        nonceReplayStore,
+        null,
+        null);
+  }
+
+  private HmsOAuthFlowTokenValidator(
+      SinchSigningKeyResolver signingKeyResolver,
+      AsyncSinchApplicationCredentialsResolver asyncCredentialsResolver,
+      Clock clock,
+      NonceReplayStore nonceReplayStore,
+      AdmissionController admissionController,
+      ValidationResultCache resultCache) {
+    if (null == clock) throw new IllegalArgumentException("clock");
+
+    this.signingKeyResolver = signingKeyResolver;
+    this.asyncCredentialsResolver = asyncCredentialsResolver;
+    this.clock = clock;
+    this.nonceReplayStore = nonceReplayStore;
+    this.admissionController = admissionController;
+    this.resultCache = resultCache;
+  }
+
+  /**
+   * Construct a validator that looks up Sinch Application Secrets asynchronously, for use with
+   * {@link #validateAsync(String)} on non-blocking servers. (Blocking resolvers can be adapted
+   * using {@link AsyncSinchApplicationCredentialsResolver#fromBlocking}.)
+   *
+   * <p>{@link #Validate(String)} can still be used with such a validator, but will block until the
+   * lookup completes.
+   *
+   * @param credentialsResolver Used to lookup Sinch Application Secrets.
+   * @param clock Time source used to validate JWT claims `exp` and `nbf`.
+   */
+  public static HmsOAuthFlowTokenValidator withAsyncResolver(
+      AsyncSinchApplicationCredentialsResolver credentialsResolver, Clock clock) {
+    return withAsyncResolver(credentialsResolver, clock, null);
+  }
+
+  /**
+   * Construct a validator that looks up Sinch Application Secrets asynchronously, and that rejects
+   * client assertions that have been used before.
+   *
+   * @see #withAsyncResolver(AsyncSinchApplicationCredentialsResolver, Clock)
+   * @see #HmsOAuthFlowTokenValidator(SinchApplicationCredentialsResolver, Clock, NonceReplayStore)
+   */
+  public static HmsOAuthFlowTokenValidator withAsyncResolver(
+      AsyncSinchApplicationCredentialsResolver credentialsResolver,
+      Clock clock,
+      NonceReplayStore nonceReplayStore) {
+    return new HmsOAuthFlowTokenValidator(
+        null,
+        nonNull(credentialsResolver, "credentialsResolver"),
+        clock,
+        nonceReplayStore,
+        null,
+        null);
+  }
+
+  /**
+   * Return a validator that is like this one, but that first checks with an {@link
+   * AdmissionController} whether a client assertion may be validated at all. Client assertions that
+   * are not admitted are rejected with {@link FailureReason#OVERLOADED}, after parsing their header
+   * only, i.e. without any credentials lookup or cryptographic work.
+   *
+   * @param admissionController May be <code>null</code>, in which case all client assertions are
+   *     admitted.
+   */
+  public HmsOAuthFlowTokenValidator withAdmissionController(
+      AdmissionController admissionController) {
+    return new HmsOAuthFlowTokenValidator(
+        signingKeyResolver,
+        asyncCredentialsResolver,
+        clock,
+        nonceReplayStore,
+        admissionController,
+        resultCache);
+  }
+
+  /**
+   * Return a validator that is like this one, but that caches the results of valid client
+   * assertions, so that exact duplicates (e.g. retried token requests) are answered in constant
+   * time, according to the {@link ValidationResultCache.DuplicatePolicy} of the cache. Client
+   * assertions are only looked up once their size, structure and header have been checked (so that
+   * garbage is still rejected before it is hashed), and duplicates are then answered before
+   * admission control, as they do not need any credentials lookup or cryptographic work.
+   *
+   * <p>The cache is used by {@link #Validate(String)} and {@link #validateAsync(String)}, not by
+   * batch validation.
+   *
+   * @param resultCache May be <code>null</code>, in which case results are not cached.
+   */
+  public HmsOAuthFlowTokenValidator withResultCache(ValidationResultCache resultCache) {
+    return new HmsOAuthFlowTokenValidator(
+        signingKeyResolver,
+        asyncCredentialsResolver,
+        clock,
+        nonceReplayStore,
+        admissionController,
+        resultCache);
   }
 
   /**
@@ -48,98 +199,487 @@ public class HmsOAuthFlowTokenValidator {
    * Authorization Server token endpoint, as part of the Sinch Managed Push OAuth 2.0 Flow for
    * Huawei Push Messages (HMS/HPK).
    */
+  public TokenValidationResult Validate(String clientAssertionJwt) {
+    return validate(clientAssertionJwt, clock.millis());
+  }
+
+  /**
+   * Validate a JWT (see {@link #Validate(String)}) at a given point in time.
+   *
+   * @param now Overrides the time source of this validator for this call. May be <code>null
+   *     </code>, in which case the time source of the validator is used.
+   */
   public TokenValidationResult Validate(String clientAssertionJwt, OffsetDateTime now) {
+    return validate(clientAssertionJwt, toEpochMillis(now));
+  }
 
-    // 1. Use JWT header `kid` and claim `sub` to lookup (your) Sinch Application
-    // Secret, which will be used to derive a signing key.
-    // 2. Validate the JWT as a whole in terms of signing, `iat`, `exp`, `nonce` etc. Here we do
-    // that using the io.jsonwebtoken library.
-    // 3. Validate the Sinch specific claims for HMS OAuth flow, i.e. `scope`.
+  /**
+   * Validate a JWT (see {@link #Validate(String)}) that is held in a {@link CharSequence}, e.g. a
+   * view of a request buffer (see {@link AsciiSequence}), without first making a String of it. The
+   * token must not be modified during the call.
+   */
+  public TokenValidationResult Validate(CharSequence clientAssertionJwt) {
+    return validate(clientAssertionJwt, clock.millis());
+  }
+
+  /**
+   * Validate a JWT (see {@link #Validate(CharSequence)}) at a given point in time.
+   *
+   * @param now Overrides the time source of this validator for this call. May be <code>null
+   *     </code>, in which case the time source of the validator is used.
+   */
+  public TokenValidationResult Validate(CharSequence clientAssertionJwt, OffsetDateTime now) {
+    return validate(clientAssertionJwt, toEpochMillis(now));
+  }
+
+  /**
+   * Validate a JWT (see {@link #Validate(String)}) that is held as ASCII bytes in a range of an
+   * array, e.g. a request buffer. The token is parsed and its signature verified in place, without
+   * copying or decoding it to a String. The bytes must not be modified during the call.
+   */
+  public TokenValidationResult validateBytes(byte[] clientAssertionJwt, int offset, int length) {
+    return validate(
+        clientAssertionJwt != null ? AsciiSequence.of(clientAssertionJwt, offset, length) : null,
+        clock.millis());
+  }
+
+  /**
+   * Validate a JWT (see {@link #Validate(String)}) that is held as ASCII bytes in a buffer, from
+   * its position to its limit. The position of the buffer is not changed. Tokens in array-backed
+   * buffers are validated in place (see {@link #validateBytes(byte[], int, int)}); tokens in direct
+   * buffers are copied once, to a reused per-thread buffer.
+   */
+  public TokenValidationResult validateBytes(ByteBuffer clientAssertionJwt) {
+    return validate(
+        clientAssertionJwt != null ? AsciiSequence.of(clientAssertionJwt) : null, clock.millis());
+  }
+
+  /**
+   * Validate a JWT (see {@link #Validate(String)}) without blocking the calling thread.
+   *
+   * <p>The token is checked up to (and including) its header on the calling thread, so that
+   * malformed tokens are rejected immediately. Credentials lookup, signing key derivation and
+   * signature validation then complete asynchronously, on the thread that completes the lookup.
+   *
+   * <p>If this validator was constructed with a blocking {@link
+   * SinchApplicationCredentialsResolver}, the lookup is made on the calling thread, and the
+   * returned future is already completed.
+   */
+  public CompletableFuture<TokenValidationResult> validateAsync(String clientAssertionJwt) {
+    return validateAsync(clientAssertionJwt, clock.millis());
+  }
+
+  /**
+   * Validate a JWT asynchronously (see {@link #validateAsync(String)}) at a given point in time.
+   *
+   * @param now Overrides the time source of this validator for this call. May be <code>null
+   *     </code>, in which case the time source of the validator is used.
+   */
+  public CompletableFuture<TokenValidationResult> validateAsync(
+      String clientAssertionJwt, OffsetDateTime now) {
+    return validateAsync(clientAssertionJwt, toEpochMillis(now));
+  }
+
+  /**
+   * Validate a batch of JWTs (see {@link #Validate(String)}), e.g. client assertions received in
+   * micro-batches from a queue.
+   *
+   * <p>Tokens are grouped by their Sinch Application Key and key id, so that credentials are
+   * resolved, and signing keys derived, once per group. Signatures and claims are then validated in
+   * parallel, in the common ForkJoinPool.
+   *
+   * <p>Invalid tokens do not affect the rest of the batch. If resolving the credentials of a group
+   * fails with an exception, the tokens of that group are rejected with {@link
+   * FailureReason#CREDENTIALS_UNAVAILABLE}.
+   *
+   * @return A result per token, in the same order.
+   */
+  public List<TokenValidationResult> validateAll(List<String> clientAssertionJwts) {
+    return validateAll(clientAssertionJwts, null, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Validate a batch of JWTs (see {@link #validateAll(List)}) at a given point in time, in a given
+   * ForkJoinPool.
+   *
+   * @param now Overrides the time source of this validator for this call. May be <code>null
+   *     </code>, in which case the time source of the validator is used.
+   */
+  public List<TokenValidationResult> validateAll(
+      List<String> clientAssertionJwts, OffsetDateTime now, ForkJoinPool pool) {
+    if (null == clientAssertionJwts) throw new IllegalArgumentException("clientAssertionJwts");
+    if (null == pool) throw new IllegalArgumentException("pool");
+
+    return new BatchValidation(this, clientAssertionJwts, toEpochMillis(now)).run(pool);
+  }
+
+  // Resolve the active Sinch Application Secrets, through the blocking or asynchronous resolver.
+  CompletableFuture<List<SinchApplicationSecret>> resolveApplicationSecrets(String applicationKey) {
+    if (asyncCredentialsResolver != null) {
+      return asyncCredentialsResolver
+          .resolveSinchApplicationSecretsAsync(applicationKey)
+          .toCompletableFuture();
+    }
 
-    Jws<Claims> jwt;
+    CompletableFuture<List<SinchApplicationSecret>> secrets =
+        new CompletableFuture<List<SinchApplicationSecret>>();
     try {
+      secrets.complete(signingKeyResolver.resolveApplicationSecrets(applicationKey));
+    } catch (RuntimeException e) {
+      secrets.completeExceptionally(e);
+    }
+    return secrets;
+  }
+
+  private long toEpochMillis(OffsetDateTime now) {
+    return now != null ? now.toInstant().toEpochMilli() : clock.millis();
+  }
 
-      jwt =
-          Jwts.parserBuilder()
-              .setSigningKeyResolver(new SinchSigningKeyResolver(this.credentialsResolver))
-              .setClock(new FixedClock(now))
-              .build()
-              .parseClaimsJws(clientAssertionJwt);
-    } catch (JwtException e) {
-      return TokenValidationResult.Invalid;
+  private TokenValidationResult validate(CharSequence clientAssertionJwt, long nowMillis) {
+
+    // 1. Check the structure of the JWT, and the JWT header `alg` and `kid`. This is cheap, and
+    // rejects garbage before any other work is done. Then check that the Sinch Application Key has
+    // not exceeded its rate (if an admission controller is configured).
+    // 2. Use JWT header `kid` and `sinch:rtc:application_key` to lookup (your) Sinch Application
+    // Secret, which will be used to derive a signing key. (While a secret is being rotated, the
+    // secrets that are active now and on the day of `kid` are candidates, see
+    // SinchApplicationSecret.)
+    // 3. Validate the JWT signature (in constant time), against the signing key of each candidate.
+    // 4. Validate the JWT claims in terms of `exp` and `nbf`, and the Sinch specific claims for
+    // HMS OAuth flow, i.e. `scope`.
+
+    if (signingKeyResolver == null) {
+      // Constructed with an asynchronous resolver.
+      try {
+        return validateAsync(clientAssertionJwt, nowMillis).join();
+      } catch (CompletionException e) {
+        if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+        throw e;
+      }
     }
 
-    // At this point, the JWT should be considered validated in terms
-    // of signature and expiry.
+    final TokenMetrics metrics = TokenMetrics.get();
+    final boolean timed = metrics.isEnabled();
+    long time = timed ? System.nanoTime() : 0;
 
-    // If you require it necessary, you should at this point verify
-    // that the nonce value from the claim `nonce` is not being
-    // reused, but that is outside the scope of this example
-    // implementation.
+    CompactJws jwt = CompactJws.get();
 
-    Claims claims = jwt.getBody();
+    FailureReason headerFailure = validateHeader(jwt, clientAssertionJwt);
+    if (timed) time = lap(metrics, Phase.PARSE, time);
+    if (headerFailure != null)
+      return record(metrics, null, TokenValidationResult.Invalid(headerFailure));
 
-    if (!"https://push-api.cloud.huawei.com".equals(claims.get("scope"))) {
-      return TokenValidationResult.Invalid;
+    // Only well-formed client assertions (of bounded length) are hashed and looked up.
+    ValidationResultCache.Digest digest = null;
+    if (resultCache != null) {
+      digest = ValidationResultCache.digest(clientAssertionJwt);
+      TokenValidationResult cached = resultCache.get(digest, nowMillis);
+      if (cached != null) return record(metrics, cached.getSinchApplicationKey(), cached);
     }
 
-    // At this point, when the JWT signature has been verified,
-    // extract Sinch Application Key and HMS Application ID from JWT
-    // claims.
-    return TokenValidationResult.Valid(getSinchApplicationKey(claims), getHmsApplicationId(claims));
+    // Your Sinch Application Key is passed as a JWT header parameter.
+    final String applicationKey = getSinchApplicationKey(jwt.header());
+    final OffsetDateTime issuedAt = getIssuedAt(jwt.header());
+
+    if (!admit(applicationKey))
+      return record(
+          metrics, applicationKey, TokenValidationResult.Invalid(FailureReason.OVERLOADED));
+
+    List<SinchApplicationSecret> applicationSecrets =
+        signingKeyResolver.resolveApplicationSecrets(applicationKey);
+    if (timed) time = lapResolution(metrics, applicationKey, time);
+    if (applicationSecrets == null || applicationSecrets.isEmpty())
+      return record(
+          metrics,
+          applicationKey,
+          TokenValidationResult.Invalid(FailureReason.UNKNOWN_APPLICATION_KEY));
+
+    Key signingKey =
+        SinchApplicationSecret.selectSigningKey(applicationSecrets, issuedAt, nowMillis, jwt);
+    if (timed) lap(metrics, Phase.VERIFY_SIGNATURE, time);
+    if (signingKey == null)
+      return record(
+          metrics, applicationKey, TokenValidationResult.Invalid(FailureReason.INVALID_SIGNATURE));
+
+    return record(
+        metrics,
+        applicationKey,
+        cache(digest, jwt, validateClaims(jwt, applicationKey, nowMillis, metrics), nowMillis));
   }
 
-  private static String getSinchApplicationKey(JwsHeader jwtHeader) {
-    return (String) jwtHeader.get("sinch:rtc:application_key");
+  // The token is parsed again when the lookup completes, so it must not be modified until then.
+  // (Only Strings are passed here, except from validate, which waits for the result.)
+  private CompletableFuture<TokenValidationResult> validateAsync(
+      final CharSequence clientAssertionJwt, final long nowMillis) {
+
+    if (asyncCredentialsResolver == null) {
+      // Constructed with a blocking resolver.
+      return CompletableFuture.completedFuture(validate(clientAssertionJwt, nowMillis));
+    }
+
+    final TokenMetrics metrics = TokenMetrics.get();
+    final boolean timed = metrics.isEnabled();
+    long time = timed ? System.nanoTime() : 0;
+
+    CompactJws jwt = CompactJws.get();
+
+    FailureReason headerFailure = validateHeader(jwt, clientAssertionJwt);
+    if (timed) time = lap(metrics, Phase.PARSE, time);
+    if (headerFailure != null) {
+      return CompletableFuture.completedFuture(
+          record(metrics, null, TokenValidationResult.Invalid(headerFailure)));
+    }
+
+    final ValidationResultCache.Digest digest =
+        resultCache != null ? ValidationResultCache.digest(clientAssertionJwt) : null;
+    if (digest != null) {
+      TokenValidationResult cached = resultCache.get(digest, nowMillis);
+      if (cached != null) {
+        return CompletableFuture.completedFuture(
+            record(metrics, cached.getSinchApplicationKey(), cached));
+      }
+    }
+
+    final String applicationKey = getSinchApplicationKey(jwt.header());
+    final OffsetDateTime issuedAt = getIssuedAt(jwt.header());
+    final long resolutionStart = time;
+
+    if (!admit(applicationKey)) {
+      return CompletableFuture.completedFuture(
+          record(metrics, applicationKey, TokenValidationResult.Invalid(FailureReason.OVERLOADED)));
+    }
+
+    return asyncCredentialsResolver
+        .resolveSinchApplicationSecretsAsync(applicationKey)
+        .toCompletableFuture()
+        .thenApply(
+            applicationSecrets -> {
+              long continuationTime =
+                  timed ? lapResolution(metrics, applicationKey, resolutionStart) : 0;
+
+              if (applicationSecrets == null || applicationSecrets.isEmpty()) {
+                return record(
+                    metrics,
+                    applicationKey,
+                    TokenValidationResult.Invalid(FailureReason.UNKNOWN_APPLICATION_KEY));
+              }
+
+              // The lookup may complete on another thread, or after other tokens have been parsed
+              // on this thread, so the (per-thread) parsed token can not be carried over.
+              CompactJws continuation = CompactJws.get();
+              if (!continuation.parse(clientAssertionJwt, MAX_TOKEN_LENGTH)) {
+                return record(
+                    metrics,
+                    applicationKey,
+                    TokenValidationResult.Invalid(FailureReason.MALFORMED));
+              }
+
+              Key signingKey =
+                  SinchApplicationSecret.selectSigningKey(
+                      applicationSecrets, issuedAt, nowMillis, continuation);
+              if (timed) lap(metrics, Phase.VERIFY_SIGNATURE, continuationTime);
+              if (signingKey == null) {
+                return record(
+                    metrics,
+                    applicationKey,
+                    TokenValidationResult.Invalid(FailureReason.INVALID_SIGNATURE));
+              }
+
+              return record(
+                  metrics,
+                  applicationKey,
+                  cache(
+                      digest,
+                      continuation,
+                      validateClaims(continuation, applicationKey, nowMillis, metrics),
+                      nowMillis));
+            });
   }
 
-  private static String getSinchApplicationKey(Claims claims) {
-    return (String) claims.get("sinch:rtc:application_key");
+  // Cache a valid result (if a result cache is configured), until JWT claim `exp` at the latest.
+  private TokenValidationResult cache(
+      ValidationResultCache.Digest digest,
+      CompactJws jwt,
+      TokenValidationResult result,
+      long nowMillis) {
+    if (digest != null && result.isValid()) {
+      JsonObjectReader claims = jwt.payload();
+      long expiresAtMillis =
+          claims.type("exp") == JsonObjectReader.Type.INTEGER
+              ? toEpochMillis(claims.getLong("exp", 0))
+              : Long.MAX_VALUE;
+      resultCache.put(digest, result, expiresAtMillis, nowMillis);
+    }
+    return result;
   }
 
-  private static String getHmsApplicationId(Claims claims) {
-    // Your HMS Application ID is the JWT claim `sub`.
-    return (String) claims.get("sub");
+  boolean admit(String applicationKey) {
+    return admissionController == null || admissionController.admit(applicationKey);
   }
 
-  static class SinchSigningKeyResolver extends SigningKeyResolverAdapter {
+  // Record the time of a phase that started at a given time, and return the current time.
+  static long lap(TokenMetrics metrics, Phase phase, long start) {
+    long now = System.nanoTime();
+    metrics.recordPhase(phase, now - start);
+    return now;
+  }
 
-    private final SinchApplicationCredentialsResolver credentialsResolver;
+  static long lapResolution(TokenMetrics metrics, String applicationKey, long start) {
+    long now = System.nanoTime();
+    metrics.recordCredentialsResolution(applicationKey, now - start);
+    return now;
+  }
 
-    public SinchSigningKeyResolver(SinchApplicationCredentialsResolver credentialsResolver) {
-      this.credentialsResolver = credentialsResolver;
-    }
+  static TokenValidationResult record(
+      TokenMetrics metrics, String applicationKey, TokenValidationResult result) {
+    if (metrics.isEnabled()) metrics.recordValidation(applicationKey, result.getFailureReason());
+    return result;
+  }
+
+  /**
+   * Check the structure of the JWT, and the JWT header parameters.
+   *
+   * @return <code>null</code> if valid, in which case the header has a valid `kid` and Sinch
+   *     Application Key.
+   */
+  static FailureReason validateHeader(CompactJws jwt, CharSequence clientAssertionJwt) {
+    if (null == clientAssertionJwt) return FailureReason.MALFORMED;
+
+    if (!jwt.parse(clientAssertionJwt, MAX_TOKEN_LENGTH)) return FailureReason.MALFORMED;
+
+    JsonObjectReader header = jwt.header();
+
+    if (!header.stringEquals("alg", "HS256")) return FailureReason.UNSUPPORTED_ALGORITHM;
 
-    @Override
-    public Key resolveSigningKey(JwsHeader jwtHeader, Claims claims) {
+    if (getIssuedAt(header) == null) return FailureReason.INVALID_KEY_ID;
 
-      final OffsetDateTime issuedAt = JwtSigningKey.parseIssuedAtFromKeyId(jwtHeader.getKeyId());
+    if (getSinchApplicationKey(header) == null) return FailureReason.UNKNOWN_APPLICATION_KEY;
 
-      // Your Sinch Application Key is passed as a JWT header parameter.
-      String applicationKey = getSinchApplicationKey(jwtHeader);
+    return null;
+  }
+
+  // The signature must already have been verified (see SinchApplicationSecret.selectSigningKey).
+  TokenValidationResult validateClaims(
+      CompactJws jwt, String applicationKey, long nowMillis, TokenMetrics metrics) {
+    if (!metrics.isEnabled()) return validateClaims(jwt, applicationKey, nowMillis);
+
+    long start = System.nanoTime();
+    TokenValidationResult result = validateClaims(jwt, applicationKey, nowMillis);
+    lap(metrics, Phase.CHECK_CLAIMS, start);
+    return result;
+  }
 
-      String applicationSecretBase64 =
-          credentialsResolver.resolveSinchApplicationSecret(applicationKey);
+  private TokenValidationResult validateClaims(
+      CompactJws jwt, String applicationKey, long nowMillis) {
+    if (!jwt.readPayload()) return TokenValidationResult.Invalid(FailureReason.MALFORMED);
 
-      if (applicationSecretBase64 == null) return null;
+    // At this point, the JWT signature has been verified.
 
-      byte[] applicationSecret = Base64.getDecoder().decode(applicationSecretBase64);
+    JsonObjectReader claims = jwt.payload();
 
-      return Keys.hmacShaKeyFor(JwtSigningKey.deriveSigningKey(applicationSecret, issuedAt));
+    FailureReason timeFailure = validateTimeClaims(claims, nowMillis);
+    if (timeFailure != null) return TokenValidationResult.Invalid(timeFailure);
+
+    // At this point, the JWT should be considered validated in terms
+    // of signature and expiry.
+
+    if (!claims.stringEquals("scope", HMS_SCOPE))
+      return TokenValidationResult.Invalid(FailureReason.INVALID_CLAIMS);
+
+    // Finally, verify that the nonce value from the claim `nonce` is not being reused (if a replay
+    // store is configured). This is done last, so that only valid tokens are recorded.
+    if (nonceReplayStore != null) {
+      FailureReason replayFailure = checkNonce(claims, applicationKey, nowMillis);
+      if (replayFailure != null) return TokenValidationResult.Invalid(replayFailure);
+    }
+
+    // At this point, when the JWT signature has been verified,
+    // extract Sinch Application Key and HMS Application ID from JWT
+    // claims.
+    return TokenValidationResult.Valid(getSinchApplicationKey(claims), getHmsApplicationId(claims));
+  }
+
+  private FailureReason checkNonce(JsonObjectReader claims, String applicationKey, long nowMillis) {
+    // Nonces are only remembered until their token expires, so both claims are required.
+    final String nonce = claims.getString("nonce");
+    if (nonce == null || claims.type("exp") != JsonObjectReader.Type.INTEGER)
+      return FailureReason.INVALID_CLAIMS;
+
+    switch (nonceReplayStore.record(
+        applicationKey, nonce, toEpochMillis(claims.getLong("exp", 0)), nowMillis)) {
+      case RECORDED:
+        return null;
+      case REPLAYED:
+        return FailureReason.REPLAYED;
+      default:
+        return FailureReason.NONCE_NOT_RECORDED;
+    }
+  }
+
+  /**
+   * Validate JWT claims `exp` and `nbf`, in the same way as the io.jsonwebtoken library does (i.e.
+   * both are optional, and no clock skew is allowed).
+   *
+   * @return <code>null</code> if valid.
+   */
+  static FailureReason validateTimeClaims(JsonObjectReader claims, long nowMillis) {
+    switch (claims.type("exp")) {
+      case ABSENT:
+        break;
+      case INTEGER:
+        if (nowMillis > toEpochMillis(claims.getLong("exp", 0))) return FailureReason.EXPIRED;
+        break;
+      default:
+        return FailureReason.MALFORMED;
     }
+
+    switch (claims.type("nbf")) {
+      case ABSENT:
+        break;
+      case INTEGER:
+        if (nowMillis < toEpochMillis(claims.getLong("nbf", 0))) return FailureReason.NOT_YET_VALID;
+        break;
+      default:
+        return FailureReason.MALFORMED;
+    }
+
+    return null;
+  }
+
+  private static long toEpochMillis(long epochSeconds) {
+    if (epochSeconds > Long.MAX_VALUE / 1000) return Long.MAX_VALUE;
+    if (epochSeconds < Long.MIN_VALUE / 1000) return Long.MIN_VALUE;
+    return epochSeconds * 1000;
+  }
+
+  static OffsetDateTime getIssuedAt(JsonObjectReader header) {
+    return JwtSigningKey.tryParseIssuedAtFromKeyId(header.getString("kid"));
+  }
+
+  private static <T> T nonNull(T value, String name) {
+    if (null == value) throw new IllegalArgumentException(name);
+    return value;
   }
 
-  /** Adapter for io.jsonwebtoken.Clock so we can use pass a fixed timestamp in unit tests. */
-  static class FixedClock implements Clock {
-    private Date now;
+  static String getSinchApplicationKey(JsonObjectReader headerOrClaims) {
+    return headerOrClaims.getString("sinch:rtc:application_key");
+  }
+
+  private static String getHmsApplicationId(JsonObjectReader claims) {
+    // Your HMS Application ID is the JWT claim `sub`.
+    return claims.getString("sub");
+  }
+
+  static class SinchSigningKeyResolver {
 
-    public FixedClock(OffsetDateTime now) {
-      this.now = new Date(now.toInstant().toEpochMilli());
+    private final SinchApplicationCredentialsResolver credentialsResolver;
+
+    public SinchSigningKeyResolver(SinchApplicationCredentialsResolver credentialsResolver) {
+      this.credentialsResolver = credentialsResolver;
     }
 
-    @Override
-    public Date now() {
-      return now;
+    List<SinchApplicationSecret> resolveApplicationSecrets(String applicationKey) {
+      return credentialsResolver.resolveSinchApplicationSecrets(applicationKey);
     }
   }
 }
@@ -0,0 +1,49 @@
+// Copyright 2020 Sinch AB
+
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+
+// http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.sinch.rtc.examples.hms;
+
+/**
+ * Keeps track of the JWT claim `nonce` of client assertions that have been accepted, so that a
+ * client assertion can not be used more than once. See {@link BucketedNonceReplayStore} for a
+ * built-in implementation.
+ *
+ * <p>Implementations must be thread-safe.
+ */
+public interface NonceReplayStore {
+
+  enum Result {
+    /** The nonce had not been used before, and has now been recorded. */
+    RECORDED,
+    /** The nonce has been used before. */
+    REPLAYED,
+    /**
+     * The nonce could not be recorded, e.g. because the store is full, or because the token expires
+     * too far in the future. The token should be rejected.
+     */
+    NOT_RECORDED
+  }
+
+  /**
+   * Record a nonce, unless it has been recorded before. The nonce must be remembered at least until
+   * the token it belongs to has expired.
+   *
+   * @param applicationKey The Sinch Application Key that the token was issued for. (Nonces are
+   *     scoped per application.)
+   * @param nonce JWT claim `nonce`.
+   * @param expiresAtMillis JWT claim `exp`, in milliseconds since the epoch.
+   * @param nowMillis Current time, in milliseconds since the epoch.
+   */
+  Result record(String applicationKey, String nonce, long expiresAtMillis, long nowMillis);
+}
@@ -0,0 +1,409 @@
+// Copyright 2020 Sinch AB
+
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+
+// http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.sinch.rtc.examples.hms;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Base64;
+import java.util.Map;
+
+/**
+ * A {@link SinchApplicationCredentialsResolver} that holds the credentials of a large number
+ * (millions) of <i>Sinch Applications</i> in memory, outside of the Java heap, so that they add
+ * neither to the heap size nor to garbage collection pauses.
+ *
+ * <ul>
+ *   <li>Application keys (UUIDs) are stored as two longs, in an open-addressing hash table in a
+ *       direct buffer, and the decoded application secrets in a second direct buffer.
+ *   <li>Lookups are lock-free. The credentials are replaced as a whole ({@link #reload(Map)},
+ *       {@link #reload(Path)}): a new table is built next to the current one, and then swapped in,
+ *       so that lookups never see a partially loaded table.
+ *   <li>Credentials files are read in a streaming fashion, without creating a string per line,
+ *       application key or secret, so that loading millions of credentials creates little garbage.
+ * </ul>
+ *
+ * <p>Application keys that are not UUIDs are never found.
+ */
+public class OffHeapCredentialsStore implements SinchApplicationCredentialsResolver {
+
+  // Per slot: the application key (two longs), and the offset (high 32 bits) and length (low 32
+  // bits) of the secret. A length of zero means the slot is empty.
+  private static final int SLOT_BYTES = 24;
+  private static final int MAXIMUM_CAPACITY = 1 << 26;
+
+  // Size of the read buffer when loading a file, and so the maximum length of a line.
+  static final int READ_BUFFER_SIZE = 1 << 16;
+
+  private volatile Table table = new TableBuilder().build();
+
+  public OffHeapCredentialsStore() {}
+
+  /**
+   * @param credentials Sinch Application Secrets (base64-encoded) by Sinch Application Key.
+   */
+  public OffHeapCredentialsStore(Map<String, String> credentials) {
+    reload(credentials);
+  }
+
+  /**
+   * Load credentials from a file.
+   *
+   * @see #reload(Path)
+   */
+  public static OffHeapCredentialsStore load(Path file) throws IOException {
+    OffHeapCredentialsStore store = new OffHeapCredentialsStore();
+    store.reload(file);
+    return store;
+  }
+
+  /**
+   * Replace all credentials.
+   *
+   * @param credentials Sinch Application Secrets (base64-encoded) by Sinch Application Key.
+   */
+  public void reload(Map<String, String> credentials) {
+    if (null == credentials) throw new IllegalArgumentException("credentials");
+
+    TableBuilder builder = new TableBuilder();
+
+    for (Map.Entry<String, String> entry : credentials.entrySet()) {
+      String applicationKey = entry.getKey();
+      if (null == applicationKey || !isUuid(applicationKey))
+        throw new IllegalArgumentException("applicationKey: " + applicationKey);
+      if (null == entry.getValue()) throw new IllegalArgumentException("applicationSecret");
+
+      byte[] secret = Base64.getDecoder().decode(entry.getValue());
+      if (secret.length == 0) throw new IllegalArgumentException("applicationSecret");
+
+      builder.add(
+          parseUuidHalf(applicationKey, 0),
+          parseUuidHalf(applicationKey, 19),
+          secret,
+          secret.length);
+    }
+
+    table = builder.build();
+  }
+
+  /**
+   * Replace all credentials with the ones in a file. The file has one application per line: the
+   * Sinch Application Key, followed by a comma, tab or space, and the Sinch Application Secret
+   * (base64-encoded). Empty lines, and lines starting with <code>#</code>, are ignored. If an
+   * application key occurs more than once, the last occurrence wins.
+   *
+   * <p>If the file can not be read, or is malformed, the current credentials are kept.
+   */
+  public void reload(Path file) throws IOException {
+    if (null == file) throw new IllegalArgumentException("file");
+
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      table = new FileLoader(file).load(channel);
+    }
+  }
+
+  /** Number of applications. */
+  public int size() {
+    return table.size;
+  }
+
+  /** Memory used, outside of the Java heap, in bytes. */
+  public long offHeapBytes() {
+    Table current = table;
+    return (long) current.slots.capacity() + current.secrets.capacity();
+  }
+
+  @Override
+  public String resolveSinchApplicationSecret(String applicationKey) {
+    byte[] secret = resolveSinchApplicationSecretBytes(applicationKey);
+    return secret != null ? Base64.getEncoder().encodeToString(secret) : null;
+  }
+
+  @Override
+  public byte[] resolveSinchApplicationSecretBytes(String applicationKey) {
+    if (null == applicationKey || !isUuid(applicationKey)) return null;
+
+    return table.get(parseUuidHalf(applicationKey, 0), parseUuidHalf(applicationKey, 19));
+  }
+
+  private static final class Table {
+    final ByteBuffer slots;
+    final ByteBuffer secrets;
+    final int mask;
+    final int size;
+
+    Table(ByteBuffer slots, ByteBuffer secrets, int size) {
+      this.slots = slots;
+      this.secrets = secrets;
+      this.mask = slots.capacity() / SLOT_BYTES - 1;
+      this.size = size;
+    }
+
+    byte[] get(long high, long low) {
+      for (int i = hash(high, low) & mask; ; i = (i + 1) & mask) {
+        int slot = i * SLOT_BYTES;
+        long secret = slots.getLong(slot + 16);
+        if (secret == 0) return null;
+
+        if (slots.getLong(slot) == high && slots.getLong(slot + 8) == low) {
+          int offset = (int) (secret >>> 32);
+          byte[] bytes = new byte[(int) secret];
+          for (int j = 0; j < bytes.length; j++) bytes[j] = secrets.get(offset + j);
+          return bytes;
+        }
+      }
+    }
+
+    // Insert or replace. The table must have a free slot.
+    void put(long high, long low, long secret) {
+      for (int i = hash(high, low) & mask; ; i = (i + 1) & mask) {
+        int slot = i * SLOT_BYTES;
+        if (slots.getLong(slot + 16) == 0) {
+          slots.putLong(slot, high);
+          slots.putLong(slot + 8, low);
+          slots.putLong(slot + 16, secret);
+          return;
+        }
+
+        if (slots.getLong(slot) == high && slots.getLong(slot + 8) == low) {
+          slots.putLong(slot + 16, secret);
+          return;
+        }
+      }
+    }
+  }
+
+  // Collects credentials, in direct buffers that grow as needed, and builds a table of them.
+  private static final class TableBuilder {
+    private ByteBuffer entries = ByteBuffer.allocateDirect(SLOT_BYTES * 64);
+    private ByteBuffer secrets = ByteBuffer.allocateDirect(16 * 64);
+    private int count;
+
+    void add(long high, long low, byte[] secret, int length) {
+      if (count == MAXIMUM_CAPACITY / 2) throw new IllegalStateException("Too many applications");
+      if (secrets.remaining() < length) secrets = grow(secrets, length);
+      if (entries.remaining() < SLOT_BYTES) entries = grow(entries, SLOT_BYTES);
+
+      entries.putLong(high).putLong(low).putLong(((long) secrets.position() << 32) | length);
+      secrets.put(secret, 0, length);
+      count++;
+    }
+
+    Table build() {
+      // The hash table is kept at most 3/4 full (and at least 3/8).
+      int capacity = Integer.highestOneBit(count + count / 3 + 1) << 1;
+
+      ByteBuffer slots = ByteBuffer.allocateDirect(capacity * SLOT_BYTES);
+      ByteBuffer packedSecrets = ByteBuffer.allocateDirect(Math.max(1, secrets.position()));
+      secrets.flip();
+      packedSecrets.put(secrets);
+
+      Table table = new Table(slots, packedSecrets, 0);
+      for (int entry = 0; entry < count * SLOT_BYTES; entry += SLOT_BYTES)
+        table.put(entries.getLong(entry), entries.getLong(entry + 8), entries.getLong(entry + 16));
+
+      // Duplicate keys are counted once.
+      int size = 0;
+      for (int slot = 0; slot < slots.capacity(); slot += SLOT_BYTES)
+        if (slots.getLong(slot + 16) != 0) size++;
+
+      return new Table(slots, packedSecrets, size);
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer, int needed) {
+      long capacity = Math.max((long) buffer.capacity() * 2, (long) buffer.position() + needed);
+      if (capacity > Integer.MAX_VALUE) throw new IllegalStateException("Too many applications");
+
+      ByteBuffer grown = ByteBuffer.allocateDirect((int) capacity);
+      buffer.flip();
+      grown.put(buffer);
+      return grown;
+    }
+  }
+
+  // Parses a credentials file, line by line, straight from a read buffer.
+  private static final class FileLoader {
+    private final Path file;
+    private final TableBuilder builder = new TableBuilder();
+    private byte[] secret = new byte[64];
+    private long lineNumber;
+
+    FileLoader(Path file) {
+      this.file = file;
+    }
+
+    Table load(FileChannel channel) throws IOException {
+      ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+
+      boolean eof = false;
+      while (!eof) {
+        eof = channel.read(buffer) < 0;
+        buffer.flip();
+
+        int start = buffer.position();
+        for (int i = start; i < buffer.limit(); i++) {
+          if (buffer.get(i) == '\n') {
+            parseLine(buffer, start, i);
+            start = i + 1;
+          }
+        }
+
+        if (eof && start < buffer.limit()) {
+          parseLine(buffer, start, buffer.limit());
+          start = buffer.limit();
+        }
+
+        buffer.position(start);
+        if (!eof && start == 0 && buffer.limit() == buffer.capacity())
+          throw malformed("line too long");
+        buffer.compact();
+      }
+
+      return builder.build();
+    }
+
+    private void parseLine(ByteBuffer buffer, int start, int end) throws IOException {
+      lineNumber++;
+
+      while (start < end && isWhitespace(buffer.get(start))) start++;
+      while (end > start && isWhitespace(buffer.get(end - 1))) end--;
+      if (start == end || buffer.get(start) == '#') return;
+
+      if (end - start < 36 || !isUuid(buffer, start)) throw malformed("application key");
+      long high = parseUuidHalf(buffer, start);
+      long low = parseUuidHalf(buffer, start + 19);
+
+      int secretStart = start + 36;
+      while (secretStart < end && isSeparator(buffer.get(secretStart))) secretStart++;
+      if (secretStart == start + 36) throw malformed("separator");
+
+      int length = decodeBase64(buffer, secretStart, end);
+      if (length <= 0) throw malformed("application secret");
+
+      builder.add(high, low, secret, length);
+    }
+
+    // Decodes (padded or unpadded) base64 into `secret`, returning its length, or -1 if malformed.
+    private int decodeBase64(ByteBuffer buffer, int start, int end) {
+      while (end > start && buffer.get(end - 1) == '=') end--;
+      if ((end - start) % 4 == 1) return -1;
+
+      int length = (end - start) * 3 / 4;
+      if (secret.length < length) secret = new byte[length];
+
+      int bits = 0;
+      int bitCount = 0;
+      int out = 0;
+      for (int i = start; i < end; i++) {
+        int value = base64Value(buffer.get(i));
+        if (value < 0) return -1;
+
+        bits = (bits << 6) | value;
+        bitCount += 6;
+        if (bitCount >= 8) {
+          bitCount -= 8;
+          secret[out++] = (byte) (bits >>> bitCount);
+        }
+      }
+      return out;
+    }
+
+    private IOException malformed(String what) {
+      return new IOException(file + ":" + lineNumber + ": malformed " + what);
+    }
+  }
+
+  private static int hash(long high, long low) {
+    // Finalizer of MurmurHash3.
+    long h = high ^ Long.rotateLeft(low, 32);
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return (int) h;
+  }
+
+  // A UUID in its canonical form: 8-4-4-4-12 hexadecimal digits.
+  private static boolean isUuid(String s) {
+    if (s.length() != 36) return false;
+    for (int i = 0; i < 36; i++) {
+      char c = s.charAt(i);
+      if (isDashPosition(i) ? c != '-' : hexValue(c) < 0) return false;
+    }
+    return true;
+  }
+
+  private static boolean isUuid(ByteBuffer buffer, int start) {
+    for (int i = 0; i < 36; i++) {
+      int c = buffer.get(start + i);
+      if (isDashPosition(i) ? c != '-' : hexValue(c) < 0) return false;
+    }
+    return true;
+  }
+
+  // The 16 hexadecimal digits of a (valid) UUID from `start`, i.e. 0 or 19, skipping dashes.
+  private static long parseUuidHalf(String s, int start) {
+    long value = 0;
+    for (int i = start, digits = 0; digits < 16; i++) {
+      char c = s.charAt(i);
+      if (c == '-') continue;
+      value = (value << 4) | hexValue(c);
+      digits++;
+    }
+    return value;
+  }
+
+  private static long parseUuidHalf(ByteBuffer buffer, int start) {
+    long value = 0;
+    for (int i = start, digits = 0; digits < 16; i++) {
+      int c = buffer.get(i);
+      if (c == '-') continue;
+      value = (value << 4) | hexValue(c);
+      digits++;
+    }
+    return value;
+  }
+
+  private static boolean isDashPosition(int i) {
+    return i == 8 || i == 13 || i == 18 || i == 23;
+  }
+
+  private static int hexValue(int c) {
+    if (c >= '0' && c <= '9') return c - '0';
+    if (c >= 'a' && c <= 'f') return c - 'a' + 10;
+    if (c >= 'A' && c <= 'F') return c - 'A' + 10;
+    return -1;
+  }
+
+  private static int base64Value(int c) {
+    if (c >= 'A' && c <= 'Z') return c - 'A';
+    if (c >= 'a' && c <= 'z') return c - 'a' + 26;
+    if (c >= '0' && c <= '9') return c - '0' + 52;
+    if (c == '+') return 62;
+    if (c == '/') return 63;
+    return -1;
+  }
+
+  private static boolean isWhitespace(byte c) {
+    return c == ' ' || c == '\t' || c == '\r';
+  }
+
+  private static boolean isSeparator(byte c) {
+    return c == ',' || c == ' ' || c == '\t';
+  }
+}
@@ -0,0 +1,115 @@
+// Copyright 2020 Sinch AB
+
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+
+// http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.sinch.rtc.examples.hms;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors for running blocking credentials lookups, see {@link
+ * AsyncSinchApplicationCredentialsResolver#fromBlocking}, or other blocking work such as the
+ * requests of the servers in this project.
+ */
+public final class ResolverExecutors {
+
+  private ResolverExecutors() {}
+
+  /**
+   * @return <code>true</code> if the running JDK supports virtual threads, i.e. if {@link
+   *     #newBlockingLookupExecutor} returns a virtual-thread executor. (With JDK 19 and 20, virtual
+   *     threads are a preview feature, and not supported unless previews are enabled.)
+   */
+  public static boolean isVirtualThreadsSupported() {
+    return VirtualThreads.SUPPORTED;
+  }
+
+  /**
+   * An executor that runs each lookup in its own virtual thread, if the running JDK supports
+   * virtual threads, and otherwise a bounded pool of (daemon) platform threads.
+   *
+   * @param maximumPlatformThreads Size of the thread pool used when virtual threads are not
+   *     supported.
+   */
+  public static ExecutorService newBlockingLookupExecutor(int maximumPlatformThreads) {
+    return newBlockingLookupExecutor(maximumPlatformThreads, "sinch-credentials-");
+  }
+
+  /**
+   * @param threadNamePrefix Prefix of the names of the platform threads (which are numbered).
+   * @see #newBlockingLookupExecutor(int)
+   */
+  public static ExecutorService newBlockingLookupExecutor(
+      int maximumPlatformThreads, String threadNamePrefix) {
+    ExecutorService executor = VirtualThreads.newExecutor();
+    return executor != null
+        ? executor
+        : newPlatformThreadExecutor(maximumPlatformThreads, threadNamePrefix);
+  }
+
+  /** A bounded pool of daemon platform threads. */
+  public static ExecutorService newPlatformThreadExecutor(int threads) {
+    return newPlatformThreadExecutor(threads, "sinch-credentials-");
+  }
+
+  /**
+   * @param threadNamePrefix Prefix of the names of the threads (which are numbered).
+   * @see #newPlatformThreadExecutor(int)
+   */
+  public static ExecutorService newPlatformThreadExecutor(int threads, String threadNamePrefix) {
+    if (threads < 1) throw new IllegalArgumentException("threads");
+    if (null == threadNamePrefix) throw new IllegalArgumentException("threadNamePrefix");
+
+    final AtomicInteger count = new AtomicInteger();
+    ThreadFactory threadFactory =
+        runnable -> {
+          Thread thread = new Thread(runnable, threadNamePrefix + count.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        };
+
+    return Executors.newFixedThreadPool(threads, threadFactory);
+  }
+
+  // Probed once, the way the executors are created.
+  private static final class VirtualThreads {
+    static final boolean SUPPORTED = probe();
+
+    static ExecutorService newExecutor() {
+      if (!SUPPORTED) return null;
+      // Looked up reflectively, since this code is built for Java 8.
+      try {
+        return (ExecutorService)
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+      } catch (ReflectiveOperationException e) {
+        return null;
+      }
+    }
+
+    private static boolean probe() {
+      try {
+        ExecutorService executor =
+            (ExecutorService)
+                Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        executor.shutdown();
+        return true;
+      } catch (ReflectiveOperationException | RuntimeException e) {
+        // Not there (before JDK 19), or a preview feature that is not enabled (JDK 19 and 20).
+        return false;
+      }
+    }
+  }
+}
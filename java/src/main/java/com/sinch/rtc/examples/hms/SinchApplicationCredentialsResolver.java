@@ -14,6 +14,9 @@
 
 package com.sinch.rtc.examples.hms;
 
+import java.util.Base64;
+import java.util.List;
+
 public interface SinchApplicationCredentialsResolver {
 
   /**
@@ -21,4 +24,33 @@ public interface SinchApplicationCredentialsResolver {
    * (base64-encoded format)
    */
   String resolveSinchApplicationSecret(String applicationKey);
+
+  /**
+   * Given a Sinch Application Key, resolve and return the corresponding Sinch Application Secret
+   * (decoded, i.e. raw bytes), or <code>null</code> if the application key is not known.
+   *
+   * <p>Implementations may return a shared array (e.g. from a cache), so the caller must not modify
+   * it.
+   */
+  default byte[] resolveSinchApplicationSecretBytes(String applicationKey) {
+    String applicationSecret = resolveSinchApplicationSecret(applicationKey);
+    return applicationSecret != null ? Base64.getDecoder().decode(applicationSecret) : null;
+  }
+
+  /**
+   * Given a Sinch Application Key, resolve and return all of its active Sinch Application Secrets,
+   * e.g. both the old and the new secret while a secret is being rotated, or an empty list if the
+   * application key is not known.
+   *
+   * <p>The secrets are listed in the order they should be tried for tokens signed on a day during
+   * which the active periods of several secrets overlap, i.e. usually the newest secret first. The
+   * first secret should be the one returned by {@link #resolveSinchApplicationSecret}.
+   *
+   * <p>The default implementation returns the secret resolved by {@link
+   * #resolveSinchApplicationSecretBytes}, active at all times. Implementations may return a shared
+   * list (e.g. from a cache), so the caller must not modify it.
+   */
+  default List<SinchApplicationSecret> resolveSinchApplicationSecrets(String applicationKey) {
+    return SinchApplicationSecret.single(resolveSinchApplicationSecretBytes(applicationKey));
+  }
 }
@@ -0,0 +1,230 @@
+// Copyright 2020 Sinch AB
+
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+
+// http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.sinch.rtc.examples.hms;
+
+import com.sinch.rtc.examples.jwt.CompactJws;
+import com.sinch.rtc.examples.jwt.SigningKeyCache;
+import java.security.Key;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A Sinch Application Secret, and the period during which it is active, i.e. during which tokens
+ * signed with (a key derived from) it are accepted. See {@link
+ * SinchApplicationCredentialsResolver#resolveSinchApplicationSecrets}.
+ *
+ * <p>While a secret is being rotated, an application has several active secrets. A secret is a
+ * candidate for a token if it is active at the time the token is validated (so a secret that is
+ * revoked, by ending its active period, is no longer accepted from then on), and also at some point
+ * during the (UTC) day of the `kid` of the token, for which its signing key is derived (see {@link
+ * com.sinch.rtc.examples.jwt.JwtSigningKey JwtSigningKey}). A token is only checked against more
+ * than one signing key if the periods of several secrets overlap then.
+ */
+public final class SinchApplicationSecret {
+
+  /**
+   * At most this many secrets are candidates for a token, i.e. a token is checked against at most
+   * this many signing keys.
+   */
+  public static final int MAX_CANDIDATES = 3;
+
+  private static final long SECONDS_PER_DAY = 86400;
+
+  private final byte[] secret;
+  private final Instant notBefore;
+  private final Instant notAfter;
+
+  // The active period, in epoch seconds.
+  private final long notBeforeSecond;
+  private final long notAfterSecond;
+
+  /**
+   * @param applicationSecret Sinch Application Secret (base64-encoded format).
+   * @param notBefore Start of the active period. May be <code>null</code>, in which case the secret
+   *     is active from the beginning of time.
+   * @param notAfter End (exclusive) of the active period. May be <code>null</code>, in which case
+   *     the secret is active until further notice.
+   */
+  public SinchApplicationSecret(String applicationSecret, Instant notBefore, Instant notAfter) {
+    this(decode(applicationSecret), notBefore, notAfter);
+  }
+
+  /**
+   * @param applicationSecret Sinch Application Secret (decoded, i.e. raw bytes).
+   * @see #SinchApplicationSecret(String, Instant, Instant)
+   */
+  public SinchApplicationSecret(byte[] applicationSecret, Instant notBefore, Instant notAfter) {
+    if (notBefore != null && notAfter != null && !notAfter.isAfter(notBefore))
+      throw new IllegalArgumentException("notAfter");
+
+    this.secret = nonEmpty(applicationSecret).clone();
+    this.notBefore = notBefore;
+    this.notAfter = notAfter;
+    this.notBeforeSecond = notBefore != null ? notBefore.getEpochSecond() : Long.MIN_VALUE;
+    this.notAfterSecond = notAfter != null ? notAfter.getEpochSecond() : Long.MAX_VALUE;
+  }
+
+  /**
+   * A list of one secret that is always active, i.e. that of an application whose secret is not
+   * being rotated, or an empty list (as for an unknown application key) if <code>applicationSecret
+   * </code> is <code>null</code> or empty.
+   */
+  static List<SinchApplicationSecret> single(byte[] applicationSecret) {
+    return applicationSecret != null && applicationSecret.length > 0
+        ? Collections.singletonList(new SinchApplicationSecret(applicationSecret, null, null))
+        : Collections.<SinchApplicationSecret>emptyList();
+  }
+
+  /**
+   * The Sinch Application Secret (decoded, i.e. raw bytes). The array is shared, so the caller must
+   * not modify it.
+   */
+  public byte[] getSecretBytes() {
+    return secret;
+  }
+
+  /**
+   * @return Start of the active period, or <code>null</code> if none.
+   */
+  public Instant getNotBefore() {
+    return notBefore;
+  }
+
+  /**
+   * @return End (exclusive) of the active period, or <code>null</code> if none.
+   */
+  public Instant getNotAfter() {
+    return notAfter;
+  }
+
+  /**
+   * @return <code>true</code> if this secret is active at some point during a (UTC) day.
+   */
+  public boolean isActiveOn(OffsetDateTime day) {
+    return isActiveOnDay(Math.floorDiv(day.toEpochSecond(), SECONDS_PER_DAY));
+  }
+
+  /**
+   * @return <code>true</code> if this secret is active at an instant, i.e. if the instant is within
+   *     [notBefore, notAfter).
+   */
+  public boolean isActiveAt(Instant instant) {
+    return isActiveAtSecond(instant.getEpochSecond());
+  }
+
+  boolean isActiveOnDay(long epochDay) {
+    final long start = epochDay * SECONDS_PER_DAY;
+    return notBeforeSecond < start + SECONDS_PER_DAY && notAfterSecond > start;
+  }
+
+  private boolean isActiveAtSecond(long epochSecond) {
+    return notBeforeSecond <= epochSecond && epochSecond < notAfterSecond;
+  }
+
+  // Whether this secret is a candidate for a token with a `kid` of a (UTC) day, validated at a
+  // time.
+  private boolean isCandidate(long epochDay, long nowSecond) {
+    return isActiveAtSecond(nowSecond) && isActiveOnDay(epochDay);
+  }
+
+  /**
+   * Select the signing key of a token, among the signing keys derived from the secrets that are
+   * candidates for it, i.e. that are active at the time of validation and on the day of its `kid`.
+   *
+   * <p>The signature of the token is checked against the signing key of each candidate (at most
+   * {@link #MAX_CANDIDATES}, in order), and the first one that matches is returned. So the
+   * signature of the token has been verified if a key is returned, and need not be verified again.
+   *
+   * @param secrets The secrets of the application, in the order they should be tried.
+   * @param issuedAt The day of the `kid` of the token (UTC).
+   * @param nowMillis The time of validation, in milliseconds since the epoch.
+   * @param jwt The token, already parsed.
+   * @return The signing key that matches the signature of the token, or <code>null</code> if no
+   *     candidate does.
+   */
+  public static Key selectSigningKey(
+      List<SinchApplicationSecret> secrets,
+      OffsetDateTime issuedAt,
+      long nowMillis,
+      CompactJws jwt) {
+    final long day = issuedAt.toLocalDate().toEpochDay();
+    final long nowSecond = Math.floorDiv(nowMillis, 1000);
+    final SigningKeyCache signingKeys = SigningKeyCache.getDefault();
+
+    // Most applications have a single secret, which is then the only candidate.
+    int candidates = 0;
+    for (int i = 0; i < secrets.size() && candidates < MAX_CANDIDATES; i++) {
+      SinchApplicationSecret secret = secrets.get(i);
+      if (!secret.isCandidate(day, nowSecond)) continue;
+      candidates++;
+      Key key = signingKeys.get(secret.secret, issuedAt);
+      if (jwt.verify(key)) return key;
+    }
+
+    return null;
+  }
+
+  /**
+   * The signing keys derived from the secrets that are candidates for tokens with the same `kid`
+   * (at most {@link #MAX_CANDIDATES}), see {@link #selectSigningKey(Key[], CompactJws)}.
+   */
+  static Key[] candidateSigningKeys(
+      List<SinchApplicationSecret> secrets, OffsetDateTime issuedAt, long nowMillis) {
+    final long day = issuedAt.toLocalDate().toEpochDay();
+    final long nowSecond = Math.floorDiv(nowMillis, 1000);
+    Key[] keys = new Key[Math.min(secrets.size(), MAX_CANDIDATES)];
+    int count = 0;
+    for (int i = 0; i < secrets.size() && count < keys.length; i++) {
+      SinchApplicationSecret secret = secrets.get(i);
+      if (secret.isCandidate(day, nowSecond))
+        keys[count++] = SigningKeyCache.getDefault().get(secret.secret, issuedAt);
+    }
+    return count == keys.length ? keys : Arrays.copyOf(keys, count);
+  }
+
+  /**
+   * @return The first of the candidate signing keys that matches the signature of the token, or
+   *     <code>null</code> if none does.
+   */
+  static Key selectSigningKey(Key[] candidates, CompactJws jwt) {
+    for (Key key : candidates) if (jwt.verify(key)) return key;
+    return null;
+  }
+
+  @Override
+  public String toString() {
+    // (The secret itself is not included.)
+    return "SinchApplicationSecret [notBefore=" + notBefore + ", notAfter=" + notAfter + "]";
+  }
+
+  private static byte[] decode(String applicationSecret) {
+    if (null == applicationSecret) throw new IllegalArgumentException("applicationSecret");
+    try {
+      return Base64.getDecoder().decode(applicationSecret);
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("applicationSecret", e);
+    }
+  }
+
+  private static byte[] nonEmpty(byte[] applicationSecret) {
+    if (null == applicationSecret || applicationSecret.length == 0)
+      throw new IllegalArgumentException("applicationSecret");
+    return applicationSecret;
+  }
+}
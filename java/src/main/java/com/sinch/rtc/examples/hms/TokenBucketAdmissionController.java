@@ -0,0 +1,161 @@
+// Copyright 2020 Sinch AB
+
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+
+// http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.sinch.rtc.examples.hms;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * An {@link AdmissionController} that rate limits each Sinch Application Key with a token bucket,
+ * i.e. admits a sustained rate per application, with bursts up to a given size.
+ *
+ * <ul>
+ *   <li>Each bucket is a single <code>AtomicLong</code>, updated with compare-and-set (the bucket
+ *       holds the "theoretical arrival time" of the next request, as in the generic cell rate
+ *       algorithm), so admission never takes a lock.
+ *   <li>Buckets are kept in a fixed-size table, in which each application key can occupy one of two
+ *       neighbouring slots. A slot is taken over by another key once its bucket has been full for a
+ *       while, i.e. once its application has been idle.
+ *   <li>Application keys that find no slot (because the table is full of active keys) share one
+ *       overflow bucket, with the same rate and burst. That way the memory used is bounded, and a
+ *       flood of distinct (e.g. random) keys is limited as a whole without evicting active keys.
+ * </ul>
+ */
+public class TokenBucketAdmissionController implements AdmissionController {
+
+  public static final int DEFAULT_MAXIMUM_APPLICATIONS = 4096;
+
+  private final long intervalNanos;
+  private final long burstNanos;
+  private final int mask;
+  private final AtomicReferenceArray<Bucket> slots;
+  private final Bucket overflow;
+  private final LongSupplier nanoTime;
+
+  private final LongAdder rejections = new LongAdder();
+
+  /**
+   * @param permitsPerSecond Sustained rate of client assertions admitted per application.
+   * @param burst Number of client assertions that an (idle) application may send at once.
+   */
+  public TokenBucketAdmissionController(double permitsPerSecond, int burst) {
+    this(permitsPerSecond, burst, DEFAULT_MAXIMUM_APPLICATIONS);
+  }
+
+  /**
+   * @param permitsPerSecond Sustained rate of client assertions admitted per application.
+   * @param burst Number of client assertions that an (idle) application may send at once.
+   * @param maximumApplications Number of applications that are rate limited separately (rounded up
+   *     to a power of two). Any other applications share a single bucket.
+   */
+  public TokenBucketAdmissionController(
+      double permitsPerSecond, int burst, int maximumApplications) {
+    this(permitsPerSecond, burst, maximumApplications, System::nanoTime);
+  }
+
+  TokenBucketAdmissionController(
+      double permitsPerSecond, int burst, int maximumApplications, LongSupplier nanoTime) {
+    if (!(permitsPerSecond > 0) || permitsPerSecond > 1e9)
+      throw new IllegalArgumentException("permitsPerSecond");
+    if (burst < 1) throw new IllegalArgumentException("burst");
+    if (maximumApplications < 2 || maximumApplications > 1 << 30)
+      throw new IllegalArgumentException("maximumApplications");
+
+    this.intervalNanos = Math.max(1, (long) (1e9 / permitsPerSecond));
+    if (burst > Long.MAX_VALUE / 4 / intervalNanos) throw new IllegalArgumentException("burst");
+    this.burstNanos = burst * intervalNanos;
+
+    int size = Integer.highestOneBit(maximumApplications - 1) << 1;
+    this.mask = size - 1;
+    this.slots = new AtomicReferenceArray<Bucket>(size);
+    this.nanoTime = nanoTime;
+    this.overflow = new Bucket(null, nanoTime.getAsLong() - burstNanos);
+  }
+
+  @Override
+  public boolean admit(String applicationKey) {
+    final long now = nanoTime.getAsLong();
+
+    if (bucket(applicationKey, now).tryAcquire(now)) return true;
+
+    rejections.increment();
+    return false;
+  }
+
+  /** Number of client assertions that have not been admitted. */
+  public long rejectionCount() {
+    return rejections.sum();
+  }
+
+  private Bucket bucket(String applicationKey, long now) {
+    if (applicationKey == null) return overflow;
+
+    int hash = applicationKey.hashCode();
+    hash ^= hash >>> 16;
+    final int first = hash & mask;
+    final int second = first ^ 1;
+
+    Bucket a = slots.get(first);
+    if (a != null && applicationKey.equals(a.applicationKey)) return a;
+    Bucket b = slots.get(second);
+    if (b != null && applicationKey.equals(b.applicationKey)) return b;
+
+    // Take over an empty slot, or the slot of an idle application.
+    Bucket bucket = claim(first, a, applicationKey, now);
+    if (bucket == null) bucket = claim(second, b, applicationKey, now);
+    return bucket != null ? bucket : overflow;
+  }
+
+  private Bucket claim(int slot, Bucket current, String applicationKey, long now) {
+    if (current != null && !isIdle(current, now)) return null;
+
+    Bucket bucket = new Bucket(applicationKey, now - burstNanos);
+    if (slots.compareAndSet(slot, current, bucket)) return bucket;
+
+    // Lost a race, possibly to another request of the same application.
+    Bucket winner = slots.get(slot);
+    return winner != null && applicationKey.equals(winner.applicationKey) ? winner : null;
+  }
+
+  // A bucket is idle once it has been full for as long as it takes to fill it.
+  private boolean isIdle(Bucket bucket, long now) {
+    return now - bucket.get() >= burstNanos;
+  }
+
+  // The value of a bucket is the time at which it would be full (if no more requests are admitted),
+  // and each admitted request moves that time one interval forward. A request is admitted if that
+  // does not move it more than the burst ahead of now.
+  private final class Bucket extends AtomicLong {
+    private static final long serialVersionUID = 1L;
+
+    final String applicationKey;
+
+    Bucket(String applicationKey, long fullAt) {
+      super(fullAt);
+      this.applicationKey = applicationKey;
+    }
+
+    boolean tryAcquire(long now) {
+      for (; ; ) {
+        final long fullAt = get();
+        final long next = (fullAt - now > 0 ? fullAt : now) + intervalNanos;
+        if (next - now > burstNanos) return false;
+        if (compareAndSet(fullAt, next)) return true;
+      }
+    }
+  }
+}
@@ -15,7 +15,53 @@
 package com.sinch.rtc.examples.hms;
 
 public final class TokenValidationResult {
+
+  /** The reason why a token is not valid. */
+  public enum FailureReason {
+    /** Token is too large, or is not a well-formed JWS/JWT. */
+    MALFORMED,
+    /** JWT header `alg` is not HS256. */
+    UNSUPPORTED_ALGORITHM,
+    /** JWT header `kid` is missing, or is not of the form hkdfv1-yyyyMMdd. */
+    INVALID_KEY_ID,
+    /** JWT header `sinch:rtc:application_key` is missing, or is not a known application key. */
+    UNKNOWN_APPLICATION_KEY,
+    /** JWT signature does not match. */
+    INVALID_SIGNATURE,
+    /** JWT claim `exp` is in the past. */
+    EXPIRED,
+    /** JWT claim `nbf` is in the future. */
+    NOT_YET_VALID,
+    /** JWT claims are not as expected for the HMS OAuth flow, e.g. claim `scope`. */
+    INVALID_CLAIMS,
+    /** JWT claim `nonce` has been used before. */
+    REPLAYED,
+    /**
+     * JWT claim `nonce` could not be recorded for replay protection, see {@link NonceReplayStore}.
+     */
+    NONCE_NOT_RECORDED,
+    /**
+     * The Sinch Application Secret could not be resolved, because the credentials resolver failed.
+     * (Only used by batch validation, otherwise the failure is propagated.)
+     */
+    CREDENTIALS_UNAVAILABLE,
+    /**
+     * The client assertion was not admitted for validation, because its Sinch Application Key has
+     * exceeded its rate, see {@link AdmissionController}.
+     */
+    OVERLOADED
+  }
+
+  private static final TokenValidationResult[] INVALID =
+      new TokenValidationResult[FailureReason.values().length];
+
+  static {
+    for (FailureReason reason : FailureReason.values())
+      INVALID[reason.ordinal()] = new TokenValidationResult(reason);
+  }
+
   private final boolean valid;
+  private final FailureReason failureReason;
   private final String sinchApplicationKey;
   private final String hmsApplicationId;
 
@@ -23,6 +69,13 @@ public final class TokenValidationResult {
     return this.valid;
   }
 
+  /**
+   * @return Why the token is not valid, or <code>null</code> if the token is valid.
+   */
+  public FailureReason getFailureReason() {
+    return this.failureReason;
+  }
+
   public String getSinchApplicationKey() {
     return this.sinchApplicationKey;
   }
@@ -33,19 +86,31 @@ public final class TokenValidationResult {
 
   private TokenValidationResult(String applicationKey, String hmsApplicationId) {
     this.valid = true;
+    this.failureReason = null;
     this.sinchApplicationKey = applicationKey;
     this.hmsApplicationId = hmsApplicationId;
   }
 
-  private TokenValidationResult() {
+  private TokenValidationResult(FailureReason failureReason) {
     this.valid = false;
+    this.failureReason = failureReason;
     this.sinchApplicationKey = null;
     this.hmsApplicationId = null;
   }
 
+  @Override
+  public String toString() {
+    return valid
+        ? "Valid(" + sinchApplicationKey + ", " + hmsApplicationId + ")"
+        : "Invalid(" + failureReason + ")";
+  }
+
   static final TokenValidationResult Valid(String applicationKey, String hmsApplicationId) {
     return new TokenValidationResult(applicationKey, hmsApplicationId);
   }
 
-  static final TokenValidationResult Invalid = new TokenValidationResult();
+  /** Invalid results are shared (per reason), so rejecting a token does not allocate. */
+  static final TokenValidationResult Invalid(FailureReason reason) {
+    return INVALID[reason.ordinal()];
+  }
 }
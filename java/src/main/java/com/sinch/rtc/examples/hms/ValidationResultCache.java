@@ -0,0 +1,274 @@
+// Copyright 2020 Sinch AB
+
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+
+// http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.sinch.rtc.examples.hms;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A short-lived cache of the results of client assertions that have been validated successfully, so
+ * that a client assertion that is sent again unchanged (e.g. when Sinch retries a token request
+ * because your token endpoint was slow) is answered in constant time, without credentials lookup or
+ * cryptographic work. See {@link HmsOAuthFlowTokenValidator#withResultCache}.
+ *
+ * <ul>
+ *   <li>Entries are keyed by the SHA-256 digest of the whole client assertion, so only exact
+ *       duplicates are answered from the cache.
+ *   <li>An entry is kept no longer than the maximum age, and never after JWT claim `exp` of its
+ *       client assertion.
+ *   <li>The cache is bounded in size. When it is full, the entries that expire first are evicted.
+ *   <li>Only valid results are cached. Invalid client assertions are validated again every time.
+ * </ul>
+ *
+ * <p>How exact duplicates are answered is set by a {@link DuplicatePolicy}, and is meant to match
+ * the replay protection of the validator (see {@link NonceReplayStore}).
+ */
+public class ValidationResultCache {
+
+  public static final Duration DEFAULT_MAXIMUM_AGE = Duration.ofMinutes(1);
+  public static final int DEFAULT_MAXIMUM_SIZE = 10000;
+
+  /** How a client assertion that is an exact duplicate of a cached valid one is answered. */
+  public enum DuplicatePolicy {
+    /**
+     * Exact duplicates are valid, with the same result as the first time. This allows retries even
+     * when a {@link NonceReplayStore} is used: the nonce of the client assertion has already been
+     * recorded, but a retry is the same token rather than a replay of its nonce in another token.
+     * (Duplicates that are no longer cached, or that are validated concurrently with the first, are
+     * still subject to the nonce replay store.)
+     */
+    ACCEPT,
+    /**
+     * Exact duplicates are rejected with {@link TokenValidationResult.FailureReason#REPLAYED}, i.e.
+     * the cache answers the replay check in constant time.
+     */
+    REJECT
+  }
+
+  private static final ThreadLocal<Digester> DIGESTERS =
+      ThreadLocal.withInitial(() -> new Digester());
+
+  private final DuplicatePolicy duplicatePolicy;
+  private final long maximumAgeMillis;
+  private final int maximumSize;
+
+  private final Map<Digest, Entry> entries = new ConcurrentHashMap<Digest, Entry>();
+  private final ReentrantLock evictionLock = new ReentrantLock();
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  public ValidationResultCache(DuplicatePolicy duplicatePolicy) {
+    this(duplicatePolicy, DEFAULT_MAXIMUM_AGE, DEFAULT_MAXIMUM_SIZE);
+  }
+
+  /**
+   * @param duplicatePolicy How exact duplicates are answered.
+   * @param maximumAge How long a result is cached at most (and never after its token expires).
+   * @param maximumSize Maximum number of results to cache.
+   */
+  public ValidationResultCache(
+      DuplicatePolicy duplicatePolicy, Duration maximumAge, int maximumSize) {
+    if (null == duplicatePolicy) throw new IllegalArgumentException("duplicatePolicy");
+    if (null == maximumAge || maximumAge.isNegative() || maximumAge.isZero())
+      throw new IllegalArgumentException("maximumAge");
+    if (maximumSize < 1) throw new IllegalArgumentException("maximumSize");
+
+    this.duplicatePolicy = duplicatePolicy;
+    this.maximumAgeMillis = maximumAge.toMillis();
+    this.maximumSize = maximumSize;
+  }
+
+  public DuplicatePolicy getDuplicatePolicy() {
+    return duplicatePolicy;
+  }
+
+  /** Number of client assertions that were answered from the cache. */
+  public long hitCount() {
+    return hits.sum();
+  }
+
+  public long missCount() {
+    return misses.sum();
+  }
+
+  public long evictionCount() {
+    return evictions.sum();
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  public void invalidateAll() {
+    entries.clear();
+  }
+
+  /** The digest of a client assertion, to look it up with. */
+  static Digest digest(CharSequence clientAssertion) {
+    return new Digest(DIGESTERS.get().digest(clientAssertion));
+  }
+
+  /**
+   * Look up a client assertion.
+   *
+   * @return The cached result (a valid result, or {@link
+   *     TokenValidationResult.FailureReason#REPLAYED}, depending on the duplicate policy), or
+   *     <code>null</code> if the client assertion has to be validated.
+   */
+  TokenValidationResult get(Digest digest, long nowMillis) {
+    Entry entry = entries.get(digest);
+
+    // Results are only reused from the time they were validated until they expire (a validation at
+    // an earlier point in time could have another outcome, e.g. because of JWT claim `nbf`).
+    if (entry == null || nowMillis < entry.validatedAtMillis || nowMillis > entry.expiresAtMillis) {
+      if (entry != null && nowMillis > entry.expiresAtMillis) entries.remove(digest, entry);
+      misses.increment();
+      return null;
+    }
+
+    hits.increment();
+    return duplicatePolicy == DuplicatePolicy.ACCEPT
+        ? entry.result
+        : TokenValidationResult.Invalid(TokenValidationResult.FailureReason.REPLAYED);
+  }
+
+  /**
+   * Cache a valid result.
+   *
+   * @param expiresAtMillis JWT claim `exp` of the client assertion, in milliseconds since the epoch
+   *     (or {@link Long#MAX_VALUE} if it has none).
+   */
+  void put(Digest digest, TokenValidationResult result, long expiresAtMillis, long nowMillis) {
+    if (!result.isValid()) return;
+
+    long maximumExpiry =
+        nowMillis > Long.MAX_VALUE - maximumAgeMillis
+            ? Long.MAX_VALUE
+            : nowMillis + maximumAgeMillis;
+    Entry entry = new Entry(result, nowMillis, Math.min(expiresAtMillis, maximumExpiry));
+    if (entry.expiresAtMillis < nowMillis) return;
+
+    entries.put(digest, entry);
+
+    if (entries.size() > maximumSize && evictionLock.tryLock()) {
+      try {
+        evict(nowMillis);
+      } finally {
+        evictionLock.unlock();
+      }
+    }
+  }
+
+  // Evict expired entries, and then the entries that expire first, down to 90% of the maximum size.
+  private void evict(long nowMillis) {
+    List<Map.Entry<Digest, Entry>> candidates =
+        new ArrayList<Map.Entry<Digest, Entry>>(entries.entrySet());
+
+    int excess = candidates.size() - (maximumSize - maximumSize / 10);
+    if (excess <= 0) return;
+
+    candidates.sort(
+        (a, b) -> Long.compare(a.getValue().expiresAtMillis, b.getValue().expiresAtMillis));
+
+    for (Map.Entry<Digest, Entry> candidate : candidates) {
+      if (excess <= 0 && candidate.getValue().expiresAtMillis >= nowMillis) break;
+      if (entries.remove(candidate.getKey(), candidate.getValue())) {
+        evictions.increment();
+        excess--;
+      }
+    }
+  }
+
+  private static final class Entry {
+    final TokenValidationResult result;
+    final long validatedAtMillis;
+    final long expiresAtMillis;
+
+    Entry(TokenValidationResult result, long validatedAtMillis, long expiresAtMillis) {
+      this.result = result;
+      this.validatedAtMillis = validatedAtMillis;
+      this.expiresAtMillis = expiresAtMillis;
+    }
+  }
+
+  /** A SHA-256 digest of a client assertion. */
+  static final class Digest {
+    private final byte[] bytes;
+    private final int hash;
+
+    Digest(byte[] bytes) {
+      this.bytes = bytes;
+      // The digest is uniformly distributed, so any 32 bits of it make a good hash code.
+      this.hash =
+          (bytes[0] & 0xff) | (bytes[1] & 0xff) << 8 | (bytes[2] & 0xff) << 16 | bytes[3] << 24;
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof Digest && Arrays.equals(bytes, ((Digest) obj).bytes);
+    }
+  }
+
+  // Per-thread SHA-256 engine, that digests a CharSequence without encoding it to a new byte array.
+  private static final class Digester {
+    private final MessageDigest sha256;
+    private final byte[] buffer = new byte[512];
+
+    Digester() {
+      try {
+        sha256 = MessageDigest.getInstance("SHA-256");
+      } catch (NoSuchAlgorithmException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    byte[] digest(CharSequence chars) {
+      // Client assertions are ASCII. Other characters are encoded in three bytes, the first of
+      // which has its high bit set, so that the encoding is unambiguous.
+      int length = 0;
+      for (int i = 0; i < chars.length(); i++) {
+        if (length > buffer.length - 3) {
+          sha256.update(buffer, 0, length);
+          length = 0;
+        }
+        char c = chars.charAt(i);
+        if (c < 0x80) {
+          buffer[length++] = (byte) c;
+        } else {
+          buffer[length++] = (byte) (0x80 | c >>> 14);
+          buffer[length++] = (byte) (c >>> 7 & 0x7f);
+          buffer[length++] = (byte) (c & 0x7f);
+        }
+      }
+      sha256.update(buffer, 0, length);
+      return sha256.digest();
+    }
+  }
+}
@@ -0,0 +1,103 @@
+// Copyright 2020 Sinch AB
+
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+
+// http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.sinch.rtc.examples.jwt;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A {@link CharSequence} view of (presumably) ASCII bytes, e.g. of a token in a network buffer.
+ * Each byte is one char (non-ASCII bytes map to chars 128-255).
+ *
+ * <p>The bytes are referenced, not copied, so that {@link CompactJws#parse(CharSequence, int)} can
+ * parse a token in place. They must not be modified while the view is in use.
+ */
+public final class AsciiSequence implements CharSequence {
+
+  private final byte[] array;
+  private final ByteBuffer buffer;
+  private final int offset;
+  private final int length;
+
+  private AsciiSequence(byte[] array, ByteBuffer buffer, int offset, int length) {
+    this.array = array;
+    this.buffer = buffer;
+    this.offset = offset;
+    this.length = length;
+  }
+
+  /** A view of a range of a byte array. */
+  public static AsciiSequence of(byte[] bytes, int offset, int length) {
+    if (null == bytes) throw new IllegalArgumentException("bytes");
+    checkRange(bytes.length, offset, length);
+    return new AsciiSequence(bytes, null, offset, length);
+  }
+
+  /**
+   * A view of the remaining bytes of a buffer, i.e. from its position to its limit. The position of
+   * the buffer is not changed.
+   */
+  public static AsciiSequence of(ByteBuffer bytes) {
+    if (null == bytes) throw new IllegalArgumentException("bytes");
+    if (bytes.hasArray())
+      return new AsciiSequence(
+          bytes.array(), null, bytes.arrayOffset() + bytes.position(), bytes.remaining());
+    return new AsciiSequence(null, bytes, bytes.position(), bytes.remaining());
+  }
+
+  @Override
+  public int length() {
+    return length;
+  }
+
+  @Override
+  public char charAt(int index) {
+    if (index < 0 || index >= length) throw new IndexOutOfBoundsException();
+    return (char) ((array != null ? array[offset + index] : buffer.get(offset + index)) & 0xff);
+  }
+
+  @Override
+  public CharSequence subSequence(int start, int end) {
+    checkRange(length, start, end - start);
+    return new AsciiSequence(array, buffer, offset + start, end - start);
+  }
+
+  @Override
+  public String toString() {
+    byte[] bytes = new byte[length];
+    copyTo(bytes);
+    return new String(bytes, StandardCharsets.ISO_8859_1);
+  }
+
+  /** The backing array, or <code>null</code> if backed by a direct buffer. */
+  byte[] array() {
+    return array;
+  }
+
+  /** The offset of the first char in the backing array or buffer. */
+  int offset() {
+    return offset;
+  }
+
+  // Copy all bytes to the start of an array.
+  void copyTo(byte[] out) {
+    if (array != null) System.arraycopy(array, offset, out, 0, length);
+    else for (int i = 0; i < length; i++) out[i] = buffer.get(offset + i);
+  }
+
+  private static void checkRange(int size, int offset, int length) {
+    if (offset < 0 || length < 0 || offset > size - length) throw new IndexOutOfBoundsException();
+  }
+}
@@ -0,0 +1,248 @@
+// Copyright 2020 Sinch AB
+
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+
+// http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.sinch.rtc.examples.jwt;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A reusable parser and verifier of HS256-signed JWS in compact serialization, i.e. <code>
+ * BASE64URL(header).BASE64URL(payload).BASE64URL(signature)</code>.
+ *
+ * <p>Parsing is done in stages, from cheap to expensive, so that a caller can reject a token as
+ * early as possible: {@link #parse} only checks the structure of the token and decodes the header,
+ * {@link #verify} checks the signature, and {@link #readPayload} decodes the payload. All stages
+ * report failures by return value rather than by exception, and reuse the same buffers from one
+ * token to the next. Compressed payloads (header parameter `zip`, "DEF" or "GZIP", as written by
+ * e.g. jjwt) are decompressed by {@link #readPayload}, up to {@link #MAX_DECOMPRESSED_LENGTH}.
+ *
+ * <p>An instance is <i>not</i> thread-safe. Use {@link #get()} to get the instance of the calling
+ * thread.
+ */
+public final class CompactJws {
+
+  /** Largest decompressed payload that is read, see {@link #readPayload}. */
+  public static final int MAX_DECOMPRESSED_LENGTH = 65536;
+
+  private static final byte[] BASE64URL_VALUES = new byte[128];
+
+  static {
+    Arrays.fill(BASE64URL_VALUES, (byte) -1);
+    final String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+    for (int i = 0; i < alphabet.length(); i++) BASE64URL_VALUES[alphabet.charAt(i)] = (byte) i;
+  }
+
+  private static final ThreadLocal<CompactJws> INSTANCES =
+      ThreadLocal.withInitial(() -> new CompactJws());
+
+  // The token as ASCII bytes, i.e. the JWS signing input followed by '.' and the signature, from
+  // tokenStart. Either the input of parse (if it is an array-backed AsciiSequence) or buffer.
+  private byte[] token;
+  private int tokenStart;
+  private int headerEnd;
+  private int payloadEnd;
+  private byte[] buffer = new byte[1024];
+
+  private byte[] header = new byte[256];
+  private int headerLength;
+  private byte[] payload = new byte[1024];
+  private int payloadLength;
+
+  private final byte[] signature = new byte[HmacSha256.LENGTH];
+  private final byte[] expectedSignature = new byte[HmacSha256.LENGTH];
+
+  private final JsonObjectReader headerReader = new JsonObjectReader();
+  private final JsonObjectReader payloadReader = new JsonObjectReader();
+
+  private CompactJws() {}
+
+  /** Get the instance of the calling thread. */
+  public static CompactJws get() {
+    return INSTANCES.get();
+  }
+
+  /**
+   * Check that a token consists of three Base64url-encoded segments, with an HMAC-SHA256 sized
+   * signature, and read its header.
+   *
+   * <p>A token in an array-backed {@link AsciiSequence} is parsed in place, i.e. its bytes are
+   * referenced (not copied), and must not be modified until the token has been verified and its
+   * payload read. Other tokens are copied to a buffer of this instance.
+   *
+   * @param jws A JWS in compact serialization.
+   * @param maxLength Tokens longer than this are rejected, before anything else is done.
+   * @return <code>false</code> if the token is malformed.
+   */
+  public boolean parse(CharSequence jws, int maxLength) {
+    final int length = jws.length();
+    if (length > maxLength) return false;
+
+    if (jws instanceof AsciiSequence) {
+      AsciiSequence ascii = (AsciiSequence) jws;
+      if (ascii.array() != null) return parse(ascii.array(), ascii.offset(), length);
+
+      ensureBuffer(length);
+      ascii.copyTo(buffer);
+      return parse(buffer, 0, length);
+    }
+
+    ensureBuffer(length);
+    for (int i = 0; i < length; i++) {
+      final char c = jws.charAt(i);
+      // (Other non-ASCII chars are rejected by the next stage, as bytes with the high bit set.)
+      buffer[i] = c < 128 ? (byte) c : (byte) 0x80;
+    }
+    return parse(buffer, 0, length);
+  }
+
+  private void ensureBuffer(int length) {
+    if (buffer.length < length) buffer = new byte[Math.max(length, buffer.length * 2)];
+  }
+
+  private boolean parse(byte[] jws, int start, int length) {
+    final int end = start + length;
+
+    int firstDot = -1;
+    int secondDot = -1;
+    for (int i = start; i < end; i++) {
+      final byte b = jws[i];
+      if (b == '.') {
+        if (firstDot < 0) firstDot = i;
+        else if (secondDot < 0) secondDot = i;
+        else return false;
+      } else if (b < 0 || BASE64URL_VALUES[b] < 0) {
+        return false;
+      }
+    }
+
+    if (secondDot < 0) return false;
+
+    this.token = jws;
+    this.tokenStart = start;
+    this.headerEnd = firstDot;
+    this.payloadEnd = secondDot;
+
+    if (decodedLength(end - secondDot - 1) != HmacSha256.LENGTH) return false;
+    decodeBase64url(jws, secondDot + 1, end, signature);
+
+    headerLength = decodedLength(firstDot - start);
+    if (headerLength < 0) return false;
+    if (header.length < headerLength) header = new byte[headerLength];
+    decodeBase64url(jws, start, firstDot, header);
+
+    return headerReader.read(header, 0, headerLength);
+  }
+
+  /** The header, as read by {@link #parse}. */
+  public JsonObjectReader header() {
+    return headerReader;
+  }
+
+  /**
+   * Verify the signature of the token, in constant time.
+   *
+   * @param signingKey An HMAC-SHA256 key.
+   */
+  public boolean verify(Key signingKey) {
+    HmacSha256.get()
+        .sign(signingKey, token, tokenStart, payloadEnd - tokenStart, expectedSignature, 0);
+    return MessageDigest.isEqual(expectedSignature, signature);
+  }
+
+  /**
+   * Decode (and decompress, if the header has a `zip` parameter) and read the payload (claims set)
+   * of the token.
+   *
+   * @return <code>false</code> if the payload is not a well-formed JSON object, or can not be
+   *     decompressed.
+   */
+  public boolean readPayload() {
+    final int start = headerEnd + 1;
+    payloadLength = decodedLength(payloadEnd - start);
+    if (payloadLength < 0) return false;
+    if (payload.length < payloadLength) payload = new byte[payloadLength];
+    decodeBase64url(token, start, payloadEnd, payload);
+
+    if (headerReader.type("zip") != JsonObjectReader.Type.ABSENT && !decompressPayload())
+      return false;
+
+    return payloadReader.read(payload, 0, payloadLength);
+  }
+
+  // Compressed payloads are rare (Sinch does not use them), so this is not optimized.
+  private boolean decompressPayload() {
+    final boolean gzip;
+    if (headerReader.stringEquals("zip", "DEF")) gzip = false;
+    else if (headerReader.stringEquals("zip", "GZIP")) gzip = true;
+    else return false;
+
+    byte[] decompressed = new byte[Math.min(4 * payloadLength + 64, MAX_DECOMPRESSED_LENGTH + 1)];
+    int length = 0;
+    ByteArrayInputStream compressed = new ByteArrayInputStream(payload, 0, payloadLength);
+    try (InputStream in =
+        gzip ? new GZIPInputStream(compressed) : new InflaterInputStream(compressed)) {
+      while (length <= MAX_DECOMPRESSED_LENGTH) {
+        if (length == decompressed.length)
+          decompressed =
+              Arrays.copyOf(
+                  decompressed, Math.min(2 * decompressed.length, MAX_DECOMPRESSED_LENGTH + 1));
+        int n = in.read(decompressed, length, decompressed.length - length);
+        if (n < 0) break;
+        length += n;
+      }
+    } catch (IOException e) {
+      return false;
+    }
+    if (length > MAX_DECOMPRESSED_LENGTH) return false;
+
+    if (payload.length < length) payload = new byte[length];
+    System.arraycopy(decompressed, 0, payload, 0, length);
+    payloadLength = length;
+    return true;
+  }
+
+  /** The payload, as read by {@link #readPayload}. */
+  public JsonObjectReader payload() {
+    return payloadReader;
+  }
+
+  // Decoded length of a Base64url segment (without padding), or -1 if invalid.
+  private static int decodedLength(int encodedLength) {
+    if (encodedLength % 4 == 1) return -1;
+    return encodedLength / 4 * 3 + Math.max(0, encodedLength % 4 - 1);
+  }
+
+  // Assumes that the input has been checked to only contain Base64url characters.
+  private static void decodeBase64url(byte[] in, int start, int stop, byte[] out) {
+    int pos = 0;
+    int bits = 0;
+    int bitCount = 0;
+
+    for (int i = start; i < stop; i++) {
+      bits = (bits << 6) | BASE64URL_VALUES[in[i]];
+      bitCount += 6;
+      if (bitCount >= 8) {
+        bitCount -= 8;
+        out[pos++] = (byte) (bits >> bitCount);
+      }
+    }
+  }
+}
@@ -0,0 +1,291 @@
+// Copyright 2020 Sinch AB
+
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+
+// http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.sinch.rtc.examples.jwt;
+
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.util.Arrays;
+
+/**
+ * An encoder for HS256-signed JWS in compact serialization, i.e. <code>
+ * BASE64URL(header).BASE64URL(payload).BASE64URL(signature)</code>.
+ *
+ * <p>JSON objects are written member by member, directly into a reusable byte buffer, and are then
+ * Base64url-encoded into a second reusable buffer. The caller is responsible for writing members in
+ * the desired order (e.g. sorted by name). String values are escaped the same way as by Jackson (as
+ * used by the io.jsonwebtoken library), so that the output is byte-identical to a JWT built with
+ * io.jsonwebtoken from the same (ordered) header and claims.
+ *
+ * <p>An encoder is <i>not</i> thread-safe. Use {@link #get()} to get the encoder of the calling
+ * thread.
+ */
+public final class CompactJwsEncoder {
+
+  private static final byte[] BASE64URL =
+      "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_"
+          .getBytes(StandardCharsets.US_ASCII);
+
+  private static final byte[] HEX = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+
+  private static final ThreadLocal<CompactJwsEncoder> ENCODERS =
+      ThreadLocal.withInitial(() -> new CompactJwsEncoder());
+
+  private byte[] json = new byte[256];
+  private int jsonLength;
+  private boolean firstMember;
+
+  private byte[] output = new byte[512];
+  private int outputLength;
+
+  private final byte[] signature = new byte[HmacSha256.LENGTH];
+
+  private CompactJwsEncoder() {}
+
+  /** Get the encoder of the calling thread, reset and ready to encode a new JWS. */
+  public static CompactJwsEncoder get() {
+    return ENCODERS.get().reset();
+  }
+
+  public CompactJwsEncoder reset() {
+    jsonLength = 0;
+    outputLength = 0;
+    return this;
+  }
+
+  /** Start writing a JSON object (a header or a payload). */
+  public CompactJwsEncoder beginObject() {
+    jsonLength = 0;
+    firstMember = true;
+    writeJson((byte) '{');
+    return this;
+  }
+
+  public CompactJwsEncoder member(String name, String value) {
+    beginMember(name);
+    writeJsonString(value);
+    return this;
+  }
+
+  public CompactJwsEncoder member(String name, long value) {
+    beginMember(name);
+    writeJsonNumber(value);
+    return this;
+  }
+
+  /**
+   * Finish the current JSON object, and append it (Base64url-encoded) as the next segment of the
+   * JWS.
+   */
+  public CompactJwsEncoder endObject() {
+    writeJson((byte) '}');
+    appendSeparator();
+    appendBase64url(json, 0, jsonLength);
+    return this;
+  }
+
+  /**
+   * Append an already Base64url-encoded segment, e.g. a header that is cached by the caller.
+   *
+   * @see #encodedObject()
+   */
+  public CompactJwsEncoder segment(byte[] base64url) {
+    appendSeparator();
+    ensureOutputCapacity(base64url.length);
+    System.arraycopy(base64url, 0, output, outputLength, base64url.length);
+    outputLength += base64url.length;
+    return this;
+  }
+
+  /**
+   * Finish the current JSON object, and return it Base64url-encoded instead of appending it to the
+   * JWS. This is suitable for caching, and passing to {@link #segment(byte[])}.
+   */
+  public byte[] encodedObject() {
+    writeJson((byte) '}');
+    byte[] encoded = new byte[base64urlLength(jsonLength)];
+    encodeBase64url(json, 0, jsonLength, encoded, 0);
+    return encoded;
+  }
+
+  /**
+   * Sign the header and payload segments written so far with HMAC-SHA256 and return the JWS.
+   *
+   * @param signingKey An HMAC-SHA256 key, e.g. from {@link SigningKeyCache}.
+   */
+  public String sign(Key signingKey) {
+    HmacSha256.get().sign(signingKey, output, 0, outputLength, signature, 0);
+
+    appendSeparator();
+    appendBase64url(signature, 0, signature.length);
+
+    return new String(output, 0, outputLength, StandardCharsets.US_ASCII);
+  }
+
+  private void beginMember(String name) {
+    if (!firstMember) writeJson((byte) ',');
+    firstMember = false;
+    writeJsonString(name);
+    writeJson((byte) ':');
+  }
+
+  private void writeJson(byte b) {
+    ensureJsonCapacity(1);
+    json[jsonLength++] = b;
+  }
+
+  private void writeJsonNumber(long value) {
+    if (value < 0) {
+      byte[] digits = Long.toString(value).getBytes(StandardCharsets.US_ASCII);
+      ensureJsonCapacity(digits.length);
+      System.arraycopy(digits, 0, json, jsonLength, digits.length);
+      jsonLength += digits.length;
+      return;
+    }
+
+    int digits = 1;
+    for (long v = value / 10; v != 0; v /= 10) digits++;
+
+    ensureJsonCapacity(digits);
+    for (int i = jsonLength + digits - 1; i >= jsonLength; i--) {
+      json[i] = (byte) ('0' + value % 10);
+      value /= 10;
+    }
+    jsonLength += digits;
+  }
+
+  // Escapes the same characters, in the same way, as Jackson does by default. Other non-ASCII
+  // characters are written as UTF-8.
+  private void writeJsonString(String value) {
+    final int length = value.length();
+    // Worst case is 6 bytes per char (an escaped control character), which also covers 3 bytes of
+    // UTF-8 per char.
+    ensureJsonCapacity(2 + 6 * length);
+
+    byte[] b = json;
+    int pos = jsonLength;
+    b[pos++] = '"';
+
+    for (int i = 0; i < length; i++) {
+      char c = value.charAt(i);
+      if (c < 0x80) {
+        if (c >= 0x20 && c != '"' && c != '\\') {
+          b[pos++] = (byte) c;
+          continue;
+        }
+
+        b[pos++] = '\\';
+        switch (c) {
+          case '"':
+          case '\\':
+            b[pos++] = (byte) c;
+            break;
+          case '\b':
+            b[pos++] = 'b';
+            break;
+          case '\t':
+            b[pos++] = 't';
+            break;
+          case '\n':
+            b[pos++] = 'n';
+            break;
+          case '\f':
+            b[pos++] = 'f';
+            break;
+          case '\r':
+            b[pos++] = 'r';
+            break;
+          default:
+            b[pos++] = 'u';
+            b[pos++] = '0';
+            b[pos++] = '0';
+            b[pos++] = HEX[c >> 4];
+            b[pos++] = HEX[c & 0xF];
+        }
+      } else if (c < 0x800) {
+        b[pos++] = (byte) (0xC0 | (c >> 6));
+        b[pos++] = (byte) (0x80 | (c & 0x3F));
+      } else if (Character.isSurrogate(c)) {
+        // Jackson writes (paired or unpaired) surrogates as escapes rather than as UTF-8.
+        b[pos++] = '\\';
+        b[pos++] = 'u';
+        b[pos++] = HEX[c >> 12];
+        b[pos++] = HEX[(c >> 8) & 0xF];
+        b[pos++] = HEX[(c >> 4) & 0xF];
+        b[pos++] = HEX[c & 0xF];
+      } else {
+        b[pos++] = (byte) (0xE0 | (c >> 12));
+        b[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+        b[pos++] = (byte) (0x80 | (c & 0x3F));
+      }
+    }
+
+    b[pos++] = '"';
+    jsonLength = pos;
+  }
+
+  private void appendSeparator() {
+    if (outputLength == 0) return;
+    ensureOutputCapacity(1);
+    output[outputLength++] = '.';
+  }
+
+  private void appendBase64url(byte[] input, int offset, int length) {
+    ensureOutputCapacity(base64urlLength(length));
+    outputLength += encodeBase64url(input, offset, length, output, outputLength);
+  }
+
+  private static int base64urlLength(int length) {
+    return (length / 3) * 4 + (length % 3 == 0 ? 0 : length % 3 + 1);
+  }
+
+  /** Base64url-encode (without padding), returning the number of bytes written. */
+  private static int encodeBase64url(byte[] in, int offset, int length, byte[] out, int outOffset) {
+    int pos = outOffset;
+    int end = offset + length - length % 3;
+    int i = offset;
+
+    for (; i < end; i += 3) {
+      int bits = (in[i] & 0xFF) << 16 | (in[i + 1] & 0xFF) << 8 | (in[i + 2] & 0xFF);
+      out[pos++] = BASE64URL[bits >>> 18];
+      out[pos++] = BASE64URL[(bits >>> 12) & 0x3F];
+      out[pos++] = BASE64URL[(bits >>> 6) & 0x3F];
+      out[pos++] = BASE64URL[bits & 0x3F];
+    }
+
+    int remaining = offset + length - i;
+    if (remaining == 1) {
+      int bits = (in[i] & 0xFF) << 16;
+      out[pos++] = BASE64URL[bits >>> 18];
+      out[pos++] = BASE64URL[(bits >>> 12) & 0x3F];
+    } else if (remaining == 2) {
+      int bits = (in[i] & 0xFF) << 16 | (in[i + 1] & 0xFF) << 8;
+      out[pos++] = BASE64URL[bits >>> 18];
+      out[pos++] = BASE64URL[(bits >>> 12) & 0x3F];
+      out[pos++] = BASE64URL[(bits >>> 6) & 0x3F];
+    }
+
+    return pos - outOffset;
+  }
+
+  private void ensureJsonCapacity(int additional) {
+    if (jsonLength + additional > json.length)
+      json = Arrays.copyOf(json, Math.max(json.length * 2, jsonLength + additional));
+  }
+
+  private void ensureOutputCapacity(int additional) {
+    if (outputLength + additional > output.length)
+      output = Arrays.copyOf(output, Math.max(output.length * 2, outputLength + additional));
+  }
+}
@@ -0,0 +1,114 @@
+// Copyright 2020 Sinch AB
+
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+
+// http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.sinch.rtc.examples.jwt;
+
+import java.nio.ByteBuffer;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.NoSuchAlgorithmException;
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+
+/**
+ * A reusable HMAC-SHA256 engine.
+ *
+ * <p>Looking up a <code>Mac</code> implementation from the installed security providers is
+ * relatively expensive, and is a point of contention when done concurrently from many threads.
+ * Instead, each thread gets its own engine (see {@link #get()}) that holds an initialized <code>
+ * Mac</code> instance which is reset and reused between operations. The engine only re-initializes
+ * its <code>Mac</code> when it is used with a different key than in the previous operation.
+ *
+ * <p>An engine is <i>not</i> thread-safe, and it should not be passed between threads.
+ */
+public final class HmacSha256 {
+
+  public static final String ALGORITHM = "HmacSHA256";
+
+  /** Length (in bytes) of an HMAC-SHA256 output. */
+  public static final int LENGTH = 32;
+
+  private static final ThreadLocal<HmacSha256> ENGINES =
+      ThreadLocal.withInitial(() -> new HmacSha256());
+
+  private final Mac mac;
+  private Key currentKey;
+
+  private HmacSha256() {
+    try {
+      this.mac = Mac.getInstance(ALGORITHM);
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /** Get the HMAC-SHA256 engine of the calling thread. */
+  public static HmacSha256 get() {
+    return ENGINES.get();
+  }
+
+  /**
+   * Start a new HMAC operation using the given key. Any operation in progress is discarded.
+   *
+   * @return This engine.
+   */
+  public HmacSha256 init(Key key) {
+    if (key == currentKey) {
+      mac.reset();
+      return this;
+    }
+
+    try {
+      mac.init(key);
+    } catch (InvalidKeyException e) {
+      currentKey = null;
+      throw new IllegalArgumentException("Invalid key for HMAC-SHA256", e);
+    }
+    currentKey = key;
+    return this;
+  }
+
+  public HmacSha256 update(byte[] input, int offset, int length) {
+    mac.update(input, offset, length);
+    return this;
+  }
+
+  public HmacSha256 update(byte input) {
+    mac.update(input);
+    return this;
+  }
+
+  public HmacSha256 update(ByteBuffer input) {
+    mac.update(input);
+    return this;
+  }
+
+  /**
+   * Finish the current HMAC operation, writing {@link #LENGTH} bytes to <code>output</code>
+   * starting at <code>offset</code>. The engine is then ready for a new operation with the same
+   * key.
+   */
+  public void doFinal(byte[] output, int offset) {
+    try {
+      mac.doFinal(output, offset);
+    } catch (ShortBufferException e) {
+      throw new IllegalArgumentException("Output buffer too short for HMAC-SHA256", e);
+    }
+  }
+
+  /** Compute the HMAC of a message in one operation, into a caller-supplied buffer. */
+  public void sign(Key key, byte[] input, int offset, int length, byte[] output, int outputOffset) {
+    init(key).update(input, offset, length).doFinal(output, outputOffset);
+  }
+}
@@ -0,0 +1,424 @@
+// Copyright 2020 Sinch AB
+
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+
+// http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.sinch.rtc.examples.jwt;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A minimal, reusable reader of the members of a JSON object, such as a JWT header or claims set.
+ *
+ * <p>The object is validated and indexed by {@link #read}, but member values are only decoded when
+ * they are asked for. Nested objects and arrays are validated and skipped (they can be detected,
+ * but not read). Malformed input is reported by return value rather than by exception, and
+ * duplicate member names, as well as objects with more than {@link #MAX_MEMBERS} members, are
+ * treated as malformed.
+ *
+ * <p>A reader is <i>not</i> thread-safe.
+ */
+public final class JsonObjectReader {
+
+  /** The type of a member value. */
+  public enum Type {
+    ABSENT,
+    STRING,
+    /** A number without fraction or exponent, that fits in a <code>long</code>. */
+    INTEGER,
+    /** Any other value, i.e. other numbers, literals, objects and arrays. */
+    OTHER
+  }
+
+  private static final Type[] TYPES = Type.values();
+
+  private static final int MAX_DEPTH = 16;
+
+  /** At most this many members are read (JWT headers and claims sets have only a few). */
+  public static final int MAX_MEMBERS = 64;
+
+  private byte[] input;
+  private int position;
+  private int end;
+
+  private int memberCount;
+  // Per member: name start, name end, value start, value end (all exclusive of quotes), and flags.
+  private int[] members = new int[5 * 16];
+
+  private static final int ESCAPED_NAME = 1;
+  private static final int ESCAPED_VALUE = 2;
+  private static final int TYPE_SHIFT = 2;
+
+  /**
+   * Read (and validate) a JSON object from UTF-8 encoded input. The input array is referenced, not
+   * copied, and must not be modified while values are being read.
+   *
+   * @return <code>false</code> if the input is not a single well-formed JSON object.
+   */
+  public boolean read(byte[] input, int offset, int length) {
+    this.input = input;
+    this.position = offset;
+    this.end = offset + length;
+    this.memberCount = 0;
+
+    skipWhitespace();
+    if (!readObject(0, true)) return false;
+    skipWhitespace();
+    if (position != end) return false;
+
+    // Reject duplicate member names, rather than picking one of them. (With at most MAX_MEMBERS
+    // members, comparing all pairs is cheap. Escaped names are rare, and compared when decoded.)
+    boolean escapedNames = false;
+    for (int i = 0; i < memberCount; i++) escapedNames |= (members[i * 5 + 4] & ESCAPED_NAME) != 0;
+    if (escapedNames) return hasUniqueDecodedNames();
+
+    for (int i = 1; i < memberCount; i++) {
+      for (int j = 0; j < i; j++) {
+        if (nameEquals(i, j)) return false;
+      }
+    }
+    return true;
+  }
+
+  public Type type(String name) {
+    int member = find(name);
+    return member < 0 ? Type.ABSENT : typeOf(member);
+  }
+
+  /**
+   * @return The value of a string member, or <code>null</code> if absent or not a string.
+   */
+  public String getString(String name) {
+    int member = find(name);
+    if (member < 0 || typeOf(member) != Type.STRING) return null;
+
+    final int base = member * 5;
+    return decodeString(members[base + 2], members[base + 3], (members[base + 4] & ESCAPED_VALUE));
+  }
+
+  /**
+   * Compare a string member to an expected value, without decoding it (in the common case).
+   *
+   * @return <code>false</code> if absent, not a string or not equal.
+   */
+  public boolean stringEquals(String name, String expected) {
+    int member = find(name);
+    if (member < 0 || typeOf(member) != Type.STRING) return false;
+
+    final int base = member * 5;
+    if ((members[base + 4] & ESCAPED_VALUE) != 0) return expected.equals(getString(name));
+
+    return asciiEquals(members[base + 2], members[base + 3], expected);
+  }
+
+  /**
+   * @return The value of an integer member, or <code>defaultValue</code> if not an integer.
+   */
+  public long getLong(String name, long defaultValue) {
+    int member = find(name);
+    if (member < 0 || typeOf(member) != Type.INTEGER) return defaultValue;
+
+    final int base = member * 5;
+    int i = members[base + 2];
+    final int valueEnd = members[base + 3];
+
+    boolean negative = input[i] == '-';
+    if (negative) i++;
+
+    long value = 0;
+    for (; i < valueEnd; i++) value = value * 10 + (input[i] - '0');
+
+    return negative ? -value : value;
+  }
+
+  private Type typeOf(int member) {
+    return TYPES[members[member * 5 + 4] >> TYPE_SHIFT];
+  }
+
+  private int find(String name) {
+    for (int member = 0; member < memberCount; member++) {
+      final int base = member * 5;
+      if ((members[base + 4] & ESCAPED_NAME) != 0) {
+        if (name.equals(decodeString(members[base], members[base + 1], ESCAPED_NAME)))
+          return member;
+      } else if (asciiEquals(members[base], members[base + 1], name)) {
+        return member;
+      }
+    }
+    return -1;
+  }
+
+  private boolean hasUniqueDecodedNames() {
+    Set<String> names = new HashSet<String>();
+    for (int member = 0; member < memberCount; member++) {
+      final int base = member * 5;
+      String name =
+          decodeString(members[base], members[base + 1], members[base + 4] & ESCAPED_NAME);
+      if (!names.add(name)) return false;
+    }
+    return true;
+  }
+
+  // Assumes that neither name is escaped.
+  private boolean nameEquals(int a, int b) {
+    final int aStart = members[a * 5];
+    final int aLength = members[a * 5 + 1] - aStart;
+    final int bStart = members[b * 5];
+    if (aLength != members[b * 5 + 1] - bStart) return false;
+
+    for (int i = 0; i < aLength; i++) {
+      if (input[aStart + i] != input[bStart + i]) return false;
+    }
+    return true;
+  }
+
+  private boolean asciiEquals(int start, int stop, String expected) {
+    if (stop - start != expected.length()) return false;
+    for (int i = start; i < stop; i++) {
+      if (input[i] != expected.charAt(i - start)) return false;
+    }
+    return true;
+  }
+
+  private boolean readObject(int depth, boolean index) {
+    if (depth > MAX_DEPTH || !consume('{')) return false;
+
+    skipWhitespace();
+    if (consume('}')) return true;
+
+    while (true) {
+      skipWhitespace();
+      final int nameStart = position + 1;
+      final int nameFlags = readString();
+      if (nameFlags < 0) return false;
+      final int nameEnd = position - 1;
+
+      skipWhitespace();
+      if (!consume(':')) return false;
+      skipWhitespace();
+
+      final int valueStart = position;
+      final int valueFlags = readValue(depth);
+      if (valueFlags < 0) return false;
+
+      if (index) {
+        if (memberCount == MAX_MEMBERS) return false;
+        final boolean string = (valueFlags >> TYPE_SHIFT) == Type.STRING.ordinal();
+        addMember(
+            nameStart,
+            nameEnd,
+            string ? valueStart + 1 : valueStart,
+            string ? position - 1 : position,
+            (nameFlags != 0 ? ESCAPED_NAME : 0) | valueFlags);
+      }
+
+      skipWhitespace();
+      if (consume('}')) return true;
+      if (!consume(',')) return false;
+    }
+  }
+
+  private boolean readArray(int depth) {
+    if (depth > MAX_DEPTH || !consume('[')) return false;
+
+    skipWhitespace();
+    if (consume(']')) return true;
+
+    while (true) {
+      skipWhitespace();
+      if (readValue(depth) < 0) return false;
+      skipWhitespace();
+      if (consume(']')) return true;
+      if (!consume(',')) return false;
+    }
+  }
+
+  /**
+   * @return Type and escape flags of the value, or -1 if malformed.
+   */
+  private int readValue(int depth) {
+    if (position >= end) return -1;
+
+    switch (input[position]) {
+      case '"':
+        {
+          int flags = readString();
+          return flags < 0 ? -1 : (Type.STRING.ordinal() << TYPE_SHIFT) | (flags * ESCAPED_VALUE);
+        }
+      case '{':
+        return readObject(depth + 1, false) ? Type.OTHER.ordinal() << TYPE_SHIFT : -1;
+      case '[':
+        return readArray(depth + 1) ? Type.OTHER.ordinal() << TYPE_SHIFT : -1;
+      case 't':
+        return readLiteral("true") ? Type.OTHER.ordinal() << TYPE_SHIFT : -1;
+      case 'f':
+        return readLiteral("false") ? Type.OTHER.ordinal() << TYPE_SHIFT : -1;
+      case 'n':
+        return readLiteral("null") ? Type.OTHER.ordinal() << TYPE_SHIFT : -1;
+      default:
+        return readNumber();
+    }
+  }
+
+  private int readNumber() {
+    final int start = position;
+    consume('-');
+
+    final int digitsStart = position;
+    if (consume('0')) {
+      // No leading zeros.
+    } else if (!skipDigits()) {
+      return -1;
+    }
+    final int digits = position - digitsStart;
+
+    boolean integer = true;
+    if (consume('.')) {
+      integer = false;
+      if (!skipDigits()) return -1;
+    }
+    if (consume('e') || consume('E')) {
+      integer = false;
+      if (!consume('+')) consume('-');
+      if (!skipDigits()) return -1;
+    }
+
+    // Up to 18 digits always fit in a long.
+    if (integer && digits <= 18 && position > start) return Type.INTEGER.ordinal() << TYPE_SHIFT;
+    return Type.OTHER.ordinal() << TYPE_SHIFT;
+  }
+
+  private boolean skipDigits() {
+    final int start = position;
+    while (position < end && input[position] >= '0' && input[position] <= '9') position++;
+    return position > start;
+  }
+
+  private boolean readLiteral(String literal) {
+    if (end - position < literal.length()
+        || !asciiEquals(position, position + literal.length(), literal)) return false;
+    position += literal.length();
+    return true;
+  }
+
+  /**
+   * @return 1 if the string contains escapes, 0 if not, or -1 if malformed.
+   */
+  private int readString() {
+    if (!consume('"')) return -1;
+
+    int escaped = 0;
+    while (position < end) {
+      final byte b = input[position++];
+      if (b == '"') return escaped;
+      if ((b & 0xFF) < 0x20) return -1;
+      if (b == '\\') {
+        escaped = 1;
+        if (position >= end) return -1;
+        switch (input[position++]) {
+          case '"':
+          case '\\':
+          case '/':
+          case 'b':
+          case 'f':
+          case 'n':
+          case 'r':
+          case 't':
+            break;
+          case 'u':
+            if (end - position < 4) return -1;
+            for (int i = 0; i < 4; i++) {
+              if (Character.digit(input[position++], 16) < 0) return -1;
+            }
+            break;
+          default:
+            return -1;
+        }
+      }
+    }
+    return -1;
+  }
+
+  private String decodeString(int start, int stop, int escaped) {
+    if (escaped == 0) return new String(input, start, stop - start, StandardCharsets.UTF_8);
+
+    StringBuilder sb = new StringBuilder(stop - start);
+    int i = start;
+    while (i < stop) {
+      // Decode runs of unescaped bytes as UTF-8.
+      int run = i;
+      while (run < stop && input[run] != '\\') run++;
+      if (run > i) sb.append(new String(input, i, run - i, StandardCharsets.UTF_8));
+      if (run == stop) break;
+
+      final byte e = input[run + 1];
+      i = run + 2;
+      switch (e) {
+        case 'b':
+          sb.append('\b');
+          break;
+        case 'f':
+          sb.append('\f');
+          break;
+        case 'n':
+          sb.append('\n');
+          break;
+        case 'r':
+          sb.append('\r');
+          break;
+        case 't':
+          sb.append('\t');
+          break;
+        case 'u':
+          int c = 0;
+          for (int k = 0; k < 4; k++) c = (c << 4) | Character.digit(input[i++], 16);
+          sb.append((char) c);
+          break;
+        default:
+          sb.append((char) e);
+      }
+    }
+    return sb.toString();
+  }
+
+  private void addMember(int nameStart, int nameEnd, int valueStart, int valueEnd, int flags) {
+    if ((memberCount + 1) * 5 > members.length)
+      members = Arrays.copyOf(members, members.length * 2);
+
+    final int base = memberCount * 5;
+    members[base] = nameStart;
+    members[base + 1] = nameEnd;
+    members[base + 2] = valueStart;
+    members[base + 3] = valueEnd;
+    members[base + 4] = flags;
+    memberCount++;
+  }
+
+  private boolean consume(char c) {
+    if (position < end && input[position] == c) {
+      position++;
+      return true;
+    }
+    return false;
+  }
+
+  private void skipWhitespace() {
+    while (position < end) {
+      final byte b = input[position];
+      if (b != ' ' && b != '\t' && b != '\n' && b != '\r') return;
+      position++;
+    }
+  }
+}
@@ -14,15 +14,14 @@
 
 package com.sinch.rtc.examples.jwt;
 
-import java.io.UnsupportedEncodingException;
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.OffsetDateTime;
+import java.time.YearMonth;
 import java.time.ZoneId;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.util.Base64;
-import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
 
 /** This class is used to derive a <i>JWT</i> signing key from a <i>Sinch Application Secret</i>. */
@@ -47,6 +46,32 @@ public class JwtSigningKey {
     return utcDate.atStartOfDay(ZoneId.of("Z")).toOffsetDateTime();
   }
 
+  /**
+   * Like {@link #parseIssuedAtFromKeyId}, but returns <code>null</code> rather than throwing an
+   * exception if the key id is not valid. This is meant for validating untrusted input, e.g. JWT
+   * headers.
+   */
+  public static OffsetDateTime tryParseIssuedAtFromKeyId(String kid) {
+    if (null == kid || kid.length() != "hkdfv1-".length() + 8 || !kid.startsWith("hkdfv1-"))
+      return null;
+
+    int value = 0;
+    for (int i = "hkdfv1-".length(); i < kid.length(); i++) {
+      final char c = kid.charAt(i);
+      if (c < '0' || c > '9') return null;
+      value = value * 10 + (c - '0');
+    }
+
+    final int year = value / 10000;
+    final int month = value / 100 % 100;
+    final int day = value % 100;
+
+    if (month < 1 || month > 12 || day < 1 || day > YearMonth.of(year, month).lengthOfMonth())
+      return null;
+
+    return LocalDate.of(year, month, day).atStartOfDay(ZoneOffset.UTC).toOffsetDateTime();
+  }
+
   /**
    * @param applicationSecret <i>Sinch Application Secret</i> (in base64-encoded format)
    * @param issuedAt Time when signing key is issued/created.
@@ -57,27 +82,56 @@ public class JwtSigningKey {
   }
 
   public static byte[] deriveSigningKey(byte[] applicationSecret, OffsetDateTime issuedAt) {
-    return hmacSha256(applicationSecret, formatDate(issuedAt));
+    byte[] signingKey = new byte[HmacSha256.LENGTH];
+    deriveSigningKey(applicationSecret, issuedAt, signingKey, 0);
+    return signingKey;
   }
 
-  private static byte[] hmacSha256(byte[] key, String message) {
-    if (null == key || key.length == 0)
+  /**
+   * Derive a signing key into a caller-supplied buffer.
+   *
+   * @param applicationSecret <i>Sinch Application Secret</i> (decoded, i.e. raw bytes)
+   * @param issuedAt Time when signing key is issued/created.
+   * @param output Buffer to write the {@link HmacSha256#LENGTH} bytes of the signing key to.
+   * @param offset Offset in <code>output</code>.
+   */
+  public static void deriveSigningKey(
+      byte[] applicationSecret, OffsetDateTime issuedAt, byte[] output, int offset) {
+    if (null == applicationSecret || applicationSecret.length == 0)
       throw new IllegalArgumentException("Invaid input key to HMAC-256");
 
-    if (null == message)
+    if (null == issuedAt)
       throw new IllegalArgumentException("Input message to HMAC-256 must not be null");
 
-    try {
-      Mac mac = Mac.getInstance("HmacSHA256");
-      SecretKeySpec keySpec = new SecretKeySpec(key, "HmacSHA256");
-      mac.init(keySpec);
-      return mac.doFinal(message.getBytes("UTF-8"));
-    } catch (NoSuchAlgorithmException e) {
-      throw new RuntimeException(e);
-    } catch (InvalidKeyException e) {
-      throw new RuntimeException(e);
-    } catch (UnsupportedEncodingException e) {
-      throw new RuntimeException(e);
-    }
+    byte[] message = formatDateAscii(issuedAt);
+
+    HmacSha256.get()
+        .sign(
+            new SecretKeySpec(applicationSecret, HmacSha256.ALGORITHM),
+            message,
+            0,
+            message.length,
+            output,
+            offset);
+  }
+
+  // Equivalent to formatDate(dt).getBytes(US_ASCII), without going through DateTimeFormatter.
+  private static byte[] formatDateAscii(OffsetDateTime dt) {
+    final int year = dt.getYear();
+    if (year < 0 || year > 9999) return formatDate(dt).getBytes(StandardCharsets.US_ASCII);
+
+    final int month = dt.getMonthValue();
+    final int day = dt.getDayOfMonth();
+
+    return new byte[] {
+      (byte) ('0' + year / 1000),
+      (byte) ('0' + year / 100 % 10),
+      (byte) ('0' + year / 10 % 10),
+      (byte) ('0' + year % 10),
+      (byte) ('0' + month / 10),
+      (byte) ('0' + month % 10),
+      (byte) ('0' + day / 10),
+      (byte) ('0' + day % 10)
+    };
   }
 }
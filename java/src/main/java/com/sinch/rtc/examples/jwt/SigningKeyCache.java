@@ -0,0 +1,303 @@
+// Copyright 2020 Sinch AB
+
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+
+// http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.sinch.rtc.examples.jwt;
+
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * A bounded, thread-safe cache of signing keys derived by {@link JwtSigningKey}.
+ *
+ * <p>A derived signing key only changes once per day (see {@link JwtSigningKey#keyId}) for a given
+ * <i>Sinch Application Secret</i>, so there is no need to run the key derivation for every token
+ * that is issued or validated. Entries are keyed by the <i>Sinch Application Secret</i> and the day
+ * of the key id, and are evicted when they are older than the configured maximum age or when the
+ * cache grows beyond its maximum size (oldest entries first).
+ */
+public class SigningKeyCache {
+
+  public static final int DEFAULT_MAXIMUM_SIZE = 10000;
+
+  /** Long enough to keep the previous day's keys around while tokens issued on it are in use. */
+  public static final Duration DEFAULT_MAXIMUM_AGE = Duration.ofHours(48);
+
+  private static final SigningKeyCache DEFAULT =
+      new SigningKeyCache(DEFAULT_MAXIMUM_SIZE, DEFAULT_MAXIMUM_AGE);
+
+  private final Map<CacheKey, Entry> entries = new ConcurrentHashMap<CacheKey, Entry>();
+  private final ReentrantLock evictionLock = new ReentrantLock();
+  private final int maximumSize;
+  private final long maximumAgeNanos;
+  private final LongSupplier nanoTime;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+  private final LongAdder prewarms = new LongAdder();
+  private final LongAdder prewarmSkips = new LongAdder();
+
+  public SigningKeyCache(int maximumSize, Duration maximumAge) {
+    this(maximumSize, maximumAge, System::nanoTime);
+  }
+
+  SigningKeyCache(int maximumSize, Duration maximumAge, LongSupplier nanoTime) {
+    if (maximumSize < 1) throw new IllegalArgumentException("maximumSize");
+    if (null == maximumAge || maximumAge.isNegative() || maximumAge.isZero())
+      throw new IllegalArgumentException("maximumAge");
+
+    this.maximumSize = maximumSize;
+    this.maximumAgeNanos = maximumAge.toNanos();
+    this.nanoTime = nanoTime;
+  }
+
+  /** The process-wide cache used by default for token issuance and validation. */
+  public static SigningKeyCache getDefault() {
+    return DEFAULT;
+  }
+
+  /**
+   * Get the signing key derived from a <i>Sinch Application Secret</i> for the day it is issued,
+   * deriving (and caching) it if necessary.
+   *
+   * @param applicationSecret <i>Sinch Application Secret</i> (decoded, i.e. raw bytes)
+   * @param issuedAt Time when signing key is issued/created.
+   * @return An HMAC-SHA256 key, equivalent to {@link JwtSigningKey#deriveSigningKey(byte[],
+   *     OffsetDateTime)}.
+   */
+  public SecretKey get(byte[] applicationSecret, OffsetDateTime issuedAt) {
+    if (null == applicationSecret || applicationSecret.length == 0)
+      throw new IllegalArgumentException("applicationSecret");
+
+    final long day = issuedAt.toLocalDate().toEpochDay();
+    final long now = nanoTime.getAsLong();
+
+    Entry entry = entries.get(new CacheKey(applicationSecret, day));
+    if (entry != null && !entry.isExpired(now, maximumAgeNanos)) {
+      hits.increment();
+      return entry.signingKey;
+    }
+
+    misses.increment();
+
+    SecretKey signingKey =
+        new SecretKeySpec(
+            JwtSigningKey.deriveSigningKey(applicationSecret, issuedAt), "HmacSHA256");
+
+    put(new CacheKey(applicationSecret.clone(), day), new Entry(signingKey, now));
+
+    return signingKey;
+  }
+
+  /**
+   * Derive the signing keys for a day ahead of time (e.g. shortly before midnight UTC), for every
+   * <i>Sinch Application Secret</i> that has a key for the current day in the cache, so that
+   * lookups do not all miss the cache at once when the day changes. The keys of the current day
+   * stay in the cache (subject to the maximum age).
+   *
+   * <p>To make room for the next day's keys, keys for days before the current day (which are at
+   * least a day old by then) are evicted, oldest day first. Keys of the current day are never
+   * evicted: if the cache is too small to hold the current and next day's keys of every
+   * application, the remaining keys are not derived, and are counted in {@link
+   * #prewarmSkippedCount()}. (Then the maximum size should be increased to at least twice the
+   * number of applications.)
+   *
+   * @return The number of keys that were derived.
+   */
+  public int prewarm(LocalDate currentDay, LocalDate nextDay) {
+    if (null == currentDay) throw new IllegalArgumentException("currentDay");
+    if (null == nextDay) throw new IllegalArgumentException("nextDay");
+
+    final long current = currentDay.toEpochDay();
+    final long next = nextDay.toEpochDay();
+    final OffsetDateTime issuedAt = nextDay.atStartOfDay().atOffset(ZoneOffset.UTC);
+    final long now = nanoTime.getAsLong();
+
+    List<CacheKey> pending = new ArrayList<CacheKey>();
+    for (Map.Entry<CacheKey, Entry> cached : entries.entrySet()) {
+      CacheKey key = cached.getKey();
+      if (key.day != current || cached.getValue().isExpired(now, maximumAgeNanos)) continue;
+
+      CacheKey nextKey = new CacheKey(key.applicationSecret, next);
+      if (!entries.containsKey(nextKey)) pending.add(nextKey);
+    }
+
+    int excess = entries.size() + pending.size() - maximumSize;
+    if (excess > 0) evictDaysBefore(current, excess);
+
+    int derived = 0;
+    int skipped = 0;
+    for (CacheKey nextKey : pending) {
+      if (entries.size() >= maximumSize) {
+        skipped++;
+        continue;
+      }
+
+      SecretKey signingKey =
+          new SecretKeySpec(
+              JwtSigningKey.deriveSigningKey(nextKey.applicationSecret, issuedAt), "HmacSHA256");
+      if (entries.putIfAbsent(nextKey, new Entry(signingKey, now)) == null) derived++;
+    }
+
+    prewarms.add(derived);
+    prewarmSkips.add(skipped);
+    return derived;
+  }
+
+  /** Number of lookups that were served from the cache. */
+  public long hitCount() {
+    return hits.sum();
+  }
+
+  /** Number of lookups that required a key derivation. */
+  public long missCount() {
+    return misses.sum();
+  }
+
+  /** Number of entries that have been evicted because of size or age. */
+  public long evictionCount() {
+    return evictions.sum();
+  }
+
+  /** Number of keys that have been derived ahead of time, see {@link #prewarm}. */
+  public long prewarmCount() {
+    return prewarms.sum();
+  }
+
+  /**
+   * Number of keys that were not derived ahead of time because the cache was full of keys of the
+   * current day, see {@link #prewarm}.
+   */
+  public long prewarmSkippedCount() {
+    return prewarmSkips.sum();
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  public void clear() {
+    entries.clear();
+  }
+
+  private void put(CacheKey key, Entry entry) {
+    entries.put(key, entry);
+
+    // Only one thread at a time needs to do the eviction work, others may proceed (the cache may
+    // temporarily be slightly larger than its maximum size).
+    if (entries.size() > maximumSize && evictionLock.tryLock()) {
+      try {
+        evict(entry.createdAt);
+      } finally {
+        evictionLock.unlock();
+      }
+    }
+  }
+
+  private void evict(long now) {
+    List<Map.Entry<CacheKey, Entry>> candidates =
+        new ArrayList<Map.Entry<CacheKey, Entry>>(entries.entrySet());
+
+    // Evict down to 90% of the maximum size so that eviction is amortized over many insertions.
+    int excess = candidates.size() - (maximumSize - maximumSize / 10);
+
+    candidates.sort((a, b) -> Long.compare(a.getValue().createdAt, b.getValue().createdAt));
+
+    for (Map.Entry<CacheKey, Entry> candidate : candidates) {
+      boolean expired = candidate.getValue().isExpired(now, maximumAgeNanos);
+      if (!expired && excess <= 0) break;
+      if (entries.remove(candidate.getKey(), candidate.getValue())) {
+        evictions.increment();
+        excess--;
+      }
+    }
+  }
+
+  // Evict up to excess entries for days before the given day, oldest day (and oldest entry) first.
+  private void evictDaysBefore(long day, int excess) {
+    evictionLock.lock();
+    try {
+      List<Map.Entry<CacheKey, Entry>> candidates = new ArrayList<Map.Entry<CacheKey, Entry>>();
+      for (Map.Entry<CacheKey, Entry> entry : entries.entrySet())
+        if (entry.getKey().day < day) candidates.add(entry);
+
+      candidates.sort(
+          (a, b) ->
+              a.getKey().day != b.getKey().day
+                  ? Long.compare(a.getKey().day, b.getKey().day)
+                  : Long.compare(a.getValue().createdAt, b.getValue().createdAt));
+
+      for (Map.Entry<CacheKey, Entry> candidate : candidates) {
+        if (excess <= 0) break;
+        if (entries.remove(candidate.getKey(), candidate.getValue())) {
+          evictions.increment();
+          excess--;
+        }
+      }
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  private static final class CacheKey {
+    private final byte[] applicationSecret;
+    private final long day;
+    private final int hash;
+
+    CacheKey(byte[] applicationSecret, long day) {
+      this.applicationSecret = applicationSecret;
+      this.day = day;
+      this.hash = 31 * Arrays.hashCode(applicationSecret) + Long.hashCode(day);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof CacheKey)) return false;
+      CacheKey other = (CacheKey) o;
+      return day == other.day && MessageDigest.isEqual(applicationSecret, other.applicationSecret);
+    }
+  }
+
+  private static final class Entry {
+    private final SecretKey signingKey;
+    private final long createdAt;
+
+    Entry(SecretKey signingKey, long createdAt) {
+      this.signingKey = signingKey;
+      this.createdAt = createdAt;
+    }
+
+    boolean isExpired(long now, long maximumAgeNanos) {
+      return now - createdAt >= maximumAgeNanos;
+    }
+  }
+}
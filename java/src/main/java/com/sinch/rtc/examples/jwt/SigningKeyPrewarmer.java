@@ -0,0 +1,202 @@
+// Copyright 2020 Sinch AB
+
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+
+// http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.sinch.rtc.examples.jwt;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pre-warms a {@link SigningKeyCache} with the next day's signing keys shortly before midnight UTC,
+ * when the key id (see {@link JwtSigningKey#keyId}), and with it the signing key, of every <i>Sinch
+ * Application</i> changes at the same moment.
+ *
+ * <p>Each day, at midnight UTC minus the lead time, the keys for the next day are derived for all
+ * applications that have a key for the current day in the cache (see {@link
+ * SigningKeyCache#prewarm}). The number of cache misses in the first minute after midnight is
+ * recorded (see {@link #lastRolloverMissCount()}); with pre-warming it should be close to zero. If
+ * the cache is too small to hold the next day's keys of all applications, the keys that were not
+ * derived are counted in {@link #lastPrewarmSkippedKeyCount()}.
+ */
+public class SigningKeyPrewarmer implements AutoCloseable {
+
+  public static final Duration DEFAULT_LEAD_TIME = Duration.ofMinutes(5);
+
+  static final Duration ROLLOVER_WINDOW = Duration.ofMinutes(1);
+
+  private final SigningKeyCache cache;
+  private final ScheduledExecutorService scheduler;
+  private final boolean ownsScheduler;
+  private final Clock clock;
+  private final Duration leadTime;
+
+  private volatile ScheduledFuture<?> next;
+  private volatile boolean closed;
+
+  private volatile long missCountAtMidnight = -1;
+  private volatile long lastRolloverMissCount = -1;
+  private volatile int lastPrewarmedKeyCount;
+  private volatile long lastPrewarmSkippedKeyCount;
+  private volatile long lastPrewarmNanos;
+
+  /** Pre-warm the default cache, using a (daemon) thread of its own. */
+  public SigningKeyPrewarmer() {
+    this(
+        SigningKeyCache.getDefault(),
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "sinch-signing-key-prewarmer");
+              thread.setDaemon(true);
+              return thread;
+            }),
+        true,
+        Clock.systemUTC(),
+        DEFAULT_LEAD_TIME);
+  }
+
+  /**
+   * @param cache The cache to pre-warm.
+   * @param scheduler Used to schedule pre-warming. (Not shut down by {@link #close()}.)
+   * @param clock Time source.
+   * @param leadTime How long before midnight UTC the next day's keys are derived.
+   */
+  public SigningKeyPrewarmer(
+      SigningKeyCache cache, ScheduledExecutorService scheduler, Clock clock, Duration leadTime) {
+    this(cache, scheduler, false, clock, leadTime);
+  }
+
+  private SigningKeyPrewarmer(
+      SigningKeyCache cache,
+      ScheduledExecutorService scheduler,
+      boolean ownsScheduler,
+      Clock clock,
+      Duration leadTime) {
+    if (null == cache) throw new IllegalArgumentException("cache");
+    if (null == scheduler) throw new IllegalArgumentException("scheduler");
+    if (null == clock) throw new IllegalArgumentException("clock");
+    if (null == leadTime || leadTime.isNegative() || leadTime.compareTo(Duration.ofHours(12)) > 0)
+      throw new IllegalArgumentException("leadTime");
+
+    this.cache = cache;
+    this.scheduler = scheduler;
+    this.ownsScheduler = ownsScheduler;
+    this.clock = clock;
+    this.leadTime = leadTime;
+  }
+
+  /** Start pre-warming. If called within the lead time before midnight, pre-warms right away. */
+  public synchronized void start() {
+    if (closed) throw new IllegalStateException("closed");
+    if (next == null) scheduleNextDay();
+  }
+
+  /**
+   * Derive the next day's (UTC) signing keys now.
+   *
+   * @return The number of keys that were derived.
+   */
+  public int prewarmNow() {
+    LocalDate today = clock.instant().atOffset(ZoneOffset.UTC).toLocalDate();
+
+    long skippedBefore = cache.prewarmSkippedCount();
+    long start = System.nanoTime();
+    int derived = cache.prewarm(today, today.plusDays(1));
+
+    lastPrewarmNanos = System.nanoTime() - start;
+    lastPrewarmedKeyCount = derived;
+    lastPrewarmSkippedKeyCount = cache.prewarmSkippedCount() - skippedBefore;
+    return derived;
+  }
+
+  /** Number of keys derived by the most recent pre-warming. */
+  public int lastPrewarmedKeyCount() {
+    return lastPrewarmedKeyCount;
+  }
+
+  /**
+   * Number of keys that the most recent pre-warming did not derive because the cache was full, see
+   * {@link SigningKeyCache#prewarm}.
+   */
+  public long lastPrewarmSkippedKeyCount() {
+    return lastPrewarmSkippedKeyCount;
+  }
+
+  /** Duration of the most recent pre-warming. */
+  public Duration lastPrewarmDuration() {
+    return Duration.ofNanos(lastPrewarmNanos);
+  }
+
+  /**
+   * Number of cache misses in the first minute after the most recent midnight UTC, or -1 if no
+   * rollover has been observed yet.
+   */
+  public long lastRolloverMissCount() {
+    return lastRolloverMissCount;
+  }
+
+  @Override
+  public synchronized void close() {
+    closed = true;
+    if (next != null) next.cancel(false);
+    if (ownsScheduler) scheduler.shutdownNow();
+  }
+
+  // Schedule the pre-warming before the next midnight; the rest of the day's work (recording cache
+  // misses at rollover, and scheduling the next day) is chained from it.
+  private synchronized void scheduleNextDay() {
+    if (closed) return;
+
+    Instant now = clock.instant();
+    Instant midnight =
+        now.atOffset(ZoneOffset.UTC)
+            .toLocalDate()
+            .plusDays(1)
+            .atStartOfDay()
+            .toInstant(ZoneOffset.UTC);
+
+    schedule(midnight.minus(leadTime), () -> prewarm(midnight));
+  }
+
+  private void prewarm(Instant midnight) {
+    try {
+      prewarmNow();
+    } finally {
+      schedule(midnight, this::recordMidnight);
+    }
+  }
+
+  private void recordMidnight() {
+    missCountAtMidnight = cache.missCount();
+    schedule(clock.instant().plus(ROLLOVER_WINDOW), this::recordRollover);
+  }
+
+  private void recordRollover() {
+    lastRolloverMissCount = cache.missCount() - missCountAtMidnight;
+    scheduleNextDay();
+  }
+
+  private synchronized void schedule(Instant at, Runnable task) {
+    if (closed) return;
+
+    long delayMillis = Math.max(0, Duration.between(clock.instant(), at).toMillis());
+    next = scheduler.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+  }
+}
@@ -0,0 +1,51 @@
+// Copyright 2020 Sinch AB
+
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+
+// http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.sinch.rtc.examples.metrics;
+
+/**
+ * Emits JDK Flight Recorder events, if supported by the running JDK. (JFR events are classes that
+ * extend jdk.jfr.Event, so they are built separately, from src/jfr/java with JDK 11 or later, and
+ * loaded reflectively: this package itself builds and runs with Java 8.)
+ */
+final class FlightRecorderEvents {
+
+  /** Emits the events; implemented in src/jfr/java. */
+  interface Sink {
+    void slowCredentialsResolution(String applicationKey, long nanos);
+  }
+
+  private static final Sink SINK = load();
+
+  private FlightRecorderEvents() {}
+
+  static void slowCredentialsResolution(String applicationKey, long nanos) {
+    if (SINK != null) SINK.slowCredentialsResolution(applicationKey, nanos);
+  }
+
+  private static Sink load() {
+    ClassLoader loader = FlightRecorderEvents.class.getClassLoader();
+    try {
+      Class.forName("jdk.jfr.Event", false, loader);
+      return (Sink)
+          Class.forName(
+                  FlightRecorderEvents.class.getPackage().getName() + ".JfrEventSink", true, loader)
+              .getDeclaredConstructor()
+              .newInstance();
+    } catch (ReflectiveOperationException | LinkageError | ClassCastException e) {
+      // No JFR, or the events were not built (e.g. with JDK 8).
+      return null;
+    }
+  }
+}
@@ -0,0 +1,184 @@
+// Copyright 2020 Sinch AB
+
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+
+// http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.sinch.rtc.examples.metrics;
+
+import com.sinch.rtc.examples.hms.TokenValidationResult.FailureReason;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link TokenMetrics} that keeps its measurements in memory, for export to your monitoring
+ * system:
+ *
+ * <ul>
+ *   <li>A latency histogram per {@link TokenMetrics.Phase phase}.
+ *   <li>Counts of valid tokens, and of rejected tokens by reason.
+ *   <li>Counts of validated and issued tokens per Sinch Application Key (for rates, sample the
+ *       counts periodically). The number of keys that are counted separately is bounded; tokens of
+ *       other keys are counted as {@link #OTHER_APPLICATION_KEYS}. A key is only given a count of
+ *       its own once a token with a verified signature has been seen for it, so that a flood of
+ *       tokens with made-up keys (which are rejected before, or at, signature verification) can not
+ *       use up the bound.
+ * </ul>
+ *
+ * <p>Lookups of Sinch Application Secrets that take longer than a threshold are emitted as JDK
+ * Flight Recorder events (<code>com.sinch.rtc.SlowCredentialsResolution</code>), if the running JDK
+ * supports JFR.
+ */
+public class RecordingTokenMetrics implements TokenMetrics {
+
+  public static final int DEFAULT_MAXIMUM_APPLICATION_KEYS = 1000;
+  public static final Duration DEFAULT_SLOW_RESOLUTION_THRESHOLD = Duration.ofMillis(50);
+
+  /** The key under which tokens of keys beyond the maximum number of keys are counted. */
+  public static final String OTHER_APPLICATION_KEYS = "(other)";
+
+  private final int maximumApplicationKeys;
+  private final long slowResolutionNanos;
+
+  private final LatencyHistogram[] histograms = new LatencyHistogram[Phase.values().length];
+  private final LongAdder[] rejections = new LongAdder[FailureReason.values().length];
+  private final LongAdder valid = new LongAdder();
+  private final LongAdder issued = new LongAdder();
+  private final LongAdder slowResolutions = new LongAdder();
+
+  private final Map<String, LongAdder> validationsByKey =
+      new ConcurrentHashMap<String, LongAdder>();
+  private final Map<String, LongAdder> issuancesByKey = new ConcurrentHashMap<String, LongAdder>();
+
+  public RecordingTokenMetrics() {
+    this(DEFAULT_MAXIMUM_APPLICATION_KEYS, DEFAULT_SLOW_RESOLUTION_THRESHOLD);
+  }
+
+  /**
+   * @param maximumApplicationKeys Maximum number of Sinch Application Keys counted separately.
+   * @param slowResolutionThreshold Lookups of Sinch Application Secrets that take at least this
+   *     long are emitted as JFR events.
+   */
+  public RecordingTokenMetrics(int maximumApplicationKeys, Duration slowResolutionThreshold) {
+    if (maximumApplicationKeys < 0) throw new IllegalArgumentException("maximumApplicationKeys");
+    if (null == slowResolutionThreshold || slowResolutionThreshold.isNegative())
+      throw new IllegalArgumentException("slowResolutionThreshold");
+
+    this.maximumApplicationKeys = maximumApplicationKeys;
+    this.slowResolutionNanos = slowResolutionThreshold.toNanos();
+
+    for (int i = 0; i < histograms.length; i++) histograms[i] = new LatencyHistogram();
+    for (int i = 0; i < rejections.length; i++) rejections[i] = new LongAdder();
+  }
+
+  @Override
+  public void recordPhase(Phase phase, long nanos) {
+    histograms[phase.ordinal()].record(nanos);
+  }
+
+  @Override
+  public void recordCredentialsResolution(String applicationKey, long nanos) {
+    recordPhase(Phase.RESOLVE_CREDENTIALS, nanos);
+
+    if (nanos >= slowResolutionNanos) {
+      slowResolutions.increment();
+      FlightRecorderEvents.slowCredentialsResolution(applicationKey, nanos);
+    }
+  }
+
+  @Override
+  public void recordValidation(String applicationKey, FailureReason failureReason) {
+    if (failureReason == null) valid.increment();
+    else rejections[failureReason.ordinal()].increment();
+
+    if (applicationKey == null) return;
+
+    LongAdder counter = validationsByKey.get(applicationKey);
+    if (counter != null) counter.increment();
+    else if (signatureVerified(failureReason)) count(validationsByKey, applicationKey);
+    else count(validationsByKey, OTHER_APPLICATION_KEYS);
+  }
+
+  // Whether a token with this validation result has been verified to be signed with the secret of
+  // its Sinch Application Key.
+  private static boolean signatureVerified(FailureReason failureReason) {
+    if (failureReason == null) return true;
+    switch (failureReason) {
+      case EXPIRED:
+      case NOT_YET_VALID:
+      case INVALID_CLAIMS:
+      case REPLAYED:
+      case NONCE_NOT_RECORDED:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  @Override
+  public void recordIssuance(String applicationKey) {
+    issued.increment();
+    count(issuancesByKey, applicationKey);
+  }
+
+  public LatencyHistogram histogram(Phase phase) {
+    return histograms[phase.ordinal()];
+  }
+
+  public long validCount() {
+    return valid.sum();
+  }
+
+  public long rejectionCount(FailureReason reason) {
+    return rejections[reason.ordinal()].sum();
+  }
+
+  public long issuedCount() {
+    return issued.sum();
+  }
+
+  /** Number of lookups of Sinch Application Secrets that took longer than the threshold. */
+  public long slowResolutionCount() {
+    return slowResolutions.sum();
+  }
+
+  /** A snapshot of the number of validated tokens (valid or not) per Sinch Application Key. */
+  public Map<String, Long> validationsByApplicationKey() {
+    return snapshot(validationsByKey);
+  }
+
+  /** A snapshot of the number of issued tokens per Sinch Application Key. */
+  public Map<String, Long> issuancesByApplicationKey() {
+    return snapshot(issuancesByKey);
+  }
+
+  private void count(Map<String, LongAdder> counts, String applicationKey) {
+    LongAdder counter = counts.get(applicationKey);
+    if (counter == null) {
+      // Bounded cardinality (not counting OTHER_APPLICATION_KEYS itself): the size check is racy,
+      // so the bound may be exceeded slightly.
+      int size = counts.size() - (counts.containsKey(OTHER_APPLICATION_KEYS) ? 1 : 0);
+      String key = size < maximumApplicationKeys ? applicationKey : OTHER_APPLICATION_KEYS;
+      counter = counts.computeIfAbsent(key, k -> new LongAdder());
+    }
+    counter.increment();
+  }
+
+  private static Map<String, Long> snapshot(Map<String, LongAdder> counts) {
+    Map<String, Long> snapshot = new HashMap<String, Long>();
+    for (Map.Entry<String, LongAdder> entry : counts.entrySet())
+      snapshot.put(entry.getKey(), entry.getValue().sum());
+    return snapshot;
+  }
+}
@@ -0,0 +1,103 @@
+// Copyright 2020 Sinch AB
+
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+
+// http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.sinch.rtc.examples.metrics;
+
+import com.sinch.rtc.examples.hms.TokenValidationResult.FailureReason;
+
+/**
+ * Instrumentation of token issuance and validation. Install an implementation (e.g. {@link
+ * RecordingTokenMetrics}, or an adapter to your metrics library) with {@link #install}.
+ *
+ * <p>By default, a no-op implementation is installed, in which case no measurements are taken at
+ * all (not even reading the clock).
+ *
+ * <p>Implementations must be thread-safe, and should be cheap, as they are called on the hot paths
+ * of issuance and validation.
+ */
+public interface TokenMetrics {
+
+  /** The phases of token issuance and validation that are timed. */
+  enum Phase {
+    /** Validation: checking the structure and header of a token. */
+    PARSE,
+    /** Validation: looking up a Sinch Application Secret. */
+    RESOLVE_CREDENTIALS,
+    /**
+     * Issuance, and validation of batches of tokens: getting (usually from a cache) or deriving a
+     * signing key.
+     */
+    DERIVE_KEY,
+    /**
+     * Validation: computing and comparing the signature, for the signing key of each candidate
+     * secret (for single tokens, including getting or deriving the signing keys).
+     */
+    VERIFY_SIGNATURE,
+    /** Validation: decoding the payload, and checking the claims. */
+    CHECK_CLAIMS,
+    /** Issuance: encoding and signing a token. */
+    SIGN
+  }
+
+  /** Takes no measurements. */
+  TokenMetrics NOOP =
+      new TokenMetrics() {
+        @Override
+        public boolean isEnabled() {
+          return false;
+        }
+      };
+
+  /** The installed implementation. */
+  static TokenMetrics get() {
+    return InstalledTokenMetrics.metrics;
+  }
+
+  /**
+   * Install an implementation, process-wide.
+   *
+   * @param metrics May be <code>null</code>, to disable instrumentation.
+   */
+  static void install(TokenMetrics metrics) {
+    InstalledTokenMetrics.metrics = metrics != null ? metrics : NOOP;
+  }
+
+  /** If <code>false</code>, no measurements are taken, and none of the methods are called. */
+  default boolean isEnabled() {
+    return true;
+  }
+
+  /** The time spent in a phase of issuing or validating a token. */
+  default void recordPhase(Phase phase, long nanos) {}
+
+  /**
+   * The time spent looking up a Sinch Application Secret. (Also recorded as phase {@link
+   * Phase#RESOLVE_CREDENTIALS}.)
+   */
+  default void recordCredentialsResolution(String applicationKey, long nanos) {
+    recordPhase(Phase.RESOLVE_CREDENTIALS, nanos);
+  }
+
+  /**
+   * A token has been validated.
+   *
+   * @param applicationKey The Sinch Application Key of the token, or <code>null</code> if the token
+   *     was rejected before it was known.
+   * @param failureReason Why the token was rejected, or <code>null</code> if it is valid.
+   */
+  default void recordValidation(String applicationKey, FailureReason failureReason) {}
+
+  /** A token has been issued. */
+  default void recordIssuance(String applicationKey) {}
+}
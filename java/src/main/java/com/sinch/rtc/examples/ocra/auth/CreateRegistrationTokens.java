@@ -0,0 +1,472 @@
+// Copyright 2020 Sinch AB
+
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+
+// http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.sinch.rtc.examples.ocra.auth;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * A command line tool that issues <i>User</i> registration tokens, with the same options and output
+ * as <code>python/create-registration-token.py</code>, either for a single user (<code>--user-id
+ * </code>) or in bulk, for every user in a file (<code>--input</code>), e.g. when onboarding all
+ * users of an application.
+ *
+ * <p>In bulk, tokens are issued by a pipeline: the input file (one user ID per line, in UTF-8) is
+ * read through memory-mapped regions, in batches of user IDs, which are issued by a pool of worker
+ * threads and written in one write per batch, in the order of the input. The queues between the
+ * stages are bounded, so that reading is held back when issuing or writing falls behind, and memory
+ * use does not depend on the size of the input. The number of tokens issued per second is reported
+ * on standard error.
+ *
+ * <p>Output (to a file, or to standard output) is in one of the formats:
+ *
+ * <ul>
+ *   <li><code>jwt</code> (default): one token per line, i.e. the same as running the Python script
+ *       once per user. Given the same <code>--now</code> and <code>--nonce</code>, the output is
+ *       identical to the script's for user IDs in printable ASCII. (Other characters are escaped
+ *       differently in the JSON of the token, see {@link UserRegistrationToken}, but both tokens
+ *       are valid.)
+ *   <li><code>jsonl</code>: one JSON object per line, with members <code>user_id</code> and <code>
+ *       token</code>.
+ *   <li><code>csv</code>: a header line, and then one line per user, with columns <code>user_id
+ *       </code> and <code>token</code>.
+ * </ul>
+ *
+ * <p>Unless a nonce is given with <code>--nonce</code> (which is meant for tests), a random nonce
+ * is generated per token (see {@link NonceGenerator}).
+ */
+public final class CreateRegistrationTokens {
+
+  static final String USAGE =
+      "Usage: CreateRegistrationTokens --application-key KEY --application-secret SECRET\n"
+          + "           (--user-id USER_ID | --input FILE) [--output FILE]\n"
+          + "           [--format jwt|jsonl|csv] [--nonce NONCE] [--now yyyyMMddTHHmmssZ]\n"
+          + "           [--token-ttl SECONDS] [--threads N]";
+
+  private static final List<String> OPTIONS =
+      Arrays.asList(
+          "--application-key",
+          "--application-secret",
+          "--user-id",
+          "--input",
+          "--output",
+          "--format",
+          "--nonce",
+          "--now",
+          "--token-ttl",
+          "--threads");
+
+  static final DateTimeFormatter NOW_FORMAT =
+      DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'", Locale.ROOT);
+
+  // User IDs are issued, and tokens written, in batches of this many.
+  static final int BATCH_SIZE = 1024;
+
+  // Maximum size of a mapped region of the input file. Lines must be shorter than this.
+  static final int MAX_REGION_SIZE = 64 << 20;
+
+  enum Format {
+    JWT,
+    JSONL,
+    CSV
+  }
+
+  private final UserRegistrationTokenIssuer issuer;
+  private final String nonce;
+  private final Format format;
+
+  private CreateRegistrationTokens(
+      UserRegistrationTokenIssuer issuer, String nonce, Format format) {
+    this.issuer = issuer;
+    this.nonce = nonce;
+    this.format = format;
+  }
+
+  public static void main(String[] args) throws Exception {
+    System.exit(run(args, System.out, System.err));
+  }
+
+  /**
+   * Run the tool.
+   *
+   * @return The exit status: 0 on success, 1 if tokens could not be issued or written, and 2 if the
+   *     options are not valid.
+   */
+  static int run(String[] args, OutputStream out, PrintStream err)
+      throws IOException, InterruptedException {
+    final Map<String, String> options = new HashMap<String, String>();
+    for (int i = 0; i < args.length; i++) {
+      String name = args[i];
+      String value;
+      int equals = name.indexOf('=');
+      if (equals > 0) {
+        value = name.substring(equals + 1);
+        name = name.substring(0, equals);
+      } else if (i + 1 < args.length) {
+        value = args[++i];
+      } else {
+        return usage(err, "Missing value of " + name);
+      }
+      if (!OPTIONS.contains(name)) return usage(err, "Unknown option: " + name);
+      options.put(name, value);
+    }
+
+    final String applicationKey = options.get("--application-key");
+    final String applicationSecret = options.get("--application-secret");
+    final String userId = options.get("--user-id");
+    final String input = options.get("--input");
+    if (applicationKey == null || applicationSecret == null)
+      return usage(err, "--application-key and --application-secret are required");
+    if ((userId == null) == (input == null))
+      return usage(err, "Exactly one of --user-id and --input is required");
+
+    final OffsetDateTime now;
+    final long tokenTtl;
+    final int threads;
+    final Format format;
+    try {
+      now =
+          options.containsKey("--now")
+              ? LocalDateTime.parse(options.get("--now"), NOW_FORMAT).atOffset(ZoneOffset.UTC)
+              : OffsetDateTime.now(ZoneOffset.UTC).truncatedTo(ChronoUnit.SECONDS);
+      tokenTtl = Long.parseLong(options.getOrDefault("--token-ttl", "600"));
+      threads =
+          Integer.parseInt(
+              options.getOrDefault(
+                  "--threads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+      format = Format.valueOf(options.getOrDefault("--format", "jwt").toUpperCase(Locale.ROOT));
+    } catch (DateTimeParseException | IllegalArgumentException e) {
+      return usage(err, "Invalid option value: " + e.getMessage());
+    }
+    if (threads < 1) return usage(err, "--threads must be at least 1");
+
+    final UserRegistrationTokenIssuer issuer;
+    try {
+      issuer =
+          new UserRegistrationTokenIssuer(
+              applicationKey, applicationSecret, now, now.plusSeconds(tokenTtl));
+    } catch (IllegalArgumentException e) {
+      return usage(err, "Invalid --application-secret");
+    }
+
+    CreateRegistrationTokens tool =
+        new CreateRegistrationTokens(issuer, options.get("--nonce"), format);
+
+    final String output = options.get("--output");
+    try (WritableByteChannel channel =
+        output != null
+            ? FileChannel.open(
+                Paths.get(output),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)
+            : Channels.newChannel(new UnclosableOutputStream(out))) {
+
+      if (format == Format.CSV)
+        write(channel, ByteBuffer.wrap("user_id,token\r\n".getBytes(StandardCharsets.US_ASCII)));
+
+      if (userId != null) {
+        Batch batch = new Batch();
+        batch.userIds[batch.size++] = userId;
+        write(channel, tool.format(batch, new StringBuilder()));
+        return 0;
+      }
+
+      final long start = System.nanoTime();
+      final long count = tool.issueAll(Paths.get(input), channel, threads);
+      final double seconds = (System.nanoTime() - start) / 1e9;
+      err.printf(
+          Locale.ROOT,
+          "Issued %d tokens in %.2f s (%.0f tokens/s)%n",
+          count,
+          seconds,
+          count / Math.max(seconds, 1e-9));
+      return 0;
+    } catch (IOException e) {
+      err.println("Failed: " + e);
+      return 1;
+    } finally {
+      out.flush();
+    }
+  }
+
+  private static int usage(PrintStream err, String message) {
+    err.println(message);
+    err.println(USAGE);
+    return 2;
+  }
+
+  /** A batch of user IDs, and (once issued) their tokens, formatted. */
+  private static final class Batch {
+    final String[] userIds = new String[BATCH_SIZE];
+    int size;
+    ByteBuffer output;
+    Throwable failure;
+    final CountDownLatch done = new CountDownLatch(1);
+  }
+
+  // Marks the end of the input, in both queues.
+  private static final Batch END = new Batch();
+
+  /**
+   * Issue a token per user ID in a file, and write them to a channel, in the order of the file.
+   *
+   * @return The number of tokens issued.
+   */
+  long issueAll(final Path input, WritableByteChannel output, final int threads)
+      throws IOException, InterruptedException {
+    // Batches are queued for the workers (to be issued), and for the writer (in order).
+    final BlockingQueue<Batch> work = new ArrayBlockingQueue<Batch>(2 * threads);
+    final BlockingQueue<Batch> ordered = new ArrayBlockingQueue<Batch>(4 * threads);
+
+    final List<Thread> pipeline = new ArrayList<Thread>();
+    pipeline.add(new Thread(() -> read(input, work, ordered, threads), "token-reader"));
+    for (int i = 0; i < threads; i++)
+      pipeline.add(new Thread(() -> issue(work), "token-issuer-" + i));
+
+    for (Thread thread : pipeline) {
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    long count = 0;
+    try {
+      for (Batch batch = ordered.take(); batch != END; batch = ordered.take()) {
+        batch.done.await();
+        if (batch.failure instanceof IOException) throw (IOException) batch.failure;
+        if (batch.failure instanceof RuntimeException) throw (RuntimeException) batch.failure;
+        if (batch.failure != null) throw (Error) batch.failure;
+
+        write(output, batch.output);
+        count += batch.size;
+      }
+    } finally {
+      // On failure, stop the other stages, wherever they are blocked.
+      for (Thread thread : pipeline) thread.interrupt();
+    }
+    return count;
+  }
+
+  private void read(
+      Path input, BlockingQueue<Batch> work, BlockingQueue<Batch> ordered, int threads) {
+    try {
+      try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+        final long size = channel.size();
+        byte[] line = new byte[256];
+        Batch batch = new Batch();
+
+        long position = 0;
+        while (position < size) {
+          final int regionSize = (int) Math.min(MAX_REGION_SIZE, size - position);
+          final boolean last = position + regionSize == size;
+          MappedByteBuffer region =
+              channel.map(FileChannel.MapMode.READ_ONLY, position, regionSize);
+
+          int start = 0;
+          for (int i = 0; i < regionSize; i++) {
+            if (region.get(i) != '\n') continue;
+
+            line = add(batch, region, start, i, line);
+            start = i + 1;
+            if (batch.size == BATCH_SIZE) {
+              submit(batch, work, ordered);
+              batch = new Batch();
+            }
+          }
+
+          if (last) {
+            // The last line may not end with a line break.
+            line = add(batch, region, start, regionSize, line);
+            position = size;
+          } else if (start == 0) {
+            throw new IOException(input + ": line too long at byte " + position);
+          } else {
+            // Map the next region from the start of the line that was cut off.
+            position += start;
+          }
+        }
+
+        if (batch.size > 0) submit(batch, work, ordered);
+      }
+    } catch (IOException | RuntimeException e) {
+      Batch failed = new Batch();
+      failed.failure = e;
+      failed.done.countDown();
+      try {
+        ordered.put(failed);
+      } catch (InterruptedException interrupted) {
+        return;
+      }
+    } catch (InterruptedException e) {
+      return;
+    }
+
+    try {
+      ordered.put(END);
+      for (int i = 0; i < threads; i++) work.put(END);
+    } catch (InterruptedException e) {
+      // Stopped by the writer.
+    }
+  }
+
+  // Add the user ID in a line (without line break, and ignoring blank lines) to a batch.
+  private static byte[] add(Batch batch, ByteBuffer region, int start, int end, byte[] line) {
+    if (end > start && region.get(end - 1) == '\r') end--;
+    if (end == start) return line;
+
+    final int length = end - start;
+    if (line.length < length) line = new byte[Math.max(length, 2 * line.length)];
+    for (int i = 0; i < length; i++) line[i] = region.get(start + i);
+
+    batch.userIds[batch.size++] = new String(line, 0, length, StandardCharsets.UTF_8);
+    return line;
+  }
+
+  private static void submit(Batch batch, BlockingQueue<Batch> work, BlockingQueue<Batch> ordered)
+      throws InterruptedException {
+    // The writer gets the batch first, so that batches are written in the order they are read.
+    ordered.put(batch);
+    work.put(batch);
+  }
+
+  private void issue(BlockingQueue<Batch> work) {
+    final StringBuilder text = new StringBuilder(BATCH_SIZE * 512);
+    try {
+      for (Batch batch = work.take(); batch != END; batch = work.take()) {
+        try {
+          batch.output = format(batch, text);
+        } catch (RuntimeException | Error e) {
+          batch.failure = e;
+        } finally {
+          batch.done.countDown();
+        }
+      }
+    } catch (InterruptedException e) {
+      // Stopped by the writer.
+    }
+  }
+
+  // Issue the tokens of a batch, and format them.
+  private ByteBuffer format(Batch batch, StringBuilder text) {
+    text.setLength(0);
+
+    for (int i = 0; i < batch.size; i++) {
+      final String userId = batch.userIds[i];
+      final String token =
+          issuer.issue(
+              nonce != null
+                  ? new UserRegistrationTokenIssuer.Entry(userId, nonce)
+                  : new UserRegistrationTokenIssuer.Entry(userId));
+
+      switch (format) {
+        case JSONL:
+          appendJsonString(text.append("{\"user_id\":"), userId)
+              .append(",\"token\":\"")
+              .append(token)
+              .append("\"}\n");
+          break;
+        case CSV:
+          appendCsvField(text, userId).append(',').append(token).append("\r\n");
+          break;
+        default:
+          text.append(token).append('\n');
+      }
+    }
+
+    return ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static void write(WritableByteChannel channel, ByteBuffer bytes) throws IOException {
+    while (bytes.hasRemaining()) channel.write(bytes);
+  }
+
+  private static StringBuilder appendJsonString(StringBuilder json, String s) {
+    json.append('"');
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c == '"' || c == '\\') json.append('\\').append(c);
+      else if (c < 0x20) json.append(String.format("\\u%04x", (int) c));
+      else json.append(c);
+    }
+    return json.append('"');
+  }
+
+  // RFC 4180: fields with commas, quotes or line breaks are quoted, with quotes doubled.
+  private static StringBuilder appendCsvField(StringBuilder csv, String s) {
+    boolean quoted = false;
+    for (int i = 0; i < s.length() && !quoted; i++) {
+      char c = s.charAt(i);
+      quoted = c == ',' || c == '"' || c == '\r' || c == '\n';
+    }
+    if (!quoted) return csv.append(s);
+
+    csv.append('"');
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c == '"') csv.append('"');
+      csv.append(c);
+    }
+    return csv.append('"');
+  }
+
+  // Standard output is flushed, but not closed, when the output channel is closed.
+  private static final class UnclosableOutputStream extends OutputStream {
+    private final OutputStream out;
+
+    UnclosableOutputStream(OutputStream out) {
+      this.out = out;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+    }
+
+    @Override
+    public void close() throws IOException {
+      out.flush();
+    }
+  }
+}
@@ -0,0 +1,112 @@
+// Copyright 2020 Sinch AB
+
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+
+// http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.sinch.rtc.examples.ocra.auth;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+/**
+ * Generates nonces for <i>User</i> registration tokens: random (version 4) UUIDs, in their
+ * canonical string form, like <code>UUID.randomUUID().toString()</code>.
+ *
+ * <p><code>UUID.randomUUID()</code> draws from a single, shared <code>SecureRandom</code>, which is
+ * a point of contention when tokens are issued concurrently from many threads. Instead, each thread
+ * gets its own generator (see {@link #nextNonce()}), with its own DRBG (<code>DRBG</code> on Java
+ * 9+, else <code>SHA1PRNG</code>) seeded from the system source. Random bytes are drawn in blocks,
+ * and formatted straight into the characters of the nonce.
+ *
+ * <p>A generator is <i>not</i> thread-safe, and it should not be passed between threads.
+ */
+public final class NonceGenerator {
+
+  private static final ThreadLocal<NonceGenerator> GENERATORS =
+      ThreadLocal.withInitial(() -> new NonceGenerator());
+
+  // Shared, and used only to seed the per-thread generators.
+  private static final SecureRandom SEED_SOURCE = new SecureRandom();
+
+  private static final int SEED_LENGTH = 32;
+  private static final int NONCE_BYTES = 16;
+  private static final int BLOCK_NONCES = 16;
+
+  // With SHA1PRNG (which, unlike DRBG, does not reseed itself), fresh entropy is mixed in after
+  // this many blocks.
+  private static final int RESEED_INTERVAL_BLOCKS = 1 << 16;
+
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private final SecureRandom random;
+  private final boolean reseeds;
+  private final byte[] block = new byte[NONCE_BYTES * BLOCK_NONCES];
+  private final char[] chars = new char[36];
+  private int next = block.length;
+  private int blocks;
+
+  private NonceGenerator() {
+    SecureRandom drbg = newInstance("DRBG");
+    this.reseeds = drbg == null;
+    this.random = drbg != null ? drbg : newInstance("SHA1PRNG");
+
+    // Seeding before first use replaces (rather than supplements) the self-seeding of SHA1PRNG.
+    random.setSeed(seed());
+  }
+
+  /** A new nonce, from the generator of the calling thread. */
+  public static String nextNonce() {
+    return GENERATORS.get().next();
+  }
+
+  /** A new nonce. */
+  public String next() {
+    if (next == block.length) {
+      if (reseeds && ++blocks % RESEED_INTERVAL_BLOCKS == 0) random.setSeed(seed());
+      random.nextBytes(block);
+      next = 0;
+    }
+
+    final byte[] b = block;
+    final int offset = next;
+    next += NONCE_BYTES;
+
+    // Version 4 (random), variant 1 (RFC 4122).
+    b[offset + 6] = (byte) ((b[offset + 6] & 0x0f) | 0x40);
+    b[offset + 8] = (byte) ((b[offset + 8] & 0x3f) | 0x80);
+
+    int c = 0;
+    for (int i = 0; i < NONCE_BYTES; i++) {
+      if (i == 4 || i == 6 || i == 8 || i == 10) chars[c++] = '-';
+      chars[c++] = HEX[(b[offset + i] >>> 4) & 0xf];
+      chars[c++] = HEX[b[offset + i] & 0xf];
+    }
+    return new String(chars);
+  }
+
+  private static byte[] seed() {
+    byte[] seed = new byte[SEED_LENGTH];
+    synchronized (SEED_SOURCE) {
+      SEED_SOURCE.nextBytes(seed);
+    }
+    return seed;
+  }
+
+  private static SecureRandom newInstance(String algorithm) {
+    try {
+      return SecureRandom.getInstance(algorithm);
+    } catch (NoSuchAlgorithmException e) {
+      if ("DRBG".equals(algorithm)) return null;
+      throw new RuntimeException(e);
+    }
+  }
+}
@@ -14,16 +14,14 @@
 
 package com.sinch.rtc.examples.ocra.auth;
 
+import com.sinch.rtc.examples.jwt.CompactJwsEncoder;
 import com.sinch.rtc.examples.jwt.JwtSigningKey;
-import io.jsonwebtoken.JwtBuilder;
-import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.SignatureAlgorithm;
-import io.jsonwebtoken.security.Keys;
+import com.sinch.rtc.examples.jwt.SigningKeyCache;
+import com.sinch.rtc.examples.metrics.TokenMetrics;
+import com.sinch.rtc.examples.metrics.TokenMetrics.Phase;
+import java.security.Key;
 import java.time.OffsetDateTime;
 import java.util.Base64;
-import java.util.Map;
-import java.util.TreeMap;
-import javax.crypto.SecretKey;
 
 /**
  * This class can be used to construct and sign a token (in the form of a <a
@@ -38,6 +36,8 @@ import javax.crypto.SecretKey;
  */
 public class UserRegistrationToken {
 
+  private static volatile EncodedHeader lastHeader;
+
   private String applicationKey;
   private byte[] applicationSecret;
   private String userId;
@@ -72,16 +72,44 @@ public class UserRegistrationToken {
       OffsetDateTime issuedAt,
       OffsetDateTime expiresAt,
       OffsetDateTime instanceExpiresAt) {
+    this(
+        applicationKey,
+        decode(applicationSecret),
+        userId,
+        nonce,
+        issuedAt,
+        expiresAt,
+        instanceExpiresAt);
+  }
+
+  /**
+   * Construct a User registration token, with a decoded <i>Sinch Application Secret</i>, e.g. as
+   * resolved by {@link
+   * com.sinch.rtc.examples.hms.SinchApplicationCredentialsResolver#resolveSinchApplicationSecretBytes}.
+   *
+   * @param applicationSecret <i>Sinch Application Secret</i> (decoded, i.e. raw bytes). The array
+   *     is copied.
+   * @see #UserRegistrationToken(String, String, String, String, OffsetDateTime, OffsetDateTime,
+   *     OffsetDateTime)
+   */
+  public UserRegistrationToken(
+      String applicationKey,
+      byte[] applicationSecret,
+      String userId,
+      String nonce,
+      OffsetDateTime issuedAt,
+      OffsetDateTime expiresAt,
+      OffsetDateTime instanceExpiresAt) {
     if (null == applicationKey) throw new IllegalArgumentException("applicationKey");
     if (null == applicationSecret) throw new IllegalArgumentException("applicationSecret");
-    if (applicationSecret.length() < 1) throw new IllegalArgumentException("applicationSecret");
+    if (applicationSecret.length < 1) throw new IllegalArgumentException("applicationSecret");
     if (null == userId) throw new IllegalArgumentException("userId");
     if (null == nonce) throw new IllegalArgumentException("nonce");
     if (null == issuedAt) throw new IllegalArgumentException("issuedAt");
     if (null == expiresAt) throw new IllegalArgumentException("expiresAt");
 
     this.applicationKey = applicationKey;
-    this.applicationSecret = Base64.getDecoder().decode(applicationSecret);
+    this.applicationSecret = applicationSecret.clone();
     this.userId = userId;
     this.nonce = nonce;
     this.issuedAt = issuedAt;
@@ -99,41 +127,155 @@ public class UserRegistrationToken {
     this(applicationKey, applicationSecret, userId, nonce, issuedAt, expiresAt, null);
   }
 
+  /**
+   * Construct a User registration token, with a generated nonce (see {@link NonceGenerator}).
+   *
+   * @see #UserRegistrationToken(String, String, String, String, OffsetDateTime, OffsetDateTime,
+   *     OffsetDateTime)
+   */
+  public UserRegistrationToken(
+      String applicationKey,
+      String applicationSecret,
+      String userId,
+      OffsetDateTime issuedAt,
+      OffsetDateTime expiresAt,
+      OffsetDateTime instanceExpiresAt) {
+    this(
+        applicationKey,
+        applicationSecret,
+        userId,
+        NonceGenerator.nextNonce(),
+        issuedAt,
+        expiresAt,
+        instanceExpiresAt);
+  }
+
+  public UserRegistrationToken(
+      String applicationKey,
+      String applicationSecret,
+      String userId,
+      OffsetDateTime issuedAt,
+      OffsetDateTime expiresAt) {
+    this(applicationKey, applicationSecret, userId, issuedAt, expiresAt, null);
+  }
+
+  /** The JWT claim <i>nonce</i> of the token. */
+  public String getNonce() {
+    return nonce;
+  }
+
   /**
    * Build and sign token and as a JWT.
    *
    * @return A JWT.
    */
   public String toJwt() {
-    // NOTE: The reason a TreeMap is used for the JWT claims here is
-    // that it maintains ordering of its keys, which means it
-    // simplifies comparing the JWT output against expected output in
-    // a deterministic manner. I.e it simplifies expected output in
-    // unit tests and also simplifies comparison of exact output
-    // across different implementations.  Here we also specify header
-    // params `alg`, `typ` and `kid` explicitly to ensure presence and
-    // order (for the same reason of comparision)
-
-    SignatureAlgorithm alg = SignatureAlgorithm.HS256;
-
-    Map<String, Object> claims = new TreeMap<String, Object>();
-    claims.put("iss", "//rtc.sinch.com/applications/" + applicationKey);
-    claims.put("sub", "//rtc.sinch.com/applications/" + applicationKey + "/users/" + userId);
-    claims.put("iat", issuedAt.toEpochSecond());
-    claims.put("exp", expiresAt.toEpochSecond());
-    claims.put("nonce", nonce);
+    final TokenMetrics metrics = TokenMetrics.get();
+    if (!metrics.isEnabled()) {
+      return sign(
+          encodedHeader(issuedAt),
+          SigningKeyCache.getDefault().get(applicationSecret, issuedAt),
+          issuer(applicationKey),
+          subject(applicationKey, userId),
+          nonce,
+          issuedAt.toEpochSecond(),
+          expiresAt.toEpochSecond(),
+          instanceExpiresAt);
+    }
+
+    long start = System.nanoTime();
+    Key signingKey = SigningKeyCache.getDefault().get(applicationSecret, issuedAt);
+    long derived = System.nanoTime();
+    metrics.recordPhase(Phase.DERIVE_KEY, derived - start);
+
+    String jwt =
+        sign(
+            encodedHeader(issuedAt),
+            signingKey,
+            issuer(applicationKey),
+            subject(applicationKey, userId),
+            nonce,
+            issuedAt.toEpochSecond(),
+            expiresAt.toEpochSecond(),
+            instanceExpiresAt);
+
+    metrics.recordPhase(Phase.SIGN, System.nanoTime() - derived);
+    metrics.recordIssuance(applicationKey);
+    return jwt;
+  }
+
+  static String issuer(String applicationKey) {
+    return "//rtc.sinch.com/applications/" + applicationKey;
+  }
+
+  static String subject(String applicationKey, String userId) {
+    return "//rtc.sinch.com/applications/" + applicationKey + "/users/" + userId;
+  }
+
+  static String sign(
+      byte[] encodedHeader,
+      Key signingKey,
+      String issuer,
+      String subject,
+      String nonce,
+      long issuedAt,
+      long expiresAt,
+      OffsetDateTime instanceExpiresAt) {
+    // NOTE: The JWT header and claims are written with their keys in
+    // sorted order, which means it simplifies comparing the JWT
+    // output against expected output in a deterministic manner. I.e
+    // it simplifies expected output in unit tests and also simplifies
+    // comparison of exact output across different implementations.
+    // (The header params `alg` and `kid` happen to be in sorted order
+    // too.)
+    CompactJwsEncoder encoder = CompactJwsEncoder.get().segment(encodedHeader);
+
+    encoder
+        .beginObject()
+        .member("exp", expiresAt)
+        .member("iat", issuedAt)
+        .member("iss", issuer)
+        .member("nonce", nonce);
     if (instanceExpiresAt != null)
-      claims.put("sinch:rtc:instance:exp", instanceExpiresAt.toEpochSecond());
+      encoder.member("sinch:rtc:instance:exp", instanceExpiresAt.toEpochSecond());
+    encoder.member("sub", subject).endObject();
+
+    return encoder.sign(signingKey);
+  }
 
-    JwtBuilder builder =
-        Jwts.builder()
-            .setHeaderParam("alg", alg.getValue())
-            .setHeaderParam("kid", JwtSigningKey.keyId(issuedAt))
-            .setClaims(claims);
+  // The header only depends on the day the token is issued (through `kid`), so the encoded header
+  // for the most recent day is cached.
+  static byte[] encodedHeader(OffsetDateTime issuedAt) {
+    final long day = issuedAt.toLocalDate().toEpochDay();
+
+    EncodedHeader header = lastHeader;
+    if (header == null || header.day != day) {
+      byte[] encoded =
+          CompactJwsEncoder.get()
+              .beginObject()
+              .member("alg", "HS256")
+              .member("kid", JwtSigningKey.keyId(issuedAt))
+              .encodedObject();
+      header = new EncodedHeader(day, encoded);
+      lastHeader = header;
+    }
+
+    return header.encoded;
+  }
+
+  private static byte[] decode(String applicationSecret) {
+    if (null == applicationSecret) throw new IllegalArgumentException("applicationSecret");
+    if (applicationSecret.length() < 1) throw new IllegalArgumentException("applicationSecret");
+    return Base64.getDecoder().decode(applicationSecret);
+  }
 
-    SecretKey signingKey =
-        Keys.hmacShaKeyFor(JwtSigningKey.deriveSigningKey(applicationSecret, issuedAt));
+  private static final class EncodedHeader {
+    final long day;
+    final byte[] encoded;
 
-    return builder.signWith(signingKey, alg).compact();
+    EncodedHeader(long day, byte[] encoded) {
+      this.day = day;
+      this.encoded = encoded;
+    }
   }
 }
@@ -0,0 +1,225 @@
+// Copyright 2020 Sinch AB
+
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+
+// http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.sinch.rtc.examples.ocra.auth;
+
+import com.sinch.rtc.examples.jwt.JwtSigningKey;
+import com.sinch.rtc.examples.metrics.TokenMetrics;
+import com.sinch.rtc.examples.metrics.TokenMetrics.Phase;
+import java.security.Key;
+import java.time.OffsetDateTime;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Issues <i>User</i> registration tokens (see {@link UserRegistrationToken}) in bulk, for one
+ * <i>Sinch Application</i>, e.g. when re-registering all users of an application.
+ *
+ * <p>The application secret is decoded, and the signing key derived, once per issuer, and all
+ * tokens share the same issue and expiry time. The tokens are identical to the ones built by {@link
+ * UserRegistrationToken#toJwt()}.
+ *
+ * <p>Tokens are produced as a stream, or passed to a callback, so that any number of tokens can be
+ * issued without keeping them all in memory.
+ */
+public class UserRegistrationTokenIssuer {
+
+  // Number of tokens that are issued in parallel at a time, when issuing with a ForkJoinPool.
+  static final int CHUNK_SIZE = 1024;
+
+  private static final int SEQUENTIAL_THRESHOLD = 64;
+
+  private final String applicationKey;
+  private final Key signingKey;
+  private final byte[] encodedHeader;
+  private final String issuer;
+  private final long issuedAt;
+  private final long expiresAt;
+
+  /**
+   * @param applicationKey <i>Sinch Application Key</i>
+   * @param applicationSecret <i>Sinch Application Secret</i> (in base64-encoded format)
+   * @param issuedAt Time when the tokens are issued.
+   * @param expiresAt Time after which the tokens should be considered expired.
+   * @see UserRegistrationToken#UserRegistrationToken(String, String, String, String,
+   *     OffsetDateTime, OffsetDateTime, OffsetDateTime)
+   */
+  public UserRegistrationTokenIssuer(
+      String applicationKey,
+      String applicationSecret,
+      OffsetDateTime issuedAt,
+      OffsetDateTime expiresAt) {
+    if (null == applicationKey) throw new IllegalArgumentException("applicationKey");
+    if (null == applicationSecret) throw new IllegalArgumentException("applicationSecret");
+    if (applicationSecret.length() < 1) throw new IllegalArgumentException("applicationSecret");
+    if (null == issuedAt) throw new IllegalArgumentException("issuedAt");
+    if (null == expiresAt) throw new IllegalArgumentException("expiresAt");
+
+    this.applicationKey = applicationKey;
+    this.signingKey =
+        new SecretKeySpec(
+            JwtSigningKey.deriveSigningKey(Base64.getDecoder().decode(applicationSecret), issuedAt),
+            "HmacSHA256");
+    this.encodedHeader = UserRegistrationToken.encodedHeader(issuedAt);
+    this.issuer = UserRegistrationToken.issuer(applicationKey);
+    this.issuedAt = issuedAt.toEpochSecond();
+    this.expiresAt = expiresAt.toEpochSecond();
+  }
+
+  /** A token to issue: the user, and the nonce and instance expiry of the token. */
+  public static final class Entry {
+    private final String userId;
+    private final String nonce;
+    private final OffsetDateTime instanceExpiresAt;
+
+    /**
+     * @param userId User ID
+     * @param nonce Cryptographic nonce. Should be unique per token.
+     * @param instanceExpiresAt Time after which the User/client registration should be considered
+     *     expired. May be <code>null</code>.
+     */
+    public Entry(String userId, String nonce, OffsetDateTime instanceExpiresAt) {
+      if (null == userId) throw new IllegalArgumentException("userId");
+      if (null == nonce) throw new IllegalArgumentException("nonce");
+
+      this.userId = userId;
+      this.nonce = nonce;
+      this.instanceExpiresAt = instanceExpiresAt;
+    }
+
+    public Entry(String userId, String nonce) {
+      this(userId, nonce, null);
+    }
+
+    /** An entry with a generated nonce (see {@link NonceGenerator}). */
+    public Entry(String userId) {
+      this(userId, NonceGenerator.nextNonce(), null);
+    }
+
+    public String getUserId() {
+      return userId;
+    }
+
+    public String getNonce() {
+      return nonce;
+    }
+
+    public OffsetDateTime getInstanceExpiresAt() {
+      return instanceExpiresAt;
+    }
+  }
+
+  /** Build and sign a token, as a JWT. */
+  public String issue(Entry entry) {
+    final TokenMetrics metrics = TokenMetrics.get();
+    final long start = metrics.isEnabled() ? System.nanoTime() : 0;
+
+    String jwt =
+        UserRegistrationToken.sign(
+            encodedHeader,
+            signingKey,
+            issuer,
+            UserRegistrationToken.subject(applicationKey, entry.userId),
+            entry.nonce,
+            issuedAt,
+            expiresAt,
+            entry.instanceExpiresAt);
+
+    if (metrics.isEnabled()) {
+      metrics.recordPhase(Phase.SIGN, System.nanoTime() - start);
+      metrics.recordIssuance(applicationKey);
+    }
+    return jwt;
+  }
+
+  /**
+   * Issue a token per entry, lazily. Tokens are issued in parallel if the stream is parallel.
+   *
+   * @return A stream of JWTs, in the order of the entries.
+   */
+  public Stream<String> issue(Stream<Entry> entries) {
+    return entries.map(this::issue);
+  }
+
+  /**
+   * Issue a token per entry, in the calling thread, passing each token to <code>output</code> as it
+   * is issued.
+   */
+  public void issueAll(Iterator<Entry> entries, BiConsumer<Entry, String> output) {
+    while (entries.hasNext()) {
+      Entry entry = entries.next();
+      output.accept(entry, issue(entry));
+    }
+  }
+
+  /**
+   * Issue a token per entry, in parallel in a ForkJoinPool. Entries are read, and tokens passed to
+   * <code>output</code> (in the calling thread, and in the order of the entries), in chunks, so
+   * that only a chunk of tokens is kept in memory at a time.
+   */
+  public void issueAll(
+      Iterator<Entry> entries, BiConsumer<Entry, String> output, ForkJoinPool pool) {
+    if (null == pool) throw new IllegalArgumentException("pool");
+
+    final Entry[] chunk = new Entry[CHUNK_SIZE];
+    final String[] tokens = new String[CHUNK_SIZE];
+
+    while (entries.hasNext()) {
+      int size = 0;
+      while (size < CHUNK_SIZE && entries.hasNext()) chunk[size++] = entries.next();
+
+      pool.invoke(new IssueAction(chunk, tokens, 0, size));
+
+      for (int i = 0; i < size; i++) {
+        output.accept(chunk[i], tokens[i]);
+        chunk[i] = null;
+        tokens[i] = null;
+      }
+    }
+  }
+
+  private final class IssueAction extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final Entry[] entries;
+    private final String[] tokens;
+    private final int from;
+    private final int to;
+
+    IssueAction(Entry[] entries, String[] tokens, int from, int to) {
+      this.entries = entries;
+      this.tokens = tokens;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from <= SEQUENTIAL_THRESHOLD) {
+        for (int i = from; i < to; i++) tokens[i] = issue(entries[i]);
+        return;
+      }
+
+      int middle = (from + to) >>> 1;
+      invokeAll(
+          new IssueAction(entries, tokens, from, middle),
+          new IssueAction(entries, tokens, middle, to));
+    }
+  }
+}
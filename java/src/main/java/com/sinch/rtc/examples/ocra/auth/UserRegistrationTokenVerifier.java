@@ -0,0 +1,195 @@
+// Copyright 2020 Sinch AB
+
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+
+// http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.sinch.rtc.examples.ocra.auth;
+
+import com.sinch.rtc.examples.hms.SinchApplicationCredentialsResolver;
+import com.sinch.rtc.examples.hms.SinchApplicationSecret;
+import com.sinch.rtc.examples.jwt.CompactJws;
+import com.sinch.rtc.examples.jwt.JsonObjectReader;
+import com.sinch.rtc.examples.jwt.JwtSigningKey;
+import com.sinch.rtc.examples.jwt.SigningKeyCache;
+import com.sinch.rtc.examples.ocra.auth.VerificationResult.FailureReason;
+import java.security.Key;
+import java.time.Clock;
+import java.time.OffsetDateTime;
+import java.util.List;
+
+/**
+ * This class can be used to verify <i>User</i> registration tokens (see {@link
+ * UserRegistrationToken}), e.g. to audit or pre-check tokens in your backend before handing them to
+ * clients.
+ *
+ * <p>A token is valid if:
+ *
+ * <ul>
+ *   <li>it is signed (HS256) with the key derived (see {@link JwtSigningKey}) from the secret of
+ *       the <i>Sinch Application</i> of claim `iss`, for the day of header `kid`,
+ *   <li>claim `sub` is a user of the same application as claim `iss`,
+ *   <li>claims `iat`, `exp` and `nonce` are present, `iat` is not in the future, and `exp` (and, if
+ *       present, `sinch:rtc:instance:exp`) is not in the past.
+ * </ul>
+ *
+ * <p>Like {@link com.sinch.rtc.examples.hms.HmsOAuthFlowTokenValidator}, tokens are rejected
+ * without throwing exceptions, and as early as possible, using per-thread parsers and the shared
+ * {@link SigningKeyCache}. See {@link VerificationResult#getFailureReason()} for why a token has
+ * been rejected.
+ */
+public class UserRegistrationTokenVerifier {
+
+  /** Tokens longer than this are rejected without further processing. */
+  public static final int MAX_TOKEN_LENGTH = 8192;
+
+  private static final String ISSUER_PREFIX = UserRegistrationToken.issuer("");
+  private static final String USERS = "/users/";
+  private static final long SECONDS_PER_DAY = 86400;
+
+  private final SinchApplicationCredentialsResolver credentialsResolver;
+  private final Clock clock;
+
+  public UserRegistrationTokenVerifier(SinchApplicationCredentialsResolver credentialsResolver) {
+    this(credentialsResolver, Clock.systemUTC());
+  }
+
+  /**
+   * Construct a verifier. The verifier is immutable and thread-safe, and is meant to be constructed
+   * once and shared.
+   *
+   * @param credentialsResolver Used to lookup Sinch Application Secrets.
+   * @param clock Time source used to verify JWT claims `iat`, `exp` and `sinch:rtc:instance:exp`.
+   */
+  public UserRegistrationTokenVerifier(
+      SinchApplicationCredentialsResolver credentialsResolver, Clock clock) {
+    if (null == credentialsResolver) throw new IllegalArgumentException("credentialsResolver");
+    if (null == clock) throw new IllegalArgumentException("clock");
+
+    this.credentialsResolver = credentialsResolver;
+    this.clock = clock;
+  }
+
+  public VerificationResult verify(String jwt) {
+    return verify(jwt, clock.millis());
+  }
+
+  /**
+   * @param now Overrides the time source of this verifier for this call. May be <code>null</code>,
+   *     in which case the time source of the verifier is used.
+   */
+  public VerificationResult verify(String jwt, OffsetDateTime now) {
+    return verify(jwt, now != null ? now.toInstant().toEpochMilli() : clock.millis());
+  }
+
+  private VerificationResult verify(String token, long nowMillis) {
+
+    // 1. Check the structure of the JWT, and the JWT header `alg` and `kid`.
+    // 2. Use the (not yet verified) claim `iss` to lookup the Sinch Application Secret, which will
+    // be used to derive a signing key for the day of `kid`.
+    // 3. Verify the JWT signature (in constant time).
+    // 4. Verify the claims.
+
+    if (null == token) return VerificationResult.Invalid(FailureReason.MALFORMED);
+
+    CompactJws jwt = CompactJws.get();
+    if (!jwt.parse(token, MAX_TOKEN_LENGTH))
+      return VerificationResult.Invalid(FailureReason.MALFORMED);
+
+    JsonObjectReader header = jwt.header();
+
+    if (!header.stringEquals("alg", "HS256"))
+      return VerificationResult.Invalid(FailureReason.UNSUPPORTED_ALGORITHM);
+
+    if (header.type("zip") != JsonObjectReader.Type.ABSENT)
+      return VerificationResult.Invalid(FailureReason.MALFORMED);
+
+    final OffsetDateTime keyDay = JwtSigningKey.tryParseIssuedAtFromKeyId(header.getString("kid"));
+    if (keyDay == null) return VerificationResult.Invalid(FailureReason.INVALID_KEY_ID);
+
+    // Unlike client assertions, registration tokens do not carry the application key in the
+    // header, so the payload is read before the signature is verified.
+    if (!jwt.readPayload()) return VerificationResult.Invalid(FailureReason.MALFORMED);
+
+    JsonObjectReader claims = jwt.payload();
+
+    final String issuer = claims.getString("iss");
+    if (issuer == null
+        || !issuer.startsWith(ISSUER_PREFIX)
+        || issuer.length() == ISSUER_PREFIX.length()
+        || issuer.indexOf('/', ISSUER_PREFIX.length()) >= 0)
+      return VerificationResult.Invalid(FailureReason.INVALID_CLAIMS);
+
+    final String applicationKey = issuer.substring(ISSUER_PREFIX.length());
+
+    List<SinchApplicationSecret> applicationSecrets =
+        credentialsResolver.resolveSinchApplicationSecrets(applicationKey);
+    if (applicationSecrets == null || applicationSecrets.isEmpty())
+      return VerificationResult.Invalid(FailureReason.UNKNOWN_APPLICATION_KEY);
+
+    Key signingKey =
+        SinchApplicationSecret.selectSigningKey(applicationSecrets, keyDay, nowMillis, jwt);
+    if (signingKey == null) return VerificationResult.Invalid(FailureReason.INVALID_SIGNATURE);
+
+    // At this point, the JWT signature has been verified.
+
+    final String subject = claims.getString("sub");
+    if (subject == null
+        || !subject.startsWith(issuer)
+        || !subject.startsWith(USERS, issuer.length())
+        || subject.length() == issuer.length() + USERS.length())
+      return VerificationResult.Invalid(FailureReason.INVALID_CLAIMS);
+
+    if (claims.type("iat") != JsonObjectReader.Type.INTEGER
+        || claims.type("exp") != JsonObjectReader.Type.INTEGER
+        || claims.type("nonce") != JsonObjectReader.Type.STRING)
+      return VerificationResult.Invalid(FailureReason.INVALID_CLAIMS);
+
+    final long issuedAt = claims.getLong("iat", 0);
+    final long expiresAt = claims.getLong("exp", 0);
+    if (expiresAt < issuedAt) return VerificationResult.Invalid(FailureReason.INVALID_CLAIMS);
+
+    // The signing key is derived for the day of `kid`, which is the (UTC) day of `iat`, so that a
+    // signing key of one day can not be used to sign tokens that claim to be issued on other days.
+    if (Math.floorDiv(issuedAt, SECONDS_PER_DAY) != keyDay.toLocalDate().toEpochDay())
+      return VerificationResult.Invalid(FailureReason.INVALID_KEY_ID);
+
+    if (nowMillis < toEpochMillis(issuedAt))
+      return VerificationResult.Invalid(FailureReason.NOT_YET_VALID);
+    if (nowMillis > toEpochMillis(expiresAt))
+      return VerificationResult.Invalid(FailureReason.EXPIRED);
+
+    long instanceExpiresAt = 0;
+    switch (claims.type("sinch:rtc:instance:exp")) {
+      case ABSENT:
+        break;
+      case INTEGER:
+        instanceExpiresAt = claims.getLong("sinch:rtc:instance:exp", 0);
+        if (nowMillis > toEpochMillis(instanceExpiresAt))
+          return VerificationResult.Invalid(FailureReason.INSTANCE_EXPIRED);
+        break;
+      default:
+        return VerificationResult.Invalid(FailureReason.INVALID_CLAIMS);
+    }
+
+    return VerificationResult.Valid(
+        applicationKey,
+        subject.substring(issuer.length() + USERS.length()),
+        expiresAt,
+        instanceExpiresAt);
+  }
+
+  private static long toEpochMillis(long epochSeconds) {
+    if (epochSeconds > Long.MAX_VALUE / 1000) return Long.MAX_VALUE;
+    if (epochSeconds < Long.MIN_VALUE / 1000) return Long.MIN_VALUE;
+    return epochSeconds * 1000;
+  }
+}
@@ -0,0 +1,130 @@
+// Copyright 2020 Sinch AB
+
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+
+// http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.sinch.rtc.examples.ocra.auth;
+
+/**
+ * The result of verifying a <i>User</i> registration token, see {@link
+ * UserRegistrationTokenVerifier}.
+ */
+public final class VerificationResult {
+
+  /** The reason why a token is not valid. */
+  public enum FailureReason {
+    /** Token is too large, or is not a well-formed JWS/JWT. */
+    MALFORMED,
+    /** JWT header `alg` is not HS256. */
+    UNSUPPORTED_ALGORITHM,
+    /**
+     * JWT header `kid` is missing, is not of the form hkdfv1-yyyyMMdd, or is not of the (UTC) day
+     * of JWT claim `iat`.
+     */
+    INVALID_KEY_ID,
+    /** The Sinch Application Key of JWT claim `iss` is not a known application key. */
+    UNKNOWN_APPLICATION_KEY,
+    /** JWT signature does not match. */
+    INVALID_SIGNATURE,
+    /** JWT claim `exp` is in the past. */
+    EXPIRED,
+    /** JWT claim `iat` is in the future. */
+    NOT_YET_VALID,
+    /** JWT claim `sinch:rtc:instance:exp` is in the past. */
+    INSTANCE_EXPIRED,
+    /**
+     * JWT claims are not as expected for a User registration token, e.g. `iss` and `sub` are not of
+     * the same application, or `iat`, `exp` or `nonce` is missing.
+     */
+    INVALID_CLAIMS
+  }
+
+  private static final VerificationResult[] INVALID =
+      new VerificationResult[FailureReason.values().length];
+
+  static {
+    for (FailureReason reason : FailureReason.values())
+      INVALID[reason.ordinal()] = new VerificationResult(reason);
+  }
+
+  private final boolean valid;
+  private final FailureReason failureReason;
+  private final String applicationKey;
+  private final String userId;
+  private final long expiresAt;
+  private final long instanceExpiresAt;
+
+  private VerificationResult(
+      String applicationKey, String userId, long expiresAt, long instanceExpiresAt) {
+    this.valid = true;
+    this.failureReason = null;
+    this.applicationKey = applicationKey;
+    this.userId = userId;
+    this.expiresAt = expiresAt;
+    this.instanceExpiresAt = instanceExpiresAt;
+  }
+
+  private VerificationResult(FailureReason failureReason) {
+    this.valid = false;
+    this.failureReason = failureReason;
+    this.applicationKey = null;
+    this.userId = null;
+    this.expiresAt = 0;
+    this.instanceExpiresAt = 0;
+  }
+
+  public boolean isValid() {
+    return valid;
+  }
+
+  /**
+   * @return Why the token is not valid, or <code>null</code> if the token is valid.
+   */
+  public FailureReason getFailureReason() {
+    return failureReason;
+  }
+
+  public String getSinchApplicationKey() {
+    return applicationKey;
+  }
+
+  public String getUserId() {
+    return userId;
+  }
+
+  /** JWT claim `exp`, in seconds since the epoch. */
+  public long getExpiresAt() {
+    return expiresAt;
+  }
+
+  /** JWT claim `sinch:rtc:instance:exp`, in seconds since the epoch, or 0 if absent. */
+  public long getInstanceExpiresAt() {
+    return instanceExpiresAt;
+  }
+
+  @Override
+  public String toString() {
+    return valid
+        ? "Valid(" + applicationKey + ", " + userId + ")"
+        : "Invalid(" + failureReason + ")";
+  }
+
+  static VerificationResult Valid(
+      String applicationKey, String userId, long expiresAt, long instanceExpiresAt) {
+    return new VerificationResult(applicationKey, userId, expiresAt, instanceExpiresAt);
+  }
+
+  /** Invalid results are shared (per reason), so rejecting a token does not allocate. */
+  static VerificationResult Invalid(FailureReason reason) {
+    return INVALID[reason.ordinal()];
+  }
+}
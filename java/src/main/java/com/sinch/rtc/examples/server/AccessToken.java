@@ -0,0 +1,44 @@
+// Copyright 2020 Sinch AB
+
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+
+// http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.sinch.rtc.examples.server;
+
+import java.time.Instant;
+
+/** An OAuth 2.0 access token, as returned by {@link HmsOAuthTokenEndpoint}. */
+public final class AccessToken {
+
+  private final String value;
+  private final Instant expiresAt;
+
+  /**
+   * @param value The access token.
+   * @param expiresAt Time when the access token expires.
+   */
+  public AccessToken(String value, Instant expiresAt) {
+    if (null == value || value.isEmpty()) throw new IllegalArgumentException("value");
+    if (null == expiresAt) throw new IllegalArgumentException("expiresAt");
+
+    this.value = value;
+    this.expiresAt = expiresAt;
+  }
+
+  public String getValue() {
+    return value;
+  }
+
+  public Instant getExpiresAt() {
+    return expiresAt;
+  }
+}
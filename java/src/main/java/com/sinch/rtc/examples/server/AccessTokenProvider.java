@@ -0,0 +1,34 @@
+// Copyright 2020 Sinch AB
+
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+
+// http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.sinch.rtc.examples.server;
+
+/**
+ * Mints (or obtains) the access tokens that {@link HmsOAuthTokenEndpoint} returns to Sinch, e.g. by
+ * requesting an access token for the HMS application from Huawei's OAuth 2.0 server.
+ *
+ * <p>Wrap implementations in a {@link CachingAccessTokenProvider}, so that a token is reused until
+ * it is about to expire.
+ */
+@FunctionalInterface
+public interface AccessTokenProvider {
+
+  /**
+   * @param applicationKey The Sinch Application Key of a (valid) client assertion.
+   * @param hmsApplicationId The HMS application id (JWT claim <code>sub</code>) of the client
+   *     assertion.
+   * @return An access token, which must not have expired.
+   */
+  AccessToken getAccessToken(String applicationKey, String hmsApplicationId);
+}
@@ -0,0 +1,62 @@
+// Copyright 2020 Sinch AB
+
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+
+// http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.sinch.rtc.examples.server;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * See {@link CallerAuthenticator#bearerTokens}. The tokens are kept, and looked up, by their
+ * SHA-256 digest, so that the time a lookup takes does not depend on how much of a presented token
+ * matches a known one.
+ */
+final class BearerTokenAuthenticator implements CallerAuthenticator {
+
+  private static final String PREFIX = "Bearer ";
+
+  private final Map<ByteBuffer, Set<String>> applicationKeysByDigest =
+      new HashMap<ByteBuffer, Set<String>>();
+
+  BearerTokenAuthenticator(Map<String, ? extends Collection<String>> applicationKeysByToken) {
+    for (Map.Entry<String, ? extends Collection<String>> entry : applicationKeysByToken.entrySet())
+      applicationKeysByDigest.put(
+          digest(PREFIX + entry.getKey()), new HashSet<String>(entry.getValue()));
+  }
+
+  @Override
+  public boolean isAuthorized(String authorization, String applicationKey) {
+    if (authorization == null) return false;
+
+    Set<String> applicationKeys = applicationKeysByDigest.get(digest(authorization));
+    return applicationKeys != null && applicationKeys.contains(applicationKey);
+  }
+
+  private static ByteBuffer digest(String authorization) {
+    try {
+      return ByteBuffer.wrap(
+          MessageDigest.getInstance("SHA-256")
+              .digest(authorization.getBytes(StandardCharsets.UTF_8)));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,188 @@
+// Copyright 2020 Sinch AB
+
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+
+// http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.sinch.rtc.examples.server;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A caching decorator for an {@link AccessTokenProvider}: access tokens are cached per (Sinch
+ * Application Key, HMS application id), and reused until they are about to expire, so that repeated
+ * token requests by Sinch do not mint new tokens.
+ *
+ * <ul>
+ *   <li>A token is replaced once it is within the refresh margin of its expiry (or, for tokens with
+ *       a lifetime shorter than twice the margin, once half its lifetime has passed).
+ *   <li>Concurrent requests for the same key that miss the cache result in a single token being
+ *       minted. While a token is being replaced, the old one continues to be returned.
+ *   <li>Exceptions thrown by the backing provider are propagated, and are not cached.
+ * </ul>
+ */
+public class CachingAccessTokenProvider implements AccessTokenProvider {
+
+  public static final Duration DEFAULT_REFRESH_MARGIN = Duration.ofMinutes(5);
+  public static final int DEFAULT_MAXIMUM_SIZE = 10000;
+
+  private final AccessTokenProvider delegate;
+  private final Clock clock;
+  private final long refreshMarginMillis;
+  private final int maximumSize;
+
+  private final Map<List<String>, CompletableFuture<Entry>> tokens =
+      new ConcurrentHashMap<List<String>, CompletableFuture<Entry>>();
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  public CachingAccessTokenProvider(AccessTokenProvider delegate) {
+    this(delegate, Clock.systemUTC(), DEFAULT_REFRESH_MARGIN, DEFAULT_MAXIMUM_SIZE);
+  }
+
+  /**
+   * @param delegate The provider that mints tokens.
+   * @param clock Time source.
+   * @param refreshMargin How long before their expiry tokens are replaced.
+   * @param maximumSize Maximum number of cached tokens.
+   */
+  public CachingAccessTokenProvider(
+      AccessTokenProvider delegate, Clock clock, Duration refreshMargin, int maximumSize) {
+    if (null == delegate) throw new IllegalArgumentException("delegate");
+    if (null == clock) throw new IllegalArgumentException("clock");
+    if (null == refreshMargin || refreshMargin.isNegative())
+      throw new IllegalArgumentException("refreshMargin");
+    if (maximumSize < 1) throw new IllegalArgumentException("maximumSize");
+
+    this.delegate = delegate;
+    this.clock = clock;
+    this.refreshMarginMillis = refreshMargin.toMillis();
+    this.maximumSize = maximumSize;
+  }
+
+  @Override
+  public AccessToken getAccessToken(String applicationKey, String hmsApplicationId) {
+    final List<String> key = Arrays.asList(applicationKey, hmsApplicationId);
+    final long now = clock.millis();
+
+    for (; ; ) {
+      CompletableFuture<Entry> cached = tokens.get(key);
+      Entry stale = null;
+
+      if (cached != null && cached.isDone()) {
+        Entry entry = cached.isCompletedExceptionally() ? null : cached.join();
+        if (entry != null && entry.refreshAtMillis > now) {
+          hits.increment();
+          return entry.token;
+        }
+        if (entry != null && entry.token.getExpiresAt().toEpochMilli() > now) stale = entry;
+      } else if (cached != null) {
+        // Being minted by another thread. Use the token it replaces, if any, until then.
+        Entry previous = ((Minting) cached).previous;
+        if (previous != null && previous.token.getExpiresAt().toEpochMilli() > now)
+          return previous.token;
+        return join(cached).token;
+      }
+
+      CompletableFuture<Entry> minting = new Minting(stale);
+      boolean won =
+          cached == null
+              ? tokens.putIfAbsent(key, minting) == null
+              : tokens.replace(key, cached, minting);
+
+      if (!won) continue;
+
+      misses.increment();
+      try {
+        AccessToken token = delegate.getAccessToken(applicationKey, hmsApplicationId);
+        if (token == null) throw new IllegalStateException("No access token");
+
+        minting.complete(new Entry(token, refreshAt(now, token.getExpiresAt().toEpochMilli())));
+        if (tokens.size() > maximumSize) evict(now, minting);
+        return token;
+      } catch (RuntimeException e) {
+        tokens.remove(key, minting);
+        minting.completeExceptionally(e);
+        throw e;
+      }
+    }
+  }
+
+  /** Number of requests served from the cache. */
+  public long hitCount() {
+    return hits.sum();
+  }
+
+  /** Number of tokens requested from the backing provider. */
+  public long missCount() {
+    return misses.sum();
+  }
+
+  private long refreshAt(long nowMillis, long expiresAtMillis) {
+    return Math.max(
+        expiresAtMillis - refreshMarginMillis, nowMillis + (expiresAtMillis - nowMillis) / 2);
+  }
+
+  // Evicts tokens that are due to be replaced, and then, if needed, any tokens other than the one
+  // just minted.
+  private void evict(long nowMillis, CompletableFuture<Entry> minted) {
+    Iterator<CompletableFuture<Entry>> iterator = tokens.values().iterator();
+    while (iterator.hasNext()) {
+      CompletableFuture<Entry> cached = iterator.next();
+      if (cached.isDone()
+          && (cached.isCompletedExceptionally() || cached.join().refreshAtMillis <= nowMillis))
+        iterator.remove();
+    }
+
+    iterator = tokens.values().iterator();
+    while (tokens.size() > maximumSize && iterator.hasNext()) {
+      CompletableFuture<Entry> cached = iterator.next();
+      if (cached != minted && cached.isDone()) iterator.remove();
+    }
+  }
+
+  private static Entry join(CompletableFuture<Entry> future) {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+      throw e;
+    }
+  }
+
+  private static final class Minting extends CompletableFuture<Entry> {
+    final Entry previous;
+
+    Minting(Entry previous) {
+      this.previous = previous;
+    }
+  }
+
+  private static final class Entry {
+    final AccessToken token;
+    final long refreshAtMillis;
+
+    Entry(AccessToken token, long refreshAtMillis) {
+      this.token = token;
+      this.refreshAtMillis = refreshAtMillis;
+    }
+  }
+}
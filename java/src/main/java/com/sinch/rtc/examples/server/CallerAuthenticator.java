@@ -0,0 +1,45 @@
+// Copyright 2020 Sinch AB
+
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+
+// http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.sinch.rtc.examples.server;
+
+import java.util.Collection;
+import java.util.Map;
+
+/** Decides whether a caller of {@link RegistrationTokenServer} may issue tokens. */
+@FunctionalInterface
+public interface CallerAuthenticator {
+
+  /**
+   * @param authorization The value of the <code>Authorization</code> header of the request, or
+   *     <code>null</code> if there is none.
+   * @param applicationKey The Sinch Application Key the caller asks to issue a token for.
+   * @return <code>true</code> if the caller may issue tokens for the application.
+   */
+  boolean isAuthorized(String authorization, String applicationKey);
+
+  /**
+   * Authenticates callers by bearer token (<code>Authorization: Bearer &lt;token&gt;</code>), each
+   * of which is authorized for a set of Sinch Application Keys.
+   *
+   * @param applicationKeysByToken Sinch Application Keys by bearer token.
+   */
+  static CallerAuthenticator bearerTokens(
+      Map<String, ? extends Collection<String>> applicationKeysByToken) {
+    if (null == applicationKeysByToken)
+      throw new IllegalArgumentException("applicationKeysByToken");
+
+    return new BearerTokenAuthenticator(applicationKeysByToken);
+  }
+}
@@ -0,0 +1,126 @@
+// Copyright 2020 Sinch AB
+
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+
+// http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.sinch.rtc.examples.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.function.BiConsumer;
+
+/**
+ * Parses <code>application/x-www-form-urlencoded</code> request bodies as they are read, passing
+ * each (decoded) parameter to a callback, without reading the whole body into memory first.
+ */
+final class FormParser {
+
+  /** The request body is not a valid form, or is too long. */
+  static final class MalformedFormException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    MalformedFormException(String message) {
+      super(message);
+    }
+  }
+
+  private final int maximumLength;
+  private final byte[] buffer = new byte[1024];
+  private byte[] token = new byte[64];
+
+  /**
+   * @param maximumLength Maximum length of a body, in bytes.
+   */
+  FormParser(int maximumLength) {
+    if (maximumLength < 1) throw new IllegalArgumentException("maximumLength");
+    this.maximumLength = maximumLength;
+  }
+
+  /** Parse a form, passing each parameter (name, value) to <code>parameters</code>. */
+  void parse(InputStream in, BiConsumer<String, String> parameters) throws IOException {
+    int length = 0;
+    int tokenLength = 0;
+    String name = null;
+
+    // -1 unless in a percent-encoded byte, then the number of hex digits read (0-1) of it.
+    int percentDigits = -1;
+    int percentValue = 0;
+
+    for (int read; (read = in.read(buffer)) != -1; ) {
+      length += read;
+      if (length > maximumLength) throw new MalformedFormException("Form too long");
+
+      for (int i = 0; i < read; i++) {
+        int c = buffer[i] & 0xff;
+
+        if (percentDigits >= 0) {
+          int digit = Character.digit(c, 16);
+          if (digit < 0) throw new MalformedFormException("Malformed percent-encoding");
+          percentValue = (percentValue << 4) | digit;
+          if (++percentDigits == 2) {
+            tokenLength = append(tokenLength, percentValue);
+            percentDigits = -1;
+          }
+          continue;
+        }
+
+        switch (c) {
+          case '%':
+            percentDigits = 0;
+            percentValue = 0;
+            break;
+          case '+':
+            tokenLength = append(tokenLength, ' ');
+            break;
+          case '=':
+            if (name != null) {
+              tokenLength = append(tokenLength, c);
+            } else {
+              name = decode(tokenLength);
+              tokenLength = 0;
+            }
+            break;
+          case '&':
+            emit(name, tokenLength, parameters);
+            name = null;
+            tokenLength = 0;
+            break;
+          default:
+            tokenLength = append(tokenLength, c);
+        }
+      }
+    }
+
+    if (percentDigits >= 0) throw new MalformedFormException("Malformed percent-encoding");
+    emit(name, tokenLength, parameters);
+  }
+
+  private void emit(String name, int tokenLength, BiConsumer<String, String> parameters) {
+    if (name != null) parameters.accept(name, decode(tokenLength));
+    else if (tokenLength > 0) parameters.accept(decode(tokenLength), "");
+  }
+
+  private int append(int tokenLength, int b) {
+    if (tokenLength == token.length) {
+      byte[] grown = new byte[token.length * 2];
+      System.arraycopy(token, 0, grown, 0, tokenLength);
+      token = grown;
+    }
+    token[tokenLength] = (byte) b;
+    return tokenLength + 1;
+  }
+
+  private String decode(int tokenLength) {
+    return new String(token, 0, tokenLength, StandardCharsets.UTF_8);
+  }
+}
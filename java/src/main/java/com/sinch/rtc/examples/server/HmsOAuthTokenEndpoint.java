@@ -0,0 +1,296 @@
+// Copyright 2020 Sinch AB
+
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+
+// http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.sinch.rtc.examples.server;
+
+import com.sinch.rtc.examples.hms.BucketedNonceReplayStore;
+import com.sinch.rtc.examples.hms.HmsOAuthFlowTokenValidator;
+import com.sinch.rtc.examples.hms.OffHeapCredentialsStore;
+import com.sinch.rtc.examples.hms.TokenValidationResult;
+import com.sinch.rtc.examples.hms.TokenValidationResult.FailureReason;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Paths;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * A reference OAuth 2.0 token endpoint for the Sinch Managed Push OAuth 2.0 flow for Huawei Push
+ * Messages (HMS/HPK), on the JDK's built-in HTTP server.
+ *
+ * <p>Sinch requests an access token with the <code>client_credentials</code> grant, authenticating
+ * with a JWT client assertion (<a href="https://tools.ietf.org/html/rfc7523">RFC 7523</a>):
+ *
+ * <pre>
+ * POST /sinch/rtc/push/oauth2/v1/huawei-hms/token
+ * Content-Type: application/x-www-form-urlencoded
+ *
+ * grant_type=client_credentials
+ * &amp;client_assertion_type=urn%3Aietf%3Aparams%3Aoauth%3Aclient-assertion-type%3Ajwt-bearer
+ * &amp;client_assertion=...
+ * </pre>
+ *
+ * <p>The form is parsed as it is read, the client assertion is validated by a shared {@link
+ * HmsOAuthFlowTokenValidator}, and an access token is obtained from an {@link AccessTokenProvider}
+ * (wrap it in a {@link CachingAccessTokenProvider} to reuse tokens until they are about to expire):
+ *
+ * <pre>
+ * {"access_token":"...","token_type":"Bearer","expires_in":3600}
+ * </pre>
+ *
+ * <p>Errors are returned as in <a href="https://tools.ietf.org/html/rfc6749#section-5.2">RFC 6749
+ * section 5.2</a>, with status 400 (<code>invalid_request</code>, <code>unsupported_grant_type
+ * </code>), 401 (<code>invalid_client</code>), 429 (<code>temporarily_unavailable</code>, when the
+ * validator has an {@link com.sinch.rtc.examples.hms.AdmissionController AdmissionController} that
+ * did not admit the client assertion) or 503 (<code>temporarily_unavailable</code>, when
+ * credentials or access tokens could not be looked up).
+ *
+ * <p>As for {@link RegistrationTokenServer}, callers should set the system property <code>
+ * sun.net.httpserver.nodelay</code> to <code>true</code> before the first JDK HTTP server is
+ * created ({@link #main} does).
+ *
+ * <p>Run {@link #main} to try it out locally.
+ */
+public class HmsOAuthTokenEndpoint implements AutoCloseable {
+
+  public static final String PATH = "/sinch/rtc/push/oauth2/v1/huawei-hms/token";
+
+  static final String CLIENT_ASSERTION_TYPE =
+      "urn:ietf:params:oauth:client-assertion-type:jwt-bearer";
+
+  static final int MAXIMUM_FORM_LENGTH = 2 * HmsOAuthFlowTokenValidator.MAX_TOKEN_LENGTH;
+
+  private final HttpServer server;
+  private final ExecutorService ownedExecutor;
+  private final HmsOAuthFlowTokenValidator validator;
+  private final AccessTokenProvider accessTokenProvider;
+  private final Clock clock;
+
+  /**
+   * Bind an endpoint, with the default executor. Call {@link #start()} to start serving.
+   *
+   * @param address Address to listen on. (Port 0 picks a free port, see {@link #getAddress()}.)
+   * @param validator Validates client assertions.
+   * @param accessTokenProvider Provides the access tokens for valid client assertions.
+   */
+  public HmsOAuthTokenEndpoint(
+      InetSocketAddress address,
+      HmsOAuthFlowTokenValidator validator,
+      AccessTokenProvider accessTokenProvider)
+      throws IOException {
+    this(address, validator, accessTokenProvider, Clock.systemUTC(), null);
+  }
+
+  /**
+   * @param address Address to listen on.
+   * @param validator Validates client assertions.
+   * @param accessTokenProvider Provides the access tokens for valid client assertions.
+   * @param clock Time source, for <code>expires_in</code>.
+   * @param executor Executor that requests are handled in, or <code>null</code> for the default
+   *     (virtual threads if supported, otherwise a bounded pool of platform threads).
+   */
+  public HmsOAuthTokenEndpoint(
+      InetSocketAddress address,
+      HmsOAuthFlowTokenValidator validator,
+      AccessTokenProvider accessTokenProvider,
+      Clock clock,
+      Executor executor)
+      throws IOException {
+    if (null == address) throw new IllegalArgumentException("address");
+    if (null == validator) throw new IllegalArgumentException("validator");
+    if (null == accessTokenProvider) throw new IllegalArgumentException("accessTokenProvider");
+    if (null == clock) throw new IllegalArgumentException("clock");
+
+    this.validator = validator;
+    this.accessTokenProvider = accessTokenProvider;
+    this.clock = clock;
+    this.ownedExecutor =
+        executor == null ? HttpServers.newDefaultExecutor("sinch-oauth-endpoint-") : null;
+
+    this.server = HttpServers.create(address);
+    server.setExecutor(executor != null ? executor : ownedExecutor);
+    server.createContext(PATH, this::handle);
+  }
+
+  /**
+   * Run an endpoint locally, with the credentials of the Sinch applications in a file (see {@link
+   * OffHeapCredentialsStore#reload(java.nio.file.Path)}), and (opaque, random) access tokens that
+   * are minted locally. Replace the latter with your own {@link AccessTokenProvider}, e.g. one that
+   * requests access tokens from Huawei's OAuth 2.0 server.
+   *
+   * <p>Usage: <code>HmsOAuthTokenEndpoint &lt;port&gt; &lt;credentials file&gt;</code>
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length != 2) {
+      System.err.println("Usage: HmsOAuthTokenEndpoint <port> <credentials file>");
+      System.exit(2);
+    }
+
+    HttpServers.enableNoDelay();
+
+    final SecureRandom random = new SecureRandom();
+    AccessTokenProvider localAccessTokens =
+        (applicationKey, hmsApplicationId) -> {
+          byte[] token = new byte[32];
+          random.nextBytes(token);
+          return new AccessToken(
+              Base64.getUrlEncoder().withoutPadding().encodeToString(token),
+              Instant.now().plus(Duration.ofHours(1)));
+        };
+
+    HmsOAuthTokenEndpoint endpoint =
+        new HmsOAuthTokenEndpoint(
+            new InetSocketAddress(Integer.parseInt(args[0])),
+            new HmsOAuthFlowTokenValidator(
+                OffHeapCredentialsStore.load(Paths.get(args[1])),
+                Clock.systemUTC(),
+                new BucketedNonceReplayStore()),
+            new CachingAccessTokenProvider(localAccessTokens));
+    endpoint.start();
+
+    System.out.println("Listening on http://" + endpoint.getAddress() + PATH);
+  }
+
+  public void start() {
+    server.start();
+  }
+
+  /** The address the endpoint listens on. */
+  public InetSocketAddress getAddress() {
+    return server.getAddress();
+  }
+
+  /** Stop serving, closing all connections immediately. */
+  @Override
+  public void close() {
+    server.stop(0);
+    if (ownedExecutor != null) ownedExecutor.shutdownNow();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try {
+      if (!PATH.equals(exchange.getRequestURI().getPath())) {
+        HttpServers.respond(exchange, 404, "{\"error\":\"not_found\"}");
+        return;
+      }
+
+      if (!"POST".equals(exchange.getRequestMethod())) {
+        exchange.getResponseHeaders().set("Allow", "POST");
+        HttpServers.respond(exchange, 405, "{\"error\":\"invalid_request\"}");
+        return;
+      }
+
+      String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+      if (contentType == null || !contentType.startsWith(HttpServers.FORM_CONTENT_TYPE)) {
+        HttpServers.respond(exchange, 400, "{\"error\":\"invalid_request\"}");
+        return;
+      }
+
+      final TokenRequest request = new TokenRequest();
+      try {
+        new FormParser(MAXIMUM_FORM_LENGTH).parse(exchange.getRequestBody(), request::set);
+      } catch (FormParser.MalformedFormException e) {
+        HttpServers.respond(exchange, 400, "{\"error\":\"invalid_request\"}");
+        return;
+      }
+
+      if (request.repeated
+          || request.grantType == null
+          || request.clientAssertionType == null
+          || request.clientAssertion == null) {
+        HttpServers.respond(exchange, 400, "{\"error\":\"invalid_request\"}");
+        return;
+      }
+
+      if (!"client_credentials".equals(request.grantType)) {
+        HttpServers.respond(exchange, 400, "{\"error\":\"unsupported_grant_type\"}");
+        return;
+      }
+
+      if (!CLIENT_ASSERTION_TYPE.equals(request.clientAssertionType)) {
+        HttpServers.respond(exchange, 401, "{\"error\":\"invalid_client\"}");
+        return;
+      }
+
+      AccessToken accessToken;
+      try {
+        TokenValidationResult result = validator.Validate(request.clientAssertion);
+        if (result.getFailureReason() == FailureReason.OVERLOADED) {
+          exchange.getResponseHeaders().set("Retry-After", "1");
+          HttpServers.respond(exchange, 429, "{\"error\":\"temporarily_unavailable\"}");
+          return;
+        }
+        if (!result.isValid()) {
+          HttpServers.respond(exchange, 401, "{\"error\":\"invalid_client\"}");
+          return;
+        }
+
+        accessToken =
+            accessTokenProvider.getAccessToken(
+                result.getSinchApplicationKey(), result.getHmsApplicationId());
+      } catch (RuntimeException e) {
+        HttpServers.respond(exchange, 503, "{\"error\":\"temporarily_unavailable\"}");
+        return;
+      }
+
+      long expiresIn =
+          Math.max(0, Duration.between(clock.instant(), accessToken.getExpiresAt()).getSeconds());
+
+      StringBuilder json = new StringBuilder(128).append("{\"access_token\":");
+      HttpServers.appendJsonString(json, accessToken.getValue())
+          .append(",\"token_type\":\"Bearer\",\"expires_in\":")
+          .append(expiresIn)
+          .append('}');
+
+      exchange.getResponseHeaders().set("Pragma", "no-cache");
+      HttpServers.respond(exchange, 200, json.toString());
+    } finally {
+      exchange.close();
+    }
+  }
+
+  // The parameters of a token request. Parameters must not be repeated (RFC 6749 section 3.2).
+  private static final class TokenRequest {
+    String grantType;
+    String clientAssertionType;
+    String clientAssertion;
+    boolean repeated;
+
+    void set(String name, String value) {
+      switch (name) {
+        case "grant_type":
+          repeated |= grantType != null;
+          grantType = value;
+          break;
+        case "client_assertion_type":
+          repeated |= clientAssertionType != null;
+          clientAssertionType = value;
+          break;
+        case "client_assertion":
+          repeated |= clientAssertion != null;
+          clientAssertion = value;
+          break;
+        default:
+          // Other parameters (e.g. scope) are ignored.
+      }
+    }
+  }
+}
@@ -0,0 +1,85 @@
+// Copyright 2020 Sinch AB
+
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+
+// http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.sinch.rtc.examples.server;
+
+import com.sinch.rtc.examples.hms.ResolverExecutors;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+
+/** What the embedded HTTP services have in common. */
+final class HttpServers {
+
+  static final int DEFAULT_PLATFORM_THREADS = 64;
+
+  static final String FORM_CONTENT_TYPE = "application/x-www-form-urlencoded";
+
+  private HttpServers() {}
+
+  /** Create (and bind) a JDK HTTP server. */
+  static HttpServer create(InetSocketAddress address) throws IOException {
+    return HttpServer.create(address, 0);
+  }
+
+  /**
+   * Disable Nagle's algorithm for all JDK HTTP servers of the JVM, unless the system property
+   * <code>sun.net.httpserver.nodelay</code> has been set. Only called from <code>main</code> entry
+   * points, since it affects every JDK HTTP server in the JVM.
+   *
+   * <p>The JDK's HTTP server writes the headers and the body of a response separately, which, with
+   * Nagle's algorithm, stalls each response on a keep-alive connection for the client's delayed ACK
+   * (typically 40 ms). (The property is read once, when the first JDK HTTP server is created.)
+   */
+  static void enableNoDelay() {
+    if (System.getProperty("sun.net.httpserver.nodelay") == null)
+      System.setProperty("sun.net.httpserver.nodelay", "true");
+  }
+
+  /**
+   * An executor that runs each request in its own virtual thread, if the running JDK supports
+   * virtual threads, and otherwise a bounded pool of (daemon) platform threads.
+   */
+  static ExecutorService newDefaultExecutor(String threadNamePrefix) {
+    return ResolverExecutors.newBlockingLookupExecutor(DEFAULT_PLATFORM_THREADS, threadNamePrefix);
+  }
+
+  /** Send a (non-cacheable) JSON response, with a fixed length so that the connection is kept. */
+  static void respond(HttpExchange exchange, int status, String json) throws IOException {
+    byte[] body = json.getBytes(StandardCharsets.UTF_8);
+
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    exchange.getResponseHeaders().set("Cache-Control", "no-store");
+    exchange.sendResponseHeaders(status, body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+
+  /** Append a JSON string (in quotes). */
+  static StringBuilder appendJsonString(StringBuilder json, String s) {
+    json.append('"');
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c == '"' || c == '\\') json.append('\\').append(c);
+      else if (c < 0x20) json.append(String.format("\\u%04x", (int) c));
+      else json.append(c);
+    }
+    return json.append('"');
+  }
+}
@@ -0,0 +1,226 @@
+// Copyright 2020 Sinch AB
+
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+
+// http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.sinch.rtc.examples.server;
+
+import com.sinch.rtc.examples.hms.SinchApplicationCredentialsResolver;
+import com.sinch.rtc.examples.ocra.auth.NonceGenerator;
+import com.sinch.rtc.examples.ocra.auth.UserRegistrationToken;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * A small embedded HTTP service (on the JDK's built-in HTTP server) that issues <i>User</i>
+ * registration tokens (see {@link UserRegistrationToken}) to authenticated callers, e.g. the
+ * backends of the applications.
+ *
+ * <p>Request:
+ *
+ * <pre>
+ * POST /v1/registration-tokens
+ * Authorization: Bearer ...
+ * Content-Type: application/x-www-form-urlencoded
+ *
+ * application_key=...&amp;user_id=...
+ * </pre>
+ *
+ * <p>Response:
+ *
+ * <pre>
+ * {"token":"...","expires_in":600}
+ * </pre>
+ *
+ * <p>Errors are returned as <code>{"error":"..."}</code>, with status 400 (malformed request), 401
+ * (caller not authorized for the application), 404 (unknown application), 405, 415, or 503
+ * (credentials could not be looked up).
+ *
+ * <p>Connections are kept alive, and requests pipelined on a connection are served in order.
+ * Requests are handled in a virtual thread each if the running JDK supports virtual threads, and
+ * otherwise in a bounded pool of platform threads (or in a given executor).
+ *
+ * <p>Callers should set the system property <code>sun.net.httpserver.nodelay</code> to <code>true
+ * </code> (e.g. <code>-Dsun.net.httpserver.nodelay=true</code>) before the first JDK HTTP server is
+ * created, as otherwise responses on keep-alive connections are delayed by Nagle's algorithm. It is
+ * not set here, since it affects every JDK HTTP server in the JVM.
+ */
+public class RegistrationTokenServer implements AutoCloseable {
+
+  public static final String PATH = "/v1/registration-tokens";
+  public static final Duration DEFAULT_TOKEN_LIFETIME = Duration.ofMinutes(10);
+  public static final int DEFAULT_PLATFORM_THREADS = HttpServers.DEFAULT_PLATFORM_THREADS;
+
+  static final int MAXIMUM_FORM_LENGTH = 4096;
+
+  private final HttpServer server;
+  private final ExecutorService ownedExecutor;
+  private final SinchApplicationCredentialsResolver credentialsResolver;
+  private final CallerAuthenticator authenticator;
+  private final Duration tokenLifetime;
+
+  /**
+   * Bind a server, with the default token lifetime and executor. Call {@link #start()} to start
+   * serving.
+   *
+   * @param address Address to listen on. (Port 0 picks a free port, see {@link #getAddress()}.)
+   */
+  public RegistrationTokenServer(
+      InetSocketAddress address,
+      SinchApplicationCredentialsResolver credentialsResolver,
+      CallerAuthenticator authenticator)
+      throws IOException {
+    this(address, credentialsResolver, authenticator, DEFAULT_TOKEN_LIFETIME, null);
+  }
+
+  /**
+   * @param address Address to listen on.
+   * @param credentialsResolver Resolves the secrets of the applications that tokens are issued for.
+   * @param authenticator Decides which callers may issue tokens for which applications.
+   * @param tokenLifetime Time until issued tokens expire.
+   * @param executor Executor that requests are handled in, or <code>null</code> for the default.
+   */
+  public RegistrationTokenServer(
+      InetSocketAddress address,
+      SinchApplicationCredentialsResolver credentialsResolver,
+      CallerAuthenticator authenticator,
+      Duration tokenLifetime,
+      Executor executor)
+      throws IOException {
+    if (null == address) throw new IllegalArgumentException("address");
+    if (null == credentialsResolver) throw new IllegalArgumentException("credentialsResolver");
+    if (null == authenticator) throw new IllegalArgumentException("authenticator");
+    if (null == tokenLifetime || tokenLifetime.isNegative() || tokenLifetime.isZero())
+      throw new IllegalArgumentException("tokenLifetime");
+
+    this.credentialsResolver = credentialsResolver;
+    this.authenticator = authenticator;
+    this.tokenLifetime = tokenLifetime;
+    this.ownedExecutor =
+        executor == null ? HttpServers.newDefaultExecutor("sinch-token-server-") : null;
+
+    this.server = HttpServers.create(address);
+    server.setExecutor(executor != null ? executor : ownedExecutor);
+    server.createContext(PATH, this::handle);
+  }
+
+  public void start() {
+    server.start();
+  }
+
+  /** The address the server listens on. */
+  public InetSocketAddress getAddress() {
+    return server.getAddress();
+  }
+
+  /** Stop serving, closing all connections immediately. */
+  @Override
+  public void close() {
+    server.stop(0);
+    if (ownedExecutor != null) ownedExecutor.shutdownNow();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try {
+      if (!PATH.equals(exchange.getRequestURI().getPath())) {
+        HttpServers.respond(exchange, 404, "{\"error\":\"not_found\"}");
+        return;
+      }
+
+      if (!"POST".equals(exchange.getRequestMethod())) {
+        exchange.getResponseHeaders().set("Allow", "POST");
+        HttpServers.respond(exchange, 405, "{\"error\":\"method_not_allowed\"}");
+        return;
+      }
+
+      String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+      if (contentType != null && !contentType.startsWith(HttpServers.FORM_CONTENT_TYPE)) {
+        HttpServers.respond(exchange, 415, "{\"error\":\"unsupported_media_type\"}");
+        return;
+      }
+
+      final String[] form = new String[2];
+      try {
+        new FormParser(MAXIMUM_FORM_LENGTH)
+            .parse(
+                exchange.getRequestBody(),
+                (name, value) -> {
+                  if ("application_key".equals(name)) form[0] = value;
+                  else if ("user_id".equals(name)) form[1] = value;
+                });
+      } catch (FormParser.MalformedFormException e) {
+        HttpServers.respond(exchange, 400, "{\"error\":\"invalid_request\"}");
+        return;
+      }
+
+      final String applicationKey = form[0];
+      final String userId = form[1];
+      if (applicationKey == null || userId == null || userId.isEmpty()) {
+        HttpServers.respond(exchange, 400, "{\"error\":\"invalid_request\"}");
+        return;
+      }
+
+      if (!authenticator.isAuthorized(
+          exchange.getRequestHeaders().getFirst("Authorization"), applicationKey)) {
+        exchange.getResponseHeaders().set("WWW-Authenticate", "Bearer");
+        HttpServers.respond(exchange, 401, "{\"error\":\"unauthorized\"}");
+        return;
+      }
+
+      byte[] applicationSecret;
+      try {
+        applicationSecret = credentialsResolver.resolveSinchApplicationSecretBytes(applicationKey);
+      } catch (RuntimeException e) {
+        HttpServers.respond(exchange, 503, "{\"error\":\"credentials_unavailable\"}");
+        return;
+      }
+
+      if (applicationSecret == null) {
+        HttpServers.respond(exchange, 404, "{\"error\":\"unknown_application_key\"}");
+        return;
+      }
+
+      OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+      String jwt;
+      try {
+        jwt =
+            new UserRegistrationToken(
+                    applicationKey,
+                    applicationSecret,
+                    userId,
+                    NonceGenerator.nextNonce(),
+                    now,
+                    now.plus(tokenLifetime),
+                    null)
+                .toJwt();
+      } catch (IllegalArgumentException e) {
+        // E.g. an empty secret.
+        HttpServers.respond(exchange, 503, "{\"error\":\"credentials_unavailable\"}");
+        return;
+      }
+
+      HttpServers.respond(
+          exchange,
+          200,
+          "{\"token\":\"" + jwt + "\",\"expires_in\":" + tokenLifetime.getSeconds() + "}");
+    } finally {
+      exchange.close();
+    }
+  }
+}
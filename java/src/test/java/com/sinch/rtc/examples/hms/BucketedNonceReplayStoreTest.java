@@ -0,0 +1,118 @@
+package com.sinch.rtc.examples.hms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import com.sinch.rtc.examples.ReferenceData;
+import com.sinch.rtc.examples.hms.NonceReplayStore.Result;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+public class BucketedNonceReplayStoreTest {
+
+  private static final long NOW = ReferenceData.NOW.toInstant().toEpochMilli();
+  private static final long EXP = NOW + 3600 * 1000;
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private final BucketedNonceReplayStore store = new BucketedNonceReplayStore();
+
+  @Test
+  public void testReplay() {
+    assertEquals(Result.RECORDED, store.record("app", ReferenceData.JWT_NONCE, EXP, NOW));
+    assertEquals(Result.REPLAYED, store.record("app", ReferenceData.JWT_NONCE, EXP, NOW + 1));
+
+    // Nonces are scoped per application.
+    assertEquals(Result.RECORDED, store.record("other", ReferenceData.JWT_NONCE, EXP, NOW));
+    assertEquals(Result.RECORDED, store.record("app", "another nonce", EXP, NOW));
+  }
+
+  @Test
+  public void testWindow() {
+    long window = BucketedNonceReplayStore.DEFAULT_BUCKET_WIDTH.toMillis() * 128;
+
+    assertEquals(Result.NOT_RECORDED, store.record("app", "a", NOW - 60 * 1000, NOW));
+    assertEquals(Result.NOT_RECORDED, store.record("app", "b", NOW + window, NOW));
+    assertEquals(Result.RECORDED, store.record("app", "c", NOW + window - 60 * 1000, NOW));
+  }
+
+  @Test
+  public void testExpiredNoncesAreForgotten() {
+    BucketedNonceReplayStore small = new BucketedNonceReplayStore(Duration.ofSeconds(1), 4, 16);
+
+    assertEquals(Result.RECORDED, small.record("app", "a", 1500, 0));
+    assertEquals(Result.REPLAYED, small.record("app", "a", 1500, 1000));
+
+    // The bucket of the first token is reused for tokens that expire 4 seconds later.
+    assertEquals(Result.RECORDED, small.record("app", "b", 5500, 2000));
+    assertEquals(Result.RECORDED, small.record("app", "a", 5500, 2000));
+    assertEquals(Result.REPLAYED, small.record("app", "a", 5500, 2000));
+
+    // A caller that is behind can not record into a bucket that has been reused.
+    assertEquals(Result.NOT_RECORDED, small.record("app", "c", 1500, 1000));
+  }
+
+  @Test
+  public void testCapacity() {
+    BucketedNonceReplayStore small = new BucketedNonceReplayStore(Duration.ofSeconds(1), 4, 16);
+
+    int recorded = 0;
+    for (int i = 0; i < 1000; i++) {
+      if (small.record("app", "nonce-" + i, 1500, 0) == Result.RECORDED) recorded++;
+    }
+
+    // Sixteen stripes of (at most) one nonce each.
+    assertEquals(16, recorded);
+  }
+
+  @Test
+  public void testConcurrentReplays() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      for (int round = 0; round < 100; round++) {
+        final String nonce = "nonce-" + round;
+        List<Callable<Result>> attempts = new ArrayList<Callable<Result>>();
+        for (int i = 0; i < 8; i++) attempts.add(() -> store.record("app", nonce, EXP, NOW));
+
+        int recorded = 0;
+        for (Future<Result> result : executor.invokeAll(attempts)) {
+          if (result.get() == Result.RECORDED) recorded++;
+        }
+        assertEquals(1, recorded);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testMemoryMappedFileSurvivesRestart() throws IOException {
+    Path file = folder.getRoot().toPath().resolve("nonces");
+
+    try (BucketedNonceReplayStore mapped =
+        BucketedNonceReplayStore.open(file, Duration.ofMinutes(1), 128, 1024)) {
+      assertEquals(Result.RECORDED, mapped.record("app", ReferenceData.JWT_NONCE, EXP, NOW));
+    }
+
+    try (BucketedNonceReplayStore mapped =
+        BucketedNonceReplayStore.open(file, Duration.ofMinutes(1), 128, 1024)) {
+      assertEquals(Result.REPLAYED, mapped.record("app", ReferenceData.JWT_NONCE, EXP, NOW));
+    }
+
+    try {
+      BucketedNonceReplayStore.open(file, Duration.ofMinutes(2), 128, 1024);
+      fail();
+    } catch (IOException e) {
+      // Created with different settings.
+    }
+  }
+}
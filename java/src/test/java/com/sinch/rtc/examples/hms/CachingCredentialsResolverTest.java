@@ -0,0 +1,270 @@
+package com.sinch.rtc.examples.hms;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.sinch.rtc.examples.ReferenceData;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.*;
+
+public class CachingCredentialsResolverTest {
+
+  private final AtomicLong nanoTime = new AtomicLong();
+  private final Map<String, String> secrets = new ConcurrentHashMap<String, String>();
+  private final AtomicInteger lookups = new AtomicInteger();
+
+  private final SinchApplicationCredentialsResolver backend =
+      applicationKey -> {
+        lookups.incrementAndGet();
+        return secrets.get(applicationKey);
+      };
+
+  @Test
+  public void testCachesSecrets() {
+    secrets.put(ReferenceData.APPLICATION_KEY, ReferenceData.APPLICATION_SECRET);
+    CachingCredentialsResolver resolver = resolver(backend, 100);
+
+    assertEquals(
+        ReferenceData.APPLICATION_SECRET,
+        resolver.resolveSinchApplicationSecret(ReferenceData.APPLICATION_KEY));
+    byte[] bytes = resolver.resolveSinchApplicationSecretBytes(ReferenceData.APPLICATION_KEY);
+
+    assertArrayEquals(Base64.getDecoder().decode(ReferenceData.APPLICATION_SECRET), bytes);
+    assertSame(bytes, resolver.resolveSinchApplicationSecretBytes(ReferenceData.APPLICATION_KEY));
+    assertEquals(1, lookups.get());
+    assertEquals(2, resolver.hitCount());
+  }
+
+  @Test
+  public void testExpiry() {
+    secrets.put(ReferenceData.APPLICATION_KEY, ReferenceData.APPLICATION_SECRET);
+    CachingCredentialsResolver resolver = resolver(backend, 100);
+
+    resolver.resolveSinchApplicationSecret(ReferenceData.APPLICATION_KEY);
+    nanoTime.addAndGet(Duration.ofSeconds(100).toNanos());
+    resolver.resolveSinchApplicationSecret(ReferenceData.APPLICATION_KEY);
+
+    assertEquals(2, lookups.get());
+    assertEquals(2, resolver.missCount());
+  }
+
+  @Test
+  public void testRefreshAhead() {
+    secrets.put(ReferenceData.APPLICATION_KEY, ReferenceData.APPLICATION_SECRET);
+    List<Runnable> refreshes = new ArrayList<Runnable>();
+    CachingCredentialsResolver resolver =
+        new CachingCredentialsResolver(
+            backend,
+            Duration.ofSeconds(100),
+            Duration.ofSeconds(10),
+            100,
+            refreshes::add,
+            nanoTime::get);
+
+    resolver.resolveSinchApplicationSecret(ReferenceData.APPLICATION_KEY);
+
+    // Past the refresh time, the cached secret is returned and a refresh is scheduled (once).
+    nanoTime.addAndGet(Duration.ofSeconds(90).toNanos());
+    secrets.put(ReferenceData.APPLICATION_KEY, "AAAAAAAAAAAAAAAAAAAAAA==");
+    assertEquals(
+        ReferenceData.APPLICATION_SECRET,
+        resolver.resolveSinchApplicationSecret(ReferenceData.APPLICATION_KEY));
+    resolver.resolveSinchApplicationSecret(ReferenceData.APPLICATION_KEY);
+    assertEquals(1, refreshes.size());
+
+    refreshes.get(0).run();
+
+    // The refreshed secret is served from the cache, past the original expiry.
+    nanoTime.addAndGet(Duration.ofSeconds(20).toNanos());
+    assertEquals(
+        "AAAAAAAAAAAAAAAAAAAAAA==",
+        resolver.resolveSinchApplicationSecret(ReferenceData.APPLICATION_KEY));
+    assertEquals(2, lookups.get());
+  }
+
+  @Test
+  public void testInvalidateDuringLookup() {
+    final String rotated = "AAAAAAAAAAAAAAAAAAAAAA==";
+    final AtomicReference<CachingCredentialsResolver> resolver =
+        new AtomicReference<CachingCredentialsResolver>();
+    final AtomicBoolean rotate = new AtomicBoolean();
+    final List<Runnable> refreshes = new ArrayList<Runnable>();
+
+    // The secret is rotated, and the key invalidated, while a lookup of the old secret is in
+    // progress.
+    SinchApplicationCredentialsResolver rotatingBackend =
+        applicationKey -> {
+          String secret = backend.resolveSinchApplicationSecret(applicationKey);
+          if (rotate.getAndSet(false)) {
+            secrets.put(applicationKey, rotated);
+            resolver.get().invalidate(applicationKey);
+          }
+          return secret;
+        };
+    resolver.set(
+        new CachingCredentialsResolver(
+            rotatingBackend,
+            Duration.ofSeconds(100),
+            Duration.ofSeconds(5),
+            100,
+            refreshes::add,
+            nanoTime::get));
+
+    secrets.put(ReferenceData.APPLICATION_KEY, ReferenceData.APPLICATION_SECRET);
+    rotate.set(true);
+    assertEquals(
+        ReferenceData.APPLICATION_SECRET,
+        resolver.get().resolveSinchApplicationSecret(ReferenceData.APPLICATION_KEY));
+    assertEquals(
+        rotated, resolver.get().resolveSinchApplicationSecret(ReferenceData.APPLICATION_KEY));
+    assertEquals(2, lookups.get());
+
+    // The same for a background refresh.
+    nanoTime.addAndGet(Duration.ofSeconds(90).toNanos());
+    resolver.get().resolveSinchApplicationSecret(ReferenceData.APPLICATION_KEY);
+    secrets.put(ReferenceData.APPLICATION_KEY, ReferenceData.APPLICATION_SECRET);
+    rotate.set(true);
+    refreshes.get(0).run();
+
+    assertEquals(
+        rotated, resolver.get().resolveSinchApplicationSecret(ReferenceData.APPLICATION_KEY));
+    assertEquals(4, lookups.get());
+  }
+
+  @Test
+  public void testNegativeCaching() {
+    CachingCredentialsResolver resolver = resolver(backend, 100);
+
+    assertNull(resolver.resolveSinchApplicationSecret("unknown"));
+    assertNull(resolver.resolveSinchApplicationSecretBytes("unknown"));
+    assertEquals(1, lookups.get());
+
+    // The negative entry expires sooner than a positive one.
+    secrets.put("unknown", ReferenceData.APPLICATION_SECRET);
+    nanoTime.addAndGet(Duration.ofSeconds(10).toNanos());
+    assertEquals(
+        ReferenceData.APPLICATION_SECRET, resolver.resolveSinchApplicationSecret("unknown"));
+    assertEquals(2, lookups.get());
+  }
+
+  @Test
+  public void testSingleFlight() throws Exception {
+    final CountDownLatch blocked = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    SinchApplicationCredentialsResolver slowBackend =
+        applicationKey -> {
+          lookups.incrementAndGet();
+          blocked.countDown();
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          }
+          return ReferenceData.APPLICATION_SECRET;
+        };
+
+    final CachingCredentialsResolver resolver = resolver(slowBackend, 100);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<String>> results = new ArrayList<Future<String>>();
+      results.add(
+          executor.submit(
+              () -> resolver.resolveSinchApplicationSecret(ReferenceData.APPLICATION_KEY)));
+      assertTrue(blocked.await(10, TimeUnit.SECONDS));
+
+      for (int i = 0; i < 7; i++) {
+        results.add(
+            executor.submit(
+                () -> resolver.resolveSinchApplicationSecret(ReferenceData.APPLICATION_KEY)));
+      }
+      Thread.sleep(100);
+      release.countDown();
+
+      for (Future<String> result : results) {
+        assertEquals(ReferenceData.APPLICATION_SECRET, result.get(10, TimeUnit.SECONDS));
+      }
+      assertEquals(1, lookups.get());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testUnknownKeysDoNotEvictKnownKeys() {
+    secrets.put(ReferenceData.APPLICATION_KEY, ReferenceData.APPLICATION_SECRET);
+    CachingCredentialsResolver resolver = resolver(backend, 10);
+
+    resolver.resolveSinchApplicationSecret(ReferenceData.APPLICATION_KEY);
+    for (int i = 0; i < 100; i++) {
+      nanoTime.incrementAndGet();
+      resolver.resolveSinchApplicationSecret("unknown-" + i);
+    }
+
+    assertTrue(resolver.evictionCount() >= 90);
+    resolver.resolveSinchApplicationSecret(ReferenceData.APPLICATION_KEY);
+    assertEquals(101, lookups.get());
+  }
+
+  @Test
+  public void testConcurrentEviction() throws Exception {
+    for (int i = 0; i < 16; i++) secrets.put("hot-" + i, ReferenceData.APPLICATION_SECRET);
+    // Every read advances the clock, so access times keep changing while entries are evicted.
+    final CachingCredentialsResolver resolver =
+        new CachingCredentialsResolver(
+            backend,
+            Duration.ofSeconds(100),
+            Duration.ofSeconds(10),
+            32,
+            Runnable::run,
+            () -> nanoTime.addAndGet(Duration.ofMillis(2).toNanos()));
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<?>> results = new ArrayList<Future<?>>();
+      for (int t = 0; t < 8; t++) {
+        final int thread = t;
+        results.add(
+            executor.submit(
+                () -> {
+                  for (int i = 0; i < 2000; i++) {
+                    resolver.resolveSinchApplicationSecret("hot-" + (i % 16));
+                    resolver.resolveSinchApplicationSecret("cold-" + thread + "-" + i);
+                  }
+                }));
+      }
+      for (Future<?> result : results) result.get(60, TimeUnit.SECONDS);
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertTrue(resolver.evictionCount() > 0);
+    assertEquals(ReferenceData.APPLICATION_SECRET, resolver.resolveSinchApplicationSecret("hot-0"));
+  }
+
+  private CachingCredentialsResolver resolver(
+      SinchApplicationCredentialsResolver backend, int maximumSize) {
+    return new CachingCredentialsResolver(
+        backend,
+        Duration.ofSeconds(100),
+        Duration.ofSeconds(10),
+        maximumSize,
+        Runnable::run,
+        nanoTime::get);
+  }
+}
@@ -0,0 +1,46 @@
+package com.sinch.rtc.examples.hms;
+
+import com.sinch.rtc.examples.ReferenceData;
+import com.sinch.rtc.examples.jwt.JwtSigningKey;
+import io.jsonwebtoken.JwtBuilder;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+import java.time.OffsetDateTime;
+import java.util.Date;
+
+/**
+ * Builds client assertions like the ones Sinch passes in the HMS OAuth flow (see ReferenceData),
+ * for use in tests.
+ */
+public class HmsClientAssertions {
+
+  public static JwtBuilder builder(
+      String applicationKey, String applicationSecret, OffsetDateTime issuedAt) {
+    return Jwts.builder()
+        .setHeaderParam("alg", "HS256")
+        .setHeaderParam("kid", JwtSigningKey.keyId(issuedAt))
+        .setHeaderParam("sinch:rtc:application_key", applicationKey)
+        .setIssuer("//rtc.sinch.com/applications/" + applicationKey)
+        .setSubject(ReferenceData.HMS_APP_ID)
+        .setAudience("https://localhost:8080/sinch/rtc/push/oauth2/v1/huawei-hms/token")
+        .setIssuedAt(Date.from(issuedAt.toInstant()))
+        .setExpiration(Date.from(issuedAt.plusHours(1).toInstant()))
+        .claim("nonce", ReferenceData.JWT_NONCE)
+        .claim("scope", "https://push-api.cloud.huawei.com")
+        .claim("sinch:rtc:application_key", applicationKey)
+        .signWith(
+            Keys.hmacShaKeyFor(JwtSigningKey.deriveSigningKey(applicationSecret, issuedAt)),
+            SignatureAlgorithm.HS256);
+  }
+
+  public static String create(
+      String applicationKey, String applicationSecret, OffsetDateTime issuedAt) {
+    return builder(applicationKey, applicationSecret, issuedAt).compact();
+  }
+
+  public static String create() {
+    return create(
+        ReferenceData.APPLICATION_KEY, ReferenceData.APPLICATION_SECRET, ReferenceData.NOW);
+  }
+}
@@ -0,0 +1,422 @@
+package com.sinch.rtc.examples.hms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.sinch.rtc.examples.ReferenceData;
+import com.sinch.rtc.examples.hms.TokenValidationResult.FailureReason;
+import io.jsonwebtoken.CompressionCodec;
+import io.jsonwebtoken.CompressionCodecs;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.*;
+
+public class HmsOAuthFlowTokenValidatorTest {
+
+  private final HmsOAuthFlowTokenValidator validator =
+      new HmsOAuthFlowTokenValidator(
+          applicationKey ->
+              ReferenceData.APPLICATION_KEY.equals(applicationKey)
+                  ? ReferenceData.APPLICATION_SECRET
+                  : null,
+          Clock.fixed(ReferenceData.NOW.toInstant(), ZoneOffset.UTC));
+
+  @Test
+  public void testValid() {
+    TokenValidationResult result = validator.Validate(HmsClientAssertions.create());
+
+    assertTrue(result.isValid());
+    assertNull(result.getFailureReason());
+    assertEquals(ReferenceData.APPLICATION_KEY, result.getSinchApplicationKey());
+    assertEquals(ReferenceData.HMS_APP_ID, result.getHmsApplicationId());
+    assertSameResultInPlace(HmsClientAssertions.create(), result);
+  }
+
+  @Test
+  public void testMalformed() {
+    String valid = HmsClientAssertions.create();
+    String[] parts = valid.split("\\.");
+
+    assertRejected(FailureReason.MALFORMED, null);
+    assertRejected(FailureReason.MALFORMED, "");
+    assertRejected(FailureReason.MALFORMED, "not a jwt");
+    assertRejected(FailureReason.MALFORMED, parts[0] + "." + parts[1]);
+    assertRejected(FailureReason.MALFORMED, valid + ".");
+    assertRejected(FailureReason.MALFORMED, parts[0] + "." + parts[1] + "." + parts[2] + "A");
+    assertRejected(FailureReason.MALFORMED, parts[0] + "=." + parts[1] + "." + parts[2]);
+    assertRejected(
+        FailureReason.MALFORMED, encode("{\"alg\":\"HS256\"") + "." + parts[1] + "." + parts[2]);
+    assertRejected(FailureReason.MALFORMED, valid + new String(new char[8192]).replace('\0', 'A'));
+    assertRejected(FailureReason.MALFORMED, "\u00e9" + valid);
+    assertRejected(FailureReason.MALFORMED, "\u012e" + valid);
+  }
+
+  @Test
+  public void testUnsupportedAlgorithm() {
+    String[] parts = HmsClientAssertions.create().split("\\.");
+
+    assertRejected(
+        FailureReason.UNSUPPORTED_ALGORITHM,
+        encode("{\"alg\":\"none\"}") + "." + parts[1] + "." + parts[2]);
+  }
+
+  @Test
+  public void testInvalidKeyId() {
+    String[] parts = HmsClientAssertions.create().split("\\.");
+
+    for (String kid : new String[] {"hkdfv2-20180102", "hkdfv1-2018010", "hkdfv1-20180230"}) {
+      assertRejected(
+          FailureReason.INVALID_KEY_ID,
+          encode("{\"alg\":\"HS256\",\"kid\":\"" + kid + "\"}") + "." + parts[1] + "." + parts[2]);
+    }
+  }
+
+  @Test
+  public void testUnknownApplicationKey() {
+    assertRejected(
+        FailureReason.UNKNOWN_APPLICATION_KEY,
+        HmsClientAssertions.create(
+            "00000000-0000-0000-0000-000000000000",
+            ReferenceData.APPLICATION_SECRET,
+            ReferenceData.NOW));
+  }
+
+  @Test
+  public void testInvalidSignature() {
+    assertRejected(
+        FailureReason.INVALID_SIGNATURE,
+        HmsClientAssertions.create(
+            ReferenceData.APPLICATION_KEY, "AAAAAAAAAAAAAAAAAAAAAA==", ReferenceData.NOW));
+  }
+
+  @Test
+  public void testExpiredAndNotYetValid() {
+    String jwt = HmsClientAssertions.create();
+
+    assertEquals(
+        FailureReason.EXPIRED,
+        validator.Validate(jwt, ReferenceData.NOW.plusSeconds(3601)).getFailureReason());
+    assertTrue(validator.Validate(jwt, ReferenceData.NOW.plusSeconds(3600)).isValid());
+
+    String notBefore =
+        HmsClientAssertions.builder(
+                ReferenceData.APPLICATION_KEY, ReferenceData.APPLICATION_SECRET, ReferenceData.NOW)
+            .claim("nbf", ReferenceData.NOW.plusSeconds(60).toEpochSecond())
+            .compact();
+
+    assertRejected(FailureReason.NOT_YET_VALID, notBefore);
+  }
+
+  @Test
+  public void testInvalidClaims() {
+    String wrongScope =
+        HmsClientAssertions.builder(
+                ReferenceData.APPLICATION_KEY, ReferenceData.APPLICATION_SECRET, ReferenceData.NOW)
+            .claim("scope", "https://example.com")
+            .compact();
+
+    assertRejected(FailureReason.INVALID_CLAIMS, wrongScope);
+  }
+
+  @Test
+  public void testClaimsAsInBaseline() {
+    // The result has the (signed) claims, which are not required to match the header, or to be
+    // present.
+    String otherApplicationKey =
+        HmsClientAssertions.builder(
+                ReferenceData.APPLICATION_KEY, ReferenceData.APPLICATION_SECRET, ReferenceData.NOW)
+            .claim("sinch:rtc:application_key", "00000000-0000-0000-0000-000000000000")
+            .setSubject(null)
+            .compact();
+
+    TokenValidationResult result = validator.Validate(otherApplicationKey, ReferenceData.NOW);
+    assertTrue(result.isValid());
+    assertEquals("00000000-0000-0000-0000-000000000000", result.getSinchApplicationKey());
+    assertNull(result.getHmsApplicationId());
+  }
+
+  @Test
+  public void testCompressedPayload() {
+    for (CompressionCodec codec :
+        new CompressionCodec[] {CompressionCodecs.DEFLATE, CompressionCodecs.GZIP}) {
+      String compressed =
+          HmsClientAssertions.builder(
+                  ReferenceData.APPLICATION_KEY,
+                  ReferenceData.APPLICATION_SECRET,
+                  ReferenceData.NOW)
+              .compressWith(codec)
+              .compact();
+
+      TokenValidationResult result = validator.Validate(compressed, ReferenceData.NOW);
+      assertTrue(codec.getAlgorithmName(), result.isValid());
+      assertEquals(ReferenceData.HMS_APP_ID, result.getHmsApplicationId());
+    }
+
+    String unknown =
+        HmsClientAssertions.builder(
+                ReferenceData.APPLICATION_KEY, ReferenceData.APPLICATION_SECRET, ReferenceData.NOW)
+            .setHeaderParam("zip", "LZ4")
+            .compact();
+    assertRejected(FailureReason.MALFORMED, unknown);
+  }
+
+  @Test
+  public void testInvalidResultsAreShared() {
+    assertSame(validator.Validate("a.b.c"), validator.Validate("d.e.f"));
+  }
+
+  @Test
+  public void testReplayed() {
+    HmsOAuthFlowTokenValidator replayProtected =
+        new HmsOAuthFlowTokenValidator(
+            applicationKey -> ReferenceData.APPLICATION_SECRET,
+            Clock.fixed(ReferenceData.NOW.toInstant(), ZoneOffset.UTC),
+            new BucketedNonceReplayStore());
+
+    String jwt = HmsClientAssertions.create();
+    assertTrue(replayProtected.Validate(jwt).isValid());
+    assertEquals(FailureReason.REPLAYED, replayProtected.Validate(jwt).getFailureReason());
+
+    // Invalid tokens do not use up their nonce.
+    String otherNonce =
+        HmsClientAssertions.builder(
+                ReferenceData.APPLICATION_KEY, ReferenceData.APPLICATION_SECRET, ReferenceData.NOW)
+            .claim("nonce", "0a3bd7c4-51a5-4b6e-9a4c-0e8f4e7f0d9b")
+            .claim("scope", "https://example.com")
+            .compact();
+    assertEquals(
+        FailureReason.INVALID_CLAIMS, replayProtected.Validate(otherNonce).getFailureReason());
+
+    String withoutNonce =
+        HmsClientAssertions.builder(
+                ReferenceData.APPLICATION_KEY, ReferenceData.APPLICATION_SECRET, ReferenceData.NOW)
+            .claim("nonce", null)
+            .compact();
+    assertTrue(validator.Validate(withoutNonce).isValid());
+    assertEquals(
+        FailureReason.INVALID_CLAIMS, replayProtected.Validate(withoutNonce).getFailureReason());
+  }
+
+  @Test
+  public void testValidateAll() {
+    final String otherKey = "00000000-0000-0000-0000-000000000001";
+    final String failingKey = "00000000-0000-0000-0000-000000000002";
+    final Map<String, AtomicInteger> lookups = new ConcurrentHashMap<String, AtomicInteger>();
+
+    HmsOAuthFlowTokenValidator batchValidator =
+        new HmsOAuthFlowTokenValidator(
+            applicationKey -> {
+              lookups.computeIfAbsent(applicationKey, key -> new AtomicInteger()).incrementAndGet();
+              if (failingKey.equals(applicationKey)) throw new IllegalStateException("unavailable");
+              return ReferenceData.APPLICATION_KEY.equals(applicationKey)
+                      || otherKey.equals(applicationKey)
+                  ? ReferenceData.APPLICATION_SECRET
+                  : null;
+            },
+            Clock.fixed(ReferenceData.NOW.toInstant(), ZoneOffset.UTC));
+
+    List<String> tokens = new ArrayList<String>();
+    List<FailureReason> expected = new ArrayList<FailureReason>();
+    for (int i = 0; i < 100; i++) {
+      String applicationKey = i % 2 == 0 ? ReferenceData.APPLICATION_KEY : otherKey;
+      tokens.add(
+          HmsClientAssertions.create(
+              applicationKey, ReferenceData.APPLICATION_SECRET, ReferenceData.NOW));
+      expected.add(null);
+    }
+    tokens.add(10, null);
+    expected.add(10, FailureReason.MALFORMED);
+    tokens.add(20, "not a jwt");
+    expected.add(20, FailureReason.MALFORMED);
+    tokens.add(
+        30,
+        HmsClientAssertions.create(
+            ReferenceData.APPLICATION_KEY, "AAAAAAAAAAAAAAAAAAAAAA==", ReferenceData.NOW));
+    expected.add(30, FailureReason.INVALID_SIGNATURE);
+    tokens.add(
+        40,
+        HmsClientAssertions.create("unknown", ReferenceData.APPLICATION_SECRET, ReferenceData.NOW));
+    expected.add(40, FailureReason.UNKNOWN_APPLICATION_KEY);
+    tokens.add(
+        50,
+        HmsClientAssertions.create(
+            failingKey, ReferenceData.APPLICATION_SECRET, ReferenceData.NOW));
+    expected.add(50, FailureReason.CREDENTIALS_UNAVAILABLE);
+
+    List<TokenValidationResult> results = batchValidator.validateAll(tokens);
+
+    assertEquals(tokens.size(), results.size());
+    for (int i = 0; i < tokens.size(); i++)
+      assertEquals("token " + i, expected.get(i), results.get(i).getFailureReason());
+
+    // Credentials are resolved once per application key (and key id).
+    assertEquals(4, lookups.size());
+    for (AtomicInteger count : lookups.values()) assertEquals(1, count.get());
+  }
+
+  @Test
+  public void testValidateAllWithEmptySecret() {
+    final String emptySecretKey = "00000000-0000-0000-0000-000000000003";
+    HmsOAuthFlowTokenValidator batchValidator =
+        new HmsOAuthFlowTokenValidator(
+            applicationKey ->
+                emptySecretKey.equals(applicationKey) ? "" : ReferenceData.APPLICATION_SECRET,
+            Clock.fixed(ReferenceData.NOW.toInstant(), ZoneOffset.UTC));
+
+    List<TokenValidationResult> results =
+        batchValidator.validateAll(
+            Arrays.asList(
+                HmsClientAssertions.create(
+                    ReferenceData.APPLICATION_KEY,
+                    ReferenceData.APPLICATION_SECRET,
+                    ReferenceData.NOW),
+                HmsClientAssertions.create(
+                    emptySecretKey, ReferenceData.APPLICATION_SECRET, ReferenceData.NOW)));
+
+    assertEquals(2, results.size());
+    assertTrue(results.get(0).isValid());
+    assertEquals(FailureReason.UNKNOWN_APPLICATION_KEY, results.get(1).getFailureReason());
+  }
+
+  @Test
+  public void testValidateAsync() throws Exception {
+    final CompletableFuture<String> lookup = new CompletableFuture<String>();
+    final AtomicInteger lookups = new AtomicInteger();
+    HmsOAuthFlowTokenValidator asyncValidator =
+        HmsOAuthFlowTokenValidator.withAsyncResolver(
+            applicationKey -> {
+              lookups.incrementAndGet();
+              return lookup;
+            },
+            Clock.fixed(ReferenceData.NOW.toInstant(), ZoneOffset.UTC));
+
+    // Malformed tokens are rejected without a lookup.
+    assertEquals(
+        FailureReason.MALFORMED,
+        asyncValidator.validateAsync("not a jwt").getNow(null).getFailureReason());
+    assertEquals(0, lookups.get());
+
+    CompletableFuture<TokenValidationResult> pending =
+        asyncValidator.validateAsync(HmsClientAssertions.create());
+    assertFalse(pending.isDone());
+
+    // Validating other tokens in the meantime must not affect the pending validation.
+    assertFalse(
+        validator.Validate(HmsClientAssertions.create("x", "AAAA", ReferenceData.NOW)).isValid());
+
+    Thread completer = new Thread(() -> lookup.complete(ReferenceData.APPLICATION_SECRET));
+    completer.start();
+    completer.join();
+
+    TokenValidationResult result = pending.get(10, TimeUnit.SECONDS);
+    assertTrue(result.isValid());
+    assertEquals(ReferenceData.HMS_APP_ID, result.getHmsApplicationId());
+    assertEquals(1, lookups.get());
+  }
+
+  @Test
+  public void testBlockingLookupExecutor() throws Exception {
+    ExecutorService executor = ResolverExecutors.newBlockingLookupExecutor(1, "lookup-");
+    try {
+      String threadName = executor.submit(() -> Thread.currentThread().getName()).get();
+      // Virtual threads are not named, and are used exactly when they are reported as supported.
+      assertEquals(ResolverExecutors.isVirtualThreadsSupported() ? "" : "lookup-1", threadName);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testValidateAsyncFromBlockingResolver() throws Exception {
+    ExecutorService executor = ResolverExecutors.newBlockingLookupExecutor(2);
+    try {
+      HmsOAuthFlowTokenValidator asyncValidator =
+          HmsOAuthFlowTokenValidator.withAsyncResolver(
+              AsyncSinchApplicationCredentialsResolver.fromBlocking(
+                  applicationKey ->
+                      ReferenceData.APPLICATION_KEY.equals(applicationKey)
+                          ? ReferenceData.APPLICATION_SECRET
+                          : null,
+                  executor),
+              Clock.fixed(ReferenceData.NOW.toInstant(), ZoneOffset.UTC));
+
+      assertTrue(
+          asyncValidator
+              .validateAsync(HmsClientAssertions.create())
+              .get(10, TimeUnit.SECONDS)
+              .isValid());
+      assertEquals(
+          FailureReason.UNKNOWN_APPLICATION_KEY,
+          asyncValidator
+              .validateAsync(
+                  HmsClientAssertions.create(
+                      "00000000-0000-0000-0000-000000000000",
+                      ReferenceData.APPLICATION_SECRET,
+                      ReferenceData.NOW))
+              .get(10, TimeUnit.SECONDS)
+              .getFailureReason());
+
+      // Blocking validation works with an asynchronous resolver, and vice versa.
+      assertTrue(asyncValidator.Validate(HmsClientAssertions.create()).isValid());
+      assertTrue(validator.validateAsync(HmsClientAssertions.create()).getNow(null).isValid());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private void assertRejected(FailureReason expected, String jwt) {
+    TokenValidationResult result = validator.Validate(jwt);
+    assertEquals(expected, result.getFailureReason());
+    assertEquals(false, result.isValid());
+    assertSameResultInPlace(jwt, result);
+  }
+
+  // Validating a token in place, in a CharSequence or in bytes, gives the same result.
+  private void assertSameResultInPlace(String jwt, TokenValidationResult expected) {
+    if (jwt == null) {
+      assertSame(expected, validator.validateBytes(null, 0, 0));
+      assertSame(expected, validator.validateBytes(null));
+      return;
+    }
+
+    // E.g. a form body, with the token in the middle.
+    byte[] form = ("client_assertion=" + jwt + "&scope=x").getBytes(StandardCharsets.ISO_8859_1);
+    int offset = "client_assertion=".length();
+    ByteBuffer direct = ByteBuffer.allocateDirect(form.length);
+    direct.put(form).position(offset).limit(offset + jwt.length());
+
+    for (TokenValidationResult result :
+        new TokenValidationResult[] {
+          validator.Validate(new StringBuilder(jwt)),
+          validator.validateBytes(form, offset, jwt.length()),
+          validator.validateBytes(ByteBuffer.wrap(form, offset, jwt.length())),
+          validator.validateBytes(direct)
+        }) {
+      assertEquals(expected.getFailureReason(), result.getFailureReason());
+      assertEquals(expected.getSinchApplicationKey(), result.getSinchApplicationKey());
+      assertEquals(expected.getHmsApplicationId(), result.getHmsApplicationId());
+    }
+    assertEquals(offset, direct.position());
+  }
+
+  private static String encode(String json) {
+    return Base64.getUrlEncoder()
+        .withoutPadding()
+        .encodeToString(json.getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,182 @@
+package com.sinch.rtc.examples.hms;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.sinch.rtc.examples.ReferenceData;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+public class OffHeapCredentialsStoreTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testResolve() {
+    OffHeapCredentialsStore store =
+        new OffHeapCredentialsStore(
+            Collections.singletonMap(
+                ReferenceData.APPLICATION_KEY, ReferenceData.APPLICATION_SECRET));
+
+    assertEquals(1, store.size());
+    assertEquals(
+        ReferenceData.APPLICATION_SECRET,
+        store.resolveSinchApplicationSecret(ReferenceData.APPLICATION_KEY));
+    assertEquals(
+        ReferenceData.APPLICATION_SECRET,
+        store.resolveSinchApplicationSecret(ReferenceData.APPLICATION_KEY.toUpperCase()));
+    assertArrayEquals(
+        Base64.getDecoder().decode(ReferenceData.APPLICATION_SECRET),
+        store.resolveSinchApplicationSecretBytes(ReferenceData.APPLICATION_KEY));
+
+    assertNull(store.resolveSinchApplicationSecret(UUID.randomUUID().toString()));
+    assertNull(store.resolveSinchApplicationSecret("not a uuid"));
+    assertNull(store.resolveSinchApplicationSecret(null));
+  }
+
+  @Test
+  public void testManyApplications() {
+    Map<String, String> credentials = credentials(100000);
+    OffHeapCredentialsStore store = new OffHeapCredentialsStore(credentials);
+
+    assertEquals(credentials.size(), store.size());
+    for (Map.Entry<String, String> entry : credentials.entrySet())
+      assertEquals(entry.getValue(), store.resolveSinchApplicationSecret(entry.getKey()));
+  }
+
+  @Test
+  public void testReload() {
+    OffHeapCredentialsStore store =
+        new OffHeapCredentialsStore(
+            Collections.singletonMap(
+                ReferenceData.APPLICATION_KEY, ReferenceData.APPLICATION_SECRET));
+
+    store.reload(Collections.<String, String>emptyMap());
+
+    assertEquals(0, store.size());
+    assertNull(store.resolveSinchApplicationSecret(ReferenceData.APPLICATION_KEY));
+  }
+
+  @Test
+  public void testInvalidCredentials() {
+    OffHeapCredentialsStore store = new OffHeapCredentialsStore();
+
+    for (String[] entry :
+        new String[][] {
+          {"not a uuid", ReferenceData.APPLICATION_SECRET},
+          {ReferenceData.APPLICATION_KEY, ""},
+          {ReferenceData.APPLICATION_KEY, "not base64"}
+        }) {
+      try {
+        store.reload(Collections.singletonMap(entry[0], entry[1]));
+        fail();
+      } catch (IllegalArgumentException e) {
+        // Expected
+      }
+    }
+  }
+
+  @Test
+  public void testLoad() throws IOException {
+    Path file = folder.newFile().toPath();
+    String other = UUID.randomUUID().toString();
+    String unpadded = "AQID";
+    Files.write(
+        file,
+        ("# Sinch applications\r\n"
+                + "\n"
+                + ReferenceData.APPLICATION_KEY
+                + ",AAAAAAAAAAAAAAAAAAAAAA==\n"
+                + "  "
+                + other
+                + " \t"
+                + unpadded
+                + "  \r\n"
+                + ReferenceData.APPLICATION_KEY
+                + ","
+                + ReferenceData.APPLICATION_SECRET)
+            .getBytes(StandardCharsets.US_ASCII));
+
+    OffHeapCredentialsStore store = OffHeapCredentialsStore.load(file);
+
+    assertEquals(2, store.size());
+    assertEquals(
+        ReferenceData.APPLICATION_SECRET,
+        store.resolveSinchApplicationSecret(ReferenceData.APPLICATION_KEY));
+    assertEquals(unpadded, store.resolveSinchApplicationSecret(other));
+  }
+
+  @Test
+  public void testLoadLargeFile() throws IOException {
+    // Larger than the read buffer, so that lines span reads.
+    Map<String, String> credentials = credentials(20000);
+    Path file = folder.newFile().toPath();
+    try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.US_ASCII)) {
+      for (Map.Entry<String, String> entry : credentials.entrySet())
+        writer.write(entry.getKey() + "," + entry.getValue() + "\n");
+    }
+    assertTrue(Files.size(file) > 4 * OffHeapCredentialsStore.READ_BUFFER_SIZE);
+
+    OffHeapCredentialsStore store = OffHeapCredentialsStore.load(file);
+
+    assertEquals(credentials.size(), store.size());
+    for (Map.Entry<String, String> entry : credentials.entrySet())
+      assertEquals(entry.getValue(), store.resolveSinchApplicationSecret(entry.getKey()));
+  }
+
+  @Test
+  public void testLoadMalformed() throws IOException {
+    OffHeapCredentialsStore store =
+        new OffHeapCredentialsStore(
+            Collections.singletonMap(
+                ReferenceData.APPLICATION_KEY, ReferenceData.APPLICATION_SECRET));
+
+    for (String line :
+        new String[] {
+          "not a uuid," + ReferenceData.APPLICATION_SECRET,
+          ReferenceData.APPLICATION_KEY + ReferenceData.APPLICATION_SECRET,
+          ReferenceData.APPLICATION_KEY + ",",
+          ReferenceData.APPLICATION_KEY + ",ax8h!TTQ",
+          ReferenceData.APPLICATION_KEY + ",A"
+        }) {
+      Path file = folder.newFile().toPath();
+      Files.write(file, ("\n" + line + "\n").getBytes(StandardCharsets.US_ASCII));
+
+      try {
+        store.reload(file);
+        fail(line);
+      } catch (IOException e) {
+        assertTrue(e.getMessage(), e.getMessage().contains(":2: malformed"));
+      }
+    }
+
+    // The current credentials are kept.
+    assertEquals(
+        ReferenceData.APPLICATION_SECRET,
+        store.resolveSinchApplicationSecret(ReferenceData.APPLICATION_KEY));
+  }
+
+  private static Map<String, String> credentials(int count) {
+    Map<String, String> credentials = new HashMap<String, String>();
+    Base64.Encoder encoder = Base64.getEncoder();
+    for (int i = 0; i < count; i++) {
+      byte[] secret = new byte[16];
+      for (int j = 0; j < secret.length; j++) secret[j] = (byte) (i * 31 + j);
+      credentials.put(UUID.randomUUID().toString(), encoder.encodeToString(secret));
+    }
+    return credentials;
+  }
+}
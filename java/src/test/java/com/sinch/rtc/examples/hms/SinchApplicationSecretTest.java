@@ -0,0 +1,253 @@
+package com.sinch.rtc.examples.hms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.sinch.rtc.examples.ReferenceData;
+import com.sinch.rtc.examples.hms.TokenValidationResult.FailureReason;
+import com.sinch.rtc.examples.jwt.CompactJws;
+import com.sinch.rtc.examples.jwt.SigningKeyCache;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.*;
+
+public class SinchApplicationSecretTest {
+
+  private static final String OLD_SECRET = ReferenceData.APPLICATION_SECRET;
+  private static final String NEW_SECRET = "AQIDBAUGBwgJCgsMDQ4PEA==";
+
+  // The new secret is active from the start of the next day, and the old secret until the middle
+  // of it, i.e. their active periods overlap on the next day only.
+  private static final OffsetDateTime DAY = ReferenceData.NOW;
+  private static final OffsetDateTime NEXT_DAY = DAY.plusDays(1);
+  private static final OffsetDateTime DAY_AFTER = DAY.plusDays(2);
+  private static final Instant ROTATION_START =
+      NEXT_DAY.toLocalDate().atStartOfDay().toInstant(ZoneOffset.UTC);
+
+  private final List<SinchApplicationSecret> secrets =
+      Arrays.asList(
+          new SinchApplicationSecret(NEW_SECRET, ROTATION_START, null),
+          new SinchApplicationSecret(OLD_SECRET, null, ROTATION_START.plusSeconds(43200)));
+
+  private final SinchApplicationCredentialsResolver resolver =
+      new SinchApplicationCredentialsResolver() {
+        @Override
+        public String resolveSinchApplicationSecret(String applicationKey) {
+          return ReferenceData.APPLICATION_KEY.equals(applicationKey) ? NEW_SECRET : null;
+        }
+
+        @Override
+        public List<SinchApplicationSecret> resolveSinchApplicationSecrets(String applicationKey) {
+          return ReferenceData.APPLICATION_KEY.equals(applicationKey)
+              ? secrets
+              : Collections.<SinchApplicationSecret>emptyList();
+        }
+      };
+
+  @Test
+  public void testIsActiveOn() {
+    SinchApplicationSecret secret = secrets.get(1);
+
+    assertTrue(secret.isActiveOn(DAY.minusYears(10)));
+    assertTrue(secret.isActiveOn(DAY));
+    assertTrue(secret.isActiveOn(NEXT_DAY));
+    assertFalse(secret.isActiveOn(DAY_AFTER));
+
+    assertFalse(secrets.get(0).isActiveOn(DAY));
+    assertTrue(secrets.get(0).isActiveOn(NEXT_DAY));
+    assertTrue(secrets.get(0).isActiveOn(DAY.plusYears(10)));
+
+    // Days are UTC days.
+    assertFalse(
+        secrets.get(0).isActiveOn(NEXT_DAY.withHour(0).withOffsetSameLocal(ZoneOffset.ofHours(2))));
+  }
+
+  @Test
+  public void testIsActiveAt() {
+    SinchApplicationSecret secret = secrets.get(1);
+
+    assertTrue(secret.isActiveAt(ROTATION_START));
+    assertTrue(secret.isActiveAt(ROTATION_START.plusSeconds(43199)));
+    assertFalse(secret.isActiveAt(ROTATION_START.plusSeconds(43200)));
+
+    assertFalse(secrets.get(0).isActiveAt(ROTATION_START.minusSeconds(1)));
+    assertTrue(secrets.get(0).isActiveAt(ROTATION_START));
+  }
+
+  @Test
+  public void testInvalidArguments() {
+    for (Runnable invalid :
+        new Runnable[] {
+          () -> new SinchApplicationSecret((String) null, null, null),
+          () -> new SinchApplicationSecret("", null, null),
+          () -> new SinchApplicationSecret("not base64!", null, null),
+          () -> new SinchApplicationSecret(OLD_SECRET, ROTATION_START, ROTATION_START),
+        }) {
+      try {
+        invalid.run();
+        fail();
+      } catch (IllegalArgumentException e) {
+        // Expected
+      }
+    }
+  }
+
+  @Test
+  public void testSingle() {
+    assertTrue(SinchApplicationSecret.single(null).isEmpty());
+    assertTrue(SinchApplicationSecret.single(new byte[0]).isEmpty());
+
+    List<SinchApplicationSecret> single =
+        SinchApplicationSecret.single(Base64.getDecoder().decode(OLD_SECRET));
+    assertEquals(1, single.size());
+    assertTrue(single.get(0).isActiveAt(Instant.MIN));
+    assertTrue(single.get(0).isActiveAt(Instant.MAX));
+  }
+
+  @Test
+  public void testValidateDuringRotation() {
+    HmsOAuthFlowTokenValidator validator = new HmsOAuthFlowTokenValidator(resolver);
+
+    assertValid(validator, OLD_SECRET, DAY);
+    assertInvalidSignature(validator, NEW_SECRET, DAY);
+
+    assertValid(validator, OLD_SECRET, NEXT_DAY);
+    assertValid(validator, NEW_SECRET, NEXT_DAY);
+
+    assertInvalidSignature(validator, OLD_SECRET, DAY_AFTER);
+    assertValid(validator, NEW_SECRET, DAY_AFTER);
+  }
+
+  @Test
+  public void testRevokedSecretIsNotAccepted() {
+    HmsOAuthFlowTokenValidator validator = new HmsOAuthFlowTokenValidator(resolver);
+
+    // The old secret is no longer active in the afternoon of the next day, even for tokens with
+    // the `kid` of that day.
+    OffsetDateTime afternoon = NEXT_DAY.withHour(13);
+    assertEquals(
+        FailureReason.INVALID_SIGNATURE,
+        validator.Validate(token(OLD_SECRET, afternoon), afternoon).getFailureReason());
+    assertTrue(validator.Validate(token(NEW_SECRET, afternoon), afternoon).isValid());
+  }
+
+  @Test
+  public void testValidateAllDuringRotation() {
+    HmsOAuthFlowTokenValidator validator = new HmsOAuthFlowTokenValidator(resolver);
+
+    List<TokenValidationResult> results =
+        validator.validateAll(
+            Arrays.asList(
+                token(OLD_SECRET, NEXT_DAY),
+                token(NEW_SECRET, NEXT_DAY),
+                token("AAAAAAAAAAAAAAAAAAAAAA==", NEXT_DAY)),
+            NEXT_DAY,
+            ForkJoinPool.commonPool());
+
+    assertTrue(results.get(0).isValid());
+    assertTrue(results.get(1).isValid());
+    assertEquals(FailureReason.INVALID_SIGNATURE, results.get(2).getFailureReason());
+  }
+
+  @Test
+  public void testValidateAsyncDuringRotation() {
+    HmsOAuthFlowTokenValidator validator =
+        HmsOAuthFlowTokenValidator.withAsyncResolver(
+            AsyncSinchApplicationCredentialsResolver.fromBlocking(resolver, Runnable::run),
+            Clock.fixed(NEXT_DAY.toInstant(), ZoneOffset.UTC));
+
+    assertTrue(validator.validateAsync(token(OLD_SECRET, NEXT_DAY)).join().isValid());
+    assertTrue(validator.validateAsync(token(NEW_SECRET, NEXT_DAY)).join().isValid());
+  }
+
+  @Test
+  public void testCachingResolver() {
+    HmsOAuthFlowTokenValidator validator =
+        new HmsOAuthFlowTokenValidator(new CachingCredentialsResolver(resolver));
+
+    assertValid(validator, OLD_SECRET, NEXT_DAY);
+    assertValid(validator, NEW_SECRET, NEXT_DAY);
+  }
+
+  @Test
+  public void testSelectSigningKey() {
+    long nowMillis = NEXT_DAY.toInstant().toEpochMilli();
+    CompactJws jwt = CompactJws.get();
+
+    // The signature is verified against the candidates, so the selected key matches it.
+    assertTrue(jwt.parse(token(OLD_SECRET, NEXT_DAY), 8192));
+    assertEquals(
+        SigningKeyCache.getDefault().get(Base64.getDecoder().decode(OLD_SECRET), NEXT_DAY),
+        SinchApplicationSecret.selectSigningKey(secrets, NEXT_DAY, nowMillis, jwt));
+
+    assertTrue(jwt.parse(token("AAAAAAAAAAAAAAAAAAAAAA==", NEXT_DAY), 8192));
+    assertNull(SinchApplicationSecret.selectSigningKey(secrets, NEXT_DAY, nowMillis, jwt));
+
+    // Only the new secret is a candidate on the day after.
+    assertTrue(jwt.parse(token(OLD_SECRET, DAY_AFTER), 8192));
+    assertNull(
+        SinchApplicationSecret.selectSigningKey(
+            secrets, DAY_AFTER, DAY_AFTER.toInstant().toEpochMilli(), jwt));
+  }
+
+  @Test
+  public void testMaxCandidates() {
+    List<SinchApplicationSecret> overlapping = new ArrayList<SinchApplicationSecret>();
+    for (int i = 0; i <= SinchApplicationSecret.MAX_CANDIDATES; i++) {
+      byte[] secret = new byte[16];
+      secret[0] = (byte) i;
+      overlapping.add(new SinchApplicationSecret(secret, null, null));
+    }
+    String last =
+        Base64.getEncoder()
+            .encodeToString(
+                overlapping.get(SinchApplicationSecret.MAX_CANDIDATES).getSecretBytes());
+    String first = Base64.getEncoder().encodeToString(overlapping.get(0).getSecretBytes());
+
+    HmsOAuthFlowTokenValidator validator =
+        new HmsOAuthFlowTokenValidator(
+            new SinchApplicationCredentialsResolver() {
+              @Override
+              public String resolveSinchApplicationSecret(String applicationKey) {
+                return first;
+              }
+
+              @Override
+              public List<SinchApplicationSecret> resolveSinchApplicationSecrets(
+                  String applicationKey) {
+                return overlapping;
+              }
+            });
+
+    assertValid(validator, first, DAY);
+    assertInvalidSignature(validator, last, DAY);
+  }
+
+  private static String token(String applicationSecret, OffsetDateTime issuedAt) {
+    return HmsClientAssertions.create(ReferenceData.APPLICATION_KEY, applicationSecret, issuedAt);
+  }
+
+  private static void assertValid(
+      HmsOAuthFlowTokenValidator validator, String applicationSecret, OffsetDateTime issuedAt) {
+    TokenValidationResult result = validator.Validate(token(applicationSecret, issuedAt), issuedAt);
+    assertTrue(result.toString(), result.isValid());
+  }
+
+  private static void assertInvalidSignature(
+      HmsOAuthFlowTokenValidator validator, String applicationSecret, OffsetDateTime issuedAt) {
+    assertEquals(
+        FailureReason.INVALID_SIGNATURE,
+        validator.Validate(token(applicationSecret, issuedAt), issuedAt).getFailureReason());
+  }
+}
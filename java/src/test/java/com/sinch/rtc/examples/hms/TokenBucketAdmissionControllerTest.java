@@ -0,0 +1,154 @@
+package com.sinch.rtc.examples.hms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.sinch.rtc.examples.ReferenceData;
+import com.sinch.rtc.examples.hms.TokenValidationResult.FailureReason;
+import java.time.Clock;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.*;
+
+public class TokenBucketAdmissionControllerTest {
+
+  private final AtomicLong now = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+
+  @Test
+  public void testBurstAndRate() {
+    // 10 per second, i.e. one per 100 ms, in bursts of up to 3.
+    TokenBucketAdmissionController controller =
+        new TokenBucketAdmissionController(10, 3, 16, now::get);
+
+    for (int i = 0; i < 3; i++) assertTrue(controller.admit("a"));
+    assertFalse(controller.admit("a"));
+
+    advance(50);
+    assertFalse(controller.admit("a"));
+    advance(50);
+    assertTrue(controller.admit("a"));
+    assertFalse(controller.admit("a"));
+
+    // Refilled, but not beyond the burst.
+    advance(10000);
+    for (int i = 0; i < 3; i++) assertTrue(controller.admit("a"));
+    assertFalse(controller.admit("a"));
+
+    assertEquals(4, controller.rejectionCount());
+  }
+
+  @Test
+  public void testApplicationsAreLimitedSeparately() {
+    TokenBucketAdmissionController controller =
+        new TokenBucketAdmissionController(1, 1, 16, now::get);
+
+    assertTrue(controller.admit("a"));
+    assertFalse(controller.admit("a"));
+    assertTrue(controller.admit("b"));
+    assertFalse(controller.admit("b"));
+  }
+
+  @Test
+  public void testBoundedApplications() {
+    TokenBucketAdmissionController controller =
+        new TokenBucketAdmissionController(1, 1, 2, now::get);
+
+    // Two slots, i.e. the third (and later) application shares the overflow bucket while the first
+    // two are active.
+    assertTrue(controller.admit("a"));
+    assertTrue(controller.admit("b"));
+    assertTrue(controller.admit("c"));
+    assertFalse(controller.admit("d"));
+    assertFalse(controller.admit("a"));
+
+    // Once idle, slots are taken over.
+    advance(5000);
+    assertTrue(controller.admit("d"));
+    assertTrue(controller.admit("e"));
+    assertTrue(controller.admit("f"));
+    assertFalse(controller.admit("g"));
+  }
+
+  @Test
+  public void testConcurrent() throws InterruptedException {
+    TokenBucketAdmissionController controller =
+        new TokenBucketAdmissionController(1, 1000, 16, now::get);
+    AtomicInteger admitted = new AtomicInteger();
+
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++) {
+      threads[t] =
+          new Thread(
+              () -> {
+                for (int i = 0; i < 1000; i++)
+                  if (controller.admit("a")) admitted.incrementAndGet();
+              });
+      threads[t].start();
+    }
+    for (Thread thread : threads) thread.join();
+
+    assertEquals(1000, admitted.get());
+  }
+
+  @Test
+  public void testInvalidArguments() {
+    for (Runnable invalid :
+        new Runnable[] {
+          () -> new TokenBucketAdmissionController(0, 1),
+          () -> new TokenBucketAdmissionController(Double.NaN, 1),
+          () -> new TokenBucketAdmissionController(1, 0),
+          () -> new TokenBucketAdmissionController(1, 1, 1),
+        }) {
+      try {
+        invalid.run();
+        fail();
+      } catch (IllegalArgumentException e) {
+        // Expected
+      }
+    }
+  }
+
+  @Test
+  public void testValidator() {
+    AtomicInteger lookups = new AtomicInteger();
+    HmsOAuthFlowTokenValidator validator =
+        new HmsOAuthFlowTokenValidator(
+                applicationKey -> {
+                  lookups.incrementAndGet();
+                  return ReferenceData.APPLICATION_SECRET;
+                },
+                Clock.fixed(ReferenceData.NOW.toInstant(), ZoneOffset.UTC))
+            .withAdmissionController(new TokenBucketAdmissionController(1, 2, 16, now::get));
+
+    String jwt = HmsClientAssertions.create();
+    assertTrue(validator.Validate(jwt).isValid());
+    assertTrue(validator.validateAsync(jwt).join().isValid());
+
+    TokenValidationResult overloaded = validator.Validate(jwt);
+    assertEquals(FailureReason.OVERLOADED, overloaded.getFailureReason());
+    assertEquals(FailureReason.OVERLOADED, validator.validateAsync(jwt).join().getFailureReason());
+
+    // Rejected before the credentials lookup.
+    assertEquals(2, lookups.get());
+
+    // Malformed tokens are rejected before admission, i.e. do not use up the budget.
+    advance(2000);
+    assertEquals(FailureReason.MALFORMED, validator.Validate("not a jwt").getFailureReason());
+    List<TokenValidationResult> results =
+        validator.validateAll(Arrays.asList(jwt, jwt, jwt), null, ForkJoinPool.commonPool());
+    assertTrue(results.get(0).isValid());
+    assertTrue(results.get(1).isValid());
+    assertEquals(FailureReason.OVERLOADED, results.get(2).getFailureReason());
+  }
+
+  private void advance(long millis) {
+    now.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+  }
+}
@@ -0,0 +1,193 @@
+package com.sinch.rtc.examples.hms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.sinch.rtc.examples.ReferenceData;
+import com.sinch.rtc.examples.hms.TokenValidationResult.FailureReason;
+import com.sinch.rtc.examples.hms.ValidationResultCache.DuplicatePolicy;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.*;
+
+public class ValidationResultCacheTest {
+
+  private final AtomicInteger lookups = new AtomicInteger();
+
+  private final SinchApplicationCredentialsResolver resolver =
+      applicationKey -> {
+        lookups.incrementAndGet();
+        return ReferenceData.APPLICATION_KEY.equals(applicationKey)
+            ? ReferenceData.APPLICATION_SECRET
+            : null;
+      };
+
+  private final Clock clock = Clock.fixed(ReferenceData.NOW.toInstant(), ZoneOffset.UTC);
+
+  @Test
+  public void testAcceptDuplicates() {
+    ValidationResultCache cache = new ValidationResultCache(DuplicatePolicy.ACCEPT);
+    HmsOAuthFlowTokenValidator validator =
+        new HmsOAuthFlowTokenValidator(resolver, clock).withResultCache(cache);
+    String clientAssertion = HmsClientAssertions.create();
+
+    TokenValidationResult first = validator.Validate(clientAssertion);
+    TokenValidationResult retry = validator.Validate(clientAssertion);
+
+    assertTrue(first.isValid());
+    assertSame(first, retry);
+    assertEquals(1, lookups.get());
+    assertEquals(1, cache.hitCount());
+    assertEquals(1, cache.size());
+  }
+
+  @Test
+  public void testAcceptDuplicatesWithNonceReplayStore() {
+    HmsOAuthFlowTokenValidator validator =
+        new HmsOAuthFlowTokenValidator(resolver, clock, new BucketedNonceReplayStore());
+    HmsOAuthFlowTokenValidator cached =
+        validator.withResultCache(new ValidationResultCache(DuplicatePolicy.ACCEPT));
+    String clientAssertion = HmsClientAssertions.create();
+
+    assertTrue(cached.Validate(clientAssertion).isValid());
+    assertTrue(cached.Validate(clientAssertion).isValid());
+
+    // Without the cache, the retry is a replay of the nonce.
+    assertEquals(FailureReason.REPLAYED, validator.Validate(clientAssertion).getFailureReason());
+  }
+
+  @Test
+  public void testRejectDuplicates() {
+    ValidationResultCache cache = new ValidationResultCache(DuplicatePolicy.REJECT);
+    HmsOAuthFlowTokenValidator validator =
+        new HmsOAuthFlowTokenValidator(resolver, clock, new BucketedNonceReplayStore())
+            .withResultCache(cache);
+    String clientAssertion = HmsClientAssertions.create();
+
+    assertTrue(validator.Validate(clientAssertion).isValid());
+    assertEquals(FailureReason.REPLAYED, validator.Validate(clientAssertion).getFailureReason());
+    assertEquals(FailureReason.REPLAYED, validator.Validate(clientAssertion).getFailureReason());
+    assertEquals(1, lookups.get());
+    assertEquals(2, cache.hitCount());
+  }
+
+  @Test
+  public void testInvalidNotCached() {
+    ValidationResultCache cache = new ValidationResultCache(DuplicatePolicy.ACCEPT);
+    HmsOAuthFlowTokenValidator validator =
+        new HmsOAuthFlowTokenValidator(resolver, clock).withResultCache(cache);
+    String wronglySigned =
+        HmsClientAssertions.create(
+            ReferenceData.APPLICATION_KEY, "AAAAAAAAAAAAAAAAAAAAAA==", ReferenceData.NOW);
+
+    for (int i = 0; i < 2; i++) {
+      assertEquals(
+          FailureReason.INVALID_SIGNATURE, validator.Validate(wronglySigned).getFailureReason());
+      assertEquals(FailureReason.MALFORMED, validator.Validate("not a jwt").getFailureReason());
+    }
+    assertEquals(FailureReason.MALFORMED, validator.Validate(null).getFailureReason());
+
+    assertEquals(2, lookups.get());
+    assertEquals(0, cache.hitCount());
+    assertEquals(0, cache.size());
+    // Malformed client assertions are rejected before they are looked up.
+    assertEquals(2, cache.missCount());
+  }
+
+  @Test
+  public void testExpiry() {
+    ValidationResultCache cache =
+        new ValidationResultCache(DuplicatePolicy.ACCEPT, Duration.ofHours(2), 100);
+    HmsOAuthFlowTokenValidator validator =
+        new HmsOAuthFlowTokenValidator(resolver, clock).withResultCache(cache);
+    // Expires after one hour.
+    String clientAssertion = HmsClientAssertions.create();
+
+    assertTrue(validator.Validate(clientAssertion).isValid());
+    assertTrue(validator.Validate(clientAssertion, ReferenceData.NOW.plusMinutes(59)).isValid());
+    assertEquals(1, cache.hitCount());
+
+    // Not cached past JWT claim `exp`, even though the maximum age is longer.
+    assertEquals(
+        FailureReason.EXPIRED,
+        validator.Validate(clientAssertion, ReferenceData.NOW.plusMinutes(61)).getFailureReason());
+    assertEquals(1, cache.hitCount());
+    assertEquals(0, cache.size());
+
+    // Not answered from the cache before the time it was validated.
+    assertTrue(validator.Validate(clientAssertion).isValid());
+    assertTrue(validator.Validate(clientAssertion, ReferenceData.NOW.minusMinutes(1)).isValid());
+    assertEquals(1, cache.hitCount());
+  }
+
+  @Test
+  public void testMaximumAge() {
+    ValidationResultCache cache =
+        new ValidationResultCache(DuplicatePolicy.ACCEPT, Duration.ofSeconds(10), 100);
+    HmsOAuthFlowTokenValidator validator =
+        new HmsOAuthFlowTokenValidator(resolver, clock).withResultCache(cache);
+    String clientAssertion = HmsClientAssertions.create();
+
+    assertTrue(validator.Validate(clientAssertion).isValid());
+    assertTrue(validator.Validate(clientAssertion, ReferenceData.NOW.plusSeconds(11)).isValid());
+
+    assertEquals(0, cache.hitCount());
+    assertEquals(2, lookups.get());
+  }
+
+  @Test
+  public void testMaximumSize() {
+    ValidationResultCache cache =
+        new ValidationResultCache(DuplicatePolicy.ACCEPT, Duration.ofMinutes(1), 10);
+    HmsOAuthFlowTokenValidator validator =
+        new HmsOAuthFlowTokenValidator(resolver, clock).withResultCache(cache);
+
+    for (int i = 0; i < 100; i++) {
+      String clientAssertion =
+          HmsClientAssertions.create(
+              ReferenceData.APPLICATION_KEY,
+              ReferenceData.APPLICATION_SECRET,
+              ReferenceData.NOW.minusSeconds(i));
+      assertTrue(validator.Validate(clientAssertion).isValid());
+      assertTrue(cache.size() <= 10);
+    }
+    assertTrue(cache.evictionCount() > 0);
+  }
+
+  @Test
+  public void testAsync() {
+    ValidationResultCache cache = new ValidationResultCache(DuplicatePolicy.REJECT);
+    HmsOAuthFlowTokenValidator validator =
+        HmsOAuthFlowTokenValidator.withAsyncResolver(
+                AsyncSinchApplicationCredentialsResolver.fromBlocking(resolver, Runnable::run),
+                clock)
+            .withResultCache(cache);
+    String clientAssertion = HmsClientAssertions.create();
+
+    assertTrue(validator.validateAsync(clientAssertion).join().isValid());
+    assertEquals(
+        FailureReason.REPLAYED, validator.validateAsync(clientAssertion).join().getFailureReason());
+    assertEquals(1, lookups.get());
+  }
+
+  @Test
+  public void testDigest() {
+    String clientAssertion = HmsClientAssertions.create();
+
+    assertEquals(
+        ValidationResultCache.digest(clientAssertion),
+        ValidationResultCache.digest(new StringBuilder(clientAssertion)));
+    assertNotEquals(
+        ValidationResultCache.digest(clientAssertion),
+        ValidationResultCache.digest(clientAssertion + "A"));
+    // Non-ASCII characters are encoded unambiguously.
+    assertFalse(
+        ValidationResultCache.digest("\u0100")
+            .equals(ValidationResultCache.digest("\u0000\u0002\u0000")));
+  }
+}
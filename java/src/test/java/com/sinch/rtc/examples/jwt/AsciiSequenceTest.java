@@ -0,0 +1,60 @@
+package com.sinch.rtc.examples.jwt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import org.junit.*;
+
+public class AsciiSequenceTest {
+
+  private static final byte[] BYTES = "xxabc.def\u00e9xx".getBytes(StandardCharsets.ISO_8859_1);
+
+  @Test
+  public void testArray() {
+    AsciiSequence chars = AsciiSequence.of(BYTES, 2, 8);
+
+    assertEquals(8, chars.length());
+    assertEquals('a', chars.charAt(0));
+    assertEquals('\u00e9', chars.charAt(7));
+    assertEquals("abc.def\u00e9", chars.toString());
+    assertEquals("c.d", chars.subSequence(2, 5).toString());
+  }
+
+  @Test
+  public void testBuffers() {
+    ByteBuffer direct = ByteBuffer.allocateDirect(BYTES.length);
+    direct.put(BYTES).position(2).limit(10);
+
+    for (ByteBuffer buffer : new ByteBuffer[] {ByteBuffer.wrap(BYTES, 2, 8), direct}) {
+      AsciiSequence chars = AsciiSequence.of(buffer);
+
+      assertEquals("abc.def\u00e9", chars.toString());
+      assertEquals("c.d", chars.subSequence(2, 5).toString());
+      assertEquals(2, buffer.position());
+    }
+  }
+
+  @Test
+  public void testOutOfRange() {
+    AsciiSequence chars = AsciiSequence.of(BYTES, 2, 8);
+
+    for (Runnable outOfRange :
+        new Runnable[] {
+          () -> AsciiSequence.of(BYTES, -1, 2),
+          () -> AsciiSequence.of(BYTES, 2, BYTES.length),
+          () -> chars.charAt(8),
+          () -> chars.charAt(-1),
+          () -> chars.subSequence(5, 9),
+          () -> chars.subSequence(5, 4)
+        }) {
+      try {
+        outOfRange.run();
+        fail();
+      } catch (IndexOutOfBoundsException e) {
+        // Expected
+      }
+    }
+  }
+}
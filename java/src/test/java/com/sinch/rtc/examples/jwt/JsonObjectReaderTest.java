@@ -0,0 +1,75 @@
+package com.sinch.rtc.examples.jwt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import org.junit.*;
+
+public class JsonObjectReaderTest {
+
+  private final JsonObjectReader reader = new JsonObjectReader();
+
+  @Test
+  public void testMembers() {
+    assertTrue(
+        read(
+            " { \"s\" : \"a\\\"b\\u00e5\\n\", \"n\":-1514862245, \"f\":1.5, \"b\":true,"
+                + " \"o\":{\"x\":[1,{\"y\":null}]}, \"a\":[], \"\\u0061\\u0062\":\"ab\" } "));
+
+    assertEquals(JsonObjectReader.Type.STRING, reader.type("s"));
+    assertEquals("a\"b\u00e5\n", reader.getString("s"));
+    assertTrue(reader.stringEquals("s", "a\"b\u00e5\n"));
+    assertEquals(-1514862245L, reader.getLong("n", 0));
+    assertEquals(JsonObjectReader.Type.OTHER, reader.type("f"));
+    assertEquals(JsonObjectReader.Type.OTHER, reader.type("b"));
+    assertEquals(JsonObjectReader.Type.OTHER, reader.type("o"));
+    assertEquals(JsonObjectReader.Type.ABSENT, reader.type("x"));
+    assertEquals("ab", reader.getString("ab"));
+    assertNull(reader.getString("n"));
+    assertEquals(42, reader.getLong("s", 42));
+  }
+
+  @Test
+  public void testMalformed() {
+    String[] malformed = {
+      "",
+      "[]",
+      "{",
+      "{\"a\":1,}",
+      "{\"a\"}",
+      "{\"a\":01}",
+      "{\"a\":\"\\x\"}",
+      "{\"a\":tru}",
+      "{\"a\":1}}",
+      "{\"a\":1,\"a\":2}",
+      "{\"ab\":1,\"\\u0061b\":2}",
+      "{\"a\":\"\n\"}",
+      "{\"a\":-}",
+      "{\"a\":"
+          + new String(new char[20]).replace("\0", "[")
+          + new String(new char[20]).replace("\0", "]")
+          + "}"
+    };
+
+    for (String json : malformed) assertFalse(json, read(json));
+  }
+
+  @Test
+  public void testMaxMembers() {
+    StringBuilder json = new StringBuilder("{");
+    for (int i = 0; i < JsonObjectReader.MAX_MEMBERS; i++)
+      json.append("\"m").append(i).append("\":1,");
+    json.setLength(json.length() - 1);
+
+    assertTrue(read(json + "}"));
+    assertFalse(read(json + ",\"\\u006d\":1}"));
+  }
+
+  private boolean read(String json) {
+    byte[] input = ("xx" + json + "xx").getBytes(StandardCharsets.UTF_8);
+    return reader.read(input, 2, input.length - 4);
+  }
+}
@@ -1,10 +1,15 @@
 package com.sinch.rtc.examples.jwt;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 import com.sinch.rtc.examples.ReferenceData;
+import java.nio.charset.StandardCharsets;
 import java.time.OffsetDateTime;
+import java.util.Arrays;
 import java.util.Base64;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
 import org.junit.*;
 
 public class JwtSigningKeyTest {
@@ -20,6 +25,36 @@ public class JwtSigningKeyTest {
         Base64.getEncoder().encodeToString(signingKey));
   }
 
+  @Test
+  public void testDeriveSigningKeyIntoBuffer() {
+    byte[] applicationSecret = Base64.getDecoder().decode(ReferenceData.APPLICATION_SECRET);
+    byte[] buffer = new byte[40];
+
+    JwtSigningKey.deriveSigningKey(applicationSecret, ReferenceData.NOW, buffer, 8);
+
+    assertEquals(
+        "AZj5EsS8S7wb06xr5jERqPHsraQt3w/+Ih5EfrhisBQ=",
+        Base64.getEncoder().encodeToString(Arrays.copyOfRange(buffer, 8, 40)));
+  }
+
+  @Test
+  public void testHmacEngineReuse() throws Exception {
+    byte[] message = "header.payload".getBytes(StandardCharsets.US_ASCII);
+    byte[] signature = new byte[HmacSha256.LENGTH];
+
+    SecretKeySpec first = new SecretKeySpec(new byte[] {1}, "HmacSHA256");
+    SecretKeySpec second = new SecretKeySpec(new byte[] {2}, "HmacSHA256");
+
+    // Reuse the same key, and switch between keys, to exercise re-initialization.
+    for (SecretKeySpec key : new SecretKeySpec[] {first, first, second, first}) {
+      HmacSha256.get().sign(key, message, 0, message.length, signature, 0);
+
+      Mac mac = Mac.getInstance("HmacSHA256");
+      mac.init(key);
+      assertArrayEquals(mac.doFinal(message), signature);
+    }
+  }
+
   @Test
   public void testKeyId() {
     assertEquals("hkdfv1-20180102", JwtSigningKey.keyId(ReferenceData.NOW));
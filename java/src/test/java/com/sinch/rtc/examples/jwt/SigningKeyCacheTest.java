@@ -0,0 +1,142 @@
+package com.sinch.rtc.examples.jwt;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.sinch.rtc.examples.ReferenceData;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.crypto.SecretKey;
+import org.junit.*;
+
+public class SigningKeyCacheTest {
+
+  private final AtomicLong nanoTime = new AtomicLong();
+
+  private final byte[] applicationSecret =
+      Base64.getDecoder().decode(ReferenceData.APPLICATION_SECRET);
+
+  @Test
+  public void testCachedKeyEqualsDerivedKey() {
+    SigningKeyCache cache = new SigningKeyCache(10, Duration.ofHours(1), nanoTime::get);
+
+    SecretKey signingKey = cache.get(applicationSecret, ReferenceData.NOW);
+
+    assertEquals("HmacSHA256", signingKey.getAlgorithm());
+    assertArrayEquals(
+        JwtSigningKey.deriveSigningKey(applicationSecret, ReferenceData.NOW),
+        signingKey.getEncoded());
+  }
+
+  @Test
+  public void testHitsAndMisses() {
+    SigningKeyCache cache = new SigningKeyCache(10, Duration.ofHours(1), nanoTime::get);
+
+    SecretKey first = cache.get(applicationSecret, ReferenceData.NOW);
+    // Same day, and an equal (but not the same) secret array.
+    SecretKey second = cache.get(applicationSecret.clone(), ReferenceData.NOW.plusHours(20));
+    // Next day.
+    SecretKey third = cache.get(applicationSecret, ReferenceData.NOW.plusDays(1));
+
+    assertSame(first, second);
+    assertEquals(1, cache.hitCount());
+    assertEquals(2, cache.missCount());
+    assertEquals(2, cache.size());
+    assertArrayEquals(
+        JwtSigningKey.deriveSigningKey(applicationSecret, ReferenceData.NOW.plusDays(1)),
+        third.getEncoded());
+  }
+
+  @Test
+  public void testAgeEviction() {
+    SigningKeyCache cache = new SigningKeyCache(10, Duration.ofSeconds(10), nanoTime::get);
+
+    SecretKey first = cache.get(applicationSecret, ReferenceData.NOW);
+    nanoTime.addAndGet(Duration.ofSeconds(10).toNanos());
+    SecretKey second = cache.get(applicationSecret, ReferenceData.NOW);
+
+    assertEquals(0, cache.hitCount());
+    assertEquals(2, cache.missCount());
+    assertArrayEquals(first.getEncoded(), second.getEncoded());
+  }
+
+  @Test
+  public void testSizeEviction() {
+    SigningKeyCache cache = new SigningKeyCache(10, Duration.ofHours(1), nanoTime::get);
+
+    for (int i = 0; i < 100; i++) {
+      nanoTime.incrementAndGet();
+      cache.get(applicationSecret, ReferenceData.NOW.plusDays(i));
+    }
+
+    assertTrue(cache.size() <= 10);
+    assertEquals(100 - cache.size(), cache.evictionCount());
+
+    // The most recently added entry is kept.
+    cache.get(applicationSecret, ReferenceData.NOW.plusDays(99));
+    assertEquals(1, cache.hitCount());
+  }
+
+  @Test
+  public void testPrewarm() {
+    SigningKeyCache cache = new SigningKeyCache(10, Duration.ofHours(48), nanoTime::get);
+    byte[] otherSecret = new byte[16];
+
+    cache.get(applicationSecret, ReferenceData.NOW);
+    cache.get(otherSecret, ReferenceData.NOW.minusDays(1));
+
+    LocalDate today = ReferenceData.NOW.toLocalDate();
+    assertEquals(1, cache.prewarm(today, today.plusDays(1)));
+    assertEquals(0, cache.prewarm(today, today.plusDays(1)));
+    assertEquals(1, cache.prewarmCount());
+
+    // Both today's and tomorrow's keys are cached.
+    SecretKey tomorrow = cache.get(applicationSecret, ReferenceData.NOW.plusDays(1));
+    cache.get(applicationSecret, ReferenceData.NOW);
+
+    assertEquals(2, cache.hitCount());
+    assertEquals(2, cache.missCount());
+    assertArrayEquals(
+        JwtSigningKey.deriveSigningKey(applicationSecret, ReferenceData.NOW.plusDays(1)),
+        tomorrow.getEncoded());
+  }
+
+  @Test
+  public void testPrewarmDoesNotEvict() {
+    SigningKeyCache cache = new SigningKeyCache(2, Duration.ofHours(48), nanoTime::get);
+
+    cache.get(applicationSecret, ReferenceData.NOW);
+    cache.get(new byte[16], ReferenceData.NOW);
+
+    LocalDate today = ReferenceData.NOW.toLocalDate();
+    assertEquals(0, cache.prewarm(today, today.plusDays(1)));
+    assertEquals(0, cache.evictionCount());
+    assertEquals(2, cache.prewarmSkippedCount());
+  }
+
+  @Test
+  public void testPrewarmEvictsPreviousDays() {
+    SigningKeyCache cache = new SigningKeyCache(4, Duration.ofHours(48), nanoTime::get);
+    byte[] otherSecret = new byte[16];
+
+    cache.get(applicationSecret, ReferenceData.NOW.minusDays(1));
+    cache.get(otherSecret, ReferenceData.NOW.minusDays(1));
+    cache.get(applicationSecret, ReferenceData.NOW);
+    cache.get(otherSecret, ReferenceData.NOW);
+
+    LocalDate today = ReferenceData.NOW.toLocalDate();
+    assertEquals(2, cache.prewarm(today, today.plusDays(1)));
+    assertEquals(2, cache.evictionCount());
+    assertEquals(0, cache.prewarmSkippedCount());
+    assertEquals(4, cache.size());
+
+    // Today's keys are still cached.
+    cache.get(applicationSecret, ReferenceData.NOW);
+    cache.get(otherSecret, ReferenceData.NOW);
+    assertEquals(2, cache.hitCount());
+  }
+}
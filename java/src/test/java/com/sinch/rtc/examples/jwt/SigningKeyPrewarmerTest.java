@@ -0,0 +1,71 @@
+package com.sinch.rtc.examples.jwt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.sinch.rtc.examples.ReferenceData;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Base64;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import org.junit.*;
+
+public class SigningKeyPrewarmerTest {
+
+  private final byte[] applicationSecret =
+      Base64.getDecoder().decode(ReferenceData.APPLICATION_SECRET);
+
+  @Test
+  public void testPrewarmsWithinLeadTime() throws Exception {
+    OffsetDateTime beforeMidnight = OffsetDateTime.of(2018, 1, 2, 23, 58, 0, 0, ZoneOffset.UTC);
+    SigningKeyCache cache = new SigningKeyCache(10, Duration.ofHours(48));
+    cache.get(applicationSecret, beforeMidnight);
+
+    ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    try (SigningKeyPrewarmer prewarmer =
+        new SigningKeyPrewarmer(
+            cache,
+            scheduler,
+            Clock.fixed(beforeMidnight.toInstant(), ZoneOffset.UTC),
+            SigningKeyPrewarmer.DEFAULT_LEAD_TIME)) {
+      prewarmer.start();
+
+      long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+      while (cache.prewarmCount() == 0 && System.nanoTime() < deadline) Thread.sleep(10);
+
+      assertEquals(1, prewarmer.lastPrewarmedKeyCount());
+      assertEquals(0, prewarmer.lastPrewarmSkippedKeyCount());
+      assertEquals(-1, prewarmer.lastRolloverMissCount());
+    } finally {
+      scheduler.shutdownNow();
+    }
+
+    // After midnight, tokens of both days are served from the cache.
+    cache.get(applicationSecret, beforeMidnight.plusMinutes(3));
+    cache.get(applicationSecret, beforeMidnight);
+    assertEquals(1, cache.missCount());
+    assertEquals(2, cache.hitCount());
+  }
+
+  @Test
+  public void testPrewarmNow() {
+    SigningKeyCache cache = new SigningKeyCache(10, Duration.ofHours(48));
+    cache.get(applicationSecret, ReferenceData.NOW);
+
+    ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    try (SigningKeyPrewarmer prewarmer =
+        new SigningKeyPrewarmer(
+            cache,
+            scheduler,
+            Clock.fixed(ReferenceData.NOW.toInstant(), ZoneOffset.UTC),
+            SigningKeyPrewarmer.DEFAULT_LEAD_TIME)) {
+      assertEquals(1, prewarmer.prewarmNow());
+      assertTrue(prewarmer.lastPrewarmDuration().toNanos() > 0);
+    } finally {
+      scheduler.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,49 @@
+package com.sinch.rtc.examples.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.*;
+
+public class LatencyHistogramTest {
+
+  @Test
+  public void testBuckets() {
+    for (long value : new long[] {0, 1, 7, 8, 9, 15, 16, 1000, 123456789, Long.MAX_VALUE}) {
+      int bucket = LatencyHistogram.bucket(value);
+      long upper = LatencyHistogram.upperBound(bucket);
+
+      assertTrue(value + " <= " + upper, value <= upper);
+      assertTrue(value + " within 12.5% of " + upper, upper - value <= value / 8);
+      if (bucket > 0) assertTrue(LatencyHistogram.upperBound(bucket - 1) < value);
+    }
+  }
+
+  @Test
+  public void testPercentiles() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.percentile(99));
+
+    for (int i = 1; i <= 1000; i++) histogram.record(i * 1000L);
+
+    assertEquals(1000, histogram.count());
+    assertEquals(500500.0, histogram.mean(), 0.001);
+    assertWithin(500000, histogram.percentile(50));
+    assertWithin(990000, histogram.percentile(99));
+    assertWithin(1000000, histogram.percentile(100));
+  }
+
+  @Test
+  public void testNegative() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(-1);
+
+    assertEquals(1, histogram.count());
+    assertEquals(0, histogram.percentile(100));
+  }
+
+  private static void assertWithin(long expected, long actual) {
+    assertTrue(expected + " <= " + actual, expected <= actual);
+    assertTrue(expected + " within 12.5% of " + actual, actual - expected <= expected / 8);
+  }
+}
@@ -0,0 +1,157 @@
+package com.sinch.rtc.examples.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.sinch.rtc.examples.ReferenceData;
+import com.sinch.rtc.examples.hms.HmsClientAssertions;
+import com.sinch.rtc.examples.hms.HmsOAuthFlowTokenValidator;
+import com.sinch.rtc.examples.hms.TokenValidationResult.FailureReason;
+import com.sinch.rtc.examples.metrics.TokenMetrics.Phase;
+import com.sinch.rtc.examples.ocra.auth.UserRegistrationToken;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Map;
+import org.junit.*;
+
+public class RecordingTokenMetricsTest {
+
+  private final HmsOAuthFlowTokenValidator validator =
+      new HmsOAuthFlowTokenValidator(
+          applicationKey ->
+              ReferenceData.APPLICATION_KEY.equals(applicationKey)
+                  ? ReferenceData.APPLICATION_SECRET
+                  : null,
+          Clock.fixed(ReferenceData.NOW.toInstant(), ZoneOffset.UTC));
+
+  private final RecordingTokenMetrics metrics = new RecordingTokenMetrics();
+
+  @Before
+  public void install() {
+    TokenMetrics.install(metrics);
+  }
+
+  @After
+  public void uninstall() {
+    TokenMetrics.install(null);
+  }
+
+  @Test
+  public void testInstall() {
+    assertSame(metrics, TokenMetrics.get());
+
+    TokenMetrics.install(null);
+    assertSame(TokenMetrics.NOOP, TokenMetrics.get());
+    assertFalse(TokenMetrics.get().isEnabled());
+  }
+
+  @Test
+  public void testValidation() {
+    String valid = HmsClientAssertions.create();
+    String unknown =
+        HmsClientAssertions.create(
+            "00000000-0000-0000-0000-000000000000",
+            ReferenceData.APPLICATION_SECRET,
+            ReferenceData.NOW);
+
+    assertTrue(validator.Validate(valid).isValid());
+    assertFalse(validator.Validate("not a jwt").isValid());
+    assertFalse(validator.Validate(unknown).isValid());
+
+    assertEquals(1, metrics.validCount());
+    assertEquals(1, metrics.rejectionCount(FailureReason.MALFORMED));
+    assertEquals(1, metrics.rejectionCount(FailureReason.UNKNOWN_APPLICATION_KEY));
+
+    assertEquals(3, metrics.histogram(Phase.PARSE).count());
+    assertEquals(2, metrics.histogram(Phase.RESOLVE_CREDENTIALS).count());
+    // (Getting the signing key of a single token is part of verifying its signature.)
+    assertEquals(0, metrics.histogram(Phase.DERIVE_KEY).count());
+    assertEquals(1, metrics.histogram(Phase.VERIFY_SIGNATURE).count());
+    assertEquals(1, metrics.histogram(Phase.CHECK_CLAIMS).count());
+    assertEquals(0, metrics.histogram(Phase.SIGN).count());
+
+    Map<String, Long> byKey = metrics.validationsByApplicationKey();
+    assertEquals(Long.valueOf(1), byKey.get(ReferenceData.APPLICATION_KEY));
+    // Unknown keys are not counted separately.
+    assertEquals(Long.valueOf(1), byKey.get(RecordingTokenMetrics.OTHER_APPLICATION_KEYS));
+    assertEquals(2, byKey.size());
+  }
+
+  @Test
+  public void testValidateAll() {
+    String valid = HmsClientAssertions.create();
+
+    validator.validateAll(Arrays.asList(valid, valid, "not a jwt"));
+
+    assertEquals(2, metrics.validCount());
+    assertEquals(1, metrics.rejectionCount(FailureReason.MALFORMED));
+    assertEquals(1, metrics.histogram(Phase.RESOLVE_CREDENTIALS).count());
+    assertEquals(2, metrics.histogram(Phase.VERIFY_SIGNATURE).count());
+  }
+
+  @Test
+  public void testIssuance() {
+    new UserRegistrationToken(
+            ReferenceData.APPLICATION_KEY,
+            ReferenceData.APPLICATION_SECRET,
+            ReferenceData.EXTERNAL_USER_ID,
+            ReferenceData.JWT_NONCE,
+            ReferenceData.NOW,
+            ReferenceData.NOW.plusMinutes(10))
+        .toJwt();
+
+    assertEquals(1, metrics.issuedCount());
+    assertEquals(1, metrics.histogram(Phase.DERIVE_KEY).count());
+    assertEquals(1, metrics.histogram(Phase.SIGN).count());
+    assertEquals(
+        Long.valueOf(1), metrics.issuancesByApplicationKey().get(ReferenceData.APPLICATION_KEY));
+  }
+
+  @Test
+  public void testBoundedApplicationKeys() {
+    RecordingTokenMetrics bounded = new RecordingTokenMetrics(2, Duration.ofMillis(50));
+
+    for (String applicationKey : new String[] {"a", "b", "c", "d", "a"})
+      bounded.recordValidation(applicationKey, null);
+
+    Map<String, Long> byKey = bounded.validationsByApplicationKey();
+    assertEquals(Long.valueOf(2), byKey.get("a"));
+    assertEquals(Long.valueOf(1), byKey.get("b"));
+    assertEquals(Long.valueOf(2), byKey.get(RecordingTokenMetrics.OTHER_APPLICATION_KEYS));
+    assertEquals(3, byKey.size());
+  }
+
+  @Test
+  public void testUnverifiedApplicationKeys() {
+    RecordingTokenMetrics bounded = new RecordingTokenMetrics(2, Duration.ofMillis(50));
+
+    // A flood of made-up keys does not use up the bound.
+    for (int i = 0; i < 10; i++) {
+      bounded.recordValidation("spoofed-" + i, FailureReason.INVALID_SIGNATURE);
+      bounded.recordValidation("overloaded-" + i, FailureReason.OVERLOADED);
+    }
+    bounded.recordValidation("a", FailureReason.EXPIRED);
+    bounded.recordValidation("a", FailureReason.INVALID_SIGNATURE);
+    bounded.recordValidation("b", null);
+
+    Map<String, Long> byKey = bounded.validationsByApplicationKey();
+    assertEquals(Long.valueOf(20), byKey.get(RecordingTokenMetrics.OTHER_APPLICATION_KEYS));
+    assertEquals(Long.valueOf(2), byKey.get("a"));
+    assertEquals(Long.valueOf(1), byKey.get("b"));
+    assertEquals(3, byKey.size());
+  }
+
+  @Test
+  public void testSlowResolution() {
+    metrics.recordCredentialsResolution(ReferenceData.APPLICATION_KEY, 1000);
+    metrics.recordCredentialsResolution(
+        ReferenceData.APPLICATION_KEY, Duration.ofSeconds(1).toNanos());
+
+    assertEquals(1, metrics.slowResolutionCount());
+    assertEquals(2, metrics.histogram(Phase.RESOLVE_CREDENTIALS).count());
+  }
+}
@@ -0,0 +1,52 @@
+package com.sinch.rtc.examples.ocra.auth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.sinch.rtc.examples.ReferenceData;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+import org.junit.*;
+
+public class NonceGeneratorTest {
+
+  @Test
+  public void testFormat() {
+    for (int i = 0; i < 1000; i++) {
+      String nonce = NonceGenerator.nextNonce();
+      UUID uuid = UUID.fromString(nonce);
+
+      assertEquals(nonce, uuid.toString());
+      assertEquals(4, uuid.version());
+      assertEquals(2, uuid.variant());
+    }
+  }
+
+  @Test
+  public void testUnique() {
+    Set<String> nonces = ConcurrentHashMap.newKeySet();
+
+    IntStream.range(0, 200000)
+        .parallel()
+        .forEach(i -> assertTrue(nonces.add(NonceGenerator.nextNonce())));
+
+    assertEquals(200000, nonces.size());
+  }
+
+  @Test
+  public void testGeneratedNonce() {
+    UserRegistrationToken token =
+        new UserRegistrationToken(
+            ReferenceData.APPLICATION_KEY,
+            ReferenceData.APPLICATION_SECRET,
+            ReferenceData.EXTERNAL_USER_ID,
+            ReferenceData.NOW,
+            ReferenceData.NOW.plusMinutes(10));
+
+    assertEquals(4, UUID.fromString(token.getNonce()).version());
+    assertEquals(
+        4, UUID.fromString(new UserRegistrationTokenIssuer.Entry("foo").getNonce()).version());
+  }
+}
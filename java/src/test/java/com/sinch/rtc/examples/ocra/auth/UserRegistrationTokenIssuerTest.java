@@ -0,0 +1,75 @@
+package com.sinch.rtc.examples.ocra.auth;
+
+import static org.junit.Assert.assertEquals;
+
+import com.sinch.rtc.examples.ReferenceData;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import org.junit.*;
+
+public class UserRegistrationTokenIssuerTest {
+
+  private final OffsetDateTime expiresAt = ReferenceData.NOW.plusSeconds(600);
+
+  private final UserRegistrationTokenIssuer issuer =
+      new UserRegistrationTokenIssuer(
+          ReferenceData.APPLICATION_KEY,
+          ReferenceData.APPLICATION_SECRET,
+          ReferenceData.NOW,
+          expiresAt);
+
+  @Test
+  public void testIdenticalToUserRegistrationToken() {
+    for (UserRegistrationTokenIssuer.Entry entry : entries(3)) {
+      UserRegistrationToken token =
+          new UserRegistrationToken(
+              ReferenceData.APPLICATION_KEY,
+              ReferenceData.APPLICATION_SECRET,
+              entry.getUserId(),
+              entry.getNonce(),
+              ReferenceData.NOW,
+              expiresAt,
+              entry.getInstanceExpiresAt());
+
+      assertEquals(token.toJwt(), issuer.issue(entry));
+    }
+  }
+
+  @Test
+  public void testIssueAllInParallel() {
+    List<UserRegistrationTokenIssuer.Entry> entries =
+        entries(UserRegistrationTokenIssuer.CHUNK_SIZE * 2 + 100);
+
+    List<String> sequential = new ArrayList<String>();
+    issuer.issueAll(entries.iterator(), (entry, jwt) -> sequential.add(jwt));
+
+    List<String> parallel = new ArrayList<String>();
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      issuer.issueAll(entries.iterator(), (entry, jwt) -> parallel.add(jwt), pool);
+    } finally {
+      pool.shutdown();
+    }
+
+    assertEquals(entries.size(), sequential.size());
+    assertEquals(sequential, parallel);
+    assertEquals(sequential, issuer.issue(entries.parallelStream()).collect(Collectors.toList()));
+  }
+
+  private static List<UserRegistrationTokenIssuer.Entry> entries(int count) {
+    List<UserRegistrationTokenIssuer.Entry> entries =
+        new ArrayList<UserRegistrationTokenIssuer.Entry>();
+    entries.add(
+        new UserRegistrationTokenIssuer.Entry(
+            ReferenceData.EXTERNAL_USER_ID, ReferenceData.JWT_NONCE));
+    for (int i = 1; i < count; i++) {
+      entries.add(
+          new UserRegistrationTokenIssuer.Entry(
+              "user-" + i, "nonce-" + i, i % 2 == 0 ? ReferenceData.NOW.plusDays(180) : null));
+    }
+    return entries;
+  }
+}
@@ -3,7 +3,15 @@ package com.sinch.rtc.examples.ocra.auth;
 import static org.junit.Assert.assertEquals;
 
 import com.sinch.rtc.examples.ReferenceData;
+import com.sinch.rtc.examples.jwt.JwtSigningKey;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
 import java.time.OffsetDateTime;
+import java.util.Base64;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.crypto.SecretKey;
 import org.junit.*;
 
 public class UserRegistrationTokenTest {
@@ -54,4 +62,116 @@ public class UserRegistrationTokenTest {
 
     assertEquals(expected, token.toJwt());
   }
+
+  @Test
+  public void testDecodedSecret() {
+    OffsetDateTime now = ReferenceData.NOW;
+
+    UserRegistrationToken token =
+        new UserRegistrationToken(
+            ReferenceData.APPLICATION_KEY,
+            Base64.getDecoder().decode(ReferenceData.APPLICATION_SECRET),
+            ReferenceData.EXTERNAL_USER_ID,
+            ReferenceData.JWT_NONCE,
+            now,
+            now.plusSeconds(600),
+            null);
+
+    assertEquals(
+        new UserRegistrationToken(
+                ReferenceData.APPLICATION_KEY,
+                ReferenceData.APPLICATION_SECRET,
+                ReferenceData.EXTERNAL_USER_ID,
+                ReferenceData.JWT_NONCE,
+                now,
+                now.plusSeconds(600))
+            .toJwt(),
+        token.toJwt());
+  }
+
+  @Test
+  public void testOutputIdenticalToJjwt() {
+    String[] userIds = {
+      "foo",
+      "",
+      "a\"b\\c/d",
+      "tab\tnl\ncr\rbs\bff\f",
+      "\u0000\u001f\u007f",
+      "\u00e5\u00e4\u00f6",
+      "\u20ac",
+      "\ud83d\ude00",
+      "\ud83d",
+      "a-very-long-user-id-" + new String(new char[300]).replace('\0', 'x')
+    };
+
+    OffsetDateTime now = ReferenceData.NOW;
+
+    for (String userId : userIds) {
+      for (OffsetDateTime instanceExpiresAt : new OffsetDateTime[] {null, now.plusDays(180)}) {
+        UserRegistrationToken token =
+            new UserRegistrationToken(
+                ReferenceData.APPLICATION_KEY,
+                ReferenceData.APPLICATION_SECRET,
+                userId,
+                ReferenceData.JWT_NONCE,
+                now,
+                now.plusSeconds(600),
+                instanceExpiresAt);
+
+        assertEquals(
+            jjwtReferenceToken(userId, now, now.plusSeconds(600), instanceExpiresAt),
+            token.toJwt());
+      }
+    }
+  }
+
+  @Test
+  public void testOutputAcrossDays() {
+    // Exercise the cached header (and signing key) across days.
+    for (int i = 0; i < 3; i++) {
+      OffsetDateTime now = ReferenceData.NOW.plusHours(23 * i);
+
+      UserRegistrationToken token =
+          new UserRegistrationToken(
+              ReferenceData.APPLICATION_KEY,
+              ReferenceData.APPLICATION_SECRET,
+              ReferenceData.EXTERNAL_USER_ID,
+              ReferenceData.JWT_NONCE,
+              now,
+              now.plusSeconds(600));
+
+      assertEquals(
+          jjwtReferenceToken(ReferenceData.EXTERNAL_USER_ID, now, now.plusSeconds(600), null),
+          token.toJwt());
+    }
+  }
+
+  // How UserRegistrationToken used to build tokens, using io.jsonwebtoken (and Jackson).
+  private static String jjwtReferenceToken(
+      String userId,
+      OffsetDateTime issuedAt,
+      OffsetDateTime expiresAt,
+      OffsetDateTime instanceExpiresAt) {
+    final String applicationKey = ReferenceData.APPLICATION_KEY;
+
+    Map<String, Object> claims = new TreeMap<String, Object>();
+    claims.put("iss", "//rtc.sinch.com/applications/" + applicationKey);
+    claims.put("sub", "//rtc.sinch.com/applications/" + applicationKey + "/users/" + userId);
+    claims.put("iat", issuedAt.toEpochSecond());
+    claims.put("exp", expiresAt.toEpochSecond());
+    claims.put("nonce", ReferenceData.JWT_NONCE);
+    if (instanceExpiresAt != null)
+      claims.put("sinch:rtc:instance:exp", instanceExpiresAt.toEpochSecond());
+
+    SecretKey signingKey =
+        Keys.hmacShaKeyFor(
+            JwtSigningKey.deriveSigningKey(ReferenceData.APPLICATION_SECRET, issuedAt));
+
+    return Jwts.builder()
+        .setHeaderParam("alg", SignatureAlgorithm.HS256.getValue())
+        .setHeaderParam("kid", JwtSigningKey.keyId(issuedAt))
+        .setClaims(claims)
+        .signWith(signingKey, SignatureAlgorithm.HS256)
+        .compact();
+  }
 }
@@ -0,0 +1,217 @@
+package com.sinch.rtc.examples.ocra.auth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.sinch.rtc.examples.ReferenceData;
+import com.sinch.rtc.examples.jwt.SigningKeyCache;
+import com.sinch.rtc.examples.ocra.auth.VerificationResult.FailureReason;
+import java.security.Key;
+import java.time.Clock;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Base64;
+import org.junit.*;
+
+public class UserRegistrationTokenVerifierTest {
+
+  private final UserRegistrationTokenVerifier verifier =
+      new UserRegistrationTokenVerifier(
+          applicationKey ->
+              ReferenceData.APPLICATION_KEY.equals(applicationKey)
+                  ? ReferenceData.APPLICATION_SECRET
+                  : null,
+          Clock.fixed(ReferenceData.NOW.toInstant(), ZoneOffset.UTC));
+
+  @Test
+  public void testValid() {
+    VerificationResult result = verifier.verify(token(ReferenceData.NOW.plusMinutes(10), null));
+
+    assertTrue(result.toString(), result.isValid());
+    assertEquals(null, result.getFailureReason());
+    assertEquals(ReferenceData.APPLICATION_KEY, result.getSinchApplicationKey());
+    assertEquals(ReferenceData.EXTERNAL_USER_ID, result.getUserId());
+    assertEquals(ReferenceData.NOW.plusMinutes(10).toEpochSecond(), result.getExpiresAt());
+    assertEquals(0, result.getInstanceExpiresAt());
+  }
+
+  @Test
+  public void testValid_InstanceTtl() {
+    OffsetDateTime instanceExpiresAt = ReferenceData.NOW.plusDays(180);
+    VerificationResult result =
+        verifier.verify(token(ReferenceData.NOW.plusMinutes(10), instanceExpiresAt));
+
+    assertTrue(result.toString(), result.isValid());
+    assertEquals(instanceExpiresAt.toEpochSecond(), result.getInstanceExpiresAt());
+  }
+
+  @Test
+  public void testTimeClaims() {
+    String jwt = token(ReferenceData.NOW.plusMinutes(10), ReferenceData.NOW.plusMinutes(5));
+
+    assertTrue(verifier.verify(jwt, ReferenceData.NOW.plusMinutes(5)).isValid());
+    assertFailure(
+        FailureReason.NOT_YET_VALID, verifier.verify(jwt, ReferenceData.NOW.minusSeconds(1)));
+    assertFailure(
+        FailureReason.INSTANCE_EXPIRED, verifier.verify(jwt, ReferenceData.NOW.plusMinutes(6)));
+    assertFailure(FailureReason.EXPIRED, verifier.verify(jwt, ReferenceData.NOW.plusMinutes(11)));
+  }
+
+  @Test
+  public void testUnknownApplication() {
+    String jwt =
+        new UserRegistrationToken(
+                "00000000-0000-0000-0000-000000000000",
+                ReferenceData.APPLICATION_SECRET,
+                ReferenceData.EXTERNAL_USER_ID,
+                ReferenceData.NOW,
+                ReferenceData.NOW.plusMinutes(10))
+            .toJwt();
+
+    assertFailure(FailureReason.UNKNOWN_APPLICATION_KEY, verifier.verify(jwt));
+  }
+
+  @Test
+  public void testInvalidSignature() {
+    String jwt =
+        new UserRegistrationToken(
+                ReferenceData.APPLICATION_KEY,
+                Base64.getEncoder().encodeToString(new byte[16]),
+                ReferenceData.EXTERNAL_USER_ID,
+                ReferenceData.NOW,
+                ReferenceData.NOW.plusMinutes(10))
+            .toJwt();
+
+    assertFailure(FailureReason.INVALID_SIGNATURE, verifier.verify(jwt));
+
+    // A token signed with the key of another day.
+    String otherDay =
+        UserRegistrationToken.sign(
+            UserRegistrationToken.encodedHeader(ReferenceData.NOW.plusDays(1)),
+            signingKey(),
+            UserRegistrationToken.issuer(ReferenceData.APPLICATION_KEY),
+            UserRegistrationToken.subject(
+                ReferenceData.APPLICATION_KEY, ReferenceData.EXTERNAL_USER_ID),
+            ReferenceData.JWT_NONCE,
+            ReferenceData.NOW.toEpochSecond(),
+            ReferenceData.NOW.plusMinutes(10).toEpochSecond(),
+            null);
+
+    assertFailure(FailureReason.INVALID_SIGNATURE, verifier.verify(otherDay));
+  }
+
+  @Test
+  public void testInvalidClaims() {
+    String otherApplication =
+        UserRegistrationToken.subject(
+            "00000000-0000-0000-0000-000000000000", ReferenceData.EXTERNAL_USER_ID);
+    String noUser = UserRegistrationToken.subject(ReferenceData.APPLICATION_KEY, "");
+
+    for (String subject : new String[] {otherApplication, noUser}) {
+      String jwt =
+          UserRegistrationToken.sign(
+              UserRegistrationToken.encodedHeader(ReferenceData.NOW),
+              signingKey(),
+              UserRegistrationToken.issuer(ReferenceData.APPLICATION_KEY),
+              subject,
+              ReferenceData.JWT_NONCE,
+              ReferenceData.NOW.toEpochSecond(),
+              ReferenceData.NOW.plusMinutes(10).toEpochSecond(),
+              null);
+
+      assertFailure(FailureReason.INVALID_CLAIMS, verifier.verify(jwt));
+    }
+
+    // `exp` before `iat`
+    String jwt =
+        UserRegistrationToken.sign(
+            UserRegistrationToken.encodedHeader(ReferenceData.NOW),
+            signingKey(),
+            UserRegistrationToken.issuer(ReferenceData.APPLICATION_KEY),
+            UserRegistrationToken.subject(
+                ReferenceData.APPLICATION_KEY, ReferenceData.EXTERNAL_USER_ID),
+            ReferenceData.JWT_NONCE,
+            ReferenceData.NOW.toEpochSecond(),
+            ReferenceData.NOW.minusMinutes(10).toEpochSecond(),
+            null);
+
+    assertFailure(FailureReason.INVALID_CLAIMS, verifier.verify(jwt));
+  }
+
+  @Test
+  public void testIssuedAtNotOnKeyDay() {
+    // Signed with the key of the day of `kid`, but claims to be issued on another day.
+    for (OffsetDateTime issuedAt :
+        new OffsetDateTime[] {ReferenceData.NOW.minusDays(1), ReferenceData.NOW.plusDays(1)}) {
+      String jwt =
+          UserRegistrationToken.sign(
+              UserRegistrationToken.encodedHeader(ReferenceData.NOW),
+              signingKey(),
+              UserRegistrationToken.issuer(ReferenceData.APPLICATION_KEY),
+              UserRegistrationToken.subject(
+                  ReferenceData.APPLICATION_KEY, ReferenceData.EXTERNAL_USER_ID),
+              ReferenceData.JWT_NONCE,
+              issuedAt.toEpochSecond(),
+              issuedAt.plusMinutes(10).toEpochSecond(),
+              null);
+
+      assertFailure(FailureReason.INVALID_KEY_ID, verifier.verify(jwt));
+    }
+  }
+
+  @Test
+  public void testMalformed() {
+    String valid = token(ReferenceData.NOW.plusMinutes(10), null);
+    String[] segments = valid.split("\\.");
+
+    assertFailure(FailureReason.MALFORMED, verifier.verify(null));
+    assertFailure(FailureReason.MALFORMED, verifier.verify(""));
+    assertFailure(FailureReason.MALFORMED, verifier.verify("not a jwt"));
+    assertFailure(FailureReason.MALFORMED, verifier.verify(segments[0] + "." + segments[1]));
+    assertFailure(
+        FailureReason.MALFORMED, verifier.verify(segments[0] + ".bm90IGpzb24." + segments[2]));
+    assertFailure(
+        FailureReason.INVALID_CLAIMS, verifier.verify(segments[0] + ".e30." + segments[2]));
+
+    String noneHeader =
+        Base64.getUrlEncoder().withoutPadding().encodeToString("{\"alg\":\"none\"}".getBytes());
+    assertFailure(
+        FailureReason.UNSUPPORTED_ALGORITHM,
+        verifier.verify(noneHeader + "." + segments[1] + "." + segments[2]));
+
+    String noKid =
+        Base64.getUrlEncoder().withoutPadding().encodeToString("{\"alg\":\"HS256\"}".getBytes());
+    assertFailure(
+        FailureReason.INVALID_KEY_ID,
+        verifier.verify(noKid + "." + segments[1] + "." + segments[2]));
+  }
+
+  @Test
+  public void testSharedInvalidResults() {
+    assertSame(verifier.verify("not a jwt"), verifier.verify("not a jwt either"));
+  }
+
+  private static String token(OffsetDateTime expiresAt, OffsetDateTime instanceExpiresAt) {
+    return new UserRegistrationToken(
+            ReferenceData.APPLICATION_KEY,
+            ReferenceData.APPLICATION_SECRET,
+            ReferenceData.EXTERNAL_USER_ID,
+            ReferenceData.JWT_NONCE,
+            ReferenceData.NOW,
+            expiresAt,
+            instanceExpiresAt)
+        .toJwt();
+  }
+
+  private static Key signingKey() {
+    return SigningKeyCache.getDefault()
+        .get(Base64.getDecoder().decode(ReferenceData.APPLICATION_SECRET), ReferenceData.NOW);
+  }
+
+  private static void assertFailure(FailureReason expected, VerificationResult result) {
+    assertFalse(result.isValid());
+    assertEquals(expected, result.getFailureReason());
+  }
+}
@@ -0,0 +1,127 @@
+package com.sinch.rtc.examples.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.*;
+
+public class CachingAccessTokenProviderTest {
+
+  private final MutableClock clock = new MutableClock();
+  private final AtomicInteger minted = new AtomicInteger();
+
+  private final CachingAccessTokenProvider provider =
+      new CachingAccessTokenProvider(
+          (applicationKey, hmsApplicationId) ->
+              new AccessToken(
+                  applicationKey + "/" + hmsApplicationId + "/" + minted.incrementAndGet(),
+                  clock.instant().plus(Duration.ofHours(1))),
+          clock,
+          Duration.ofMinutes(5),
+          100);
+
+  @Test
+  public void testCached() {
+    AccessToken token = provider.getAccessToken("app", "hms");
+
+    clock.advance(Duration.ofMinutes(54));
+    assertSame(token, provider.getAccessToken("app", "hms"));
+
+    assertNotEquals(token.getValue(), provider.getAccessToken("app", "other").getValue());
+    assertNotEquals(token.getValue(), provider.getAccessToken("other", "hms").getValue());
+    assertEquals(3, provider.missCount());
+    assertEquals(1, provider.hitCount());
+  }
+
+  @Test
+  public void testRefreshedNearExpiry() {
+    AccessToken token = provider.getAccessToken("app", "hms");
+
+    clock.advance(Duration.ofMinutes(55));
+    AccessToken refreshed = provider.getAccessToken("app", "hms");
+
+    assertNotEquals(token.getValue(), refreshed.getValue());
+    assertSame(refreshed, provider.getAccessToken("app", "hms"));
+    assertEquals(2, minted.get());
+  }
+
+  @Test
+  public void testShortLivedTokens() {
+    CachingAccessTokenProvider shortLived =
+        new CachingAccessTokenProvider(
+            (applicationKey, hmsApplicationId) ->
+                new AccessToken(
+                    "token-" + minted.incrementAndGet(), clock.instant().plusSeconds(60)),
+            clock,
+            Duration.ofMinutes(5),
+            100);
+
+    AccessToken token = shortLived.getAccessToken("app", "hms");
+
+    // Reused for half its lifetime.
+    clock.advance(Duration.ofSeconds(29));
+    assertSame(token, shortLived.getAccessToken("app", "hms"));
+    clock.advance(Duration.ofSeconds(1));
+    assertNotEquals(token.getValue(), shortLived.getAccessToken("app", "hms").getValue());
+  }
+
+  @Test
+  public void testFailuresNotCached() {
+    AtomicInteger calls = new AtomicInteger();
+    CachingAccessTokenProvider failing =
+        new CachingAccessTokenProvider(
+            (applicationKey, hmsApplicationId) -> {
+              if (calls.incrementAndGet() == 1) throw new IllegalStateException("unavailable");
+              return new AccessToken("token", clock.instant().plus(Duration.ofHours(1)));
+            });
+
+    try {
+      failing.getAccessToken("app", "hms");
+      fail();
+    } catch (IllegalStateException e) {
+      // Expected
+    }
+
+    assertEquals("token", failing.getAccessToken("app", "hms").getValue());
+  }
+
+  @Test
+  public void testBounded() {
+    for (int i = 0; i < 1000; i++) provider.getAccessToken("app", "hms-" + i);
+
+    AccessToken token = provider.getAccessToken("app", "hms");
+    assertSame(token, provider.getAccessToken("app", "hms"));
+    assertEquals(1001, minted.get());
+  }
+
+  private static final class MutableClock extends Clock {
+    private volatile Instant now = Instant.parse("2018-01-02T03:04:05Z");
+
+    void advance(Duration duration) {
+      now = now.plus(duration);
+    }
+
+    @Override
+    public Instant instant() {
+      return now;
+    }
+
+    @Override
+    public ZoneId getZone() {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
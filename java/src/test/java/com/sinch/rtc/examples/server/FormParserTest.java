@@ -0,0 +1,68 @@
+package com.sinch.rtc.examples.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.*;
+
+public class FormParserTest {
+
+  @Test
+  public void testParse() throws IOException {
+    Map<String, String> form = parse("a=1&b=x+y%2Bz&c=%C3%A5%3D&d=&e&f=a=b&&g%20h=2");
+
+    assertEquals("1", form.get("a"));
+    assertEquals("x y+z", form.get("b"));
+    assertEquals("\u00e5=", form.get("c"));
+    assertEquals("", form.get("d"));
+    assertEquals("", form.get("e"));
+    assertEquals("a=b", form.get("f"));
+    assertEquals("2", form.get("g h"));
+    assertEquals(7, form.size());
+  }
+
+  @Test
+  public void testEmpty() throws IOException {
+    assertEquals(0, parse("").size());
+  }
+
+  @Test
+  public void testLongValue() throws IOException {
+    StringBuilder value = new StringBuilder();
+    for (int i = 0; i < 3000; i++) value.append((char) ('a' + i % 26));
+
+    assertEquals(value.toString(), parse("v=" + value).get("v"));
+  }
+
+  @Test
+  public void testMalformed() throws IOException {
+    for (String body : new String[] {"a=%", "a=%4", "a=%zz", "a=%4g"}) {
+      try {
+        parse(body);
+        fail(body);
+      } catch (FormParser.MalformedFormException e) {
+        // Expected
+      }
+    }
+  }
+
+  @Test(expected = FormParser.MalformedFormException.class)
+  public void testTooLong() throws IOException {
+    new FormParser(8).parse(bytes("a=123456789"), (name, value) -> {});
+  }
+
+  private static Map<String, String> parse(String body) throws IOException {
+    Map<String, String> form = new LinkedHashMap<String, String>();
+    new FormParser(4096).parse(bytes(body), form::put);
+    return form;
+  }
+
+  private static ByteArrayInputStream bytes(String s) {
+    return new ByteArrayInputStream(s.getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,209 @@
+package com.sinch.rtc.examples.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.sinch.rtc.examples.ReferenceData;
+import com.sinch.rtc.examples.hms.BucketedNonceReplayStore;
+import com.sinch.rtc.examples.hms.HmsClientAssertions;
+import com.sinch.rtc.examples.hms.HmsOAuthFlowTokenValidator;
+import com.sinch.rtc.examples.hms.TokenBucketAdmissionController;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.*;
+
+public class HmsOAuthTokenEndpointTest {
+
+  private static final Clock CLOCK = Clock.fixed(ReferenceData.NOW.toInstant(), ZoneOffset.UTC);
+
+  private final AtomicInteger minted = new AtomicInteger();
+  private HmsOAuthTokenEndpoint endpoint;
+
+  @Before
+  public void start() throws IOException {
+    endpoint =
+        new HmsOAuthTokenEndpoint(
+            new InetSocketAddress("127.0.0.1", 0),
+            new HmsOAuthFlowTokenValidator(
+                applicationKey ->
+                    ReferenceData.APPLICATION_KEY.equals(applicationKey)
+                        ? ReferenceData.APPLICATION_SECRET
+                        : null,
+                CLOCK),
+            new CachingAccessTokenProvider(
+                (applicationKey, hmsApplicationId) ->
+                    new AccessToken(
+                        applicationKey + "/" + hmsApplicationId + "/" + minted.incrementAndGet(),
+                        CLOCK.instant().plus(Duration.ofHours(1))),
+                CLOCK,
+                CachingAccessTokenProvider.DEFAULT_REFRESH_MARGIN,
+                100),
+            CLOCK,
+            null);
+    endpoint.start();
+  }
+
+  @After
+  public void stop() {
+    endpoint.close();
+  }
+
+  @Test
+  public void testToken() throws IOException {
+    String expected =
+        "{\"access_token\":\""
+            + ReferenceData.APPLICATION_KEY
+            + "/"
+            + ReferenceData.HMS_APP_ID
+            + "/1\",\"token_type\":\"Bearer\",\"expires_in\":3600}";
+
+    for (int i = 0; i < 3; i++) {
+      HttpURLConnection connection = post(form(HmsClientAssertions.create()));
+
+      assertEquals(200, connection.getResponseCode());
+      assertEquals("no-store", connection.getHeaderField("Cache-Control"));
+      assertEquals(expected, read(connection.getInputStream()));
+    }
+
+    // The access token is cached.
+    assertEquals(1, minted.get());
+  }
+
+  @Test
+  public void testInvalidClient() throws IOException {
+    String invalid =
+        HmsClientAssertions.create(
+            ReferenceData.APPLICATION_KEY, "AAAAAAAAAAAAAAAAAAAAAA==", ReferenceData.NOW);
+
+    assertError(401, "invalid_client", form(invalid));
+    assertError(401, "invalid_client", form("not a jwt"));
+    assertError(
+        401,
+        "invalid_client",
+        "grant_type=client_credentials&client_assertion_type=other&client_assertion="
+            + HmsClientAssertions.create());
+    assertEquals(0, minted.get());
+  }
+
+  @Test
+  public void testInvalidRequest() throws IOException {
+    String assertion = HmsClientAssertions.create();
+
+    assertError(
+        400, "unsupported_grant_type", form(assertion).replace("client_credentials", "password"));
+    assertError(400, "invalid_request", "grant_type=client_credentials");
+    assertError(400, "invalid_request", form(assertion) + "&grant_type=client_credentials");
+    assertError(400, "invalid_request", form(assertion) + "%");
+  }
+
+  @Test
+  public void testReplayed() throws IOException {
+    endpoint.close();
+    endpoint =
+        new HmsOAuthTokenEndpoint(
+            new InetSocketAddress("127.0.0.1", 0),
+            new HmsOAuthFlowTokenValidator(
+                applicationKey -> ReferenceData.APPLICATION_SECRET,
+                CLOCK,
+                new BucketedNonceReplayStore()),
+            (applicationKey, hmsApplicationId) ->
+                new AccessToken("token", CLOCK.instant().plus(Duration.ofHours(1))),
+            CLOCK,
+            null);
+    endpoint.start();
+
+    String form = form(HmsClientAssertions.create());
+    assertEquals(200, post(form).getResponseCode());
+    assertError(401, "invalid_client", form);
+  }
+
+  @Test
+  public void testUnavailable() throws IOException {
+    endpoint.close();
+    endpoint =
+        new HmsOAuthTokenEndpoint(
+            new InetSocketAddress("127.0.0.1", 0),
+            new HmsOAuthFlowTokenValidator(
+                applicationKey -> ReferenceData.APPLICATION_SECRET, CLOCK),
+            (applicationKey, hmsApplicationId) -> {
+              throw new IllegalStateException("unavailable");
+            },
+            CLOCK,
+            null);
+    endpoint.start();
+
+    assertError(503, "temporarily_unavailable", form(HmsClientAssertions.create()));
+  }
+
+  @Test
+  public void testOverloaded() throws IOException {
+    endpoint.close();
+    endpoint =
+        new HmsOAuthTokenEndpoint(
+            new InetSocketAddress("127.0.0.1", 0),
+            new HmsOAuthFlowTokenValidator(
+                    applicationKey -> ReferenceData.APPLICATION_SECRET, CLOCK)
+                .withAdmissionController(new TokenBucketAdmissionController(0.001, 1)),
+            (applicationKey, hmsApplicationId) ->
+                new AccessToken("token", CLOCK.instant().plus(Duration.ofHours(1))),
+            CLOCK,
+            null);
+    endpoint.start();
+
+    String form = form(HmsClientAssertions.create());
+    assertEquals(200, post(form).getResponseCode());
+    assertEquals("1", post(form).getHeaderField("Retry-After"));
+    assertError(429, "temporarily_unavailable", form);
+  }
+
+  private void assertError(int status, String error, String form) throws IOException {
+    HttpURLConnection connection = post(form);
+
+    assertEquals(status, connection.getResponseCode());
+    String body = read(connection.getErrorStream());
+    assertTrue(body, body.equals("{\"error\":\"" + error + "\"}"));
+  }
+
+  private static String form(String clientAssertion) throws IOException {
+    return "grant_type=client_credentials&client_assertion_type="
+        + URLEncoder.encode(HmsOAuthTokenEndpoint.CLIENT_ASSERTION_TYPE, "UTF-8")
+        + "&client_assertion="
+        + URLEncoder.encode(clientAssertion, "UTF-8");
+  }
+
+  private HttpURLConnection post(String form) throws IOException {
+    HttpURLConnection connection =
+        (HttpURLConnection)
+            new URL(
+                    "http://127.0.0.1:"
+                        + endpoint.getAddress().getPort()
+                        + HmsOAuthTokenEndpoint.PATH)
+                .openConnection();
+    connection.setRequestMethod("POST");
+    connection.setDoOutput(true);
+    connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+    try (OutputStream out = connection.getOutputStream()) {
+      out.write(form.getBytes(StandardCharsets.UTF_8));
+    }
+    return connection;
+  }
+
+  private static String read(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[4096];
+    for (int read; (read = in.read(buffer)) != -1; ) out.write(buffer, 0, read);
+    in.close();
+    return new String(out.toByteArray(), StandardCharsets.UTF_8);
+  }
+}
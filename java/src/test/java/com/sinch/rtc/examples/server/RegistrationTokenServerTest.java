@@ -0,0 +1,211 @@
+package com.sinch.rtc.examples.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.sinch.rtc.examples.ReferenceData;
+import com.sinch.rtc.examples.jwt.CompactJws;
+import com.sinch.rtc.examples.jwt.JwtSigningKey;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.*;
+
+public class RegistrationTokenServerTest {
+
+  private static final String CALLER_TOKEN = "s3cr3t";
+  private static final String UNKNOWN_APPLICATION_KEY = "00000000-0000-0000-0000-000000000000";
+  private static final String MALFORMED_SECRET_KEY = "00000000-0000-0000-0000-000000000001";
+  private static final String EMPTY_SECRET_KEY = "00000000-0000-0000-0000-000000000002";
+
+  private RegistrationTokenServer server;
+
+  @Before
+  public void start() throws IOException {
+    server =
+        new RegistrationTokenServer(
+            new InetSocketAddress("127.0.0.1", 0),
+            applicationKey -> {
+              if (MALFORMED_SECRET_KEY.equals(applicationKey)) return "not base64!";
+              if (EMPTY_SECRET_KEY.equals(applicationKey)) return "";
+              return ReferenceData.APPLICATION_KEY.equals(applicationKey)
+                  ? ReferenceData.APPLICATION_SECRET
+                  : null;
+            },
+            CallerAuthenticator.bearerTokens(
+                Collections.singletonMap(
+                    CALLER_TOKEN,
+                    Arrays.asList(
+                        ReferenceData.APPLICATION_KEY,
+                        UNKNOWN_APPLICATION_KEY,
+                        MALFORMED_SECRET_KEY,
+                        EMPTY_SECRET_KEY))));
+    server.start();
+  }
+
+  @After
+  public void stop() {
+    server.close();
+  }
+
+  @Test
+  public void testIssue() throws IOException {
+    HttpURLConnection connection =
+        post(
+            "Bearer " + CALLER_TOKEN,
+            "application_key=" + ReferenceData.APPLICATION_KEY + "&user_id=foo%40example.com");
+
+    assertEquals(200, connection.getResponseCode());
+    String body = read(connection.getInputStream());
+
+    Matcher matcher =
+        Pattern.compile("\\{\"token\":\"([^\"]+)\",\"expires_in\":600}").matcher(body);
+    assertTrue(body, matcher.matches());
+
+    // The signing key is derived for the day of `kid`.
+    CompactJws jws = CompactJws.get();
+    assertTrue(jws.parse(matcher.group(1), 8192));
+    OffsetDateTime keyDay = JwtSigningKey.parseIssuedAtFromKeyId(jws.header().getString("kid"));
+
+    Claims claims =
+        Jwts.parserBuilder()
+            .setSigningKey(
+                Keys.hmacShaKeyFor(
+                    JwtSigningKey.deriveSigningKey(ReferenceData.APPLICATION_SECRET, keyDay)))
+            .build()
+            .parseClaimsJws(matcher.group(1))
+            .getBody();
+
+    assertEquals(
+        "//rtc.sinch.com/applications/" + ReferenceData.APPLICATION_KEY + "/users/foo@example.com",
+        claims.getSubject());
+    assertTrue(claims.getExpiration().toInstant().isAfter(OffsetDateTime.now().toInstant()));
+  }
+
+  @Test
+  public void testRejected() throws IOException {
+    String form = "application_key=" + ReferenceData.APPLICATION_KEY + "&user_id=foo";
+
+    assertEquals(401, post(null, form).getResponseCode());
+    assertEquals(401, post("Bearer wrong", form).getResponseCode());
+    assertEquals(
+        401, post("Bearer " + CALLER_TOKEN, "application_key=other&user_id=foo").getResponseCode());
+    assertEquals(
+        404,
+        post(
+                "Bearer " + CALLER_TOKEN,
+                "application_key=" + UNKNOWN_APPLICATION_KEY + "&user_id=foo")
+            .getResponseCode());
+    assertEquals(
+        400,
+        post("Bearer " + CALLER_TOKEN, "application_key=" + ReferenceData.APPLICATION_KEY)
+            .getResponseCode());
+    assertEquals(400, post("Bearer " + CALLER_TOKEN, form + "%zz").getResponseCode());
+
+    HttpURLConnection get =
+        (HttpURLConnection)
+            new URL(
+                    "http://127.0.0.1:"
+                        + server.getAddress().getPort()
+                        + RegistrationTokenServer.PATH)
+                .openConnection();
+    assertEquals(405, get.getResponseCode());
+  }
+
+  @Test
+  public void testCredentialsUnavailable() throws IOException {
+    for (String applicationKey : new String[] {MALFORMED_SECRET_KEY, EMPTY_SECRET_KEY}) {
+      HttpURLConnection connection =
+          post("Bearer " + CALLER_TOKEN, "application_key=" + applicationKey + "&user_id=foo");
+
+      assertEquals(503, connection.getResponseCode());
+      assertEquals("{\"error\":\"credentials_unavailable\"}", read(connection.getErrorStream()));
+    }
+  }
+
+  @Test
+  public void testPipelining() throws IOException {
+    String form = "application_key=" + ReferenceData.APPLICATION_KEY + "&user_id=foo";
+    String request =
+        "POST "
+            + RegistrationTokenServer.PATH
+            + " HTTP/1.1\r\n"
+            + "Host: localhost\r\n"
+            + "Authorization: Bearer "
+            + CALLER_TOKEN
+            + "\r\n"
+            + "Content-Type: application/x-www-form-urlencoded\r\n"
+            + "Content-Length: "
+            + form.length()
+            + "\r\n\r\n"
+            + form;
+
+    try (Socket socket = new Socket("127.0.0.1", server.getAddress().getPort())) {
+      socket.setSoTimeout(10000);
+
+      // Three requests in a single write, before reading any response.
+      OutputStream out = socket.getOutputStream();
+      out.write((request + request + request).getBytes(StandardCharsets.US_ASCII));
+      out.flush();
+
+      InputStream in = socket.getInputStream();
+      StringBuilder responses = new StringBuilder();
+      byte[] buffer = new byte[4096];
+      while (count(responses, "\"expires_in\":600}") < 3) {
+        int read = in.read(buffer);
+        if (read < 0) break;
+        responses.append(new String(buffer, 0, read, StandardCharsets.US_ASCII));
+      }
+
+      assertEquals(3, count(responses, "HTTP/1.1 200 OK"));
+    }
+  }
+
+  private HttpURLConnection post(String authorization, String form) throws IOException {
+    HttpURLConnection connection =
+        (HttpURLConnection)
+            new URL(
+                    "http://127.0.0.1:"
+                        + server.getAddress().getPort()
+                        + RegistrationTokenServer.PATH)
+                .openConnection();
+    connection.setRequestMethod("POST");
+    connection.setDoOutput(true);
+    connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+    if (authorization != null) connection.setRequestProperty("Authorization", authorization);
+    try (OutputStream out = connection.getOutputStream()) {
+      out.write(form.getBytes(StandardCharsets.UTF_8));
+    }
+    return connection;
+  }
+
+  private static String read(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[4096];
+    for (int read; (read = in.read(buffer)) != -1; ) out.write(buffer, 0, read);
+    in.close();
+    return new String(out.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  private static int count(CharSequence s, String substring) {
+    int count = 0;
+    for (int i = s.toString().indexOf(substring);
+        i >= 0;
+        i = s.toString().indexOf(substring, i + 1)) count++;
+    return count;
+  }
+}